@@ -1,54 +1,109 @@
 package edu.brown.cs.student.main.server;
 
-import static spark.Spark.after;
+import static spark.Spark.before;
 
 import edu.brown.cs.student.main.server.handlers.ClearUserHandler;
+import edu.brown.cs.student.main.server.handlers.ClearUserStatusHandler;
+import edu.brown.cs.student.main.server.handlers.SyncHandler;
 import edu.brown.cs.student.main.server.handlers.clothing.AddClothingHandler;
 import edu.brown.cs.student.main.server.handlers.clothing.ListClothingHandler;
 import edu.brown.cs.student.main.server.handlers.clothing.RemoveClothingHandler;
+import edu.brown.cs.student.main.server.handlers.nwsapi.BatchWeatherHandler;
 import edu.brown.cs.student.main.server.handlers.nwsapi.WeatherHandler;
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather.CachedWeatherSource;
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather.CompositeWeatherSource;
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather.CompositeWeatherSource.Provider;
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather.CompositeWeatherSource.Region;
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather.ForecastSnapshotStore;
 import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather.NWSAPIWeatherSource;
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather.ResilientForecastSource;
 import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather.WeatherDatasource;
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather.WeatherPrefetcher;
 import edu.brown.cs.student.main.server.handlers.outfits.AddOutfitHandler;
 import edu.brown.cs.student.main.server.handlers.outfits.GenerateOutfitHandler;
 import edu.brown.cs.student.main.server.handlers.outfits.ListOutfitsHandler;
+import edu.brown.cs.student.main.server.handlers.outfits.OutfitIndex;
 import edu.brown.cs.student.main.server.handlers.outfits.RemoveOutfitHandler;
+import edu.brown.cs.student.main.server.storage.CachingStorage;
+import edu.brown.cs.student.main.server.storage.ChangeLogStorage;
 import edu.brown.cs.student.main.server.storage.FirebaseUtilities;
+import edu.brown.cs.student.main.server.storage.IdAllocator;
+import edu.brown.cs.student.main.server.storage.LogStorage;
+import edu.brown.cs.student.main.server.storage.ManifestStorage;
 import edu.brown.cs.student.main.server.storage.StorageInterface;
+import edu.brown.cs.student.main.server.storage.WriteBehindStorage;
+import edu.brown.cs.student.main.server.storage.codec.DescriptionMigrator;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
 import spark.Filter;
 import spark.Spark;
 
 /** Top Level class for our project, utilizes spark to create and maintain our server. */
 public class Server {
 
+  // Where the embedded log is kept by default; forecast snapshots go beside it.
+  private static final String DEFAULT_STORAGE_PATH = "data/fitmeup.log";
+
   public static void setUpServer(WeatherDatasource datasource) {
     int port = 3232;
     Spark.port(port);
 
-    after(
+    // Set before the route runs, as streamed responses are already sent by the time after filters
+    // run.
+    before(
         (Filter)
             (request, response) -> {
               response.header("Access-Control-Allow-Origin", "*");
               response.header("Access-Control-Allow-Methods", "*");
             });
 
-    StorageInterface firebaseUtils;
+    StorageInterface storage;
     try {
-      firebaseUtils = new FirebaseUtilities();
+      // Changes to closets are logged, so clients can sync just what changed; the most recent 500
+      // per user are kept, and clients further behind get a snapshot. Users' closets are cached in
+      // memory in front of it all.
+      ChangeLogStorage changes =
+          new ChangeLogStorage(createStorage(), Set.of("clothing", "outfits"), 500);
+      storage = changes;
+      // With FITMEUP_WRITE_BEHIND_JOURNAL set, outfit saves return once they are in that local
+      // journal, and are flushed to storage in batches a moment later.
+      String journal = System.getenv("FITMEUP_WRITE_BEHIND_JOURNAL");
+      if (journal != null) {
+        storage =
+            new WriteBehindStorage(
+                storage, Set.of("outfits"), Path.of(journal), 10_000, Duration.ofMillis(200));
+      }
+      storage = new CachingStorage(storage, 1_000, 64L * 1024 * 1024);
+      // One allocator for every handler, so they share leased blocks of IDs.
+      IdAllocator ids = new IdAllocator(storage);
+      // Likewise one index of outfits by item, kept up to date by every handler that changes it.
+      OutfitIndex outfits = new OutfitIndex(storage);
+      // Moves descriptions into clothing records as closets are listed, and for every user at once
+      // with FITMEUP_MIGRATE_DESCRIPTIONS=true; either way at most 50 writes a second.
+      DescriptionMigrator descriptions = new DescriptionMigrator(storage, 50);
+      if (Boolean.parseBoolean(System.getenv("FITMEUP_MIGRATE_DESCRIPTIONS"))) {
+        descriptions.startSweep();
+      }
 
       // Clothing Handlers
-      Spark.get("add-clothing", new AddClothingHandler(firebaseUtils));
-      Spark.get("list-clothing", new ListClothingHandler(firebaseUtils));
-      Spark.get("remove-clothing", new RemoveClothingHandler(firebaseUtils));
+      Spark.get("add-clothing", new AddClothingHandler(storage, ids));
+      Spark.get("list-clothing", new ListClothingHandler(storage, descriptions));
+      Spark.get("remove-clothing", new RemoveClothingHandler(storage, outfits));
       // Outfit Handlers
-      Spark.get("add-outfit", new AddOutfitHandler(firebaseUtils));
-      Spark.get("list-outfits", new ListOutfitsHandler(firebaseUtils));
-      Spark.get("remove-outfit", new RemoveOutfitHandler(firebaseUtils));
-      Spark.get("generate-outfit", new GenerateOutfitHandler(firebaseUtils, datasource));
+      Spark.get("add-outfit", new AddOutfitHandler(storage, ids, outfits));
+      Spark.get("list-outfits", new ListOutfitsHandler(storage, outfits));
+      Spark.get("remove-outfit", new RemoveOutfitHandler(storage, outfits));
+      Spark.get("generate-outfit", new GenerateOutfitHandler(storage, datasource));
       // Misc Handlers
-      Spark.get("clear-user", new ClearUserHandler(firebaseUtils));
+      ClearUserHandler clearUser = new ClearUserHandler(storage, ids, outfits);
+      Spark.get("clear-user", clearUser);
+      Spark.get("clear-user-status", new ClearUserStatusHandler(clearUser.jobs()));
+      Spark.get("sync", new SyncHandler(changes));
       Spark.get("weather", new WeatherHandler(datasource));
+      Spark.get("weather-batch", new BatchWeatherHandler(datasource));
 
       Spark.notFound(
           (request, response) -> {
@@ -63,17 +118,87 @@ public class Server {
     } catch (IOException e) {
       e.printStackTrace();
       System.err.println(
-          "Error: Could not initialize Firebase. Likely due to firebase_config.json not being found. Exiting.");
+          "Error: Could not initialize storage. With FITMEUP_STORAGE=firestore (the default), this"
+              + " is likely due to firebase_config.json not being found. Exiting.");
       System.exit(1);
     }
   }
 
+  /**
+   * Creates the storage backend named by FITMEUP_STORAGE: "firestore" (the default) or "log", an
+   * embedded append-only log kept at FITMEUP_STORAGE_PATH. With FITMEUP_MANIFESTS=true, closets are
+   * also kept in one manifest document per collection, so listing a closet is a single read.
+   *
+   * @return the storage
+   * @throws IOException if the backend can't be opened
+   */
+  private static StorageInterface createStorage() throws IOException {
+    String backend = System.getenv().getOrDefault("FITMEUP_STORAGE", "firestore");
+    StorageInterface storage;
+    switch (backend) {
+      case "firestore":
+        storage = new FirebaseUtilities();
+        break;
+      case "log":
+        storage =
+            new LogStorage(
+                Path.of(
+                    System.getenv().getOrDefault("FITMEUP_STORAGE_PATH", DEFAULT_STORAGE_PATH)));
+        break;
+      default:
+        throw new IOException("Unknown FITMEUP_STORAGE backend: " + backend);
+    }
+    if (Boolean.parseBoolean(System.getenv("FITMEUP_MANIFESTS"))) {
+      storage =
+          new ManifestStorage(storage, Set.of("clothing", "clothing-description", "outfits"), 50);
+    }
+    return storage;
+  }
+
   /**
    * Runs Server.
    *
    * @param args none
    */
   public static void main(String[] args) {
-    setUpServer(new NWSAPIWeatherSource());
+    // Cache forecasts per grid cell, and keep the popular cells warm in the background. Upstream
+    // calls are guarded so that NWS incidents degrade to stale forecasts rather than errors.
+    // NWS_BASE_URL can point the server at a local NWS stand-in for offline load testing.
+    // Forecasts are snapshotted to WEATHER_SNAPSHOT_DIR so a restarted server can answer at once;
+    // by default they are kept beside the storage log, where they survive a reboot.
+    String nwsBaseUrl = System.getenv().getOrDefault("NWS_BASE_URL", "https://api.weather.gov");
+    String snapshotDir =
+        System.getenv()
+            .getOrDefault(
+                "WEATHER_SNAPSHOT_DIR",
+                Path.of(System.getenv().getOrDefault("FITMEUP_STORAGE_PATH", DEFAULT_STORAGE_PATH))
+                    .resolveSibling("forecasts")
+                    .toString());
+    ForecastSnapshotStore snapshots = null;
+    try {
+      snapshots = new ForecastSnapshotStore(Path.of(snapshotDir));
+    } catch (IOException e) {
+      System.err.println("Forecast snapshots disabled: " + e.getMessage());
+    }
+    CachedWeatherSource weather =
+        new CachedWeatherSource(
+            new ResilientForecastSource(new NWSAPIWeatherSource(nwsBaseUrl)),
+            Duration.ofMinutes(30),
+            10_000,
+            snapshots);
+    new WeatherPrefetcher(weather).start();
+
+    // NWS only covers the US and its territories; other locations fail fast rather than making a
+    // doomed call. Further providers slot in here, in order of preference.
+    Region nwsCoverage =
+        Region.anyOf(
+            Region.box(24, 50, -125, -66), // contiguous US
+            Region.box(51, 72, -180, -129), // Alaska
+            Region.box(18, 23, -161, -154), // Hawaii
+            Region.box(17.5, 18.6, -67.5, -64.5)); // Puerto Rico and the USVI
+    WeatherDatasource composite =
+        new CompositeWeatherSource(
+            List.of(new Provider("nws", weather, nwsCoverage)), Duration.ofMillis(800));
+    setUpServer(composite);
   }
 }
@@ -1,8 +1,12 @@
 package edu.brown.cs.student.main.server.handlers;
 
+import edu.brown.cs.student.main.server.handlers.outfits.OutfitIndex;
+import edu.brown.cs.student.main.server.serializers.DeletionStatus;
+import edu.brown.cs.student.main.server.serializers.ErrorResponse;
+import edu.brown.cs.student.main.server.serializers.Json;
+import edu.brown.cs.student.main.server.storage.DeletionProgress;
+import edu.brown.cs.student.main.server.storage.IdAllocator;
 import edu.brown.cs.student.main.server.storage.StorageInterface;
-import java.util.HashMap;
-import java.util.Map;
 import spark.Request;
 import spark.Response;
 import spark.Route;
@@ -14,13 +18,33 @@ import spark.Route;
 public class ClearUserHandler implements Route {
 
   public StorageInterface storageHandler;
+  private final ClearUserJobs jobs;
 
   public ClearUserHandler(StorageInterface storageHandler) {
+    this(storageHandler, null, null);
+  }
+
+  /**
+   * Constructor for the ClearUserHandler.
+   *
+   * @param storageHandler The storage handler to be used.
+   * @param ids The ID allocator whose leases for the user should be dropped, or null if none.
+   * @param outfits The outfit index whose entries for the user should be dropped, or null if none.
+   */
+  public ClearUserHandler(StorageInterface storageHandler, IdAllocator ids, OutfitIndex outfits) {
     this.storageHandler = storageHandler;
+    this.jobs = new ClearUserJobs(storageHandler, ids, outfits);
+  }
+
+  /** Returns the deletions this handler has run, for the status endpoint to report on. */
+  public ClearUserJobs jobs() {
+    return this.jobs;
   }
 
   /**
-   * Invoked when a request is made on this route's corresponding path
+   * Invoked when a request is made on this route's corresponding path. With async=true the user is
+   * cleared in the background and the response reports the deletion as running; its progress can
+   * then be polled from clear-user-status.
    *
    * @param request The request object providing information about the HTTP request
    * @param response The response object providing functionality for modifying the response
@@ -28,22 +52,19 @@ public class ClearUserHandler implements Route {
    */
   @Override
   public Object handle(Request request, Response response) {
-    Map<String, Object> responseMap = new HashMap<>();
     try {
       String uid = request.queryParams("uid");
+      if (uid == null) {
+        throw new IllegalArgumentException("removeUser: uid cannot be null");
+      }
 
-      // Remove the user from the database.
-      this.storageHandler.clearUser(uid);
-
-      responseMap.put("response_type", "success");
+      // Remove the user from the database, now or in the background.
+      DeletionProgress progress =
+          "true".equals(request.queryParams("async")) ? this.jobs.start(uid) : this.jobs.run(uid);
+      return Json.toJson(DeletionStatus.of(progress));
     } catch (Exception e) {
       // Error likely occurred in the storage handler.
-      responseMap.put("response_type", "error");
-      String[] parts = e.getClass().toString().split("\\.");
-      responseMap.put("exception", parts[parts.length - 1]);
-      responseMap.put("error_message", e.getMessage());
+      return Json.toJson(ErrorResponse.of(e));
     }
-
-    return Utils.toMoshiJson(responseMap);
   }
 }
@@ -0,0 +1,125 @@
+package edu.brown.cs.student.main.server.handlers;
+
+import edu.brown.cs.student.main.server.handlers.outfits.OutfitIndex;
+import edu.brown.cs.student.main.server.storage.DeletionProgress;
+import edu.brown.cs.student.main.server.storage.IdAllocator;
+import edu.brown.cs.student.main.server.storage.StorageInterface;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs and tracks user deletions for the clear-user endpoints. A deletion can run on the request
+ * thread or in the background; either way its progress can be looked up by uid until an hour after
+ * it finishes. At most a couple of background deletions run at once, so a burst of large users
+ * can't swamp the store.
+ */
+public class ClearUserJobs {
+
+  private static final int MAX_RUNNING = 2;
+  private static final long RETAIN_MILLIS = 60 * 60 * 1000;
+
+  private final StorageInterface storage;
+  private final IdAllocator ids;
+  private final OutfitIndex outfits;
+  private final Map<String, DeletionProgress> jobs = new ConcurrentHashMap<>();
+  private final ExecutorService executor =
+      Executors.newFixedThreadPool(
+          MAX_RUNNING,
+          r -> {
+            Thread t = new Thread(r, "clear-user");
+            t.setDaemon(true);
+            return t;
+          });
+
+  /**
+   * Constructor for the ClearUserJobs.
+   *
+   * @param storage the storage to delete users from
+   * @param ids the ID allocator whose leases for a user should be dropped, or null if none
+   * @param outfits the outfit index whose entries for a user should be dropped, or null if none
+   */
+  public ClearUserJobs(StorageInterface storage, IdAllocator ids, OutfitIndex outfits) {
+    this.storage = storage;
+    this.ids = ids;
+    this.outfits = outfits;
+  }
+
+  /**
+   * Clears a user on this thread, returning once everything is deleted.
+   *
+   * @param uid the user
+   * @return the finished deletion's progress
+   */
+  public DeletionProgress run(String uid) throws InterruptedException, ExecutionException {
+    this.forgetOldJobs();
+    DeletionProgress progress = new DeletionProgress();
+    this.jobs.put(uid, progress);
+    this.clear(uid, progress);
+    return progress;
+  }
+
+  /**
+   * Starts clearing a user in the background, unless they are already being cleared.
+   *
+   * @param uid the user
+   * @return the deletion's progress, which is still being updated
+   */
+  public DeletionProgress start(String uid) {
+    this.forgetOldJobs();
+    return this.jobs.compute(
+        uid,
+        (k, current) -> {
+          if (current != null && !current.isDone()) {
+            return current;
+          }
+          DeletionProgress progress = new DeletionProgress();
+          this.executor.execute(
+              () -> {
+                try {
+                  this.clear(uid, progress);
+                } catch (Exception e) {
+                  System.err.println("Error clearing user " + uid + ": " + e.getMessage());
+                }
+              });
+          return progress;
+        });
+  }
+
+  /**
+   * Looks up the latest deletion of a user.
+   *
+   * @param uid the user
+   * @return its progress, or null if the user hasn't been cleared recently
+   */
+  public DeletionProgress status(String uid) {
+    return this.jobs.get(uid);
+  }
+
+  private void clear(String uid, DeletionProgress progress)
+      throws InterruptedException, ExecutionException {
+    try {
+      this.storage.clearUser(uid, progress);
+      if (this.ids != null) {
+        // The user's ID counters are gone, so IDs start again from zero.
+        this.ids.reset(uid);
+      }
+      if (this.outfits != null) {
+        this.outfits.reset(uid);
+      }
+      progress.finish(null);
+    } catch (InterruptedException | ExecutionException | RuntimeException e) {
+      progress.finish(e instanceof ExecutionException && e.getCause() != null ? e.getCause() : e);
+      throw e;
+    }
+  }
+
+  private void forgetOldJobs() {
+    long cutoff = System.currentTimeMillis() - RETAIN_MILLIS;
+    this.jobs
+        .values()
+        .removeIf(progress -> progress.isDone() && progress.finishedMillis() < cutoff);
+  }
+}
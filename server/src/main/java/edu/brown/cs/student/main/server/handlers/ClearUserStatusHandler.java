@@ -0,0 +1,47 @@
+package edu.brown.cs.student.main.server.handlers;
+
+import edu.brown.cs.student.main.server.serializers.DeletionStatus;
+import edu.brown.cs.student.main.server.serializers.ErrorResponse;
+import edu.brown.cs.student.main.server.serializers.Json;
+import edu.brown.cs.student.main.server.storage.DeletionProgress;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+/**
+ * ClearUserStatusHandler is called by the clear status endpoint in server, and reports how far the
+ * latest deletion of a user has got.
+ */
+public class ClearUserStatusHandler implements Route {
+
+  private final ClearUserJobs jobs;
+
+  /**
+   * Constructor for the ClearUserStatusHandler.
+   *
+   * @param jobs the deletions to report on, shared with the ClearUserHandler
+   */
+  public ClearUserStatusHandler(ClearUserJobs jobs) {
+    this.jobs = jobs;
+  }
+
+  /**
+   * Invoked when a request is made on this route's corresponding path
+   *
+   * @param request The request object providing information about the HTTP request
+   * @param response The response object providing functionality for modifying the response
+   * @return The content to be set in the response
+   */
+  @Override
+  public Object handle(Request request, Response response) {
+    String uid = request.queryParams("uid");
+    if (uid == null) {
+      return Json.toJson(ErrorResponse.missingParameter("uid"));
+    }
+    DeletionProgress progress = this.jobs.status(uid);
+    if (progress == null) {
+      return Json.toJson(ErrorResponse.of("not_found", "No recent deletion for user " + uid));
+    }
+    return Json.toJson(DeletionStatus.of(progress));
+  }
+}
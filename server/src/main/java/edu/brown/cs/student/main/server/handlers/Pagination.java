@@ -0,0 +1,185 @@
+package edu.brown.cs.student.main.server.handlers;
+
+import edu.brown.cs.student.main.server.storage.CollectionPage;
+import edu.brown.cs.student.main.server.storage.StorageInterface;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Predicate;
+
+/**
+ * Cursor pagination, filtering and field projection for the list endpoints.
+ *
+ * <p>A paginated request asks for at most limit items, starting after the cursor returned as
+ * next_cursor by the previous page; items come in document id order, and the cursor is opaque to
+ * clients. Filters are applied on the server as pages are read, and a request stops after reading
+ * SCAN_FACTOR times its limit, returning fewer items and a cursor to carry on from, so a filter
+ * that matches little can't make one request read the whole closet. A request with neither limit
+ * nor cursor gets every matching item, as before pagination existed.
+ */
+public final class Pagination {
+
+  public static final int DEFAULT_LIMIT = 50;
+  public static final int MAX_LIMIT = 200;
+  private static final int SCAN_FACTOR = 10;
+
+  /**
+   * The matching documents found for one request.
+   *
+   * @param documents the matching documents' data by document id
+   * @param nextCursor where the next page starts, or null if there are no more
+   */
+  public record Result(Map<String, Map<String, Object>> documents, String nextCursor) {}
+
+  private Pagination() {}
+
+  /**
+   * Lists the documents of a user's collection that match a filter, one page at a time.
+   *
+   * @param storage the storage to read from
+   * @param uid the user
+   * @param collection_id the collection
+   * @param limitParam the limit query parameter, or null
+   * @param cursorParam the cursor query parameter, or null
+   * @param keep which documents to return
+   * @return the matching documents and where the next page starts
+   * @throws IllegalArgumentException if the limit or cursor is malformed
+   */
+  public static Result list(
+      StorageInterface storage,
+      String uid,
+      String collection_id,
+      String limitParam,
+      String cursorParam,
+      Predicate<Map<String, Object>> keep)
+      throws InterruptedException, ExecutionException {
+    if (limitParam == null && cursorParam == null) {
+      Map<String, Map<String, Object>> kept = new LinkedHashMap<>();
+      storage
+          .getCollectionDocuments(uid, collection_id)
+          .forEach(
+              (id, data) -> {
+                if (keep.test(data)) {
+                  kept.put(id, data);
+                }
+              });
+      return new Result(kept, null);
+    }
+
+    int limit = parseLimit(limitParam);
+    String after = decodeCursor(cursorParam);
+    Map<String, Map<String, Object>> kept = new LinkedHashMap<>();
+    int scanned = 0;
+    while (true) {
+      CollectionPage page = storage.getCollectionPage(uid, collection_id, after, limit);
+      Iterator<Map.Entry<String, Map<String, Object>>> docs =
+          page.documents().entrySet().iterator();
+      while (docs.hasNext()) {
+        Map.Entry<String, Map<String, Object>> doc = docs.next();
+        after = doc.getKey();
+        scanned++;
+        if (keep.test(doc.getValue())) {
+          kept.put(doc.getKey(), doc.getValue());
+          if (kept.size() == limit) {
+            boolean more = docs.hasNext() || page.more();
+            return new Result(kept, more ? encodeCursor(after) : null);
+          }
+        }
+      }
+      if (!page.more()) {
+        return new Result(kept, null);
+      }
+      if (scanned >= limit * SCAN_FACTOR) {
+        return new Result(kept, encodeCursor(after));
+      }
+    }
+  }
+
+  /**
+   * Keeps only the requested fields of each item.
+   *
+   * @param items the items
+   * @param fieldsParam a comma separated list of fields, or null for every field
+   * @param known the fields items have
+   * @return the projected items
+   * @throws IllegalArgumentException if a requested field isn't one of the known ones
+   */
+  public static List<Map<String, String>> project(
+      List<Map<String, String>> items, String fieldsParam, Set<String> known) {
+    if (fieldsParam == null) {
+      return items;
+    }
+    List<String> fields = fields(fieldsParam, known);
+    List<Map<String, String>> projected = new ArrayList<>();
+    for (Map<String, String> item : items) {
+      Map<String, String> kept = new HashMap<>();
+      for (String field : fields) {
+        if (item.containsKey(field)) {
+          kept.put(field, item.get(field));
+        }
+      }
+      projected.add(kept);
+    }
+    return projected;
+  }
+
+  /**
+   * Parses a comma separated list of fields.
+   *
+   * @param fieldsParam the list
+   * @param known the fields that may be asked for
+   * @return the fields
+   * @throws IllegalArgumentException if a field isn't one of the known ones
+   */
+  public static List<String> fields(String fieldsParam, Set<String> known) {
+    List<String> fields = new ArrayList<>();
+    for (String field : fieldsParam.split(",")) {
+      String trimmed = field.trim();
+      if (!known.contains(trimmed)) {
+        throw new IllegalArgumentException("Unknown field: " + trimmed);
+      }
+      fields.add(trimmed);
+    }
+    return fields;
+  }
+
+  private static int parseLimit(String limitParam) {
+    if (limitParam == null) {
+      return DEFAULT_LIMIT;
+    }
+    int limit;
+    try {
+      limit = Integer.parseInt(limitParam);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("limit must be a number");
+    }
+    if (limit < 1 || limit > MAX_LIMIT) {
+      throw new IllegalArgumentException("limit must be between 1 and " + MAX_LIMIT);
+    }
+    return limit;
+  }
+
+  private static String encodeCursor(String docId) {
+    return Base64.getUrlEncoder()
+        .withoutPadding()
+        .encodeToString(docId.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static String decodeCursor(String cursorParam) {
+    if (cursorParam == null) {
+      return null;
+    }
+    try {
+      return new String(Base64.getUrlDecoder().decode(cursorParam), StandardCharsets.UTF_8);
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Malformed cursor");
+    }
+  }
+}
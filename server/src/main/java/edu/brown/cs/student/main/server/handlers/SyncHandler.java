@@ -0,0 +1,128 @@
+package edu.brown.cs.student.main.server.handlers;
+
+import edu.brown.cs.student.main.server.serializers.ClothingItem;
+import edu.brown.cs.student.main.server.serializers.ErrorResponse;
+import edu.brown.cs.student.main.server.serializers.Json;
+import edu.brown.cs.student.main.server.serializers.JsonStream;
+import edu.brown.cs.student.main.server.serializers.JsonWritable;
+import edu.brown.cs.student.main.server.serializers.OutfitItem;
+import edu.brown.cs.student.main.server.serializers.SyncChanges;
+import edu.brown.cs.student.main.server.storage.ChangeLogStorage;
+import edu.brown.cs.student.main.server.storage.codec.ClothingCodec;
+import edu.brown.cs.student.main.server.storage.codec.OutfitCodec;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+/**
+ * SyncHandler is called by the sync endpoint in server, and brings a client's copy of a user's
+ * clothing and outfits up to date: with just the changes since the version it last synced to, or
+ * with everything if those changes are no longer all kept.
+ */
+public class SyncHandler implements Route {
+
+  private static final String CLOTHING = "clothing";
+  private static final String OUTFITS = "outfits";
+
+  private final ChangeLogStorage changes;
+
+  /**
+   * Constructor for the SyncHandler.
+   *
+   * @param changes The storage, logging the changes to users' clothing and outfits. Snapshots are
+   *     read from it rather than through any cache in front, which could lag behind the log.
+   */
+  public SyncHandler(ChangeLogStorage changes) {
+    this.changes = changes;
+  }
+
+  /**
+   * Invoked when a request is made on this route's corresponding path. Takes a uid and optionally
+   * since, the version the client last synced to. Responds with the latest version and either
+   * "changes", each document changed since then as it is now (an add, or a remove if it is gone),
+   * in the order they last changed, or, without since or if it is too old, "snapshot": true with
+   * all of the user's clothing and outfits. Clothing comes with its description where it has been
+   * migrated into the clothing record. Snapshots are streamed (see JsonStream).
+   *
+   * @param request The request object providing information about the HTTP request
+   * @param response The response object providing functionality for modifying the response
+   * @return The content to be set in the response
+   */
+  @Override
+  public Object handle(Request request, Response response) {
+    try {
+      String uid = request.queryParams("uid");
+      String sinceParam = request.queryParams("since");
+      long since;
+      try {
+        since = sinceParam == null ? -1 : Long.parseLong(sinceParam);
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("since must be a version number: " + sinceParam);
+      }
+
+      ChangeLogStorage.Changes delta = since < 0 ? null : this.changes.since(uid, since);
+      if (delta != null) {
+        List<SyncChanges.Change> changes = new ArrayList<>();
+        for (ChangeLogStorage.Change change : delta.changes()) {
+          changes.add(toChange(change));
+        }
+        return Json.toJson(new SyncChanges(delta.version(), changes));
+      } else {
+        // The version is read first, so the snapshot has at least everything up to it.
+        long version = this.changes.version(uid);
+        Map<String, Map<String, Object>> clothing =
+            this.changes.getCollectionDocuments(uid, CLOTHING);
+        Map<String, Map<String, Object>> outfits =
+            this.changes.getCollectionDocuments(uid, OUTFITS);
+
+        // A snapshot is a whole closet, so it is streamed out as it is converted.
+        return JsonStream.write(
+            request,
+            response,
+            writer -> {
+              writer.beginObject();
+              writer.name("response_type").value("success");
+              writer.name("snapshot").value(true);
+              writer.name("version").value(version);
+              writer.name(CLOTHING).beginArray();
+              for (Map<String, Object> doc : clothing.values()) {
+                clothing(doc).writeJson(writer);
+              }
+              writer.endArray();
+              writer.name(OUTFITS).beginArray();
+              for (Map<String, Object> doc : outfits.values()) {
+                OutfitItem.of(OutfitCodec.decode(doc)).writeJson(writer);
+              }
+              writer.endArray();
+              writer.endObject();
+            });
+      }
+    } catch (Exception e) {
+      // Error likely occurred in the storage handler.
+      return Json.toJson(ErrorResponse.of(e));
+    }
+  }
+
+  /** Converts a logged change to what the endpoint responds with. */
+  private static SyncChanges.Change toChange(ChangeLogStorage.Change change) {
+    JsonWritable item = null;
+    if (!change.isDelete()) {
+      item =
+          change.collection_id().equals(CLOTHING)
+              ? clothing(change.data())
+              : OutfitItem.of(OutfitCodec.decode(change.data()));
+    }
+    return new SyncChanges.Change(
+        change.version(), change.collection_id(), change.doc_id().split("-")[1], item);
+  }
+
+  /** Converts a clothing document to its item, with its description if it has been migrated. */
+  private static JsonWritable clothing(Map<String, Object> doc) {
+    ClothingItem item = ClothingItem.of(ClothingCodec.decode(doc));
+    String description = ClothingCodec.description(doc);
+    return writer -> item.writeJson(writer, description);
+  }
+}
@@ -1,35 +1,17 @@
 package edu.brown.cs.student.main.server.handlers;
 
-import com.squareup.moshi.JsonAdapter;
-import com.squareup.moshi.Moshi;
-import com.squareup.moshi.Types;
 import edu.brown.cs.student.main.server.clothing.enums.*;
 import edu.brown.cs.student.main.server.clothing.records.Clothing;
 import edu.brown.cs.student.main.server.clothing.records.Color;
-import edu.brown.cs.student.main.server.clothing.records.Outfit;
-import edu.brown.cs.student.main.server.clothing.records.Palette;
+import edu.brown.cs.student.main.server.serializers.Json;
+import edu.brown.cs.student.main.server.storage.codec.ClothingCodec;
 import java.io.IOException;
-import java.lang.reflect.Type;
 import java.util.HashMap;
 import java.util.Map;
 
 /** This class contains utility functions. */
 public class Utils {
 
-  /**
-   * Function that converts an object into a JSON.
-   *
-   * @param map the map to convert.
-   * @return the data in JSON format.
-   */
-  public static String toMoshiJson(Map<String, Object> map) {
-    Moshi moshi = new Moshi.Builder().build();
-    Type mapStringObject = Types.newParameterizedType(Map.class, String.class, Object.class);
-    JsonAdapter<Map<String, Object>> adapter = moshi.adapter(mapStringObject);
-
-    return adapter.toJson(map);
-  }
-
   /**
    * Parses JSON data from a JsonReader and converts it to the specified target type.
    *
@@ -40,10 +22,7 @@ public class Utils {
    * @throws IOException if there's an error reading or parsing the JSON data.
    */
   public static <T> T fromJsonGeneral(String source, Class<T> targetType) throws IOException {
-    Moshi moshi = new Moshi.Builder().build();
-    JsonAdapter<T> adapter = moshi.adapter(targetType);
-
-    return adapter.fromJson(source);
+    return Json.fromJson(source, targetType);
   }
 
   /**
@@ -53,16 +32,7 @@ public class Utils {
    * @return the clothing object.
    */
   public static Clothing fromStringClothing(String clothing) {
-    String[] parts = clothing.split(",");
-    int id = Integer.parseInt(parts[0]);
-    Category cat = Category.values()[Integer.parseInt(parts[1])];
-    Subcategory subcat = Subcategory.values()[Integer.parseInt(parts[2])];
-    Formality formality = Formality.values()[Integer.parseInt(parts[3])];
-    Palette palette =
-        new Palette(hexToRGB(parts[4]), (!parts[5].equals("null")) ? hexToRGB(parts[5]) : null);
-    Material material = Material.values()[Integer.parseInt(parts[6])];
-
-    return new Clothing(id, cat, subcat, formality, palette, material);
+    return ClothingCodec.fromCsv(clothing);
   }
 
   /*
@@ -91,36 +61,6 @@ public class Utils {
         + clothing.material().ordinal();
   }
 
-  /**
-   * Converts a clothing object to a hashmap.
-   *
-   * @param clothing the clothing object to convert.
-   * @return the hashmap representation of the clothing object.
-   */
-  public static Map<String, String> clothingToHashMap(Clothing clothing) {
-    Map<String, String> map = new HashMap<>();
-    String hexColor1 =
-        rgbToHex(
-            clothing.colors().primary().r(),
-            clothing.colors().primary().g(),
-            clothing.colors().primary().b());
-    String hexColor2 =
-        (clothing.colors().accent() != null)
-            ? rgbToHex(
-                clothing.colors().accent().r(),
-                clothing.colors().accent().g(),
-                clothing.colors().accent().b())
-            : "null";
-    map.put("id", Integer.toString(clothing.id()));
-    map.put("category", Integer.toString(clothing.category().ordinal()));
-    map.put("subcategory", Integer.toString(clothing.subcategory().ordinal()));
-    map.put("formality", Integer.toString(clothing.formality().ordinal()));
-    map.put("primary", hexColor1);
-    map.put("accent", hexColor2);
-    map.put("material", Integer.toString(clothing.material().ordinal()));
-    return map;
-  }
-
   /**
    * Converts a hex color to an RGB color.
    *
@@ -169,28 +109,4 @@ public class Utils {
     map.put("accessory", parts[6]);
     return map;
   }
-
-  /**
-   * Converts an outfit object to a hashmap
-   *
-   * @param outfit the outfit object to convert.
-   * @param id the id of the outfit.
-   * @return the hashmap representation of the outfit object.
-   */
-  public static Map<String, String> serializeOutfit(Outfit outfit, String id) {
-    Map<String, String> map = new HashMap<String, String>();
-    map.put("id", id);
-    map.put("top", (outfit.top() != null) ? Integer.toString(outfit.top().id()) : "-1");
-    map.put("bottom", (outfit.bottom() != null) ? Integer.toString(outfit.bottom().id()) : "-1");
-    map.put("shoe", (outfit.shoe() != null) ? Integer.toString(outfit.shoe().id()) : "-1");
-    map.put(
-        "outerwear",
-        (outfit.outerwear() != null) ? Integer.toString(outfit.outerwear().id()) : "-1");
-    map.put(
-        "fullbody", (outfit.fullbody() != null) ? Integer.toString(outfit.fullbody().id()) : "-1");
-    map.put(
-        "accessory",
-        (outfit.accessory() != null) ? Integer.toString(outfit.accessory().id()) : "-1");
-    return map;
-  }
 }
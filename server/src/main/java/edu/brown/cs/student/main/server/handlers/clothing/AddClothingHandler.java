@@ -1,9 +1,13 @@
 package edu.brown.cs.student.main.server.handlers.clothing;
 
-import com.google.cloud.firestore.DocumentReference;
-import edu.brown.cs.student.main.server.handlers.Utils;
+import edu.brown.cs.student.main.server.clothing.records.Clothing;
+import edu.brown.cs.student.main.server.serializers.AddClothingResponse;
+import edu.brown.cs.student.main.server.serializers.ClothingItem;
+import edu.brown.cs.student.main.server.serializers.ErrorResponse;
+import edu.brown.cs.student.main.server.serializers.Json;
+import edu.brown.cs.student.main.server.storage.IdAllocator;
 import edu.brown.cs.student.main.server.storage.StorageInterface;
-import java.util.HashMap;
+import edu.brown.cs.student.main.server.storage.codec.ClothingCodec;
 import java.util.Map;
 import spark.Request;
 import spark.Response;
@@ -16,9 +20,21 @@ import spark.Route;
 public class AddClothingHandler implements Route {
 
   public StorageInterface storageHandler;
+  private final IdAllocator ids;
 
   public AddClothingHandler(StorageInterface storageHandler) {
+    this(storageHandler, new IdAllocator(storageHandler));
+  }
+
+  /**
+   * Constructor for the AddClothingHandler.
+   *
+   * @param storageHandler The storage handler to be used.
+   * @param ids The allocator for clothing IDs, shared with any other handlers that use them.
+   */
+  public AddClothingHandler(StorageInterface storageHandler, IdAllocator ids) {
     this.storageHandler = storageHandler;
+    this.ids = ids;
   }
 
   /**
@@ -30,7 +46,6 @@ public class AddClothingHandler implements Route {
    */
   @Override
   public Object handle(Request request, Response response) {
-    Map<String, Object> responseMap = new HashMap<>();
     try {
       // Collect parameters from the request to build a clothing item.
       String uid = request.queryParams("uid");
@@ -42,23 +57,9 @@ public class AddClothingHandler implements Route {
       String secondary = request.queryParams("secondary");
       String description = request.queryParams("description");
 
-      // Try and get the next clothing ID, but if it doesnt exits, use 0.
-      String id;
-      try {
-        DocumentReference userIDs =
-            this.storageHandler.getDocumentReference(uid, "userIDs", "clothingID");
-        Map<String, Object> userIDsMap = this.storageHandler.getDocument(userIDs);
-        id = userIDsMap.get("nextID").toString();
-      } catch (Exception e) {
-        id = "0";
-      }
+      // Take the next clothing ID. IDs are leased from storage in blocks, so this rarely blocks.
+      String id = Long.toString(this.ids.next(uid, "clothingID"));
 
-      // Update the next clothing ID in the database.
-      Map<String, Object> clothingData = new HashMap<>();
-      clothingData.put("nextID", Integer.toString((Integer.parseInt(id) + 1)));
-      this.storageHandler.addDocument(uid, "userIDs", "clothingID", clothingData);
-
-      Map<String, Object> data = new HashMap<>();
       String clothing =
           id
               + ","
@@ -74,29 +75,17 @@ public class AddClothingHandler implements Route {
               + ","
               + material;
 
-      data.put("clothing", clothing);
-      String clothingId = "clothing-" + id;
-
-      // Use the storage handler to add the document to the database.
-      this.storageHandler.addDocument(uid, "clothing", clothingId, data);
+      // Store the item in its compact encoding.
+      Clothing item = ClothingCodec.fromCsv(clothing);
+      // The description is kept in the item's own record.
+      Map<String, Object> data = ClothingCodec.encode(item, description == null ? "" : description);
+      this.storageHandler.addDocument(uid, "clothing", "clothing-" + id, data);
 
-      // Add the description to firebase separately.
-      HashMap<String, Object> descriptionData = new HashMap<>();
-      descriptionData.put("description", description + "," + clothingId);
-      this.storageHandler.addDocument(uid, "clothing-description", clothingId, descriptionData);
-
-      responseMap.put("response_type", "success");
-      responseMap.put("clothing", Utils.clothingToHashMap(Utils.fromStringClothing(clothing)));
-      responseMap.put("description", description);
+      return Json.toJson(new AddClothingResponse(ClothingItem.of(item), description));
     } catch (Exception e) {
       e.printStackTrace();
       // Error likely occurred in the storage handler.
-      responseMap.put("response_type", "error");
-      String[] parts = e.getClass().toString().split("\\.");
-      responseMap.put("exception", parts[parts.length - 1]);
-      responseMap.put("error_message", e.getMessage());
+      return Json.toJson(ErrorResponse.of(e));
     }
-
-    return Utils.toMoshiJson(responseMap);
   }
 }
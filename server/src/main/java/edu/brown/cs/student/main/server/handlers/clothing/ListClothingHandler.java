@@ -1,12 +1,24 @@
 package edu.brown.cs.student.main.server.handlers.clothing;
 
+import edu.brown.cs.student.main.server.clothing.enums.Category;
+import edu.brown.cs.student.main.server.clothing.enums.Formality;
 import edu.brown.cs.student.main.server.clothing.records.Clothing;
-import edu.brown.cs.student.main.server.handlers.Utils;
+import edu.brown.cs.student.main.server.handlers.Pagination;
+import edu.brown.cs.student.main.server.serializers.ClothingItem;
+import edu.brown.cs.student.main.server.serializers.ErrorResponse;
+import edu.brown.cs.student.main.server.serializers.Json;
+import edu.brown.cs.student.main.server.serializers.JsonStream;
+import edu.brown.cs.student.main.server.storage.AsyncStorage;
 import edu.brown.cs.student.main.server.storage.StorageInterface;
+import edu.brown.cs.student.main.server.storage.codec.ClothingCodec;
+import edu.brown.cs.student.main.server.storage.codec.DescriptionMigrator;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import spark.Request;
 import spark.Response;
 import spark.Route;
@@ -17,14 +29,42 @@ import spark.Route;
  */
 public class ListClothingHandler implements Route {
 
+  private static final String DESCRIPTION = "description";
+  private static final Set<String> FIELDS =
+      Set.of(
+          "id",
+          "category",
+          "subcategory",
+          "formality",
+          "primary",
+          "accent",
+          "material",
+          DESCRIPTION);
+
   public StorageInterface storageHandler;
+  private final DescriptionMigrator migrator;
 
   public ListClothingHandler(StorageInterface storageHandler) {
+    this(storageHandler, new DescriptionMigrator(storageHandler, 50));
+  }
+
+  /**
+   * Constructor for the ListClothingHandler.
+   *
+   * @param storageHandler The storage handler to be used.
+   * @param migrator Moves users' descriptions into their clothing records the first time their
+   *     closet is listed.
+   */
+  public ListClothingHandler(StorageInterface storageHandler, DescriptionMigrator migrator) {
     this.storageHandler = storageHandler;
+    this.migrator = migrator;
   }
 
   /**
-   * Invoked when a request is made on this route's corresponding path
+   * Invoked when a request is made on this route's corresponding path. Optional parameters:
+   * category and formality (each a name or ordinal) filter the clothing; limit and cursor page
+   * through it (see Pagination); fields, a comma separated list of clothing fields and
+   * "description", keeps only those fields, leaving out descriptions unless asked for.
    *
    * @param request The request object providing information about the HTTP request
    * @param response The response object providing functionality for modifying the response
@@ -32,52 +72,149 @@ public class ListClothingHandler implements Route {
    */
   @Override
   public Object handle(Request request, Response response) {
-    Map<String, Object> responseMap = new HashMap<>();
     try {
       String uid = request.queryParams("uid");
+      Category category = parseEnum(Category.class, request.queryParams("category"));
+      Formality formality = parseEnum(Formality.class, request.queryParams("formality"));
+      String fields = request.queryParams("fields");
+      List<String> projection = fields == null ? null : Pagination.fields(fields, FIELDS);
+      boolean withDescriptions = projection == null || projection.contains(DESCRIPTION);
 
-      // Get all the clothing items for the user
-      List<Map<String, Object>> vals = this.storageHandler.getCollection(uid, "clothing");
-
-      // Convert the key,value map to just a list of the clothing items as hash maps.
-      List<String> clothingList =
-          vals.stream().map(clothing -> clothing.get("clothing").toString()).toList();
-      List<Clothing> clothingConverted =
-          clothingList.stream().map(Utils::fromStringClothing).toList();
-      List<Map<String, String>> clothingMaps =
-          clothingConverted.stream().map(Utils::clothingToHashMap).toList();
+      Pagination.Result result =
+          Pagination.list(
+              this.storageHandler,
+              uid,
+              "clothing",
+              request.queryParams("limit"),
+              request.queryParams("cursor"),
+              doc -> {
+                Clothing clothing = ClothingCodec.decode(doc);
+                return (category == null || clothing.category() == category)
+                    && (formality == null || clothing.formality() == formality);
+              });
+      Map<String, Map<String, Object>> docs = result.documents();
 
-      // Get all of the clothing descriptions
-      List<Map<String, Object>> descriptions =
-          this.storageHandler.getCollection(uid, "clothing-description");
-
-      // Convert to list of Strings
-      List<String> descriptionList =
-          descriptions.stream()
-              .map(description -> description.get("description").toString())
-              .toList();
+      // Items stored before descriptions moved into the clothing records get moved over in the
+      // background; until then, their descriptions are read from where they used to be kept.
+      boolean unmigrated = DescriptionMigrator.needsMigration(docs);
+      if (unmigrated) {
+        this.migrator.migrateLater(uid);
+      }
 
-      List<Map<String, String>> descriptionMap = new ArrayList<>();
-      for (String description : descriptionList) {
-        String[] parts = description.split(",");
-        Map<String, String> clothingDescription = new HashMap<>();
-        clothingDescription.put("id", parts[1].split("-")[1]);
-        clothingDescription.put("desc", parts[0]);
-        descriptionMap.add(clothingDescription);
+      List<Map<String, String>> descriptions = null;
+      if (withDescriptions) {
+        boolean paged =
+            request.queryParams("limit") != null || request.queryParams("cursor") != null;
+        descriptions = this.descriptions(uid, docs, unmigrated && !paged);
       }
+      String nextCursor = result.nextCursor();
 
-      responseMap.put("response_type", "success");
-      responseMap.put("clothing", clothingMaps);
-      responseMap.put("descriptions", descriptionMap);
+      // Everything that reads storage is done, so the items can be streamed out as they are
+      // converted, without building the list of them first.
+      List<Map<String, String>> streamedDescriptions = descriptions;
+      return JsonStream.write(
+          request,
+          response,
+          writer -> {
+            writer.beginObject();
+            writer.name("response_type").value("success");
+            writer.name("clothing").beginArray();
+            for (Map<String, Object> doc : docs.values()) {
+              ClothingItem item = ClothingItem.of(ClothingCodec.decode(doc));
+              if (projection == null) {
+                item.writeJson(writer);
+              } else {
+                JsonStream.writeFields(writer, item.toMap(), projection);
+              }
+            }
+            writer.endArray();
+            if (streamedDescriptions != null) {
+              writer.name("descriptions");
+              Json.write(writer, streamedDescriptions);
+            }
+            if (nextCursor != null) {
+              writer.name("next_cursor").value(nextCursor);
+            }
+            writer.endObject();
+          });
     } catch (Exception e) {
       e.printStackTrace();
       // Error likely occurred in the storage handler.
-      responseMap.put("response_type", "error");
-      String[] parts = e.getClass().toString().split("\\.");
-      responseMap.put("exception", parts[parts.length - 1]);
-      responseMap.put("error_message", e.getMessage());
+      return Json.toJson(ErrorResponse.of(e));
     }
+  }
 
-    return Utils.toMoshiJson(responseMap);
+  /**
+   * Gets the descriptions of the listed clothing, from the records themselves where they have been
+   * migrated. The rest are read from the clothing-description collection: all of it when listing a
+   * whole closet, or just the listed items' documents, at once, when listing a page.
+   */
+  private List<Map<String, String>> descriptions(
+      String uid, Map<String, Map<String, Object>> docs, boolean readAll) throws Exception {
+    Map<String, String> found = new LinkedHashMap<>();
+    List<String> missing = new ArrayList<>();
+    for (Map.Entry<String, Map<String, Object>> doc : docs.entrySet()) {
+      String description = ClothingCodec.description(doc.getValue());
+      if (description != null) {
+        found.put(doc.getKey(), description);
+      } else {
+        missing.add(doc.getKey());
+      }
+    }
+
+    if (!missing.isEmpty()) {
+      Map<String, Map<String, Object>> old = new HashMap<>();
+      if (readAll) {
+        old = this.storageHandler.getCollectionDocuments(uid, "clothing-description");
+      } else {
+        AsyncStorage storage = this.storageHandler.async();
+        Map<String, CompletableFuture<Map<String, Object>>> futures = new LinkedHashMap<>();
+        for (String id : missing) {
+          futures.put(id, storage.getDocument(uid, "clothing-description", id));
+        }
+        for (Map.Entry<String, CompletableFuture<Map<String, Object>>> e : futures.entrySet()) {
+          Map<String, Object> description = AsyncStorage.await(e.getValue());
+          if (description != null) {
+            old.put(e.getKey(), description);
+          }
+        }
+      }
+      for (String id : missing) {
+        if (old.containsKey(id)) {
+          found.put(id, ClothingCodec.legacyDescription(old.get(id)));
+        }
+      }
+    }
+
+    List<Map<String, String>> descriptionMap = new ArrayList<>();
+    for (Map.Entry<String, String> description : found.entrySet()) {
+      Map<String, String> clothingDescription = new HashMap<>();
+      clothingDescription.put("id", description.getKey().split("-")[1]);
+      clothingDescription.put("desc", description.getValue());
+      descriptionMap.add(clothingDescription);
+    }
+    return descriptionMap;
+  }
+
+  /** Parses an enum constant from its name or ordinal, or returns null for a missing parameter. */
+  private static <E extends Enum<E>> E parseEnum(Class<E> type, String param) {
+    if (param == null || param.isBlank()) {
+      return null;
+    }
+    E[] constants = type.getEnumConstants();
+    try {
+      int ordinal = Integer.parseInt(param);
+      if (ordinal >= 0 && ordinal < constants.length) {
+        return constants[ordinal];
+      }
+    } catch (NumberFormatException e) {
+      for (E constant : constants) {
+        if (constant.name().equalsIgnoreCase(param)) {
+          return constant;
+        }
+      }
+    }
+    throw new IllegalArgumentException(
+        "Unknown " + type.getSimpleName().toLowerCase() + ": " + param);
   }
 }
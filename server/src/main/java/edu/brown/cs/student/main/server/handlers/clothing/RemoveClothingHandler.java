@@ -1,9 +1,14 @@
 package edu.brown.cs.student.main.server.handlers.clothing;
 
-import edu.brown.cs.student.main.server.clothing.records.Clothing;
-import edu.brown.cs.student.main.server.handlers.Utils;
+import edu.brown.cs.student.main.server.handlers.outfits.OutfitIndex;
+import edu.brown.cs.student.main.server.serializers.ClosetResponse;
+import edu.brown.cs.student.main.server.serializers.ClothingItem;
+import edu.brown.cs.student.main.server.serializers.ErrorResponse;
+import edu.brown.cs.student.main.server.serializers.Json;
+import edu.brown.cs.student.main.server.storage.StorageBatch;
 import edu.brown.cs.student.main.server.storage.StorageInterface;
-import java.util.HashMap;
+import edu.brown.cs.student.main.server.storage.codec.ClothingCodec;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Map;
 import spark.Request;
@@ -14,6 +19,7 @@ import spark.Route;
 public class RemoveClothingHandler implements Route {
 
   private StorageInterface storageHandler;
+  private final OutfitIndex index;
 
   /**
    * This constructor initializes a RemoveClothingHandler object.
@@ -21,7 +27,18 @@ public class RemoveClothingHandler implements Route {
    * @param storageHandler the storage handler
    */
   public RemoveClothingHandler(StorageInterface storageHandler) {
+    this(storageHandler, new OutfitIndex(storageHandler));
+  }
+
+  /**
+   * This constructor initializes a RemoveClothingHandler object.
+   *
+   * @param storageHandler the storage handler
+   * @param index the index of outfits by item, shared with the outfit handlers
+   */
+  public RemoveClothingHandler(StorageInterface storageHandler, OutfitIndex index) {
     this.storageHandler = storageHandler;
+    this.index = index;
   }
 
   /**
@@ -33,53 +50,44 @@ public class RemoveClothingHandler implements Route {
    */
   @Override
   public Object handle(Request request, Response response) {
-    Map<String, Object> responseMap = new HashMap<>();
     try {
       String uid = request.queryParams("uid");
       String id = request.queryParams("id");
 
-      this.storageHandler.deleteDocument(
-          this.storageHandler.getDocumentReference(uid, "clothing", "clothing-" + id));
-      this.storageHandler.deleteDocument(
-          this.storageHandler.getDocumentReference(uid, "clothing-description", "clothing-" + id));
-
-      // Get all outfits, and remove any outfits with the clothing item.
-      List<Map<String, Object>> outfits = this.storageHandler.getCollection(uid, "outfits");
-      List<String> outfitStrings =
-          outfits.stream().map(outfit -> outfit.get("outfit").toString()).toList();
-
-      for (String outfit : outfitStrings) {
-        // Split the outfit string, and remove outfit if it includes clothing item.
-        String[] parts = outfit.split(",");
-        for (int i = 1; i < parts.length; i++) {
-          if (parts[i].equals(id)) {
-            this.storageHandler.deleteDocument(
-                this.storageHandler.getDocumentReference(uid, "outfits", "outfit-" + parts[0]));
-            break;
-          }
+      // Look up just the outfits with the clothing item, and remove them along with it. They go in
+      // batches of at most StorageBatch.MAX_WRITES, the item and its description in the last, so
+      // the item is only gone once every outfit using it is; if a batch fails, removing the item
+      // again finishes the job.
+      BitSet outfits = this.index.containingAll(uid, List.of(id));
+      StorageBatch batch = new StorageBatch();
+      for (int outfit = outfits.nextSetBit(0);
+          outfit >= 0;
+          outfit = outfits.nextSetBit(outfit + 1)) {
+        if (batch.writes().size() == StorageBatch.MAX_WRITES) {
+          this.storageHandler.commit(batch);
+          batch = new StorageBatch();
         }
+        batch.delete(uid, "outfits", "outfit-" + outfit);
       }
+      if (batch.writes().size() > StorageBatch.MAX_WRITES - 2) {
+        this.storageHandler.commit(batch);
+        batch = new StorageBatch();
+      }
+      batch.delete(uid, "clothing", "clothing-" + id);
+      batch.delete(uid, "clothing-description", "clothing-" + id);
 
+      // Only list the closet once every delete has landed.
+      this.storageHandler.commit(batch);
+      outfits.stream().forEach(outfit -> this.index.remove(uid, outfit));
       List<Map<String, Object>> vals = this.storageHandler.getCollection(uid, "clothing");
 
-      List<String> clothingList =
-          vals.stream().map(clothing -> clothing.get("clothing").toString()).toList();
-      List<Clothing> clothingConverted =
-          clothingList.stream().map(Utils::fromStringClothing).toList();
-      List<Map<String, String>> clothingMaps =
-          clothingConverted.stream().map(Utils::clothingToHashMap).toList();
-
-      responseMap.put("response_type", "success");
-      responseMap.put("clothing", clothingMaps);
+      List<ClothingItem> items =
+          vals.stream().map(ClothingCodec::decode).map(ClothingItem::of).toList();
 
+      return Json.toJson(new ClosetResponse(items));
     } catch (Exception e) {
       // Error likely occurred in the storage handler.
-      responseMap.put("response_type", "error");
-      String[] parts = e.getClass().toString().split("\\.");
-      responseMap.put("exception", parts[parts.length - 1]);
-      responseMap.put("error_message", e.getMessage());
+      return Json.toJson(ErrorResponse.of(e));
     }
-
-    return Utils.toMoshiJson(responseMap);
   }
 }
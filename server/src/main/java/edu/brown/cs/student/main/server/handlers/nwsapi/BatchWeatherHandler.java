@@ -0,0 +1,95 @@
+package edu.brown.cs.student.main.server.handlers.nwsapi;
+
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather.Geolocation;
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather.WeatherData;
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather.WeatherDatasource;
+import edu.brown.cs.student.main.server.serializers.BatchWeatherResponse;
+import edu.brown.cs.student.main.server.serializers.ErrorResponse;
+import edu.brown.cs.student.main.server.serializers.Json;
+import edu.brown.cs.student.main.server.serializers.JsonWritable;
+import edu.brown.cs.student.main.server.serializers.WeatherResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+/**
+ * This class handles batch weather requests, returning the weather for many locations in one
+ * response. Locations are passed as "locations=lat,lon;lat,lon;...". Results come back in input
+ * order, and a location that fails only fails its own entry.
+ */
+public class BatchWeatherHandler implements Route {
+
+  private static final int MAX_LOCATIONS = 100;
+
+  private final WeatherDatasource state;
+
+  /**
+   * Constructor for the BatchWeatherHandler.
+   *
+   * @param state the weather datasource to be used
+   */
+  public BatchWeatherHandler(WeatherDatasource state) {
+    this.state = state;
+  }
+
+  /**
+   * This method handles the request to get the weather for many locations.
+   *
+   * @param request the request
+   * @param response the response
+   * @return the response
+   */
+  @Override
+  public Object handle(Request request, Response response) {
+    String locations = request.queryParams("locations");
+    if (locations == null || locations.isBlank()) {
+      return Json.toJson(ErrorResponse.missingParameter("locations"));
+    }
+    String[] pairs = locations.split(";");
+    if (pairs.length > MAX_LOCATIONS) {
+      return Json.toJson(
+          ErrorResponse.of(
+              "too_many_locations", "At most " + MAX_LOCATIONS + " locations per request"));
+    }
+
+    // Parse every location up front; ones that don't parse get an error entry of their own.
+    List<JsonWritable> results = new ArrayList<>();
+    List<String[]> queries = new ArrayList<>();
+    List<Geolocation> valid = new ArrayList<>();
+    List<Integer> validIndex = new ArrayList<>();
+    for (String pair : pairs) {
+      String[] parts = pair.split(",");
+      String[] query = {parts[0].trim(), parts.length > 1 ? parts[1].trim() : null};
+      queries.add(query);
+      try {
+        if (parts.length != 2) {
+          throw new IllegalArgumentException("Expected lat,lon but got: " + pair);
+        }
+        valid.add(new Geolocation(Double.parseDouble(query[0]), Double.parseDouble(query[1])));
+        validIndex.add(results.size());
+        results.add(null);
+      } catch (IllegalArgumentException e) {
+        results.add(ErrorResponse.of(e).withQuery(query[0], query[1]));
+      }
+    }
+
+    List<CompletableFuture<WeatherData>> weather = this.state.getCurrentWeather(valid);
+    for (int i = 0; i < weather.size(); i++) {
+      int index = validIndex.get(i);
+      String[] query = queries.get(index);
+      try {
+        results.set(
+            index, new WeatherResponse(weather.get(i).join()).withQuery(query[0], query[1]));
+      } catch (CompletionException e) {
+        Throwable cause = e.getCause() != null ? e.getCause() : e;
+        results.set(index, ErrorResponse.of(cause).withQuery(query[0], query[1]));
+      }
+    }
+
+    return Json.toJson(new BatchWeatherResponse(results));
+  }
+}
@@ -1,14 +1,11 @@
 package edu.brown.cs.student.main.server.handlers.nwsapi;
 
-import com.squareup.moshi.JsonAdapter;
-import com.squareup.moshi.Moshi;
-import com.squareup.moshi.Types;
 import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather.Geolocation;
 import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather.WeatherData;
 import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather.WeatherDatasource;
-import java.lang.reflect.Type;
-import java.util.HashMap;
-import java.util.Map;
+import edu.brown.cs.student.main.server.serializers.ErrorResponse;
+import edu.brown.cs.student.main.server.serializers.Json;
+import edu.brown.cs.student.main.server.serializers.WeatherResponse;
 import spark.Request;
 import spark.Response;
 import spark.Route;
@@ -37,23 +34,13 @@ public class WeatherHandler implements Route {
    */
   @Override
   public Object handle(Request request, Response response) {
-    // Step 1: Prepare to send a reply of some sort
-    Moshi moshi = new Moshi.Builder().build();
-    Type mapStringObject = Types.newParameterizedType(Map.class, String.class, Object.class);
-    JsonAdapter<Map<String, Object>> adapter = moshi.adapter(mapStringObject);
-    Map<String, Object> responseMap = new HashMap<>();
-
     // Get the location that the request is for
     String lat = request.queryParams("lat");
     String lon = request.queryParams("lon");
     if (lat == null || lon == null) {
       // Bad request! Send an error response.
-      responseMap.put("query_lon", lon);
-      responseMap.put("query_lat", lat);
-      responseMap.put("type", "error");
-      responseMap.put("error_type", "missing_parameter");
-      responseMap.put("error_arg", lat == null ? "lat" : "lon");
-      return adapter.toJson(responseMap);
+      return Json.toJson(
+          ErrorResponse.missingParameter(lat == null ? "lat" : "lon").withQuery(lat, lon));
     }
 
     // Generate the reply
@@ -63,18 +50,10 @@ public class WeatherHandler implements Route {
       double lon_double = Double.parseDouble(lon);
       Geolocation loc = new Geolocation(lat_double, lon_double);
       WeatherData data = state.getCurrentWeather(loc);
-      responseMap.put("response_type", "success");
-      responseMap.put("temperature", data);
-
-      return adapter.toJson(responseMap);
+      // Also tells the client when NWS was unavailable and this is the last forecast we had.
+      return Json.toJson(new WeatherResponse(data));
     } catch (Exception e) {
-      responseMap.put("query_lon", lon);
-      responseMap.put("query_lat", lat);
-      responseMap.put("response_type", "error");
-      String[] parts = e.getClass().toString().split("\\.");
-      responseMap.put("exception", parts[parts.length - 1]);
-      responseMap.put("error_message", e.getMessage());
-      return adapter.toJson(responseMap);
+      return Json.toJson(ErrorResponse.of(e).withQuery(lat, lon));
     }
   }
 }
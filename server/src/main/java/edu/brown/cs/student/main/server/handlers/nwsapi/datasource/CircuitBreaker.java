@@ -0,0 +1,92 @@
+package edu.brown.cs.student.main.server.handlers.nwsapi.datasource;
+
+import java.time.Duration;
+
+/**
+ * A circuit breaker for calls to an unreliable upstream. After enough consecutive failures the
+ * breaker opens and calls are refused outright, so callers can fall back immediately instead of
+ * waiting on timeouts. Once the open period has passed, a single probe call is let through
+ * (half-open); if it succeeds the breaker closes, and if it fails the breaker opens again.
+ */
+public class CircuitBreaker {
+
+  /** The states a breaker can be in. */
+  public enum State {
+    CLOSED,
+    OPEN,
+    HALF_OPEN
+  }
+
+  private final int failureThreshold;
+  private final long openNanos;
+
+  private State state = State.CLOSED;
+  private int consecutiveFailures;
+  private long openedAt;
+  private boolean probeInFlight;
+
+  /**
+   * Constructor for the CircuitBreaker.
+   *
+   * @param failureThreshold the number of consecutive failures that opens the breaker
+   * @param openDuration how long the breaker stays open before allowing a probe
+   */
+  public CircuitBreaker(int failureThreshold, Duration openDuration) {
+    if (failureThreshold < 1) {
+      throw new IllegalArgumentException("failureThreshold must be at least 1");
+    }
+    this.failureThreshold = failureThreshold;
+    this.openNanos = openDuration.toNanos();
+  }
+
+  /**
+   * Asks whether a call may go ahead. When half-open, only one caller at a time is allowed through
+   * as the probe; that caller must report back with recordSuccess or recordFailure.
+   *
+   * @return true if the call may be made
+   */
+  public synchronized boolean allowRequest() {
+    switch (this.state) {
+      case CLOSED:
+        return true;
+      case OPEN:
+        if (System.nanoTime() - this.openedAt < this.openNanos) {
+          return false;
+        }
+        this.state = State.HALF_OPEN;
+        this.probeInFlight = true;
+        return true;
+      default:
+        if (this.probeInFlight) {
+          return false;
+        }
+        this.probeInFlight = true;
+        return true;
+    }
+  }
+
+  /** Records a successful call, closing the breaker. */
+  public synchronized void recordSuccess() {
+    this.consecutiveFailures = 0;
+    this.probeInFlight = false;
+    this.state = State.CLOSED;
+  }
+
+  /** Records a failed call, opening the breaker if the probe failed or too many calls have. */
+  public synchronized void recordFailure() {
+    this.consecutiveFailures++;
+    if (this.state == State.HALF_OPEN || this.consecutiveFailures >= this.failureThreshold) {
+      this.state = State.OPEN;
+      this.openedAt = System.nanoTime();
+    }
+    this.probeInFlight = false;
+  }
+
+  /** Returns the current state of the breaker. */
+  public synchronized State state() {
+    if (this.state == State.OPEN && System.nanoTime() - this.openedAt >= this.openNanos) {
+      return State.HALF_OPEN;
+    }
+    return this.state;
+  }
+}
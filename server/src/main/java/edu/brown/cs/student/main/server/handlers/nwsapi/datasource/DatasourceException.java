@@ -4,15 +4,36 @@ package edu.brown.cs.student.main.server.handlers.nwsapi.datasource;
 public class DatasourceException extends Exception {
   // The root cause of this datasource problem
   private final Throwable cause;
+  // Whether the upstream itself misbehaved, as opposed to rejecting our request
+  private final boolean upstreamFailure;
 
   public DatasourceException(String message) {
     super(message); // Exception message
     this.cause = null;
+    this.upstreamFailure = true;
   }
 
   public DatasourceException(String message, Throwable cause) {
     super(message); // Exception message
     this.cause = cause;
+    this.upstreamFailure = true;
+  }
+
+  public DatasourceException(String message, boolean upstreamFailure) {
+    super(message); // Exception message
+    this.cause = null;
+    this.upstreamFailure = upstreamFailure;
+  }
+
+  /**
+   * Returns whether this problem was the upstream's fault (an outage, timeout, or 5xx), rather than
+   * a rejection of this particular request (e.g. a location NWS does not cover). Only upstream
+   * failures are worth retrying or counting against the source's health.
+   *
+   * @return true if the upstream failed
+   */
+  public boolean isUpstreamFailure() {
+    return this.upstreamFailure;
   }
 
   /**
@@ -0,0 +1,76 @@
+package edu.brown.cs.student.main.server.handlers.nwsapi.datasource;
+
+import java.util.Arrays;
+
+/**
+ * Thread-safe latency metrics for one upstream. Keeps running totals of calls and failures, plus a
+ * ring of the most recent call latencies from which percentiles are computed on demand.
+ */
+public class LatencyStats {
+  private final long[] recent;
+  private int next;
+  private int filled;
+  private long calls;
+  private long failures;
+  private long totalNanos;
+
+  /**
+   * Constructor for the LatencyStats.
+   *
+   * @param window the number of recent calls percentiles are computed over
+   */
+  public LatencyStats(int window) {
+    if (window < 1) {
+      throw new IllegalArgumentException("window must be at least 1");
+    }
+    this.recent = new long[window];
+  }
+
+  /**
+   * Records one call.
+   *
+   * @param nanos how long the call took
+   * @param success whether the call succeeded
+   */
+  public synchronized void record(long nanos, boolean success) {
+    this.calls++;
+    if (!success) {
+      this.failures++;
+    }
+    this.totalNanos += nanos;
+    this.recent[this.next] = nanos;
+    this.next = (this.next + 1) % this.recent.length;
+    this.filled = Math.min(this.filled + 1, this.recent.length);
+  }
+
+  /** Returns the number of calls recorded. */
+  public synchronized long calls() {
+    return this.calls;
+  }
+
+  /** Returns the number of failed calls recorded. */
+  public synchronized long failures() {
+    return this.failures;
+  }
+
+  /** Returns the mean latency of all recorded calls in milliseconds, or 0 if there are none. */
+  public synchronized double meanMillis() {
+    return this.calls == 0 ? 0 : this.totalNanos / 1e6 / this.calls;
+  }
+
+  /**
+   * Returns a latency percentile over the recent window.
+   *
+   * @param p the percentile, between 0 and 100
+   * @return the latency in milliseconds, or 0 if nothing has been recorded
+   */
+  public synchronized double percentileMillis(double p) {
+    if (this.filled == 0) {
+      return 0;
+    }
+    long[] sorted = Arrays.copyOf(this.recent, this.filled);
+    Arrays.sort(sorted);
+    int rank = (int) Math.ceil(p / 100 * sorted.length) - 1;
+    return sorted[Math.max(0, Math.min(rank, sorted.length - 1))] / 1e6;
+  }
+}
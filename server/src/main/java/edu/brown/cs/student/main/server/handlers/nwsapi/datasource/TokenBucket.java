@@ -0,0 +1,66 @@
+package edu.brown.cs.student.main.server.handlers.nwsapi.datasource;
+
+/**
+ * A simple thread-safe token bucket. Tokens refill continuously up to a fixed capacity, and each
+ * call to tryAcquire spends one token if any are available. Used to keep the number of requests we
+ * send to an upstream host within a budget.
+ */
+public class TokenBucket {
+  private final double capacity;
+  private final double refillPerNano;
+  private double tokens;
+  private long lastRefill;
+
+  /**
+   * Constructor for the TokenBucket. The bucket starts full.
+   *
+   * @param capacity the maximum number of tokens (burst size)
+   * @param refillPerSecond the number of tokens added per second
+   */
+  public TokenBucket(double capacity, double refillPerSecond) {
+    if (capacity <= 0 || refillPerSecond < 0) {
+      throw new IllegalArgumentException("capacity must be positive and refill non-negative");
+    }
+    this.capacity = capacity;
+    this.refillPerNano = refillPerSecond / 1_000_000_000.0;
+    this.tokens = capacity;
+    this.lastRefill = System.nanoTime();
+  }
+
+  /**
+   * Spends a token if one is available.
+   *
+   * @return true if a token was spent, false if the budget is exhausted
+   */
+  public synchronized boolean tryAcquire() {
+    this.refill();
+    if (this.tokens >= 1) {
+      this.tokens -= 1;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Adds tokens back to the bucket, up to its capacity.
+   *
+   * @param amount the number of tokens to deposit
+   */
+  public synchronized void deposit(double amount) {
+    this.refill();
+    this.tokens = Math.min(this.capacity, this.tokens + amount);
+  }
+
+  /** Returns the number of whole tokens currently available. */
+  public synchronized int available() {
+    this.refill();
+    return (int) this.tokens;
+  }
+
+  private void refill() {
+    long now = System.nanoTime();
+    this.tokens =
+        Math.min(this.capacity, this.tokens + (now - this.lastRefill) * this.refillPerNano);
+    this.lastRefill = now;
+  }
+}
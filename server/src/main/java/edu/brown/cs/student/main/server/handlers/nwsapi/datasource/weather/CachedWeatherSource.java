@@ -0,0 +1,404 @@
+package edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather;
+
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.DatasourceException;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * A WeatherDatasource that caches parsed forecasts per NWS grid cell. Coordinates are resolved to
+ * grid cells once and remembered, forecasts are kept until they expire, and concurrent misses for
+ * the same cell share a single upstream fetch. Every fetched forecast also teaches a spatial index
+ * the footprint of its cell, so any later coordinate inside that cell resolves without a network
+ * call.
+ *
+ * <p>If given a ForecastSnapshotStore, every fresh forecast is also written to disk. After a
+ * restart, cells are served straight from their snapshots (marked stale) while a fresh fetch runs
+ * in the background, and snapshots keep being served for as long as the upstream can't be reached,
+ * up to the end of the forecast they hold. Past that, lookups fail rather than summarize a forecast
+ * that has run out.
+ */
+public class CachedWeatherSource implements WeatherDatasource {
+
+  private static final Duration DEFAULT_TTL = Duration.ofMinutes(30);
+  private static final int DEFAULT_MAX_CELLS = 10_000;
+  // Coordinates are whatever callers send, so their resolutions are kept for the most recent only.
+  private static final int MAX_RESOLVED_POINTS = 100_000;
+  // Stale (fallback) forecasts are only held briefly, so we notice quickly when upstream recovers.
+  private static final long STALE_TTL_MILLIS = 30_000;
+
+  private final GridForecastSource source;
+  private final long ttlMillis;
+  private final int maxCells;
+  private final ForecastSnapshotStore snapshots;
+
+  // "lat,lon" (4 decimal places) -> covering grid cell, least recently used first. Grid assignments
+  // never change. Guarded by itself.
+  private final Map<String, GridCell> cells =
+      new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, GridCell> eldest) {
+          return this.size() > MAX_RESOLVED_POINTS;
+        }
+      };
+  private final GridCellIndex index = new GridCellIndex();
+  private final Map<GridCell, Entry> forecasts = new ConcurrentHashMap<>();
+  private final Map<GridCell, CompletableFuture<Forecast>> inFlight = new ConcurrentHashMap<>();
+  private final List<Consumer<GridCell>> accessListeners = new CopyOnWriteArrayList<>();
+  // Runs the per-cell lookups of batch requests in parallel.
+  private final ExecutorService batchExecutor =
+      Executors.newFixedThreadPool(
+          8,
+          r -> {
+            Thread t = new Thread(r, "weather-batch");
+            t.setDaemon(true);
+            return t;
+          });
+  // Writes snapshots off the request path; a single thread keeps writes for a cell in order.
+  private final ExecutorService snapshotWriter =
+      Executors.newSingleThreadExecutor(
+          r -> {
+            Thread t = new Thread(r, "weather-snapshot");
+            t.setDaemon(true);
+            return t;
+          });
+
+  /** A cached forecast along with when it was fetched and when it goes stale. */
+  private record Entry(Forecast forecast, long fetchedAtMillis, long expiresAtMillis) {}
+
+  /**
+   * Constructor for the CachedWeatherSource, using a 30 minute forecast lifetime.
+   *
+   * @param source the upstream source to fill the cache from
+   */
+  public CachedWeatherSource(GridForecastSource source) {
+    this(source, DEFAULT_TTL, DEFAULT_MAX_CELLS);
+  }
+
+  /**
+   * Constructor for the CachedWeatherSource.
+   *
+   * @param source the upstream source to fill the cache from
+   * @param ttl how long a fetched forecast is served before it is refetched
+   * @param maxCells the maximum number of grid cells to hold forecasts for
+   */
+  public CachedWeatherSource(GridForecastSource source, Duration ttl, int maxCells) {
+    this(source, ttl, maxCells, null);
+  }
+
+  /**
+   * Constructor for the CachedWeatherSource, backed by on-disk snapshots. The grid cell index is
+   * rebuilt from the snapshots, so coordinates in any snapshotted cell resolve without NWS.
+   *
+   * @param source the upstream source to fill the cache from
+   * @param ttl how long a fetched forecast is served before it is refetched
+   * @param maxCells the maximum number of grid cells to hold forecasts for
+   * @param snapshots the snapshot store to persist forecasts to and recover them from, or null
+   */
+  public CachedWeatherSource(
+      GridForecastSource source, Duration ttl, int maxCells, ForecastSnapshotStore snapshots) {
+    this.source = source;
+    this.ttlMillis = ttl.toMillis();
+    this.maxCells = maxCells;
+    this.snapshots = snapshots;
+    if (snapshots != null) {
+      snapshots.footprints().forEach(this.index::add);
+    }
+  }
+
+  /**
+   * Retrieve the current weather at a location, from cache where possible.
+   *
+   * @param loc the geolocation to retrieve data for
+   * @return the weather data obtained
+   * @throws DatasourceException if the forecast is not cached and cannot be fetched
+   */
+  @Override
+  public WeatherData getCurrentWeather(Geolocation loc)
+      throws DatasourceException, IllegalArgumentException {
+    double lat = GridForecastSource.limitPrecision(loc.lat());
+    double lon = GridForecastSource.limitPrecision(loc.lon());
+    GridCell cell = this.resolveGridCell(lat, lon);
+    Forecast forecast = this.getForecast(cell);
+    return forecast.toWeatherData(lat, lon, Instant.now());
+  }
+
+  /**
+   * Retrieve the current weather at many locations. Locations are grouped by grid cell and each
+   * distinct cell is looked up once, with different cells looked up in parallel. Every location is
+   * resolved to its cell before any forecast is fetched, so whether one location resolves from a
+   * cell another location's forecast taught the index never depends on timing.
+   *
+   * @param locs the geolocations to retrieve data for
+   * @return one future per location, in input order
+   */
+  @Override
+  public List<CompletableFuture<WeatherData>> getCurrentWeather(List<Geolocation> locs) {
+    Instant now = Instant.now();
+    Map<String, CompletableFuture<GridCell>> cellLookups = new HashMap<>();
+    Map<GridCell, CompletableFuture<Forecast>> forecastLookups = new ConcurrentHashMap<>();
+    List<CompletableFuture<GridCell>> cells = new ArrayList<>();
+    for (Geolocation loc : locs) {
+      double lat = GridForecastSource.limitPrecision(loc.lat());
+      double lon = GridForecastSource.limitPrecision(loc.lon());
+      cells.add(
+          cellLookups.computeIfAbsent(
+              lat + "," + lon, k -> this.async(() -> this.resolveGridCell(lat, lon))));
+    }
+    CompletableFuture<Void> resolved =
+        CompletableFuture.allOf(
+            cellLookups.values().stream()
+                .map(lookup -> lookup.exceptionally(e -> null))
+                .toArray(CompletableFuture[]::new));
+
+    List<CompletableFuture<WeatherData>> results = new ArrayList<>();
+    for (int i = 0; i < locs.size(); i++) {
+      double lat = GridForecastSource.limitPrecision(locs.get(i).lat());
+      double lon = GridForecastSource.limitPrecision(locs.get(i).lon());
+      CompletableFuture<GridCell> cell = cells.get(i);
+      results.add(
+          resolved
+              .thenCompose(ignored -> cell)
+              .thenCompose(
+                  c ->
+                      forecastLookups.computeIfAbsent(
+                          c, k -> this.async(() -> this.getForecast(k))))
+              .thenApply(forecast -> forecast.toWeatherData(lat, lon, now)));
+    }
+    return results;
+  }
+
+  /**
+   * Resolves a coordinate to its grid cell, only going upstream for coordinates outside every known
+   * cell.
+   *
+   * @param lat the latitude, limited to 4 decimal places
+   * @param lon the longitude, limited to 4 decimal places
+   * @return the grid cell
+   * @throws DatasourceException if the coordinate is unknown and cannot be resolved
+   */
+  public GridCell resolveGridCell(double lat, double lon) throws DatasourceException {
+    String key = lat + "," + lon;
+    GridCell cell;
+    synchronized (this.cells) {
+      cell = this.cells.get(key);
+    }
+    if (cell == null) {
+      cell = this.index.locate(lat, lon);
+    }
+    if (cell == null) {
+      cell = this.source.resolveGridCell(lat, lon);
+      synchronized (this.cells) {
+        this.cells.put(key, cell);
+      }
+    }
+    return cell;
+  }
+
+  /**
+   * Returns the forecast for a grid cell, fetching it if it is missing or expired.
+   *
+   * @param cell the grid cell
+   * @return the forecast
+   * @throws DatasourceException if the forecast is not cached and cannot be fetched
+   */
+  public Forecast getForecast(GridCell cell) throws DatasourceException {
+    for (Consumer<GridCell> listener : this.accessListeners) {
+      listener.accept(cell);
+    }
+    Entry entry = this.forecasts.get(cell);
+    if (entry != null && entry.expiresAtMillis() > System.currentTimeMillis()) {
+      return entry.forecast();
+    }
+    if (entry == null && this.snapshots != null) {
+      // Cold start: answer from the snapshot right away, and fetch a fresh forecast behind it.
+      Forecast snapshot = this.snapshots.load(cell);
+      if (snapshot != null && snapshot.coversNext(Instant.now())) {
+        long now = System.currentTimeMillis();
+        this.forecasts.put(
+            cell, new Entry(snapshot, now, now + Math.min(STALE_TTL_MILLIS, this.ttlMillis)));
+        this.batchExecutor.execute(
+            () -> {
+              try {
+                this.load(cell);
+              } catch (DatasourceException | RuntimeException e) {
+                // Keep serving the snapshot; the next lookup after it expires tries again.
+              }
+            });
+        return snapshot;
+      }
+    }
+    try {
+      return this.load(cell);
+    } catch (DatasourceException e) {
+      if (Thread.currentThread().isInterrupted()) {
+        throw e;
+      }
+      Forecast snapshot = this.snapshots == null ? null : this.snapshots.load(cell);
+      if (snapshot == null) {
+        throw e;
+      }
+      if (!snapshot.coversNext(Instant.now())) {
+        throw new DatasourceException(
+            "Weather source unavailable, and the last forecast for "
+                + cell.path()
+                + " has run out: "
+                + e.getMessage(),
+            e);
+      }
+      return snapshot;
+    }
+  }
+
+  /**
+   * Fetches a fresh forecast for a grid cell regardless of what is cached. Used to warm the cache
+   * ahead of expiry.
+   *
+   * @param cell the grid cell
+   * @return the fresh forecast
+   * @throws DatasourceException if the forecast cannot be fetched
+   */
+  public Forecast refresh(GridCell cell) throws DatasourceException {
+    return this.load(cell);
+  }
+
+  /**
+   * Returns when the cached forecast for a cell expires.
+   *
+   * @param cell the grid cell
+   * @return the expiry in epoch milliseconds, or 0 if nothing is cached
+   */
+  public long expiresAtMillis(GridCell cell) {
+    Entry entry = this.forecasts.get(cell);
+    return entry == null ? 0 : entry.expiresAtMillis();
+  }
+
+  /** Returns the spatial index of grid cells this cache has learned. */
+  public GridCellIndex index() {
+    return this.index;
+  }
+
+  /**
+   * Registers a callback that is told about every forecast lookup, hit or miss.
+   *
+   * @param listener the callback
+   */
+  public void addAccessListener(Consumer<GridCell> listener) {
+    this.accessListeners.add(listener);
+  }
+
+  /**
+   * Fetches a forecast upstream, sharing the fetch with any other caller already loading the same
+   * cell. If the caller making the fetch is interrupted, the others aren't failed with it; they
+   * make a fetch of their own instead.
+   */
+  private Forecast load(GridCell cell) throws DatasourceException {
+    CompletableFuture<Forecast> mine = new CompletableFuture<>();
+    CompletableFuture<Forecast> existing = this.inFlight.putIfAbsent(cell, mine);
+    if (existing != null) {
+      try {
+        return await(existing);
+      } catch (CancellationException e) {
+        return this.load(cell);
+      }
+    }
+    try {
+      Forecast forecast = this.source.getForecast(cell);
+      long now = System.currentTimeMillis();
+      long ttl = forecast.stale() ? Math.min(STALE_TTL_MILLIS, this.ttlMillis) : this.ttlMillis;
+      this.forecasts.put(cell, new Entry(forecast, now, now + ttl));
+      if (forecast.footprint() != null) {
+        this.index.add(cell, forecast.footprint());
+      }
+      if (this.snapshots != null && !forecast.stale()) {
+        this.snapshotWriter.execute(() -> this.saveSnapshot(cell, forecast));
+      }
+      this.evictIfFull();
+      mine.complete(forecast);
+      return forecast;
+    } catch (DatasourceException | RuntimeException e) {
+      if (Thread.currentThread().isInterrupted()) {
+        this.inFlight.remove(cell, mine);
+        mine.cancel(false);
+      } else {
+        mine.completeExceptionally(e);
+      }
+      throw e;
+    } finally {
+      this.inFlight.remove(cell, mine);
+    }
+  }
+
+  private void saveSnapshot(GridCell cell, Forecast forecast) {
+    try {
+      this.snapshots.save(cell, forecast);
+    } catch (IOException e) {
+      System.err.println(
+          "Error saving forecast snapshot for " + cell.path() + ": " + e.getMessage());
+    }
+  }
+
+  /** Drops the least recently fetched forecast once the cache holds too many cells. */
+  private void evictIfFull() {
+    if (this.forecasts.size() <= this.maxCells) {
+      return;
+    }
+    GridCell oldest = null;
+    long oldestFetch = Long.MAX_VALUE;
+    for (Map.Entry<GridCell, Entry> e : this.forecasts.entrySet()) {
+      if (e.getValue().fetchedAtMillis() < oldestFetch) {
+        oldestFetch = e.getValue().fetchedAtMillis();
+        oldest = e.getKey();
+      }
+    }
+    if (oldest != null) {
+      this.forecasts.remove(oldest);
+    }
+  }
+
+  /** A lookup that may fail with a DatasourceException. */
+  @FunctionalInterface
+  private interface Lookup<T> {
+    T get() throws DatasourceException;
+  }
+
+  private <T> CompletableFuture<T> async(Lookup<T> lookup) {
+    return CompletableFuture.supplyAsync(
+        () -> {
+          try {
+            return lookup.get();
+          } catch (DatasourceException e) {
+            throw new CompletionException(e);
+          }
+        },
+        this.batchExecutor);
+  }
+
+  private static Forecast await(CompletableFuture<Forecast> future) throws DatasourceException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DatasourceException("Interrupted while waiting for forecast", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof DatasourceException de) {
+        throw de;
+      }
+      throw new DatasourceException(e.getCause().getMessage(), e.getCause());
+    }
+  }
+}
@@ -0,0 +1,299 @@
+package edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather;
+
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.DatasourceException;
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.LatencyStats;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A WeatherDatasource that spreads requests over several providers, each covering a region.
+ *
+ * <ul>
+ *   <li>A location is only sent to providers whose region contains it, in the order the providers
+ *       were given.
+ *   <li>The first provider is asked first. If it hasn't answered after a hedging delay, the second
+ *       is raced against it and whichever answers first wins.
+ *   <li>If both fail, the remaining providers are tried one at a time, in order.
+ *   <li>Once a race is won, the calls still running are cancelled.
+ * </ul>
+ *
+ * A location with only one provider is fetched on the caller's thread; otherwise provider calls run
+ * on a bounded pool, and when that is saturated further calls fail at once. Every provider call is
+ * timed into that provider's LatencyStats, losers of a race included unless cancelling them cut
+ * them short.
+ */
+public class CompositeWeatherSource implements WeatherDatasource {
+
+  private static final int STATS_WINDOW = 1024;
+  private static final int MAX_CONCURRENT_CALLS = 32;
+
+  /** The area a provider can answer for. */
+  @FunctionalInterface
+  public interface Region {
+    boolean contains(double lat, double lon);
+
+    /** A lat/lon bounding box, inclusive on all sides. */
+    static Region box(double minLat, double maxLat, double minLon, double maxLon) {
+      return (lat, lon) -> lat >= minLat && lat <= maxLat && lon >= minLon && lon <= maxLon;
+    }
+
+    /** The whole globe. */
+    static Region anywhere() {
+      return (lat, lon) -> true;
+    }
+
+    /** The union of several regions. */
+    static Region anyOf(Region... regions) {
+      return (lat, lon) -> {
+        for (Region region : regions) {
+          if (region.contains(lat, lon)) {
+            return true;
+          }
+        }
+        return false;
+      };
+    }
+  }
+
+  /**
+   * One weather provider and where it can be used.
+   *
+   * @param name the provider's name, used to report its metrics
+   * @param source the provider
+   * @param region the area the provider covers
+   */
+  public record Provider(String name, WeatherDatasource source, Region region) {}
+
+  /** The outcome of one provider call: exactly one of value or error is set. */
+  private record Outcome(WeatherData value, Exception error) {}
+
+  private final List<Provider> providers;
+  private final Map<String, LatencyStats> stats = new LinkedHashMap<>();
+  private final long hedgeDelayNanos;
+  private final ExecutorService executor =
+      new ThreadPoolExecutor(
+          0,
+          MAX_CONCURRENT_CALLS,
+          30,
+          TimeUnit.SECONDS,
+          new SynchronousQueue<>(),
+          r -> {
+            Thread t = new Thread(r, "weather-provider");
+            t.setDaemon(true);
+            return t;
+          });
+
+  /**
+   * Constructor for the CompositeWeatherSource.
+   *
+   * @param providers the providers, in order of preference
+   * @param hedgeDelay how long to wait on the first provider before racing the second
+   */
+  public CompositeWeatherSource(List<Provider> providers, Duration hedgeDelay) {
+    this.providers = List.copyOf(providers);
+    this.hedgeDelayNanos = hedgeDelay.toNanos();
+    for (Provider provider : this.providers) {
+      this.stats.put(provider.name(), new LatencyStats(STATS_WINDOW));
+    }
+  }
+
+  /**
+   * Retrieve the current weather from the best provider for the location.
+   *
+   * @param loc the geolocation to retrieve data for
+   * @return the weather data obtained
+   * @throws DatasourceException if no provider covers the location or every provider failed
+   */
+  @Override
+  public WeatherData getCurrentWeather(Geolocation loc)
+      throws DatasourceException, IllegalArgumentException {
+    return this.fetch(loc, this.route(loc));
+  }
+
+  /**
+   * Retrieve the current weather at many locations. Locations are grouped by route and each group
+   * is handed to its first provider as one batch, so providers that share work between locations
+   * still can; batches aren't raced, since that would double the load of every batch. Locations the
+   * first provider fails are retried individually against the rest of their route.
+   *
+   * @param locs the geolocations to retrieve data for
+   * @return one future per location, in input order
+   */
+  @Override
+  public List<CompletableFuture<WeatherData>> getCurrentWeather(List<Geolocation> locs) {
+    Map<List<Provider>, List<Integer>> groups = new LinkedHashMap<>();
+    List<CompletableFuture<WeatherData>> results = new ArrayList<>();
+    for (int i = 0; i < locs.size(); i++) {
+      Geolocation loc = locs.get(i);
+      List<Provider> route = this.route(loc);
+      if (route.isEmpty()) {
+        results.add(CompletableFuture.failedFuture(uncovered(loc)));
+      } else {
+        results.add(null);
+        groups.computeIfAbsent(route, k -> new ArrayList<>()).add(i);
+      }
+    }
+
+    for (Map.Entry<List<Provider>, List<Integer>> group : groups.entrySet()) {
+      List<Provider> route = group.getKey();
+      Provider primary = route.get(0);
+      List<Geolocation> groupLocs = new ArrayList<>();
+      for (int i : group.getValue()) {
+        groupLocs.add(locs.get(i));
+      }
+      long start = System.nanoTime();
+      List<CompletableFuture<WeatherData>> primaryResults =
+          primary.source().getCurrentWeather(groupLocs);
+      for (int j = 0; j < groupLocs.size(); j++) {
+        Geolocation loc = groupLocs.get(j);
+        CompletableFuture<WeatherData> result =
+            primaryResults
+                .get(j)
+                .whenComplete(
+                    (data, e) ->
+                        this.stats.get(primary.name()).record(System.nanoTime() - start, e == null))
+                .exceptionallyCompose(
+                    e ->
+                        route.size() == 1
+                            ? CompletableFuture.failedFuture(e)
+                            : CompletableFuture.supplyAsync(
+                                () -> {
+                                  try {
+                                    return this.fetch(loc, route.subList(1, route.size()));
+                                  } catch (DatasourceException de) {
+                                    throw new CompletionException(de);
+                                  }
+                                },
+                                this.executor));
+        results.set(group.getValue().get(j), result);
+      }
+    }
+    return results;
+  }
+
+  /** Returns each provider's latency metrics, by provider name. */
+  public Map<String, LatencyStats> stats() {
+    return this.stats;
+  }
+
+  private List<Provider> route(Geolocation loc) {
+    List<Provider> route = new ArrayList<>();
+    for (Provider provider : this.providers) {
+      if (provider.region().contains(loc.lat(), loc.lon())) {
+        route.add(provider);
+      }
+    }
+    return route;
+  }
+
+  private WeatherData fetch(Geolocation loc, List<Provider> route) throws DatasourceException {
+    if (route.isEmpty()) {
+      throw uncovered(loc);
+    }
+    if (route.size() == 1) {
+      // Nothing to race or fall back to, so there's no need for another thread.
+      return this.call(route.get(0), loc);
+    }
+    BlockingQueue<Outcome> outcomes = new LinkedBlockingQueue<>();
+    List<Future<?>> calls = new ArrayList<>();
+    int launched = 0;
+    calls.add(this.launch(route.get(launched++), loc, outcomes));
+    int running = 1;
+    long hedgeAt = route.size() > 1 ? System.nanoTime() + this.hedgeDelayNanos : Long.MAX_VALUE;
+    Exception lastError = null;
+
+    try {
+      while (true) {
+        Outcome outcome;
+        if (hedgeAt == Long.MAX_VALUE) {
+          outcome = outcomes.take();
+        } else {
+          outcome = outcomes.poll(hedgeAt - System.nanoTime(), TimeUnit.NANOSECONDS);
+          if (outcome == null) {
+            // The first provider is slow; race the second against it.
+            calls.add(this.launch(route.get(launched++), loc, outcomes));
+            running++;
+            hedgeAt = Long.MAX_VALUE;
+            continue;
+          }
+        }
+
+        running--;
+        if (outcome.error() == null) {
+          return outcome.value();
+        }
+        lastError = outcome.error();
+        if (running == 0) {
+          if (launched == route.size()) {
+            break;
+          }
+          // Everyone in flight has failed; fall back to the next provider in order.
+          calls.add(this.launch(route.get(launched++), loc, outcomes));
+          running++;
+          hedgeAt = Long.MAX_VALUE;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DatasourceException("Interrupted while waiting for weather", e);
+    } finally {
+      for (Future<?> call : calls) {
+        call.cancel(true);
+      }
+    }
+
+    if (lastError instanceof DatasourceException de) {
+      throw de;
+    }
+    throw new DatasourceException(lastError.getMessage(), lastError);
+  }
+
+  private Future<?> launch(Provider provider, Geolocation loc, BlockingQueue<Outcome> outcomes) {
+    try {
+      return this.executor.submit(
+          () -> {
+            try {
+              outcomes.add(new Outcome(this.call(provider, loc), null));
+            } catch (Exception e) {
+              outcomes.add(new Outcome(null, e));
+            }
+          });
+    } catch (RejectedExecutionException e) {
+      outcomes.add(new Outcome(null, new DatasourceException("Weather providers saturated", e)));
+      return CompletableFuture.completedFuture(null);
+    }
+  }
+
+  /** Calls a provider, timing the call unless it was cut short by being cancelled. */
+  private WeatherData call(Provider provider, Geolocation loc) throws DatasourceException {
+    LatencyStats providerStats = this.stats.get(provider.name());
+    long start = System.nanoTime();
+    try {
+      WeatherData data = provider.source().getCurrentWeather(loc);
+      providerStats.record(System.nanoTime() - start, true);
+      return data;
+    } catch (DatasourceException | RuntimeException e) {
+      if (!Thread.currentThread().isInterrupted()) {
+        providerStats.record(System.nanoTime() - start, false);
+      }
+      throw e;
+    }
+  }
+
+  private static DatasourceException uncovered(Geolocation loc) {
+    return new DatasourceException("No weather provider covers " + loc.lat() + "," + loc.lon());
+  }
+}
@@ -0,0 +1,97 @@
+package edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather;
+
+import java.time.Instant;
+
+/**
+ * A parsed gridpoint forecast, holding one hourly series per variable we care about. Once built, a
+ * forecast can answer window averages for any stretch of hours (for example a user's commute)
+ * without going back to the raw NWS response.
+ *
+ * @param updateTime the NWS updateTime of the forecast
+ * @param date the date of the first daily high, as reported by NWS
+ * @param maxTemperature daily highs in Celsius
+ * @param minTemperature daily lows in Celsius
+ * @param temperature hourly temperature in Celsius
+ * @param skyCover hourly sky cover percentage
+ * @param probabilityOfPrecipitation hourly chance of precipitation percentage
+ * @param snowfallAmount hourly snowfall in mm
+ * @param footprint the area covered by the forecast's grid cell, or null if NWS didn't say
+ * @param stale true if this is a last-known-good copy served while the live source is unavailable
+ */
+public record Forecast(
+    String updateTime,
+    String date,
+    ForecastSeries maxTemperature,
+    ForecastSeries minTemperature,
+    ForecastSeries temperature,
+    ForecastSeries skyCover,
+    ForecastSeries probabilityOfPrecipitation,
+    ForecastSeries snowfallAmount,
+    GridFootprint footprint,
+    boolean stale) {
+
+  // How far ahead toWeatherData looks.
+  private static final int SUMMARY_HOURS = 8;
+
+  /**
+   * Returns a copy of this forecast marked as stale.
+   *
+   * @return the stale copy
+   */
+  public Forecast asStale() {
+    return new Forecast(
+        this.updateTime,
+        this.date,
+        this.maxTemperature,
+        this.minTemperature,
+        this.temperature,
+        this.skyCover,
+        this.probabilityOfPrecipitation,
+        this.snowfallAmount,
+        this.footprint,
+        true);
+  }
+
+  /**
+   * Returns whether this forecast still reaches far enough past the given instant to summarize. An
+   * old forecast whose hours have run out would otherwise summarize to zeros (32°F, no rain) that
+   * look like real weather.
+   *
+   * @param now the instant to look forward from
+   * @return true if the hourly temperatures cover the whole window toWeatherData looks at
+   */
+  public boolean coversNext(Instant now) {
+    return !now.plusSeconds(SUMMARY_HOURS * 3600L).isAfter(this.temperature.end());
+  }
+
+  /**
+   * Summarizes this forecast into the WeatherData we hand to clients, looking forward from the
+   * given instant.
+   *
+   * @param lat the latitude the weather was requested for
+   * @param lon the longitude the weather was requested for
+   * @param now the instant to look forward from
+   * @return the summarized weather
+   */
+  public WeatherData toWeatherData(double lat, double lon, Instant now) {
+    int high = convertToF(this.maxTemperature.first());
+    int low = convertToF(this.minTemperature.first());
+    int current = convertToF(this.temperature.averageNextHours(now, 2));
+    int rain =
+        (int) Math.round(this.probabilityOfPrecipitation.averageNextHours(now, SUMMARY_HOURS));
+    int cloud = (int) Math.round(this.skyCover.averageNextHours(now, SUMMARY_HOURS));
+    int snowfall = (int) Math.round(this.snowfallAmount.averageNextHours(now, SUMMARY_HOURS));
+    return new WeatherData(
+        high, low, current, rain, cloud, snowfall, lat, lon, this.date, this.stale);
+  }
+
+  /**
+   * Converts a temperature in Celsius to Fahrenheit.
+   *
+   * @param c the temperature in Celsius
+   * @return the temperature in Fahrenheit
+   */
+  public static int convertToF(double c) {
+    return (int) Math.round(c * 9.0 / 5.0 + 32.0);
+  }
+}
@@ -0,0 +1,229 @@
+package edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather;
+
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather.NWSAPIWeatherSource.ForecastResponseTempValue;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A compact hourly time series for one forecast variable. NWS reports values over ISO-8601
+ * intervals ("2024-05-01T12:00:00+00:00/PT3H"); these are expanded once into parallel arrays of
+ * hourly start times and values, along with prefix sums, so that averaging over any window is two
+ * binary searches and a subtraction.
+ */
+public final class ForecastSeries {
+
+  private static final Pattern DURATION = Pattern.compile("P(?:(\\d+)D)?(?:T(?:(\\d+)H)?)?");
+  private static final long SECONDS_PER_HOUR = 3600;
+
+  // Start of each hour in epoch seconds, sorted ascending.
+  private final long[] starts;
+  // Value in effect for the hour beginning at the matching start.
+  private final float[] values;
+  // prefix[i] is the sum of values[0..i), kept in double precision.
+  private final double[] prefix;
+
+  /**
+   * Builds a series directly from its hourly arrays. The arrays are adopted, not copied.
+   *
+   * @param starts hourly start times in epoch seconds, sorted ascending
+   * @param values the value for each hour
+   */
+  public ForecastSeries(long[] starts, float[] values) {
+    if (starts.length != values.length) {
+      throw new IllegalArgumentException("starts and values must be the same length");
+    }
+    this.starts = starts;
+    this.values = values;
+    this.prefix = new double[values.length + 1];
+    for (int i = 0; i < values.length; i++) {
+      this.prefix[i + 1] = this.prefix[i] + values[i];
+    }
+  }
+
+  /**
+   * Parses a list of NWS interval values into an hourly series.
+   *
+   * @param values the values as returned by the gridpoints endpoint
+   * @return the expanded series
+   */
+  public static ForecastSeries fromValues(List<ForecastResponseTempValue> values) {
+    int total = 0;
+    long[] intervalStarts = new long[values.size()];
+    int[] intervalHours = new int[values.size()];
+    for (int i = 0; i < values.size(); i++) {
+      String[] split = values.get(i).validTime().split("/");
+      intervalStarts[i] =
+          OffsetDateTime.parse(split[0], DateTimeFormatter.ISO_OFFSET_DATE_TIME).toEpochSecond();
+      intervalHours[i] = split.length > 1 ? convertToHours(split[1]) : 1;
+      total += intervalHours[i];
+    }
+
+    long[] starts = new long[total];
+    float[] expanded = new float[total];
+    int n = 0;
+    for (int i = 0; i < values.size(); i++) {
+      float value = (float) values.get(i).value();
+      for (int h = 0; h < intervalHours[i]; h++) {
+        starts[n] = intervalStarts[i] + h * SECONDS_PER_HOUR;
+        expanded[n] = value;
+        n++;
+      }
+    }
+
+    // NWS already returns intervals in order; only pay for a sort when it doesn't.
+    for (int i = 1; i < total; i++) {
+      if (starts[i] < starts[i - 1]) {
+        sortByStart(starts, expanded);
+        break;
+      }
+    }
+    return new ForecastSeries(starts, expanded);
+  }
+
+  /**
+   * Averages every hour whose start falls strictly inside the window (from, to). Hours starting
+   * exactly at either bound are excluded, matching the original forecast averaging.
+   *
+   * @param from the exclusive start of the window
+   * @param to the exclusive end of the window
+   * @return the average, or 0 if no hours fall inside the window
+   */
+  public double average(Instant from, Instant to) {
+    int lo = firstAfter(from);
+    int hi = firstAtOrAfter(to);
+    if (hi <= lo) {
+      return 0;
+    }
+    return (this.prefix[hi] - this.prefix[lo]) / (hi - lo);
+  }
+
+  /**
+   * Averages the hours starting within the next given number of hours after a point in time.
+   *
+   * @param now the point in time to look forward from
+   * @param hours the length of the window in hours
+   * @return the average, or 0 if no hours fall inside the window
+   */
+  public double averageNextHours(Instant now, int hours) {
+    return this.average(now, now.plusSeconds(hours * SECONDS_PER_HOUR));
+  }
+
+  /**
+   * Returns the value in effect at a given instant.
+   *
+   * @param time the instant to look up
+   * @return the value of the hour containing the instant, or NaN if it is outside the series
+   */
+  public double valueAt(Instant time) {
+    int i = firstAfter(time) - 1;
+    if (i < 0 || time.getEpochSecond() >= this.starts[i] + SECONDS_PER_HOUR) {
+      return Double.NaN;
+    }
+    return this.values[i];
+  }
+
+  /** Returns the first value in the series. */
+  public double first() {
+    return this.values[0];
+  }
+
+  /** Returns the start of the first hour in the series. */
+  public Instant firstStart() {
+    return Instant.ofEpochSecond(this.starts[0]);
+  }
+
+  /** Returns the end of the last hour in the series, or the epoch if the series is empty. */
+  public Instant end() {
+    return this.starts.length == 0
+        ? Instant.EPOCH
+        : Instant.ofEpochSecond(this.starts[this.starts.length - 1] + SECONDS_PER_HOUR);
+  }
+
+  /** Returns the number of hours in the series. */
+  public int size() {
+    return this.values.length;
+  }
+
+  /** Returns true if the series holds no hours. */
+  public boolean isEmpty() {
+    return this.values.length == 0;
+  }
+
+  /** Returns a copy of the hourly start times, in epoch seconds. */
+  public long[] starts() {
+    return this.starts.clone();
+  }
+
+  /** Returns a copy of the hourly values. */
+  public float[] values() {
+    return this.values.clone();
+  }
+
+  /** Index of the first hour starting strictly after the instant. */
+  private int firstAfter(Instant time) {
+    // An hour at second s is after the instant iff s > epochSecond (any nanos push time past s).
+    return upperBound(time.getEpochSecond());
+  }
+
+  /** Index of the first hour starting at or after the instant. */
+  private int firstAtOrAfter(Instant time) {
+    long second = time.getEpochSecond();
+    return time.getNano() == 0 ? upperBound(second - 1) : upperBound(second);
+  }
+
+  /** Index of the first start strictly greater than the key. */
+  private int upperBound(long key) {
+    int lo = 0;
+    int hi = this.starts.length;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (this.starts[mid] <= key) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  private static void sortByStart(long[] starts, float[] values) {
+    Integer[] order = new Integer[starts.length];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, (a, b) -> Long.compare(starts[a], starts[b]));
+    long[] sortedStarts = new long[starts.length];
+    float[] sortedValues = new float[values.length];
+    for (int i = 0; i < order.length; i++) {
+      sortedStarts[i] = starts[order[i]];
+      sortedValues[i] = values[order[i]];
+    }
+    System.arraycopy(sortedStarts, 0, starts, 0, starts.length);
+    System.arraycopy(sortedValues, 0, values, 0, values.length);
+  }
+
+  /**
+   * Converts a duration string to hours.
+   *
+   * @param durationStr the duration string
+   * @return the duration in hours
+   */
+  static int convertToHours(String durationStr) {
+    Matcher matcher = DURATION.matcher(durationStr);
+    int days = 0;
+    int hours = 0;
+    if (matcher.find()) {
+      String dayMatch = matcher.group(1);
+      String hourMatch = matcher.group(2);
+      days = dayMatch != null ? Integer.parseInt(dayMatch) : 0;
+      hours = hourMatch != null ? Integer.parseInt(hourMatch) : 0;
+    }
+    // Convert days to hours and add to hours
+    return days * 24 + hours;
+  }
+}
@@ -0,0 +1,274 @@
+package edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persists parsed forecasts to disk, one small binary file per grid cell, so that a restarted
+ * server can answer weather requests before NWS has been reached. Snapshots are read back through a
+ * memory mapping with bulk array copies; there is no JSON involved on either side.
+ *
+ * <p>A snapshot file holds, in order: a magic number and format version, the grid cell, the
+ * forecast's updateTime and date, the cell footprint, and then each hourly series as an array of
+ * start times followed by an array of values. The footprint comes before the series so the index
+ * can be rebuilt at startup by reading only the head of each file. Files are written to a temporary
+ * name and atomically moved into place, so a crash mid-write never leaves a torn snapshot behind.
+ */
+public class ForecastSnapshotStore {
+
+  private static final int MAGIC = 0x46435354; // "FCST"
+  private static final short VERSION = 1;
+  private static final String SUFFIX = ".fcst";
+
+  private final Path dir;
+  // The updateTime of the snapshot on disk for each cell we've written, to skip redundant writes.
+  private final Map<GridCell, String> written = new ConcurrentHashMap<>();
+
+  /**
+   * Constructor for the ForecastSnapshotStore.
+   *
+   * @param dir the directory to keep snapshots in, created if it does not exist
+   * @throws IOException if the directory cannot be created
+   */
+  public ForecastSnapshotStore(Path dir) throws IOException {
+    this.dir = Files.createDirectories(dir);
+  }
+
+  /**
+   * Writes a snapshot of a cell's forecast, replacing any older one. Stale forecasts and forecasts
+   * whose updateTime is already on disk are skipped.
+   *
+   * @param cell the grid cell
+   * @param forecast the forecast to persist
+   * @throws IOException if the snapshot cannot be written
+   */
+  public void save(GridCell cell, Forecast forecast) throws IOException {
+    if (forecast.stale()
+        || (this.written.containsKey(cell)
+            && Objects.equals(forecast.updateTime(), this.written.get(cell)))) {
+      return;
+    }
+    ByteBuffer buf = ByteBuffer.allocate(encodedSize(cell, forecast));
+    buf.putInt(MAGIC);
+    buf.putShort(VERSION);
+    putString(buf, cell.gridId());
+    putString(buf, cell.gridX());
+    putString(buf, cell.gridY());
+    putString(buf, forecast.updateTime());
+    putString(buf, forecast.date());
+    putFootprint(buf, forecast.footprint());
+    putSeries(buf, forecast.maxTemperature());
+    putSeries(buf, forecast.minTemperature());
+    putSeries(buf, forecast.temperature());
+    putSeries(buf, forecast.skyCover());
+    putSeries(buf, forecast.probabilityOfPrecipitation());
+    putSeries(buf, forecast.snowfallAmount());
+    buf.flip();
+
+    Path target = this.fileFor(cell);
+    Path tmp = Files.createTempFile(this.dir, target.getFileName().toString(), ".tmp");
+    try {
+      try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+        while (buf.hasRemaining()) {
+          channel.write(buf);
+        }
+        channel.force(true);
+      }
+      Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+    this.written.put(cell, forecast.updateTime());
+  }
+
+  /**
+   * Reads the snapshot for a cell. Snapshots are always returned marked stale, since they were
+   * fetched before the last restart. Callers must check Forecast.coversNext before serving one, as
+   * a snapshot can outlive its forecast.
+   *
+   * @param cell the grid cell
+   * @return the forecast, or null if there is no readable snapshot for the cell
+   */
+  public Forecast load(GridCell cell) {
+    Path file = this.fileFor(cell);
+    if (!Files.exists(file)) {
+      return null;
+    }
+    try {
+      ByteBuffer buf = map(file);
+      if (!readHeader(buf)) {
+        return null;
+      }
+      readString(buf); // gridId
+      readString(buf); // gridX
+      readString(buf); // gridY
+      String updateTime = readString(buf);
+      String date = readString(buf);
+      GridFootprint footprint = readFootprint(buf);
+      return new Forecast(
+          updateTime,
+          date,
+          readSeries(buf),
+          readSeries(buf),
+          readSeries(buf),
+          readSeries(buf),
+          readSeries(buf),
+          readSeries(buf),
+          footprint,
+          true);
+    } catch (IOException | RuntimeException e) {
+      System.err.println("Error reading forecast snapshot " + file + ": " + e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Reads the footprint of every snapshotted cell, touching only the head of each file. Used to
+   * rebuild the grid cell index at startup.
+   *
+   * @return each snapshotted cell with its footprint; cells without a footprint are left out
+   */
+  public Map<GridCell, GridFootprint> footprints() {
+    Map<GridCell, GridFootprint> footprints = new HashMap<>();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(this.dir, "*" + SUFFIX)) {
+      for (Path file : files) {
+        try {
+          ByteBuffer buf = map(file);
+          if (!readHeader(buf)) {
+            continue;
+          }
+          GridCell cell = new GridCell(readString(buf), readString(buf), readString(buf));
+          readString(buf); // updateTime
+          readString(buf); // date
+          GridFootprint footprint = readFootprint(buf);
+          if (footprint != null) {
+            footprints.put(cell, footprint);
+          }
+        } catch (IOException | RuntimeException e) {
+          System.err.println("Error reading forecast snapshot " + file + ": " + e.getMessage());
+        }
+      }
+    } catch (IOException e) {
+      System.err.println("Error listing forecast snapshots: " + e.getMessage());
+    }
+    return footprints;
+  }
+
+  private Path fileFor(GridCell cell) {
+    String name =
+        (cell.gridId() + "_" + cell.gridX() + "_" + cell.gridY()).replaceAll("[^\\w]", "-");
+    return this.dir.resolve(name + SUFFIX);
+  }
+
+  private static MappedByteBuffer map(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      // The mapping stays valid after the channel is closed.
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+  }
+
+  private static boolean readHeader(ByteBuffer buf) {
+    return buf.remaining() >= 6 && buf.getInt() == MAGIC && buf.getShort() == VERSION;
+  }
+
+  private static int encodedSize(GridCell cell, Forecast forecast) {
+    int size = Integer.BYTES + Short.BYTES;
+    for (String s :
+        new String[] {
+          cell.gridId(), cell.gridX(), cell.gridY(), forecast.updateTime(), forecast.date()
+        }) {
+      size += Short.BYTES + (s == null ? 0 : s.getBytes(StandardCharsets.UTF_8).length);
+    }
+    GridFootprint footprint = forecast.footprint();
+    size += Integer.BYTES + (footprint == null ? 0 : footprint.lats().length * 2 * Double.BYTES);
+    for (ForecastSeries series :
+        new ForecastSeries[] {
+          forecast.maxTemperature(),
+          forecast.minTemperature(),
+          forecast.temperature(),
+          forecast.skyCover(),
+          forecast.probabilityOfPrecipitation(),
+          forecast.snowfallAmount()
+        }) {
+      size += Integer.BYTES + series.size() * (Long.BYTES + Float.BYTES);
+    }
+    return size;
+  }
+
+  // Strings are a short byte length followed by UTF-8; a length of -1 stands for null.
+  private static void putString(ByteBuffer buf, String s) {
+    if (s == null) {
+      buf.putShort((short) -1);
+      return;
+    }
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    buf.putShort((short) bytes.length);
+    buf.put(bytes);
+  }
+
+  private static String readString(ByteBuffer buf) {
+    short length = buf.getShort();
+    if (length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    buf.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static void putFootprint(ByteBuffer buf, GridFootprint footprint) {
+    if (footprint == null) {
+      buf.putInt(0);
+      return;
+    }
+    double[] lats = footprint.lats();
+    double[] lons = footprint.lons();
+    buf.putInt(lats.length);
+    buf.asDoubleBuffer().put(lats).put(lons);
+    buf.position(buf.position() + lats.length * 2 * Double.BYTES);
+  }
+
+  private static GridFootprint readFootprint(ByteBuffer buf) {
+    int n = buf.getInt();
+    if (n == 0) {
+      return null;
+    }
+    double[] lats = new double[n];
+    double[] lons = new double[n];
+    buf.asDoubleBuffer().get(lats).get(lons);
+    buf.position(buf.position() + n * 2 * Double.BYTES);
+    return new GridFootprint(lats, lons);
+  }
+
+  private static void putSeries(ByteBuffer buf, ForecastSeries series) {
+    int n = series.size();
+    buf.putInt(n);
+    buf.asLongBuffer().put(series.starts());
+    buf.position(buf.position() + n * Long.BYTES);
+    buf.asFloatBuffer().put(series.values());
+    buf.position(buf.position() + n * Float.BYTES);
+  }
+
+  private static ForecastSeries readSeries(ByteBuffer buf) {
+    int n = buf.getInt();
+    long[] starts = new long[n];
+    float[] values = new float[n];
+    buf.asLongBuffer().get(starts);
+    buf.position(buf.position() + n * Long.BYTES);
+    buf.asFloatBuffer().get(values);
+    buf.position(buf.position() + n * Float.BYTES);
+    return new ForecastSeries(starts, values);
+  }
+}
@@ -0,0 +1,21 @@
+package edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather;
+
+/**
+ * A record identifying one NWS forecast grid cell. Every coordinate inside a cell shares the same
+ * gridpoint forecast, so this is the natural key for caching forecasts.
+ *
+ * @param gridId the forecast office id, e.g. "BOX"
+ * @param gridX the x index of the cell within the office's grid
+ * @param gridY the y index of the cell within the office's grid
+ */
+public record GridCell(String gridId, String gridX, String gridY) {
+
+  /**
+   * Returns the path of this cell under the /gridpoints endpoint.
+   *
+   * @return the path, e.g. "BOX/64,63"
+   */
+  public String path() {
+    return this.gridId + "/" + this.gridX + "," + this.gridY;
+  }
+}
@@ -0,0 +1,154 @@
+package edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A spatial index of NWS grid cells whose footprints we have seen. Space is divided into fixed
+ * buckets (a simple geohash); each cell is filed under every bucket its bounding box touches, so a
+ * lookup only tests the handful of cells in one bucket. Any coordinate inside a known cell resolves
+ * locally, with no call to the /points endpoint. The index holds a bounded number of cells, and
+ * past that forgets the one least recently added or located.
+ */
+public class GridCellIndex {
+
+  // About 5.5km of latitude; NWS cells are ~2.5km across, so each bucket holds only a few cells.
+  private static final double BUCKET_DEGREES = 0.05;
+  private static final int DEFAULT_MAX_CELLS = 50_000;
+
+  private record Entry(GridCell cell, GridFootprint footprint) {}
+
+  private final int maxCells;
+  private final Map<Long, List<Entry>> buckets = new ConcurrentHashMap<>();
+  // Least recently added or located first. Guarded by itself; changed only under this.
+  private final Map<GridCell, GridFootprint> known = new LinkedHashMap<>(16, 0.75f, true);
+
+  /** Constructor for the GridCellIndex, holding up to 50,000 cells. */
+  public GridCellIndex() {
+    this(DEFAULT_MAX_CELLS);
+  }
+
+  /**
+   * Constructor for the GridCellIndex.
+   *
+   * @param maxCells the most cells to hold
+   */
+  public GridCellIndex(int maxCells) {
+    this.maxCells = maxCells;
+  }
+
+  /**
+   * Adds a cell to the index. Adding a cell that is already known is a no-op.
+   *
+   * @param cell the grid cell
+   * @param footprint the area it covers
+   */
+  public synchronized void add(GridCell cell, GridFootprint footprint) {
+    GridCell evicted = null;
+    synchronized (this.known) {
+      if (this.known.putIfAbsent(cell, footprint) != null) {
+        return;
+      }
+      if (this.known.size() > this.maxCells) {
+        evicted = this.known.keySet().iterator().next();
+      }
+    }
+    Entry entry = new Entry(cell, footprint);
+    for (long bucket : bucketsOf(footprint)) {
+      this.buckets.computeIfAbsent(bucket, k -> new CopyOnWriteArrayList<>()).add(entry);
+    }
+    if (evicted != null) {
+      this.remove(evicted);
+    }
+  }
+
+  /**
+   * Finds the known cell containing a coordinate.
+   *
+   * @param lat the latitude
+   * @param lon the longitude
+   * @return the containing cell, or null if no known cell contains it
+   */
+  public GridCell locate(double lat, double lon) {
+    List<Entry> entries = this.buckets.get(key(bucket(lat), bucket(lon)));
+    if (entries == null) {
+      return null;
+    }
+    for (Entry entry : entries) {
+      if (entry.footprint().contains(lat, lon)) {
+        synchronized (this.known) {
+          // Marks it recently used.
+          this.known.get(entry.cell());
+        }
+        return entry.cell();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the footprint of a known cell.
+   *
+   * @param cell the grid cell
+   * @return its footprint, or null if the cell is not indexed
+   */
+  public GridFootprint footprint(GridCell cell) {
+    synchronized (this.known) {
+      return this.known.get(cell);
+    }
+  }
+
+  /** Returns the number of cells in the index. */
+  public int size() {
+    synchronized (this.known) {
+      return this.known.size();
+    }
+  }
+
+  /** Forgets a cell. Callers hold this. */
+  private void remove(GridCell cell) {
+    GridFootprint footprint;
+    synchronized (this.known) {
+      footprint = this.known.remove(cell);
+    }
+    if (footprint == null) {
+      return;
+    }
+    Entry entry = new Entry(cell, footprint);
+    for (long bucket : bucketsOf(footprint)) {
+      this.buckets.computeIfPresent(
+          bucket,
+          (k, entries) -> {
+            entries.remove(entry);
+            return entries.isEmpty() ? null : entries;
+          });
+    }
+  }
+
+  /** The keys of every bucket a footprint's bounding box touches. */
+  private static List<Long> bucketsOf(GridFootprint footprint) {
+    List<Long> keys = new ArrayList<>();
+    long minLat = bucket(footprint.minLat());
+    long maxLat = bucket(footprint.maxLat());
+    long minLon = bucket(footprint.minLon());
+    long maxLon = bucket(footprint.maxLon());
+    for (long y = minLat; y <= maxLat; y++) {
+      for (long x = minLon; x <= maxLon; x++) {
+        keys.add(key(y, x));
+      }
+    }
+    return keys;
+  }
+
+  private static long bucket(double degrees) {
+    return (long) Math.floor(degrees / BUCKET_DEGREES);
+  }
+
+  private static long key(long latBucket, long lonBucket) {
+    return (latBucket << 32) | (lonBucket & 0xffffffffL);
+  }
+}
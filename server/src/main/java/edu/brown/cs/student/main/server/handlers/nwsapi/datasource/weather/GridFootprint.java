@@ -0,0 +1,116 @@
+package edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather;
+
+import java.util.List;
+
+/**
+ * The area covered by one NWS grid cell, as the polygon NWS reports in the gridpoints feature
+ * geometry. Cells are small quadrilaterals in a projected grid, so they are slightly rotated
+ * relative to lat/lon; containment is therefore tested against the polygon itself, with the
+ * bounding box as a cheap first check.
+ */
+public final class GridFootprint {
+  private final double[] lats;
+  private final double[] lons;
+  private final double minLat;
+  private final double maxLat;
+  private final double minLon;
+  private final double maxLon;
+
+  /**
+   * Constructor for the GridFootprint.
+   *
+   * @param lats the latitudes of the polygon's vertices
+   * @param lons the longitudes of the polygon's vertices, in the same order
+   */
+  public GridFootprint(double[] lats, double[] lons) {
+    if (lats.length != lons.length || lats.length < 3) {
+      throw new IllegalArgumentException("A footprint needs at least three vertices");
+    }
+    this.lats = lats;
+    this.lons = lons;
+    double minLat = Double.MAX_VALUE, maxLat = -Double.MAX_VALUE;
+    double minLon = Double.MAX_VALUE, maxLon = -Double.MAX_VALUE;
+    for (int i = 0; i < lats.length; i++) {
+      minLat = Math.min(minLat, lats[i]);
+      maxLat = Math.max(maxLat, lats[i]);
+      minLon = Math.min(minLon, lons[i]);
+      maxLon = Math.max(maxLon, lons[i]);
+    }
+    this.minLat = minLat;
+    this.maxLat = maxLat;
+    this.minLon = minLon;
+    this.maxLon = maxLon;
+  }
+
+  /**
+   * Builds a footprint from a GeoJSON polygon's outer ring, given as [lon, lat] pairs.
+   *
+   * @param ring the outer ring of the polygon
+   * @return the footprint, or null if the ring is not a usable polygon
+   */
+  public static GridFootprint fromGeoJsonRing(List<List<Double>> ring) {
+    if (ring == null || ring.size() < 3) {
+      return null;
+    }
+    double[] lats = new double[ring.size()];
+    double[] lons = new double[ring.size()];
+    for (int i = 0; i < ring.size(); i++) {
+      List<Double> point = ring.get(i);
+      if (point == null || point.size() < 2) {
+        return null;
+      }
+      lons[i] = point.get(0);
+      lats[i] = point.get(1);
+    }
+    return new GridFootprint(lats, lons);
+  }
+
+  /**
+   * Tests whether a coordinate lies inside this cell, by ray casting against the polygon.
+   *
+   * @param lat the latitude
+   * @param lon the longitude
+   * @return true if the coordinate is inside the cell
+   */
+  public boolean contains(double lat, double lon) {
+    if (lat < this.minLat || lat > this.maxLat || lon < this.minLon || lon > this.maxLon) {
+      return false;
+    }
+    boolean inside = false;
+    for (int i = 0, j = this.lats.length - 1; i < this.lats.length; j = i++) {
+      if ((this.lats[i] > lat) != (this.lats[j] > lat)
+          && lon
+              < (this.lons[j] - this.lons[i]) * (lat - this.lats[i]) / (this.lats[j] - this.lats[i])
+                  + this.lons[i]) {
+        inside = !inside;
+      }
+    }
+    return inside;
+  }
+
+  public double minLat() {
+    return this.minLat;
+  }
+
+  public double maxLat() {
+    return this.maxLat;
+  }
+
+  public double minLon() {
+    return this.minLon;
+  }
+
+  public double maxLon() {
+    return this.maxLon;
+  }
+
+  /** Returns a copy of the vertex latitudes. */
+  public double[] lats() {
+    return this.lats.clone();
+  }
+
+  /** Returns a copy of the vertex longitudes. */
+  public double[] lons() {
+    return this.lons.clone();
+  }
+}
@@ -0,0 +1,40 @@
+package edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather;
+
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.DatasourceException;
+
+/**
+ * A GridForecastSource splits a weather lookup into its two upstream steps: resolving a coordinate
+ * to a grid cell, and fetching the forecast for that cell. Layers such as caches work against this
+ * interface so that they can key their state by grid cell.
+ */
+public interface GridForecastSource {
+
+  /**
+   * Resolve a coordinate to the grid cell covering it.
+   *
+   * @param lat the latitude, limited to 4 decimal places
+   * @param lon the longitude, limited to 4 decimal places
+   * @return the grid cell
+   * @throws DatasourceException if there is an issue retrieving the grid cell
+   */
+  GridCell resolveGridCell(double lat, double lon) throws DatasourceException;
+
+  /**
+   * Fetch the full forecast for a grid cell.
+   *
+   * @param cell the grid cell
+   * @return the parsed forecast
+   * @throws DatasourceException if there is an issue retrieving the forecast
+   */
+  Forecast getForecast(GridCell cell) throws DatasourceException;
+
+  /**
+   * NWS is not robust to high precision, so coordinates are limited to X.XXXX before use.
+   *
+   * @param degrees a latitude or longitude
+   * @return the coordinate floored to 4 decimal places
+   */
+  static double limitPrecision(double degrees) {
+    return Math.floor(degrees * 10000.0) / 10000.0;
+  }
+}
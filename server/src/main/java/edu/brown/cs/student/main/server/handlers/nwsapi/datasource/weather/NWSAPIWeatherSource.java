@@ -1,41 +1,70 @@
 package edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather;
 
 import com.squareup.moshi.JsonAdapter;
-import com.squareup.moshi.Moshi;
 import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.DatasourceException;
+import edu.brown.cs.student.main.server.serializers.Json;
 import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
-import java.time.ZoneId;
-import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
+import java.time.Instant;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import okio.Buffer;
 
 /**
  * A datasource for weather forecasts via NWS API. This class uses the _real_ API to return results.
- * It has no caching in itself, and is focused on working with the real API.
+ * It has no caching in itself, and is focused on working with the real API (or a stand-in for it at
+ * another base URL).
  */
-public class NWSAPIWeatherSource implements WeatherDatasource {
+public class NWSAPIWeatherSource implements WeatherDatasource, GridForecastSource {
+
+  private static final int CONNECT_TIMEOUT_MILLIS = 2_000;
+  private static final int READ_TIMEOUT_MILLIS = 5_000;
+  // Built once: adapters are thread-safe, and building one reflects over the whole response type.
+  private static final JsonAdapter<GridResponse> GRID_ADAPTER =
+      Json.MOSHI.adapter(GridResponse.class).nonNull();
+  private static final JsonAdapter<ForecastResponse> FORECAST_ADAPTER =
+      Json.MOSHI.adapter(ForecastResponse.class).nonNull();
+
+  // Where the NWS API lives; overridable so we can point at a local stand-in.
+  private final String baseUrl;
+
+  /** Constructor for an NWSAPIWeatherSource that talks to the real api.weather.gov. */
+  public NWSAPIWeatherSource() {
+    this("https://api.weather.gov");
+  }
+
+  /**
+   * Constructor for an NWSAPIWeatherSource that talks to an NWS-compatible API at another address,
+   * such as a local stand-in used for load testing.
+   *
+   * @param baseUrl the scheme, host and port of the API, e.g. "http://localhost:8080"
+   */
+  public NWSAPIWeatherSource(String baseUrl) {
+    this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+  }
 
-  private static GridResponse resolveGridCoordinates(double lat, double lon)
-      throws DatasourceException {
+  /**
+   * Resolves a coordinate to the NWS grid cell that covers it, via the /points endpoint.
+   *
+   * @param lat the latitude, already limited to 4 decimal places
+   * @param lon the longitude, already limited to 4 decimal places
+   * @return the grid cell
+   * @throws DatasourceException if there is an issue obtaining the data from the API
+   */
+  @Override
+  public GridCell resolveGridCell(double lat, double lon) throws DatasourceException {
     try {
-      URL requestURL = new URL("https", "api.weather.gov", "/points/" + lat + "," + lon);
+      URL requestURL = new URL(this.baseUrl + "/points/" + lat + "," + lon);
       HttpURLConnection clientConnection = connect(requestURL);
-      Moshi moshi = new Moshi.Builder().build();
-
-      JsonAdapter<GridResponse> adapter = moshi.adapter(GridResponse.class).nonNull();
       // NOTE: important! pattern for handling the input stream
       GridResponse body =
-          adapter.fromJson(new Buffer().readFrom(clientConnection.getInputStream()));
+          GRID_ADAPTER.fromJson(new Buffer().readFrom(clientConnection.getInputStream()));
       clientConnection.disconnect();
       if (body == null || body.properties() == null || body.properties().gridId() == null)
         throw new DatasourceException("Malformed response from NWS");
-      return body;
+      return new GridCell(
+          body.properties().gridId(), body.properties().gridX(), body.properties().gridY());
     } catch (IOException e) {
       throw new DatasourceException(e.getMessage());
     }
@@ -50,11 +79,15 @@ public class NWSAPIWeatherSource implements WeatherDatasource {
     if (!(urlConnection instanceof HttpURLConnection))
       throw new DatasourceException("unexpected: result of connection wasn't HTTP");
     HttpURLConnection clientConnection = (HttpURLConnection) urlConnection;
+    // Never let a slow upstream hold a request thread indefinitely.
+    clientConnection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+    clientConnection.setReadTimeout(READ_TIMEOUT_MILLIS);
     clientConnection.connect(); // GET
-    if (clientConnection.getResponseCode() != 200)
+    int status = clientConnection.getResponseCode();
+    if (status != 200)
       throw new DatasourceException(
-          "unexpected: API connection not success status: "
-              + clientConnection.getResponseMessage());
+          "unexpected: API connection not success status: " + clientConnection.getResponseMessage(),
+          status >= 500 || status == 429);
     return clientConnection;
   }
 
@@ -72,139 +105,122 @@ public class NWSAPIWeatherSource implements WeatherDatasource {
     return getCurrentWeather(loc.lat(), loc.lon());
   }
 
-  private static WeatherData getCurrentWeather(double lat, double lon)
+  private WeatherData getCurrentWeather(double lat, double lon)
       throws DatasourceException, IllegalArgumentException {
-    try {
-      // Double-check that the coordinates are valid.
-      if (!Geolocation.isValidGeolocation(lat, lon)) {
-        throw new IllegalArgumentException("Invalid geolocation");
-      }
-
-      // NWS is not robust to high precision; limit to X.XXXX
-      lat = Math.floor(lat * 10000.0) / 10000.0;
-      lon = Math.floor(lon * 10000.0) / 10000.0;
-
-      GridResponse gridResponse = resolveGridCoordinates(lat, lon);
-      String gid = gridResponse.properties().gridId();
-      String gx = gridResponse.properties().gridX();
-      String gy = gridResponse.properties().gridY();
-
-      URL requestURL =
-          new URL("https", "api.weather.gov", "/gridpoints/" + gid + "/" + gx + "," + gy);
-      HttpURLConnection clientConnection = connect(requestURL);
-      Moshi moshi = new Moshi.Builder().build();
+    // Double-check that the coordinates are valid.
+    if (!Geolocation.isValidGeolocation(lat, lon)) {
+      throw new IllegalArgumentException("Invalid geolocation");
+    }
 
-      JsonAdapter<ForecastResponse> adapter = moshi.adapter(ForecastResponse.class).nonNull();
+    // NWS is not robust to high precision; limit to X.XXXX
+    lat = GridForecastSource.limitPrecision(lat);
+    lon = GridForecastSource.limitPrecision(lon);
 
-      ForecastResponse body =
-          adapter.fromJson(new Buffer().readFrom(clientConnection.getInputStream()));
+    Forecast forecast = this.getForecast(this.resolveGridCell(lat, lon));
+    return forecast.toWeatherData(lat, lon, Instant.now());
+  }
 
-      clientConnection.disconnect();
+  /**
+   * Given a geolocation, fetch and parse the full gridpoint forecast at that location. The result
+   * can be queried for any window of hours without reparsing.
+   *
+   * @param loc the location to find the forecast for
+   * @return the parsed forecast
+   * @throws DatasourceException if there is an issue obtaining the data from the API
+   */
+  public Forecast getForecast(Geolocation loc) throws DatasourceException {
+    double lat = GridForecastSource.limitPrecision(loc.lat());
+    double lon = GridForecastSource.limitPrecision(loc.lon());
+    return this.getForecast(this.resolveGridCell(lat, lon));
+  }
 
-      // Validity checks for response
-      if (body == null
-          || body.properties() == null
-          || body.properties().maxTemperature() == null
-          || body.properties().minTemperature() == null
-          || body.properties().skyCover() == null
-          || body.properties().probabilityOfPrecipitation() == null
-          || body.properties().snowfallAmount() == null
-          || body.properties().temperature() == null) {
-        throw new DatasourceException("Malformed response from NWS");
-      }
-
-      List<ForecastResponseTempValue> highs = body.properties().maxTemperature().values();
-      List<ForecastResponseTempValue> lows = body.properties().minTemperature().values();
-      List<ForecastResponseTempValue> skyCover = body.properties().skyCover().values();
-      List<ForecastResponseTempValue> pop = body.properties().probabilityOfPrecipitation().values();
-      List<ForecastResponseTempValue> apparentTemp = body.properties().temperature().values();
-      List<ForecastResponseTempValue> snowfallAmt = body.properties().snowfallAmount().values();
-
-      if (highs.isEmpty()
-          || lows.isEmpty()
-          || skyCover.isEmpty()
-          || pop.isEmpty()
-          || snowfallAmt.isEmpty()
-          || apparentTemp.isEmpty()) {
-        throw new DatasourceException("Could not obtain weather data from NWS");
-      }
-
-      // Get time in UTC:
-      ZonedDateTime now = ZonedDateTime.now(ZoneId.of("UTC"));
-
-      int high = convertToF(highs.get(0).value());
-      int low = convertToF(lows.get(0).value());
-      int current = convertToF(xHrAvg(apparentTemp, 2, now));
-      int rain = (int) Math.round(xHrAvg(pop, 8, now));
-      int cloud = (int) Math.round(xHrAvg(skyCover, 8, now));
-      int snowfall = (int) Math.round(xHrAvg(snowfallAmt, 8, now));
-      String date = highs.get(0).validTime().split("T")[0];
-      return new WeatherData(high, low, current, rain, cloud, snowfall, lat, lon, date);
+  /**
+   * Fetches and parses the gridpoint forecast for a grid cell.
+   *
+   * @param cell the grid cell to fetch
+   * @return the parsed forecast
+   * @throws DatasourceException if there is an issue obtaining the data from the API
+   */
+  @Override
+  public Forecast getForecast(GridCell cell) throws DatasourceException {
+    try {
+      URL requestURL = new URL(this.baseUrl + "/gridpoints/" + cell.path());
+      HttpURLConnection clientConnection = connect(requestURL);
+      ForecastResponse body =
+          FORECAST_ADAPTER.fromJson(new Buffer().readFrom(clientConnection.getInputStream()));
 
+      clientConnection.disconnect();
+      return parseForecast(body);
     } catch (IOException e) {
       throw new DatasourceException(e.getMessage(), e);
     }
   }
 
   /**
-   * Converts a temperature in Celsius to Fahrenheit.
+   * Converts a raw gridpoints response into a Forecast, expanding each variable into an hourly
+   * series exactly once.
    *
-   * @param c the temperature in Celsius
-   * @return the temperature in Fahrenheit
+   * @param body the gridpoints response
+   * @return the parsed forecast
+   * @throws DatasourceException if the response is missing data we need
    */
-  private static int convertToF(double c) {
-    return (int) Math.round(c * 9.0 / 5.0 + 32.0);
-  }
+  static Forecast parseForecast(ForecastResponse body) throws DatasourceException {
+    // Validity checks for response
+    if (body == null
+        || body.properties() == null
+        || body.properties().maxTemperature() == null
+        || body.properties().minTemperature() == null
+        || body.properties().skyCover() == null
+        || body.properties().probabilityOfPrecipitation() == null
+        || body.properties().snowfallAmount() == null
+        || body.properties().temperature() == null) {
+      throw new DatasourceException("Malformed response from NWS");
+    }
 
-  /**
-   * Given a list of temperature values, calculate the average over the next X hours.
-   *
-   * @param values the list of temperature values
-   * @param hours the number of hours to average over
-   * @param currentTime the current time
-   * @return the average temperature over the next X hours
-   */
-  private static double xHrAvg(
-      List<ForecastResponseTempValue> values, int hours, ZonedDateTime currentTime) {
-    double sum = 0;
-    int count = 0;
-
-    for (ForecastResponseTempValue v : values) {
-      String[] split = v.validTime().split("/");
-      int duration = convertToHours(split[1]);
-      ZonedDateTime vTime = ZonedDateTime.parse(split[0], DateTimeFormatter.ISO_OFFSET_DATE_TIME);
-
-      for (int i = 0; i < duration; i++) {
-        if (vTime.isAfter(currentTime) && vTime.isBefore(currentTime.plusHours(hours))) {
-          sum += v.value();
-          count++;
-        }
-        vTime = vTime.plusHours(1);
-      }
+    List<ForecastResponseTempValue> highs = body.properties().maxTemperature().values();
+    List<ForecastResponseTempValue> lows = body.properties().minTemperature().values();
+    List<ForecastResponseTempValue> skyCover = body.properties().skyCover().values();
+    List<ForecastResponseTempValue> pop = body.properties().probabilityOfPrecipitation().values();
+    List<ForecastResponseTempValue> apparentTemp = body.properties().temperature().values();
+    List<ForecastResponseTempValue> snowfallAmt = body.properties().snowfallAmount().values();
+
+    if (highs.isEmpty()
+        || lows.isEmpty()
+        || skyCover.isEmpty()
+        || pop.isEmpty()
+        || snowfallAmt.isEmpty()
+        || apparentTemp.isEmpty()) {
+      throw new DatasourceException("Could not obtain weather data from NWS");
     }
-    return count == 0 ? 0 : sum / count;
+
+    String date = highs.get(0).validTime().split("T")[0];
+    return new Forecast(
+        body.properties().updateTime(),
+        date,
+        ForecastSeries.fromValues(highs),
+        ForecastSeries.fromValues(lows),
+        ForecastSeries.fromValues(apparentTemp),
+        ForecastSeries.fromValues(skyCover),
+        ForecastSeries.fromValues(pop),
+        ForecastSeries.fromValues(snowfallAmt),
+        parseFootprint(body.geometry()),
+        false);
   }
 
   /**
-   * Converts a duration string to hours.
+   * Reads the grid cell's footprint from the feature geometry, if NWS sent a usable polygon.
    *
-   * @param durationStr the duration string
-   * @return the duration in hours
+   * @param geometry the feature geometry
+   * @return the footprint, or null if there isn't one
    */
-  private static int convertToHours(String durationStr) {
-    Pattern pattern = Pattern.compile("P(?:(\\d+)D)?T(\\d+)H");
-    Matcher matcher = pattern.matcher(durationStr);
-    int days = 0;
-    int hours = 0;
-    if (matcher.find()) {
-      String dayMatch = matcher.group(1);
-      String hourMatch = matcher.group(2);
-      days = dayMatch != null ? Integer.parseInt(dayMatch) : 0;
-      hours = Integer.parseInt(hourMatch);
+  private static GridFootprint parseFootprint(ForecastResponseGeometry geometry) {
+    if (geometry == null
+        || !"Polygon".equals(geometry.type())
+        || geometry.coordinates() == null
+        || geometry.coordinates().isEmpty()) {
+      return null;
     }
-    // Convert days to hours and add to hours
-    int totalHours = days * 24 + hours;
-    return totalHours;
+    return GridFootprint.fromGeoJsonRing(geometry.coordinates().get(0));
   }
 
   // //////////////////////////////////////////////////////////////
@@ -216,7 +232,10 @@ public class NWSAPIWeatherSource implements WeatherDatasource {
   public record GridResponseProperties(
       String gridId, String gridX, String gridY, String timeZone, String radarStation) {}
 
-  public record ForecastResponse(String id, ForecastResponseProperties properties) {}
+  public record ForecastResponse(
+      String id, ForecastResponseGeometry geometry, ForecastResponseProperties properties) {}
+
+  public record ForecastResponseGeometry(String type, List<List<List<Double>>> coordinates) {}
 
   public record ForecastResponseProperties(
       String updateTime,
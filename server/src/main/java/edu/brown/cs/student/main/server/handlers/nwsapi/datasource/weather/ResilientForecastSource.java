@@ -0,0 +1,261 @@
+package edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather;
+
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.CircuitBreaker;
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.DatasourceException;
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.TokenBucket;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A GridForecastSource that keeps weather available while the upstream is slow or failing.
+ *
+ * <ul>
+ *   <li>Every call has a hard deadline, so callers never wait on the upstream's own timeouts.
+ *   <li>If an attempt hasn't answered after a short hedging delay, or fails outright, a second
+ *       attempt is made. Extra attempts are paid for from a retry budget that only grows with real
+ *       traffic, so retries can never multiply the load on an upstream that is already struggling.
+ *   <li>A circuit breaker stops calling the upstream after repeated failures, and lets a single
+ *       probe through once it has had time to recover.
+ *   <li>Upstream calls run on a bounded pool. When it is saturated, as when the upstream hangs,
+ *       further attempts fail at once instead of piling up threads.
+ *   <li>When a forecast can't be fetched, the last good forecast for the grid cell is returned,
+ *       marked stale, as long as it still covers the hours ahead. Last good forecasts are kept for
+ *       the most recently used cells only.
+ * </ul>
+ */
+public class ResilientForecastSource implements GridForecastSource {
+
+  private static final int MAX_ATTEMPTS = 2;
+  private static final int MAX_CONCURRENT_CALLS = 32;
+  private static final int MAX_FALLBACK_CELLS = 10_000;
+
+  private final GridForecastSource delegate;
+  private final CircuitBreaker breaker;
+  private final TokenBucket retryBudget;
+  private final double retryRatio;
+  private final long hedgeDelayNanos;
+  private final long deadlineNanos;
+  private final ExecutorService executor;
+  // Least recently used first. Guarded by itself.
+  private final Map<GridCell, Forecast> lastKnownGood =
+      new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<GridCell, Forecast> eldest) {
+          return this.size() > MAX_FALLBACK_CELLS;
+        }
+      };
+
+  /** A single upstream call. */
+  @FunctionalInterface
+  private interface Upstream<T> {
+    T call() throws DatasourceException;
+  }
+
+  /** The outcome of one attempt: exactly one of value or error is set. */
+  private record Outcome<T>(T value, Exception error) {}
+
+  /**
+   * Constructor for the ResilientForecastSource with defaults: a 3 second deadline, hedging after
+   * 800ms, retries capped at 10% of requests, and a breaker that opens for 30 seconds after 5
+   * consecutive failures.
+   *
+   * @param delegate the upstream source
+   */
+  public ResilientForecastSource(GridForecastSource delegate) {
+    this(
+        delegate,
+        new CircuitBreaker(5, Duration.ofSeconds(30)),
+        Duration.ofMillis(800),
+        Duration.ofSeconds(3),
+        0.1);
+  }
+
+  /**
+   * Constructor for the ResilientForecastSource.
+   *
+   * @param delegate the upstream source
+   * @param breaker the circuit breaker guarding the upstream
+   * @param hedgeDelay how long to wait on an attempt before starting a second one
+   * @param deadline the longest a caller will wait for the upstream
+   * @param retryRatio the fraction of requests that may be retried or hedged
+   */
+  public ResilientForecastSource(
+      GridForecastSource delegate,
+      CircuitBreaker breaker,
+      Duration hedgeDelay,
+      Duration deadline,
+      double retryRatio) {
+    this.delegate = delegate;
+    this.breaker = breaker;
+    this.hedgeDelayNanos = hedgeDelay.toNanos();
+    this.deadlineNanos = deadline.toNanos();
+    this.retryRatio = retryRatio;
+    // Starts with a little slack so a cold server can still retry, then earns tokens only per
+    // request, never with time alone.
+    this.retryBudget = new TokenBucket(10, 0);
+    this.executor =
+        new ThreadPoolExecutor(
+            0,
+            MAX_CONCURRENT_CALLS,
+            30,
+            TimeUnit.SECONDS,
+            new SynchronousQueue<>(),
+            r -> {
+              Thread t = new Thread(r, "weather-upstream");
+              t.setDaemon(true);
+              return t;
+            });
+  }
+
+  @Override
+  public GridCell resolveGridCell(double lat, double lon) throws DatasourceException {
+    return this.call(() -> this.delegate.resolveGridCell(lat, lon));
+  }
+
+  /**
+   * Fetches the forecast for a cell, falling back to the last good forecast for that cell (marked
+   * stale) if the upstream can't provide one.
+   *
+   * @param cell the grid cell
+   * @return the forecast
+   * @throws DatasourceException if the upstream failed and there is no forecast to fall back to, or
+   *     the last one has run out
+   */
+  @Override
+  public Forecast getForecast(GridCell cell) throws DatasourceException {
+    try {
+      Forecast forecast = this.call(() -> this.delegate.getForecast(cell));
+      synchronized (this.lastKnownGood) {
+        this.lastKnownGood.put(cell, forecast);
+      }
+      return forecast;
+    } catch (DatasourceException e) {
+      if (Thread.currentThread().isInterrupted()) {
+        // The caller gave up on this forecast; it has no use for an old one either.
+        throw e;
+      }
+      Forecast fallback;
+      synchronized (this.lastKnownGood) {
+        fallback = this.lastKnownGood.get(cell);
+      }
+      if (fallback == null || !e.isUpstreamFailure() || !fallback.coversNext(Instant.now())) {
+        throw e;
+      }
+      return fallback.asStale();
+    }
+  }
+
+  /** Returns the state of the breaker guarding the upstream. */
+  public CircuitBreaker.State breakerState() {
+    return this.breaker.state();
+  }
+
+  private <T> T call(Upstream<T> upstream) throws DatasourceException {
+    if (!this.breaker.allowRequest()) {
+      throw new DatasourceException("Weather source unavailable: circuit open");
+    }
+    // Half-open probes are a single attempt; hedging them would defeat the point of probing.
+    boolean probe = this.breaker.state() == CircuitBreaker.State.HALF_OPEN;
+    this.retryBudget.deposit(this.retryRatio);
+
+    BlockingQueue<Outcome<T>> outcomes = new LinkedBlockingQueue<>();
+    List<Future<?>> attempts = new ArrayList<>();
+    long start = System.nanoTime();
+    long deadline = start + this.deadlineNanos;
+    long hedgeAt = probe ? deadline : start + this.hedgeDelayNanos;
+    attempts.add(this.submit(upstream, outcomes));
+    int running = 1;
+    Exception lastError = null;
+
+    try {
+      while (true) {
+        long now = System.nanoTime();
+        if (now >= deadline) {
+          break;
+        }
+        Outcome<T> outcome = outcomes.poll(Math.min(hedgeAt, deadline) - now, TimeUnit.NANOSECONDS);
+        if (outcome == null) {
+          // Hedging delay passed with no answer; race a second attempt if the budget allows.
+          if (System.nanoTime() < deadline && this.mayRetry(probe, attempts.size())) {
+            attempts.add(this.submit(upstream, outcomes));
+            running++;
+          }
+          hedgeAt = deadline;
+          continue;
+        }
+
+        running--;
+        if (outcome.error() == null) {
+          this.breaker.recordSuccess();
+          return outcome.value();
+        }
+        lastError = outcome.error();
+        if (lastError instanceof DatasourceException de && !de.isUpstreamFailure()) {
+          // The upstream is fine; it just can't answer this request. Retrying won't help.
+          this.breaker.recordSuccess();
+          throw de;
+        }
+        if (running == 0) {
+          if (!this.mayRetry(probe, attempts.size())) {
+            break;
+          }
+          attempts.add(this.submit(upstream, outcomes));
+          running++;
+          hedgeAt = deadline;
+        }
+      }
+    } catch (InterruptedException e) {
+      // Cancelled, as when a race this call was in has been won elsewhere. That says nothing about
+      // the upstream's health, so the breaker isn't told.
+      Thread.currentThread().interrupt();
+      throw new DatasourceException("Interrupted while waiting for weather", e);
+    } finally {
+      for (Future<?> attempt : attempts) {
+        attempt.cancel(true);
+      }
+    }
+
+    this.breaker.recordFailure();
+    if (lastError instanceof DatasourceException de) {
+      throw de;
+    }
+    if (lastError == null) {
+      throw new DatasourceException("Weather source timed out");
+    }
+    throw new DatasourceException(lastError.getMessage(), lastError);
+  }
+
+  private boolean mayRetry(boolean probe, int attemptsMade) {
+    return !probe && attemptsMade < MAX_ATTEMPTS && this.retryBudget.tryAcquire();
+  }
+
+  private <T> Future<?> submit(Upstream<T> upstream, BlockingQueue<Outcome<T>> outcomes) {
+    try {
+      return this.executor.submit(
+          () -> {
+            try {
+              outcomes.add(new Outcome<>(upstream.call(), null));
+            } catch (Exception e) {
+              outcomes.add(new Outcome<>(null, e));
+            }
+          });
+    } catch (RejectedExecutionException e) {
+      // Every thread is stuck on the upstream already, so count this as another failed attempt.
+      outcomes.add(new Outcome<>(null, new DatasourceException("Weather source saturated", e)));
+      return CompletableFuture.completedFuture(null);
+    }
+  }
+}
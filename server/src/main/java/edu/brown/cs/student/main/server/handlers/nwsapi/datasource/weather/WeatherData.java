@@ -13,6 +13,7 @@ package edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather;
  * @param lat the latitude of the location
  * @param lon the longitude of the location
  * @param date the date of the weather report
+ * @param stale true if this was served from an old forecast because the live source was unavailable
  */
 public record WeatherData(
     int high,
@@ -23,4 +24,20 @@ public record WeatherData(
     int snowfall,
     double lat,
     double lon,
-    String date) {}
+    String date,
+    boolean stale) {
+
+  /** Constructs a fresh (non-stale) weather report. */
+  public WeatherData(
+      int high,
+      int low,
+      int current,
+      int rain,
+      int cloud,
+      int snowfall,
+      double lat,
+      double lon,
+      String date) {
+    this(high, low, current, rain, cloud, snowfall, lat, lon, date, false);
+  }
+}
@@ -1,6 +1,9 @@
 package edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather;
 
 import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.DatasourceException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * A WeatherDatasource can be used to get the current weather at a certain location, which is
@@ -18,4 +21,24 @@ public interface WeatherDatasource {
    */
   WeatherData getCurrentWeather(Geolocation loc)
       throws DatasourceException, IllegalArgumentException;
+
+  /**
+   * Retrieve the current weather at many geolocations at once. Each location gets its own result,
+   * in input order, so one bad location does not fail the others. The default looks locations up
+   * one at a time; sources that can share work between nearby locations should override this.
+   *
+   * @param locs the geolocations to retrieve data for
+   * @return one future per location, completed with its weather or with the reason it failed
+   */
+  default List<CompletableFuture<WeatherData>> getCurrentWeather(List<Geolocation> locs) {
+    List<CompletableFuture<WeatherData>> results = new ArrayList<>();
+    for (Geolocation loc : locs) {
+      try {
+        results.add(CompletableFuture.completedFuture(this.getCurrentWeather(loc)));
+      } catch (DatasourceException | RuntimeException e) {
+        results.add(CompletableFuture.failedFuture(e));
+      }
+    }
+    return results;
+  }
 }
@@ -0,0 +1,200 @@
+package edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather;
+
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.DatasourceException;
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.TokenBucket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the forecasts for popular grid cells warm. Every lookup against the cache bumps a decaying
+ * popularity score for its cell; on each tick, the hottest cells whose forecasts are about to
+ * expire are refreshed in the background, so that request handlers almost never pay for an upstream
+ * fetch.
+ *
+ * <p>Refreshes run on a small fixed pool (bounded concurrency), start after a random delay so that
+ * cells warmed together don't expire together, and each spends a token from a per-host budget so
+ * that prefetching never crowds out foreground requests to NWS.
+ */
+public class WeatherPrefetcher {
+
+  private final CachedWeatherSource cache;
+  private final double decayPerNano;
+  private final long refreshAheadMillis;
+  private final long tickMillis;
+  private final long maxJitterMillis;
+  private final int maxCellsPerTick;
+  private final double minScore;
+  private final TokenBucket hostBudget;
+
+  private final Map<GridCell, Heat> heat = new ConcurrentHashMap<>();
+  private final Set<GridCell> scheduled = ConcurrentHashMap.newKeySet();
+  private final ScheduledExecutorService ticker;
+  private final ScheduledExecutorService workers;
+
+  /** A popularity score that halves every half-life without new hits. */
+  private final class Heat {
+    private double score;
+    private long lastNanos = System.nanoTime();
+
+    synchronized void hit() {
+      this.score = this.current() + 1;
+    }
+
+    synchronized double current() {
+      long now = System.nanoTime();
+      this.score *= Math.exp(-WeatherPrefetcher.this.decayPerNano * (now - this.lastNanos));
+      this.lastNanos = now;
+      return this.score;
+    }
+  }
+
+  /**
+   * Constructor for the WeatherPrefetcher with defaults suited to api.weather.gov: a 30 minute
+   * half-life, refreshing 5 minutes ahead of expiry, 4 concurrent refreshes, and a budget of one
+   * request per second with bursts of 10.
+   *
+   * @param cache the cache to keep warm
+   */
+  public WeatherPrefetcher(CachedWeatherSource cache) {
+    this(
+        cache,
+        Duration.ofMinutes(30),
+        Duration.ofMinutes(5),
+        Duration.ofSeconds(30),
+        Duration.ofSeconds(20),
+        4,
+        32,
+        new TokenBucket(10, 1));
+  }
+
+  /**
+   * Constructor for the WeatherPrefetcher.
+   *
+   * @param cache the cache to keep warm
+   * @param halfLife how long it takes a cell's popularity to halve without new hits
+   * @param refreshAhead how long before expiry a forecast becomes eligible for refresh
+   * @param tick how often to look for cells to refresh
+   * @param maxJitter the maximum random delay before a scheduled refresh starts
+   * @param maxConcurrent the maximum number of refreshes running at once
+   * @param maxCellsPerTick the maximum number of cells considered on each tick
+   * @param hostBudget the request budget shared by all refreshes
+   */
+  public WeatherPrefetcher(
+      CachedWeatherSource cache,
+      Duration halfLife,
+      Duration refreshAhead,
+      Duration tick,
+      Duration maxJitter,
+      int maxConcurrent,
+      int maxCellsPerTick,
+      TokenBucket hostBudget) {
+    this.cache = cache;
+    this.decayPerNano = Math.log(2) / halfLife.toNanos();
+    this.refreshAheadMillis = refreshAhead.toMillis();
+    this.tickMillis = tick.toMillis();
+    this.maxJitterMillis = maxJitter.toMillis();
+    this.maxCellsPerTick = maxCellsPerTick;
+    // A cell needs roughly one hit per half-life to stay worth refreshing.
+    this.minScore = 0.5;
+    this.hostBudget = hostBudget;
+    this.ticker = Executors.newSingleThreadScheduledExecutor(daemon("weather-prefetch-tick"));
+    this.workers = Executors.newScheduledThreadPool(maxConcurrent, daemon("weather-prefetch"));
+    cache.addAccessListener(this::recordAccess);
+  }
+
+  /** Starts periodic background refreshing. */
+  public void start() {
+    this.ticker.scheduleWithFixedDelay(
+        this::tick, this.tickMillis, this.tickMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /** Stops background refreshing. Refreshes already running are interrupted. */
+  public void stop() {
+    this.ticker.shutdownNow();
+    this.workers.shutdownNow();
+  }
+
+  /**
+   * Records a lookup of a grid cell. Called by the cache for every forecast lookup.
+   *
+   * @param cell the cell that was looked up
+   */
+  public void recordAccess(GridCell cell) {
+    this.heat.computeIfAbsent(cell, c -> new Heat()).hit();
+  }
+
+  /**
+   * Returns the current decayed popularity of a cell.
+   *
+   * @param cell the cell
+   * @return its score, or 0 if it has never been looked up
+   */
+  public double score(GridCell cell) {
+    Heat h = this.heat.get(cell);
+    return h == null ? 0 : h.current();
+  }
+
+  /** Schedules refreshes for the hottest cells that are close to expiring. */
+  public void tick() {
+    List<Map.Entry<GridCell, Double>> candidates = new ArrayList<>();
+    for (Map.Entry<GridCell, Heat> e : this.heat.entrySet()) {
+      double score = e.getValue().current();
+      if (score < this.minScore / 16) {
+        // Long cold; forget about it so the map doesn't grow without bound.
+        this.heat.remove(e.getKey(), e.getValue());
+      } else if (score >= this.minScore) {
+        candidates.add(Map.entry(e.getKey(), score));
+      }
+    }
+    candidates.sort(Map.Entry.<GridCell, Double>comparingByValue().reversed());
+
+    long now = System.currentTimeMillis();
+    int considered = 0;
+    for (Map.Entry<GridCell, Double> candidate : candidates) {
+      if (considered++ >= this.maxCellsPerTick) {
+        break;
+      }
+      GridCell cell = candidate.getKey();
+      if (this.cache.expiresAtMillis(cell) - now > this.refreshAheadMillis
+          || !this.scheduled.add(cell)) {
+        continue;
+      }
+      if (!this.hostBudget.tryAcquire()) {
+        // Out of budget; hotter cells already got theirs, the rest wait for the next tick.
+        this.scheduled.remove(cell);
+        break;
+      }
+      long jitter =
+          this.maxJitterMillis > 0 ? ThreadLocalRandom.current().nextLong(this.maxJitterMillis) : 0;
+      this.workers.schedule(() -> this.refresh(cell), jitter, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private void refresh(GridCell cell) {
+    try {
+      this.cache.refresh(cell);
+    } catch (DatasourceException | RuntimeException e) {
+      // The entry simply expires and the next request fetches it in the foreground.
+      System.err.println("Error prefetching forecast for " + cell.path() + ": " + e.getMessage());
+    } finally {
+      this.scheduled.remove(cell);
+    }
+  }
+
+  private static ThreadFactory daemon(String name) {
+    return r -> {
+      Thread t = new Thread(r, name);
+      t.setDaemon(true);
+      return t;
+    };
+  }
+}
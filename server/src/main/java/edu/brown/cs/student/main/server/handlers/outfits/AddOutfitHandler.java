@@ -1,9 +1,13 @@
 package edu.brown.cs.student.main.server.handlers.outfits;
 
-import com.google.cloud.firestore.DocumentReference;
-import edu.brown.cs.student.main.server.handlers.Utils;
+import edu.brown.cs.student.main.server.serializers.ErrorResponse;
+import edu.brown.cs.student.main.server.serializers.Json;
+import edu.brown.cs.student.main.server.serializers.OutfitItem;
+import edu.brown.cs.student.main.server.serializers.OutfitResponse;
+import edu.brown.cs.student.main.server.storage.AsyncStorage;
+import edu.brown.cs.student.main.server.storage.IdAllocator;
 import edu.brown.cs.student.main.server.storage.StorageInterface;
-import java.util.HashMap;
+import edu.brown.cs.student.main.server.storage.codec.OutfitCodec;
 import java.util.Map;
 import spark.Request;
 import spark.Response;
@@ -16,6 +20,8 @@ import spark.Route;
 public class AddOutfitHandler implements Route {
 
   public StorageInterface storageHandler;
+  private final IdAllocator ids;
+  private final OutfitIndex index;
 
   /**
    * Constructor for the AddOutfitHandler.
@@ -23,7 +29,20 @@ public class AddOutfitHandler implements Route {
    * @param storageHandler The storage handler to be used.
    */
   public AddOutfitHandler(StorageInterface storageHandler) {
+    this(storageHandler, new IdAllocator(storageHandler), new OutfitIndex(storageHandler));
+  }
+
+  /**
+   * Constructor for the AddOutfitHandler.
+   *
+   * @param storageHandler The storage handler to be used.
+   * @param ids The allocator for outfit IDs, shared with any other handlers that use them.
+   * @param index The index of outfits by item, shared with the other outfit handlers.
+   */
+  public AddOutfitHandler(StorageInterface storageHandler, IdAllocator ids, OutfitIndex index) {
     this.storageHandler = storageHandler;
+    this.ids = ids;
+    this.index = index;
   }
 
   /**
@@ -35,8 +54,6 @@ public class AddOutfitHandler implements Route {
    */
   @Override
   public Object handle(Request request, Response response) {
-
-    Map<String, Object> responseMap = new HashMap<>();
     try {
       // Collect parameters from the request to build a clothing item.
       String uid = request.queryParams("uid");
@@ -47,25 +64,12 @@ public class AddOutfitHandler implements Route {
       String fullbodyID = request.queryParams("fullbody");
       String accessoryID = request.queryParams("accessory");
 
-      // Try and get the next outfit ID, but if it doesnt exits, use 0.
-      String id;
-      try {
-        DocumentReference userIDs =
-            this.storageHandler.getDocumentReference(uid, "userIDs", "outfitID");
-        Map<String, Object> userIDsMap = this.storageHandler.getDocument(userIDs);
-        id = userIDsMap.get("nextID").toString();
-      } catch (Exception e) {
-        id = "0";
-      }
+      // Take the next outfit ID. IDs are leased from storage in blocks, so this rarely blocks.
+      String id = Long.toString(this.ids.next(uid, "outfitID"));
+      AsyncStorage storage = this.storageHandler.async();
 
-      // Update the next outfit ID in the database.
-      Map<String, Object> outfitData = new HashMap<>();
-      outfitData.put("nextID", Integer.toString((Integer.parseInt(id) + 1)));
-      this.storageHandler.addDocument(uid, "userIDs", "outfitID", outfitData);
-
-      Map<String, Object> data = new HashMap<>();
       // Create comma separated ID list:
-      String outfit =
+      String outfitCsv =
           id
               + ","
               + topID
@@ -79,22 +83,19 @@ public class AddOutfitHandler implements Route {
               + fullbodyID
               + ","
               + accessoryID;
-      data.put("outfit", outfit);
+      // Store the outfit as a tuple of ints.
+      int[] outfit = OutfitCodec.fromCsv(outfitCsv);
+      Map<String, Object> data = OutfitCodec.encode(outfit);
       String outfitID = "outfit-" + id;
 
       // Use the storage handler to add the document to the database.
-      this.storageHandler.addDocument(uid, "outfits", outfitID, data);
+      AsyncStorage.await(storage.addDocument(uid, "outfits", outfitID, data));
+      this.index.add(uid, outfit);
 
-      responseMap.put("response_type", "success");
-      responseMap.put("outfit", Utils.outfitStringToHashMap(outfit));
+      return Json.toJson(new OutfitResponse(OutfitItem.of(outfit), null));
     } catch (Exception e) {
       // Error likely occurred in the storage handler.
-      responseMap.put("response_type", "error");
-      String[] parts = e.getClass().toString().split("\\.");
-      responseMap.put("exception", parts[parts.length - 1]);
-      responseMap.put("error_message", e.getMessage());
+      return Json.toJson(ErrorResponse.of(e));
     }
-
-    return Utils.toMoshiJson(responseMap);
   }
 }
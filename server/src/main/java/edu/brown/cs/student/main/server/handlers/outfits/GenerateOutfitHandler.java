@@ -5,15 +5,20 @@ import edu.brown.cs.student.main.server.clothing.generation.ClosetData;
 import edu.brown.cs.student.main.server.clothing.generation.Generator;
 import edu.brown.cs.student.main.server.clothing.records.Clothing;
 import edu.brown.cs.student.main.server.clothing.records.Outfit;
-import edu.brown.cs.student.main.server.handlers.Utils;
 import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather.Geolocation;
 import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather.WeatherData;
 import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather.WeatherDatasource;
+import edu.brown.cs.student.main.server.serializers.ErrorResponse;
+import edu.brown.cs.student.main.server.serializers.Json;
+import edu.brown.cs.student.main.server.serializers.OutfitItem;
+import edu.brown.cs.student.main.server.serializers.OutfitResponse;
+import edu.brown.cs.student.main.server.storage.AsyncStorage;
 import edu.brown.cs.student.main.server.storage.StorageInterface;
+import edu.brown.cs.student.main.server.storage.codec.ClothingCodec;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import spark.Request;
 import spark.Response;
 import spark.Route;
@@ -45,7 +50,6 @@ public class GenerateOutfitHandler implements Route {
    */
   @Override
   public Object handle(Request request, Response response) {
-    Map<String, Object> responseMap = new HashMap<>();
     try {
       // Collect parameters from the request to build an outfit.
       String uid = request.queryParams("uid");
@@ -53,31 +57,25 @@ public class GenerateOutfitHandler implements Route {
       double lat = Double.parseDouble(request.queryParams("lat"));
       double lon = Double.parseDouble(request.queryParams("lon"));
 
+      // Read the closet in the background while the weather is looked up.
+      CompletableFuture<List<Map<String, Object>>> closetFuture =
+          this.storageHandler.async().getCollection(uid, "clothing");
+      WeatherData weatherData = weatherDatasource.getCurrentWeather(new Geolocation(lat, lon));
+
       // Get all the clothing items for the user
-      List<Map<String, Object>> vals = this.storageHandler.getCollection(uid, "clothing");
+      List<Map<String, Object>> vals = AsyncStorage.await(closetFuture);
       // Convert the key,value map to just a list of the clothing items.
-      List<String> clothingList =
-          vals.stream().map(clothing -> clothing.get("clothing").toString()).toList();
-      //
-      List<Clothing> clothingConverted =
-          clothingList.stream().map(Utils::fromStringClothing).toList();
+      List<Clothing> clothingConverted = vals.stream().map(ClothingCodec::decode).toList();
       ArrayList<Clothing> closet = new ArrayList<>(clothingConverted);
 
       Generator generator = new Generator(new ClosetData(closet));
       Formality formalityEnum = Formality.values()[formality];
-      WeatherData weatherData = weatherDatasource.getCurrentWeather(new Geolocation(lat, lon));
       Outfit outfit = generator.generateOutfit(weatherData, formalityEnum);
 
-      responseMap.put("response_type", "success");
-      responseMap.put("outfit", Utils.serializeOutfit(outfit, "0"));
+      return Json.toJson(new OutfitResponse(OutfitItem.of(outfit, "0"), weatherData.stale()));
     } catch (Exception e) {
       // Error likely occurred in the storage handler.
-      responseMap.put("response_type", "error");
-      String[] parts = e.getClass().toString().split("\\.");
-      responseMap.put("exception", parts[parts.length - 1]);
-      responseMap.put("error_message", e.getMessage());
+      return Json.toJson(ErrorResponse.of(e));
     }
-
-    return Utils.toMoshiJson(responseMap);
   }
 }
@@ -1,10 +1,18 @@
 package edu.brown.cs.student.main.server.handlers.outfits;
 
-import edu.brown.cs.student.main.server.handlers.Utils;
+import edu.brown.cs.student.main.server.handlers.Pagination;
+import edu.brown.cs.student.main.server.serializers.ErrorResponse;
+import edu.brown.cs.student.main.server.serializers.Json;
+import edu.brown.cs.student.main.server.serializers.JsonStream;
+import edu.brown.cs.student.main.server.serializers.OutfitItem;
 import edu.brown.cs.student.main.server.storage.StorageInterface;
-import java.util.HashMap;
+import edu.brown.cs.student.main.server.storage.codec.LegacyRewriter;
+import edu.brown.cs.student.main.server.storage.codec.OutfitCodec;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import spark.Request;
 import spark.Response;
 import spark.Route;
@@ -15,7 +23,11 @@ import spark.Route;
  */
 public class ListOutfitsHandler implements Route {
 
+  private static final Set<String> FIELDS =
+      Set.of("id", "top", "bottom", "shoe", "outerwear", "fullbody", "accessory");
+
   public StorageInterface storageHandler;
+  private final OutfitIndex index;
 
   /**
    * Constructor for the ListOutfitsHandler.
@@ -23,11 +35,25 @@ public class ListOutfitsHandler implements Route {
    * @param storageHandler The storage handler to be used.
    */
   public ListOutfitsHandler(StorageInterface storageHandler) {
+    this(storageHandler, new OutfitIndex(storageHandler));
+  }
+
+  /**
+   * Constructor for the ListOutfitsHandler.
+   *
+   * @param storageHandler The storage handler to be used.
+   * @param index The index of outfits by item, shared with the other outfit handlers.
+   */
+  public ListOutfitsHandler(StorageInterface storageHandler, OutfitIndex index) {
     this.storageHandler = storageHandler;
+    this.index = index;
   }
 
   /**
-   * Invoked when a request is made on this route's corresponding path
+   * Invoked when a request is made on this route's corresponding path. An optional contains
+   * parameter, a comma separated list of clothing IDs, limits the list to outfits with all of them;
+   * limit and cursor page through the outfits (see Pagination); and fields, a comma separated list
+   * of outfit fields, keeps only those fields.
    *
    * @param request The request object providing information about the HTTP request
    * @param response The response object providing functionality for modifying the response
@@ -35,28 +61,62 @@ public class ListOutfitsHandler implements Route {
    */
   @Override
   public Object handle(Request request, Response response) {
-    Map<String, Object> responseMap = new HashMap<>();
     try {
       String uid = request.queryParams("uid");
+      String fields = request.queryParams("fields");
+      List<String> projection = fields == null ? null : Pagination.fields(fields, FIELDS);
+
+      String contains = request.queryParams("contains");
+      BitSet matches =
+          contains == null || contains.isBlank()
+              ? null
+              : this.index.containingAll(uid, Arrays.asList(contains.split(",")));
 
-      // Get all the outfits for the user
-      List<Map<String, Object>> vals = this.storageHandler.getCollection(uid, "outfits");
+      // Get the user's (matching) outfits, a page at a time if asked.
+      Pagination.Result result =
+          Pagination.list(
+              this.storageHandler,
+              uid,
+              "outfits",
+              request.queryParams("limit"),
+              request.queryParams("cursor"),
+              doc -> matches == null || matches.get(OutfitCodec.decode(doc)[0]));
+      Map<String, Map<String, Object>> docs = result.documents();
 
-      // Convert the key,value map to just a list of the outfits.
-      List<String> outfitList =
-          vals.stream().map(outfit -> outfit.get("outfit").toString()).toList();
-      List<Map<String, String>> outfitMaps =
-          outfitList.stream().map(outfit -> Utils.outfitStringToHashMap(outfit)).toList();
-      responseMap.put("response_type", "success");
-      responseMap.put("clothing", outfitMaps);
+      LegacyRewriter.rewrite(
+          this.storageHandler,
+          uid,
+          "outfits",
+          docs,
+          OutfitCodec::isLegacy,
+          doc -> OutfitCodec.encode(OutfitCodec.decode(doc)));
+      String nextCursor = result.nextCursor();
+
+      // Stream the outfits out as they are decoded, rather than building the list of them first.
+      return JsonStream.write(
+          request,
+          response,
+          writer -> {
+            writer.beginObject();
+            writer.name("response_type").value("success");
+            writer.name("clothing").beginArray();
+            for (Map<String, Object> doc : docs.values()) {
+              OutfitItem item = OutfitItem.of(OutfitCodec.decode(doc));
+              if (projection == null) {
+                item.writeJson(writer);
+              } else {
+                JsonStream.writeFields(writer, item.toMap(), projection);
+              }
+            }
+            writer.endArray();
+            if (nextCursor != null) {
+              writer.name("next_cursor").value(nextCursor);
+            }
+            writer.endObject();
+          });
     } catch (Exception e) {
       // Error likely occurred in the storage handler.
-      responseMap.put("response_type", "error");
-      String[] parts = e.getClass().toString().split("\\.");
-      responseMap.put("exception", parts[parts.length - 1]);
-      responseMap.put("error_message", e.getMessage());
+      return Json.toJson(ErrorResponse.of(e));
     }
-
-    return Utils.toMoshiJson(responseMap);
   }
 }
@@ -0,0 +1,229 @@
+package edu.brown.cs.student.main.server.handlers.outfits;
+
+import edu.brown.cs.student.main.server.storage.ChangeFeed;
+import edu.brown.cs.student.main.server.storage.StorageInterface;
+import edu.brown.cs.student.main.server.storage.codec.OutfitCodec;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A reverse index from each clothing item to the outfits that contain it, so that deleting an item
+ * only touches its own outfits and "outfits containing all of these items" is a few bitmap ANDs.
+ *
+ * <p>Each item maps to a bitmap of outfit IDs. Outfit IDs are small per-user counters handed out in
+ * order, so a plain BitSet is already dense and compact. A user's index is built from their outfits
+ * the first time it is needed and is then kept up to date by the handlers that add and remove
+ * outfits, and by the storage's change feed for outfits written by other servers. Over storage with
+ * no change feed, it assumes this server is the only one writing the user's outfits.
+ */
+public class OutfitIndex {
+
+  // Outfit documents are named "outfit-" followed by the outfit's ID.
+  private static final int OUTFIT_PREFIX = "outfit-".length();
+
+  private final StorageInterface storage;
+  private final Map<String, UserIndex> users = new ConcurrentHashMap<>();
+
+  /** One user's index. Guarded by itself. */
+  private static final class UserIndex {
+    private boolean loaded;
+    private ChangeFeed.Subscription subscription;
+    private final Map<String, BitSet> outfitsByItem = new HashMap<>();
+    private final Map<Integer, List<String>> itemsByOutfit = new HashMap<>();
+
+    private void add(int outfitId, List<String> items) {
+      this.remove(outfitId);
+      this.itemsByOutfit.put(outfitId, items);
+      for (String item : items) {
+        this.outfitsByItem.computeIfAbsent(item, k -> new BitSet()).set(outfitId);
+      }
+    }
+
+    private void remove(int outfitId) {
+      List<String> items = this.itemsByOutfit.remove(outfitId);
+      if (items == null) {
+        return;
+      }
+      for (String item : items) {
+        BitSet outfits = this.outfitsByItem.get(item);
+        outfits.clear(outfitId);
+        if (outfits.isEmpty()) {
+          this.outfitsByItem.remove(item);
+        }
+      }
+    }
+  }
+
+  /**
+   * Constructor for the OutfitIndex.
+   *
+   * @param storage where users' outfits are read from the first time their index is needed
+   */
+  public OutfitIndex(StorageInterface storage) {
+    this.storage = storage;
+  }
+
+  /**
+   * Records an outfit that has just been written. Does nothing if the user's index hasn't been
+   * built yet, since building it will read the outfit.
+   *
+   * @param uid the user
+   * @param outfit the outfit's tuple: its ID, then its items' IDs
+   */
+  public void add(String uid, int[] outfit) {
+    UserIndex user = this.users.get(uid);
+    if (user == null) {
+      return;
+    }
+    synchronized (user) {
+      if (user.loaded) {
+        addOutfit(user, outfit);
+      }
+    }
+  }
+
+  /**
+   * Forgets an outfit that has just been deleted.
+   *
+   * @param uid the user
+   * @param outfitId the outfit's ID
+   */
+  public void remove(String uid, int outfitId) {
+    UserIndex user = this.users.get(uid);
+    if (user == null) {
+      return;
+    }
+    synchronized (user) {
+      user.remove(outfitId);
+    }
+  }
+
+  /**
+   * Finds the outfits that contain every one of the given items.
+   *
+   * @param uid the user
+   * @param itemIds the items' IDs
+   * @return the matching outfits' IDs, which the caller may modify
+   */
+  public BitSet containingAll(String uid, Collection<String> itemIds)
+      throws InterruptedException, ExecutionException {
+    UserIndex user = this.load(uid);
+    synchronized (user) {
+      BitSet result = null;
+      for (String item : itemIds) {
+        BitSet outfits = user.outfitsByItem.get(item);
+        if (outfits == null) {
+          return new BitSet();
+        }
+        if (result == null) {
+          result = (BitSet) outfits.clone();
+        } else {
+          result.and(outfits);
+        }
+      }
+      if (result == null) {
+        // No items to match, so every outfit matches.
+        result = new BitSet();
+        for (int outfitId : user.itemsByOutfit.keySet()) {
+          result.set(outfitId);
+        }
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Drops a user's index, so it is rebuilt from storage the next time it is needed. Call this after
+   * the user's outfits are cleared.
+   *
+   * @param uid the user
+   */
+  public void reset(String uid) {
+    UserIndex user = this.users.get(uid);
+    if (user != null) {
+      this.drop(uid, user);
+    }
+  }
+
+  /** Forgets a user's index, ending its subscription, unless it has already been replaced. */
+  private void drop(String uid, UserIndex user) {
+    this.users.remove(uid, user);
+    synchronized (user) {
+      if (user.subscription != null) {
+        user.subscription.close();
+        user.subscription = null;
+      }
+    }
+  }
+
+  private UserIndex load(String uid) throws InterruptedException, ExecutionException {
+    UserIndex user = this.users.computeIfAbsent(uid, k -> new UserIndex());
+    synchronized (user) {
+      if (!user.loaded) {
+        // Subscribe first, so outfits written by other servers during the build aren't missed.
+        if (user.subscription == null) {
+          user.subscription = this.follow(uid, user);
+        }
+        for (Map<String, Object> outfit : this.storage.getCollection(uid, "outfits")) {
+          addOutfit(user, OutfitCodec.decode(outfit));
+        }
+        user.loaded = true;
+      }
+    }
+    return user;
+  }
+
+  /** Subscribes to a user's outfit changes, or returns null if the storage has no change feed. */
+  private ChangeFeed.Subscription follow(String uid, UserIndex user) {
+    try {
+      return this.storage.subscribe(
+          uid,
+          "outfits",
+          new ChangeFeed.Listener() {
+            @Override
+            public void onChanges(List<ChangeFeed.Change> changes) {
+              try {
+                synchronized (user) {
+                  for (ChangeFeed.Change change : changes) {
+                    if (change.isDelete()) {
+                      user.remove(Integer.parseInt(change.doc_id().substring(OUTFIT_PREFIX)));
+                    } else {
+                      addOutfit(user, OutfitCodec.decode(change.data()));
+                    }
+                  }
+                }
+              } catch (RuntimeException e) {
+                // An index that missed a change can't be trusted; rebuild it when next needed.
+                System.err.println("Error applying outfit changes for " + uid + ": " + e);
+                drop(uid, user);
+              }
+            }
+
+            @Override
+            public void onFailure(Throwable error) {
+              drop(uid, user);
+            }
+          });
+    } catch (UnsupportedOperationException e) {
+      return null;
+    }
+  }
+
+  private static void addOutfit(UserIndex user, int[] outfit) {
+    List<String> items = new ArrayList<>();
+    for (int i = 1; i < outfit.length; i++) {
+      String item = Integer.toString(outfit[i]);
+      // Empty slots are EMPTY, or -1 in outfits stored before fromCsv mapped the client's -1.
+      if (outfit[i] >= 0 && !items.contains(item)) {
+        items.add(item);
+      }
+    }
+    user.add(outfit[0], items);
+  }
+}
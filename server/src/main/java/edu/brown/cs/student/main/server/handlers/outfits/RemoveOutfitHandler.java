@@ -1,8 +1,11 @@
 package edu.brown.cs.student.main.server.handlers.outfits;
 
-import edu.brown.cs.student.main.server.handlers.Utils;
+import edu.brown.cs.student.main.server.serializers.ErrorResponse;
+import edu.brown.cs.student.main.server.serializers.Json;
+import edu.brown.cs.student.main.server.serializers.OutfitListResponse;
+import edu.brown.cs.student.main.server.storage.AsyncStorage;
 import edu.brown.cs.student.main.server.storage.StorageInterface;
-import java.util.HashMap;
+import edu.brown.cs.student.main.server.storage.codec.OutfitCodec;
 import java.util.List;
 import java.util.Map;
 import spark.Request;
@@ -16,6 +19,7 @@ import spark.Route;
 public class RemoveOutfitHandler implements Route {
 
   private StorageInterface storageHandler;
+  private final OutfitIndex index;
 
   /**
    * Constructor for the RemoveOutfitHandler.
@@ -23,7 +27,18 @@ public class RemoveOutfitHandler implements Route {
    * @param storageHandler The storage handler to be used.
    */
   public RemoveOutfitHandler(StorageInterface storageHandler) {
+    this(storageHandler, new OutfitIndex(storageHandler));
+  }
+
+  /**
+   * Constructor for the RemoveOutfitHandler.
+   *
+   * @param storageHandler The storage handler to be used.
+   * @param index The index of outfits by item, shared with the other outfit handlers.
+   */
+  public RemoveOutfitHandler(StorageInterface storageHandler, OutfitIndex index) {
     this.storageHandler = storageHandler;
+    this.index = index;
   }
 
   /**
@@ -35,30 +50,28 @@ public class RemoveOutfitHandler implements Route {
    */
   @Override
   public Object handle(Request request, Response response) {
-    Map<String, Object> responseMap = new HashMap<>();
     try {
       String uid = request.queryParams("uid");
       String id = request.queryParams("id");
 
-      this.storageHandler.deleteDocument(
-          this.storageHandler.getDocumentReference(uid, "outfits", "outfit-" + id));
-
-      List<Map<String, Object>> vals = this.storageHandler.getCollection(uid, "outfits");
+      AsyncStorage storage = this.storageHandler.async();
+      List<Map<String, Object>> vals =
+          AsyncStorage.await(
+              storage
+                  .deleteDocument(uid, "outfits", "outfit-" + id)
+                  .thenCompose(
+                      deleted -> {
+                        this.index.remove(uid, Integer.parseInt(id));
+                        return storage.getCollection(uid, "outfits");
+                      }));
 
       List<String> outfitList =
-          vals.stream().map(outfit -> outfit.get("outfit").toString()).toList();
-
-      responseMap.put("response_type", "success");
-      responseMap.put("clothing", outfitList);
+          vals.stream().map(outfit -> OutfitCodec.toCsv(OutfitCodec.decode(outfit))).toList();
 
+      return Json.toJson(new OutfitListResponse(outfitList));
     } catch (Exception e) {
       // Error likely occurred in the storage handler.
-      responseMap.put("response_type", "error");
-      String[] parts = e.getClass().toString().split("\\.");
-      responseMap.put("exception", parts[parts.length - 1]);
-      responseMap.put("error_message", e.getMessage());
+      return Json.toJson(ErrorResponse.of(e));
     }
-
-    return Utils.toMoshiJson(responseMap);
   }
 }
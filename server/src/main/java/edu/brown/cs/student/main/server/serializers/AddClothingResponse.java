@@ -0,0 +1,24 @@
+package edu.brown.cs.student.main.server.serializers;
+
+import com.squareup.moshi.JsonWriter;
+import java.io.IOException;
+
+/**
+ * The response to adding a clothing item: the item as stored, and its description as given.
+ *
+ * @param clothing the item
+ * @param description its description, or null if none was given
+ */
+public record AddClothingResponse(ClothingItem clothing, String description)
+    implements JsonWritable {
+
+  @Override
+  public void writeJson(JsonWriter writer) throws IOException {
+    writer.beginObject();
+    writer.name("response_type").value("success");
+    writer.name("clothing");
+    this.clothing.writeJson(writer);
+    Json.field(writer, "description", this.description);
+    writer.endObject();
+  }
+}
@@ -0,0 +1,25 @@
+package edu.brown.cs.student.main.server.serializers;
+
+import com.squareup.moshi.JsonWriter;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The response to a batch weather request: one entry per location, in the order asked for.
+ *
+ * @param results each location's WeatherResponse, or ErrorResponse if it failed
+ */
+public record BatchWeatherResponse(List<JsonWritable> results) implements JsonWritable {
+
+  @Override
+  public void writeJson(JsonWriter writer) throws IOException {
+    writer.beginObject();
+    writer.name("response_type").value("success");
+    writer.name("results").beginArray();
+    for (JsonWritable result : this.results) {
+      result.writeJson(writer);
+    }
+    writer.endArray();
+    writer.endObject();
+  }
+}
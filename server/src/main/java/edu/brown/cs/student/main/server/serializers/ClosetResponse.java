@@ -0,0 +1,25 @@
+package edu.brown.cs.student.main.server.serializers;
+
+import com.squareup.moshi.JsonWriter;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The response to a change to a user's clothing: what is left of their closet.
+ *
+ * @param clothing the user's clothing items
+ */
+public record ClosetResponse(List<ClothingItem> clothing) implements JsonWritable {
+
+  @Override
+  public void writeJson(JsonWriter writer) throws IOException {
+    writer.beginObject();
+    writer.name("response_type").value("success");
+    writer.name("clothing").beginArray();
+    for (ClothingItem item : this.clothing) {
+      item.writeJson(writer);
+    }
+    writer.endArray();
+    writer.endObject();
+  }
+}
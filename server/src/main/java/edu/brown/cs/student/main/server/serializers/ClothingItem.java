@@ -0,0 +1,84 @@
+package edu.brown.cs.student.main.server.serializers;
+
+import com.squareup.moshi.JsonWriter;
+import edu.brown.cs.student.main.server.clothing.records.Clothing;
+import edu.brown.cs.student.main.server.clothing.records.Color;
+import edu.brown.cs.student.main.server.handlers.Utils;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A clothing item as the endpoints respond with it: enums as ordinals and colors as hex, all as
+ * strings, with "null" for a missing accent.
+ */
+public record ClothingItem(
+    String id,
+    String category,
+    String subcategory,
+    String formality,
+    String primary,
+    String accent,
+    String material)
+    implements JsonWritable {
+
+  /**
+   * Converts a clothing item to its response form.
+   *
+   * @param clothing the item
+   * @return the response form
+   */
+  public static ClothingItem of(Clothing clothing) {
+    Color accent = clothing.colors().accent();
+    return new ClothingItem(
+        Integer.toString(clothing.id()),
+        Integer.toString(clothing.category().ordinal()),
+        Integer.toString(clothing.subcategory().ordinal()),
+        Integer.toString(clothing.formality().ordinal()),
+        hex(clothing.colors().primary()),
+        accent != null ? hex(accent) : "null",
+        Integer.toString(clothing.material().ordinal()));
+  }
+
+  /** Returns the item's fields by name, for projecting onto a subset of them. */
+  public Map<String, String> toMap() {
+    Map<String, String> map = new HashMap<>();
+    map.put("id", this.id);
+    map.put("category", this.category);
+    map.put("subcategory", this.subcategory);
+    map.put("formality", this.formality);
+    map.put("primary", this.primary);
+    map.put("accent", this.accent);
+    map.put("material", this.material);
+    return map;
+  }
+
+  @Override
+  public void writeJson(JsonWriter writer) throws IOException {
+    this.writeJson(writer, null);
+  }
+
+  /**
+   * Writes this item with its description alongside its fields.
+   *
+   * @param writer the writer to write to
+   * @param description the description, or null to leave it out
+   * @throws IOException if the writer fails
+   */
+  public void writeJson(JsonWriter writer, String description) throws IOException {
+    writer.beginObject();
+    Json.field(writer, "id", this.id);
+    Json.field(writer, "category", this.category);
+    Json.field(writer, "subcategory", this.subcategory);
+    Json.field(writer, "formality", this.formality);
+    Json.field(writer, "primary", this.primary);
+    Json.field(writer, "accent", this.accent);
+    Json.field(writer, "material", this.material);
+    Json.field(writer, "description", description);
+    writer.endObject();
+  }
+
+  private static String hex(Color color) {
+    return Utils.rgbToHex(color.r(), color.g(), color.b());
+  }
+}
@@ -0,0 +1,43 @@
+package edu.brown.cs.student.main.server.serializers;
+
+import com.squareup.moshi.JsonWriter;
+import edu.brown.cs.student.main.server.storage.DeletionProgress;
+import java.io.IOException;
+
+/**
+ * The response describing a user deletion's progress.
+ *
+ * @param status "running", "done" or "failed"
+ * @param deleted the number of documents deleted so far
+ * @param elapsed_ms how long the deletion has run, or ran
+ * @param error_message why it failed, or null
+ */
+public record DeletionStatus(String status, long deleted, long elapsed_ms, String error_message)
+    implements JsonWritable {
+
+  /**
+   * Describes a deletion's progress as it is now.
+   *
+   * @param progress the progress
+   * @return the description
+   */
+  public static DeletionStatus of(DeletionProgress progress) {
+    Throwable failure = progress.failure();
+    return new DeletionStatus(
+        !progress.isDone() ? "running" : failure == null ? "done" : "failed",
+        progress.deleted(),
+        progress.elapsedMillis(),
+        failure != null ? failure.getMessage() : null);
+  }
+
+  @Override
+  public void writeJson(JsonWriter writer) throws IOException {
+    writer.beginObject();
+    writer.name("response_type").value("success");
+    writer.name("status").value(this.status);
+    writer.name("deleted").value(this.deleted);
+    writer.name("elapsed_ms").value(this.elapsed_ms);
+    Json.field(writer, "error_message", this.error_message);
+    writer.endObject();
+  }
+}
@@ -0,0 +1,81 @@
+package edu.brown.cs.student.main.server.serializers;
+
+import com.squareup.moshi.JsonWriter;
+import java.io.IOException;
+
+/**
+ * The response to a request that failed. Fields that don't apply to an error are left out.
+ *
+ * @param exception the exception's class name, without its package
+ * @param error_message what went wrong
+ * @param error_type a short code for errors not caused by an exception, e.g. "missing_parameter"
+ * @param error_arg the query parameter the error is about
+ * @param query_lat the latitude the request asked about, as given
+ * @param query_lon the longitude the request asked about, as given
+ */
+public record ErrorResponse(
+    String exception,
+    String error_message,
+    String error_type,
+    String error_arg,
+    String query_lat,
+    String query_lon)
+    implements JsonWritable {
+
+  /**
+   * Describes an exception.
+   *
+   * @param e the exception
+   * @return the response
+   */
+  public static ErrorResponse of(Throwable e) {
+    String[] parts = e.getClass().toString().split("\\.");
+    return new ErrorResponse(parts[parts.length - 1], e.getMessage(), null, null, null, null);
+  }
+
+  /**
+   * Describes an error that wasn't caused by an exception.
+   *
+   * @param errorType the error's code
+   * @param message what went wrong, or null
+   * @return the response
+   */
+  public static ErrorResponse of(String errorType, String message) {
+    return new ErrorResponse(null, message, errorType, null, null, null);
+  }
+
+  /**
+   * Describes a request that left out a required query parameter.
+   *
+   * @param arg the parameter
+   * @return the response
+   */
+  public static ErrorResponse missingParameter(String arg) {
+    return new ErrorResponse(null, null, "missing_parameter", arg, null, null);
+  }
+
+  /**
+   * Returns a copy of this error that also echoes the location the request asked about.
+   *
+   * @param lat the latitude, as given
+   * @param lon the longitude, as given
+   * @return the copy
+   */
+  public ErrorResponse withQuery(String lat, String lon) {
+    return new ErrorResponse(
+        this.exception, this.error_message, this.error_type, this.error_arg, lat, lon);
+  }
+
+  @Override
+  public void writeJson(JsonWriter writer) throws IOException {
+    writer.beginObject();
+    writer.name("response_type").value("error");
+    Json.field(writer, "exception", this.exception);
+    Json.field(writer, "error_message", this.error_message);
+    Json.field(writer, "error_type", this.error_type);
+    Json.field(writer, "error_arg", this.error_arg);
+    Json.field(writer, "query_lat", this.query_lat);
+    Json.field(writer, "query_lon", this.query_lon);
+    writer.endObject();
+  }
+}
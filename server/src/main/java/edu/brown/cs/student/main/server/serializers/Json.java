@@ -0,0 +1,114 @@
+package edu.brown.cs.student.main.server.serializers;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.JsonWriter;
+import com.squareup.moshi.Moshi;
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather.WeatherData;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import okio.Buffer;
+
+/**
+ * JSON serialization shared by every handler and datasource.
+ *
+ * <p>There is one Moshi, built once, so adapters are created once per type rather than once per
+ * call. Responses are written by walking them directly: maps, lists, strings, numbers and booleans
+ * are written as they are found, and JsonWritable values (the typed response records) write
+ * themselves. Anything else falls back to the shared Moshi's adapter for its class, looked up once;
+ * weather reports have a hand-written one. As with Moshi's map adapter, null map values are left
+ * out.
+ */
+public final class Json {
+
+  /** The shared Moshi. Its adapters are thread-safe, so they can be kept in static fields. */
+  public static final Moshi MOSHI =
+      new Moshi.Builder().add(WeatherData.class, WeatherResponse.DATA_ADAPTER).build();
+
+  private static final Map<Class<?>, JsonAdapter<Object>> FALLBACKS = new ConcurrentHashMap<>();
+
+  private Json() {}
+
+  /**
+   * Serializes a response.
+   *
+   * @param value a map, list, JsonWritable, or any value Moshi can serialize
+   * @return the JSON
+   */
+  public static String toJson(Object value) {
+    Buffer buffer = new Buffer();
+    try (JsonWriter writer = JsonWriter.of(buffer)) {
+      write(writer, value);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return buffer.readUtf8();
+  }
+
+  /**
+   * Parses JSON into the given type, with the shared Moshi's adapter for it.
+   *
+   * @param source the JSON
+   * @param targetType the type to parse into
+   * @param <T> the type
+   * @return the parsed value
+   * @throws IOException if the JSON is malformed or doesn't fit the type
+   */
+  public static <T> T fromJson(String source, Class<T> targetType) throws IOException {
+    return MOSHI.adapter(targetType).fromJson(source);
+  }
+
+  /**
+   * Writes one value of a response.
+   *
+   * @param writer the writer to write to
+   * @param value the value
+   * @throws IOException if the writer fails
+   */
+  public static void write(JsonWriter writer, Object value) throws IOException {
+    if (value == null) {
+      writer.nullValue();
+    } else if (value instanceof String s) {
+      writer.value(s);
+    } else if (value instanceof Boolean b) {
+      writer.value(b);
+    } else if (value instanceof Double || value instanceof Float) {
+      writer.value(((Number) value).doubleValue());
+    } else if (value instanceof Long
+        || value instanceof Integer
+        || value instanceof Short
+        || value instanceof Byte) {
+      writer.value(((Number) value).longValue());
+    } else if (value instanceof JsonWritable writable) {
+      writable.writeJson(writer);
+    } else if (value instanceof Map<?, ?> map) {
+      writer.beginObject();
+      for (Map.Entry<?, ?> entry : map.entrySet()) {
+        if (entry.getValue() != null) {
+          writer.name(entry.getKey().toString());
+          write(writer, entry.getValue());
+        }
+      }
+      writer.endObject();
+    } else if (value instanceof Iterable<?> items) {
+      writer.beginArray();
+      for (Object item : items) {
+        write(writer, item);
+      }
+      writer.endArray();
+    } else {
+      FALLBACKS
+          .computeIfAbsent(value.getClass(), type -> MOSHI.adapter((Type) type))
+          .toJson(writer, value);
+    }
+  }
+
+  /** Writes a string field, leaving it out if it is null, as Moshi does. */
+  static void field(JsonWriter writer, String name, String value) throws IOException {
+    if (value != null) {
+      writer.name(name).value(value);
+    }
+  }
+}
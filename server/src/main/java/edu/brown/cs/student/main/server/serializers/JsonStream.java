@@ -0,0 +1,191 @@
+package edu.brown.cs.student.main.server.serializers;
+
+import com.squareup.moshi.JsonWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import okio.BufferedSink;
+import okio.Okio;
+import spark.Request;
+import spark.Response;
+
+/**
+ * Streams a JSON response straight to the client, rather than building it as a String for Spark to
+ * send. A handler hands over a JsonWritable that writes the response as it goes, typically while
+ * iterating over what it read from storage, so the response is never held in memory whole and its
+ * first bytes go out before its last are written. It is gzipped if the client accepts gzip, going
+ * by the q-values in its Accept-Encoding, and the body turns out to be big enough to be worth it:
+ * the first kilobyte is held back until that is known. Either way the response varies on
+ * Accept-Encoding, and says so.
+ *
+ * <p>Once the body has started, the response is committed: headers can no longer be set (so they
+ * must be set in before filters, not after filters) and the status can't become an error. Handlers
+ * should therefore do everything that can fail before streaming. When there is no servlet response
+ * to stream to, as when a handler is called directly, the body is returned as a String instead.
+ */
+public final class JsonStream {
+
+  private static final int GZIP_BUFFER_BYTES = 8192;
+  // Smaller bodies fit in a packet or two anyway, and gzip's overhead can make them bigger.
+  private static final int MIN_GZIP_BYTES = 1024;
+
+  private JsonStream() {}
+
+  /**
+   * Writes the given fields of an item, in order and each once, leaving out any it doesn't have.
+   * This is Pagination.project for one item at a time.
+   *
+   * @param writer the writer
+   * @param item the item's fields by name
+   * @param fields the fields to keep
+   * @throws IOException if the writer fails
+   */
+  public static void writeFields(JsonWriter writer, Map<String, String> item, List<String> fields)
+      throws IOException {
+    writer.beginObject();
+    for (String field : new LinkedHashSet<>(fields)) {
+      if (item.containsKey(field)) {
+        writer.name(field).value(item.get(field));
+      }
+    }
+    writer.endObject();
+  }
+
+  /**
+   * Streams a response.
+   *
+   * @param request the request, whose Accept-Encoding decides on gzip
+   * @param response the response to stream to
+   * @param body writes the response's JSON
+   * @return what the handler should return to Spark: an empty String once the body has been
+   *     streamed, which Spark leaves alone since the response is committed, or the body itself
+   * @throws IOException if the client can't be written to
+   */
+  public static Object write(Request request, Response response, JsonWritable body)
+      throws IOException {
+    HttpServletResponse raw = response.raw();
+    if (raw == null) {
+      return Json.toJson(body);
+    }
+    response.type("application/json");
+    response.header("Vary", "Accept-Encoding");
+
+    OutputStream out = raw.getOutputStream();
+    try {
+      GzipIfLarge zipped =
+          acceptsGzip(request.headers("Accept-Encoding")) ? new GzipIfLarge(out, response) : null;
+      BufferedSink sink = Okio.buffer(Okio.sink(zipped != null ? zipped : out));
+      JsonWriter writer = JsonWriter.of(sink);
+      body.writeJson(writer);
+      writer.flush();
+      if (zipped != null) {
+        zipped.finish();
+      }
+      out.flush();
+    } catch (IOException | RuntimeException e) {
+      // If nothing has reached the client yet, drop what was buffered so the handler's error
+      // response goes out in its place, uncompressed.
+      if (!raw.isCommitted()) {
+        raw.resetBuffer();
+        raw.setHeader("Content-Encoding", null);
+      }
+      throw e;
+    }
+    return "";
+  }
+
+  /**
+   * Returns whether an Accept-Encoding header accepts gzip: if it lists gzip, with a q-value above
+   * zero, or else if it lists "*" with one.
+   *
+   * @param acceptEncoding the header, or null
+   * @return true if the response may be gzipped
+   */
+  static boolean acceptsGzip(String acceptEncoding) {
+    if (acceptEncoding == null) {
+      return false;
+    }
+    Double gzip = null;
+    Double any = null;
+    for (String entry : acceptEncoding.split(",")) {
+      String[] params = entry.split(";");
+      String coding = params[0].trim().toLowerCase(Locale.ROOT);
+      double q = 1;
+      for (int i = 1; i < params.length; i++) {
+        String param = params[i].trim().toLowerCase(Locale.ROOT);
+        if (param.startsWith("q=")) {
+          try {
+            q = Double.parseDouble(param.substring(2));
+          } catch (NumberFormatException e) {
+            q = 0;
+          }
+        }
+      }
+      if (coding.equals("gzip") || coding.equals("x-gzip")) {
+        gzip = q;
+      } else if (coding.equals("*")) {
+        any = q;
+      }
+    }
+    return gzip != null ? gzip > 0 : any != null && any > 0;
+  }
+
+  /**
+   * Holds the start of a body back until it reaches MIN_GZIP_BYTES, then gzips it from there on. A
+   * body that ends first is sent as it is.
+   */
+  private static final class GzipIfLarge extends OutputStream {
+    private final OutputStream out;
+    private final Response response;
+    private ByteArrayOutputStream held = new ByteArrayOutputStream();
+    private GZIPOutputStream zipped;
+
+    GzipIfLarge(OutputStream out, Response response) {
+      this.out = out;
+      this.response = response;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      this.write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (this.zipped != null) {
+        this.zipped.write(b, off, len);
+        return;
+      }
+      this.held.write(b, off, len);
+      if (this.held.size() >= MIN_GZIP_BYTES) {
+        this.response.header("Content-Encoding", "gzip");
+        this.zipped = new GZIPOutputStream(this.out, GZIP_BUFFER_BYTES);
+        this.held.writeTo(this.zipped);
+        this.held = null;
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      // Until the body is known to be big enough, there is nothing to send.
+      if (this.zipped != null) {
+        this.zipped.flush();
+      }
+    }
+
+    /** Ends the body: the gzip trailer if it was gzipped, or else all of it, as it is. */
+    void finish() throws IOException {
+      if (this.zipped != null) {
+        this.zipped.finish();
+      } else {
+        this.held.writeTo(this.out);
+      }
+    }
+  }
+}
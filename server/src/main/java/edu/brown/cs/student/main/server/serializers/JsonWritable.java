@@ -0,0 +1,16 @@
+package edu.brown.cs.student.main.server.serializers;
+
+import com.squareup.moshi.JsonWriter;
+import java.io.IOException;
+
+/** A response value that writes itself as JSON, so serializing it takes no reflection. */
+public interface JsonWritable {
+
+  /**
+   * Writes this value.
+   *
+   * @param writer the writer to write to
+   * @throws IOException if the writer fails
+   */
+  void writeJson(JsonWriter writer) throws IOException;
+}
@@ -0,0 +1,83 @@
+package edu.brown.cs.student.main.server.serializers;
+
+import com.squareup.moshi.JsonWriter;
+import edu.brown.cs.student.main.server.clothing.records.Clothing;
+import edu.brown.cs.student.main.server.clothing.records.Outfit;
+import edu.brown.cs.student.main.server.storage.codec.OutfitCodec;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/** An outfit as the endpoints respond with it: its id and each slot's clothing id, as strings. */
+public record OutfitItem(
+    String id,
+    String top,
+    String bottom,
+    String shoe,
+    String outerwear,
+    String fullbody,
+    String accessory)
+    implements JsonWritable {
+
+  /**
+   * Converts a stored outfit to its response form, with "null" for empty slots.
+   *
+   * @param outfit the outfit's id and slots, as OutfitCodec stores them
+   * @return the response form
+   */
+  public static OutfitItem of(int[] outfit) {
+    String[] slots = new String[OutfitCodec.SIZE];
+    for (int i = 0; i < OutfitCodec.SIZE; i++) {
+      slots[i] = outfit[i] == OutfitCodec.EMPTY ? "null" : Integer.toString(outfit[i]);
+    }
+    return new OutfitItem(slots[0], slots[1], slots[2], slots[3], slots[4], slots[5], slots[6]);
+  }
+
+  /**
+   * Converts a generated outfit to its response form, with "-1" for empty slots.
+   *
+   * @param outfit the outfit
+   * @param id the id to give it
+   * @return the response form
+   */
+  public static OutfitItem of(Outfit outfit, String id) {
+    return new OutfitItem(
+        id,
+        slot(outfit.top()),
+        slot(outfit.bottom()),
+        slot(outfit.shoe()),
+        slot(outfit.outerwear()),
+        slot(outfit.fullbody()),
+        slot(outfit.accessory()));
+  }
+
+  /** Returns the outfit's fields by name, for projecting onto a subset of them. */
+  public Map<String, String> toMap() {
+    Map<String, String> map = new HashMap<>();
+    map.put("id", this.id);
+    map.put("top", this.top);
+    map.put("bottom", this.bottom);
+    map.put("shoe", this.shoe);
+    map.put("outerwear", this.outerwear);
+    map.put("fullbody", this.fullbody);
+    map.put("accessory", this.accessory);
+    return map;
+  }
+
+  @Override
+  public void writeJson(JsonWriter writer) throws IOException {
+    writer.beginObject();
+    Json.field(writer, "id", this.id);
+    Json.field(writer, "top", this.top);
+    Json.field(writer, "bottom", this.bottom);
+    Json.field(writer, "shoe", this.shoe);
+    Json.field(writer, "outerwear", this.outerwear);
+    Json.field(writer, "fullbody", this.fullbody);
+    Json.field(writer, "accessory", this.accessory);
+    writer.endObject();
+  }
+
+  private static String slot(Clothing clothing) {
+    return clothing != null ? Integer.toString(clothing.id()) : "-1";
+  }
+}
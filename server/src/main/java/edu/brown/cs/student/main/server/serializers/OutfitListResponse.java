@@ -0,0 +1,26 @@
+package edu.brown.cs.student.main.server.serializers;
+
+import com.squareup.moshi.JsonWriter;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The response to removing an outfit: the user's remaining outfits in their CSV form, under
+ * "clothing" as the endpoint has always had them.
+ *
+ * @param clothing the outfits, as OutfitCodec.toCsv formats them
+ */
+public record OutfitListResponse(List<String> clothing) implements JsonWritable {
+
+  @Override
+  public void writeJson(JsonWriter writer) throws IOException {
+    writer.beginObject();
+    writer.name("response_type").value("success");
+    writer.name("clothing").beginArray();
+    for (String outfit : this.clothing) {
+      writer.value(outfit);
+    }
+    writer.endArray();
+    writer.endObject();
+  }
+}
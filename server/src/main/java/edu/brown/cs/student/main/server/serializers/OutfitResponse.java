@@ -0,0 +1,26 @@
+package edu.brown.cs.student.main.server.serializers;
+
+import com.squareup.moshi.JsonWriter;
+import java.io.IOException;
+
+/**
+ * The response to adding or generating an outfit.
+ *
+ * @param outfit the outfit
+ * @param stale_weather for a generated outfit, whether the weather it was picked for was stale;
+ *     null otherwise
+ */
+public record OutfitResponse(OutfitItem outfit, Boolean stale_weather) implements JsonWritable {
+
+  @Override
+  public void writeJson(JsonWriter writer) throws IOException {
+    writer.beginObject();
+    writer.name("response_type").value("success");
+    writer.name("outfit");
+    this.outfit.writeJson(writer);
+    if (this.stale_weather != null) {
+      writer.name("stale_weather").value(this.stale_weather);
+    }
+    writer.endObject();
+  }
+}
@@ -0,0 +1,54 @@
+package edu.brown.cs.student.main.server.serializers;
+
+import com.squareup.moshi.JsonWriter;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The response to a sync that only needs the changes since the client's version.
+ *
+ * @param version the version the changes bring the client up to
+ * @param changes each document changed since the client's version, in the order they last changed
+ */
+public record SyncChanges(long version, List<SyncChanges.Change> changes) implements JsonWritable {
+
+  /**
+   * One changed document, as it is now.
+   *
+   * @param version the version it last changed at
+   * @param collection its collection
+   * @param id its item's id
+   * @param item the item, or null if it has been removed
+   */
+  public record Change(long version, String collection, String id, JsonWritable item)
+      implements JsonWritable {
+
+    @Override
+    public void writeJson(JsonWriter writer) throws IOException {
+      writer.beginObject();
+      writer.name("version").value(this.version);
+      writer.name("collection").value(this.collection);
+      writer.name("id").value(this.id);
+      writer.name("type").value(this.item == null ? "remove" : "add");
+      if (this.item != null) {
+        writer.name("item");
+        this.item.writeJson(writer);
+      }
+      writer.endObject();
+    }
+  }
+
+  @Override
+  public void writeJson(JsonWriter writer) throws IOException {
+    writer.beginObject();
+    writer.name("response_type").value("success");
+    writer.name("snapshot").value(false);
+    writer.name("version").value(this.version);
+    writer.name("changes").beginArray();
+    for (Change change : this.changes) {
+      change.writeJson(writer);
+    }
+    writer.endArray();
+    writer.endObject();
+  }
+}
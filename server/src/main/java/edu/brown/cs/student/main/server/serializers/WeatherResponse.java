@@ -0,0 +1,145 @@
+package edu.brown.cs.student.main.server.serializers;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.JsonReader;
+import com.squareup.moshi.JsonWriter;
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather.WeatherData;
+import java.io.IOException;
+
+/**
+ * The response to a successful weather request: the report, under "temperature", and whether it is
+ * stale, which is written once, beside the report rather than in it.
+ *
+ * @param temperature the weather report
+ * @param query_lat the latitude the request asked about, as given, for a batch entry
+ * @param query_lon the longitude the request asked about, as given, for a batch entry
+ */
+public record WeatherResponse(WeatherData temperature, String query_lat, String query_lon)
+    implements JsonWritable {
+
+  private static final JsonReader.Options FIELDS =
+      JsonReader.Options.of(
+          "high", "low", "current", "rain", "cloud", "snowfall", "lat", "lon", "date", "stale");
+
+  /**
+   * Reads and writes weather reports wherever they appear, registered with Json.MOSHI. Moshi can't
+   * read records by reflection, so both directions are written out by hand.
+   */
+  static final JsonAdapter<WeatherData> DATA_ADAPTER =
+      new JsonAdapter<>() {
+        @Override
+        public WeatherData fromJson(JsonReader reader) throws IOException {
+          if (reader.peek() == JsonReader.Token.NULL) {
+            return reader.nextNull();
+          }
+          return read(reader);
+        }
+
+        @Override
+        public void toJson(JsonWriter writer, WeatherData data) throws IOException {
+          if (data == null) {
+            writer.nullValue();
+          } else {
+            write(writer, data);
+          }
+        }
+      };
+
+  /**
+   * Creates the response to a request for one location.
+   *
+   * @param temperature the weather report
+   */
+  public WeatherResponse(WeatherData temperature) {
+    this(temperature, null, null);
+  }
+
+  /**
+   * Returns a copy of this response that also echoes the location the request asked about.
+   *
+   * @param lat the latitude, as given
+   * @param lon the longitude, as given
+   * @return the copy
+   */
+  public WeatherResponse withQuery(String lat, String lon) {
+    return new WeatherResponse(this.temperature, lat, lon);
+  }
+
+  @Override
+  public void writeJson(JsonWriter writer) throws IOException {
+    writer.beginObject();
+    writer.name("response_type").value("success");
+    Json.field(writer, "query_lat", this.query_lat);
+    Json.field(writer, "query_lon", this.query_lon);
+    writer.name("temperature");
+    write(writer, this.temperature, false);
+    writer.name("stale").value(this.temperature.stale());
+    writer.endObject();
+  }
+
+  /**
+   * Reads a weather report written by write. Unknown fields are skipped, and missing ones take
+   * their default values.
+   *
+   * @param reader the reader to read from
+   * @return the report
+   * @throws IOException if the JSON is malformed
+   */
+  public static WeatherData read(JsonReader reader) throws IOException {
+    int[] ints = new int[6];
+    double lat = 0;
+    double lon = 0;
+    String date = null;
+    boolean stale = false;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      int field = reader.selectName(FIELDS);
+      if (field >= 0 && field < ints.length) {
+        ints[field] = reader.nextInt();
+      } else if (field == 6) {
+        lat = reader.nextDouble();
+      } else if (field == 7) {
+        lon = reader.nextDouble();
+      } else if (field == 8) {
+        date = reader.peek() == JsonReader.Token.NULL ? reader.nextNull() : reader.nextString();
+      } else if (field == 9) {
+        stale = reader.nextBoolean();
+      } else {
+        reader.skipName();
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return new WeatherData(
+        ints[0], ints[1], ints[2], ints[3], ints[4], ints[5], lat, lon, date, stale);
+  }
+
+  /**
+   * Writes a weather report with the same fields Moshi would give it.
+   *
+   * @param writer the writer to write to
+   * @param data the report
+   * @throws IOException if the writer fails
+   */
+  public static void write(JsonWriter writer, WeatherData data) throws IOException {
+    write(writer, data, true);
+  }
+
+  private static void write(JsonWriter writer, WeatherData data, boolean withStale)
+      throws IOException {
+    writer.beginObject();
+    writer.name("high").value(data.high());
+    writer.name("low").value(data.low());
+    writer.name("current").value(data.current());
+    writer.name("rain").value(data.rain());
+    writer.name("cloud").value(data.cloud());
+    writer.name("snowfall").value(data.snowfall());
+    writer.name("lat").value(data.lat());
+    writer.name("lon").value(data.lon());
+    Json.field(writer, "date", data.date());
+    if (withStale) {
+      writer.name("stale").value(data.stale());
+    }
+    writer.endObject();
+  }
+}
@@ -0,0 +1,92 @@
+package edu.brown.cs.student.main.server.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.UnaryOperator;
+
+/**
+ * A non-blocking view of a user's documents. Every method returns immediately with a future, so a
+ * caller can issue several independent reads and writes at once and then wait on them together.
+ * Write futures complete only once the write has landed in the backing store.
+ *
+ * <p>Get one from any StorageInterface with async().
+ */
+public interface AsyncStorage {
+
+  CompletableFuture<Void> addDocument(
+      String uid, String collection_id, String doc_id, Map<String, Object> data);
+
+  /**
+   * Gets every document in a user's collection, keyed by document id.
+   *
+   * @param uid the user
+   * @param collection_id the collection
+   * @return a future of the documents' data by document id
+   */
+  CompletableFuture<Map<String, Map<String, Object>>> getCollectionDocuments(
+      String uid, String collection_id);
+
+  default CompletableFuture<List<Map<String, Object>>> getCollection(
+      String uid, String collection_id) {
+    return this.getCollectionDocuments(uid, collection_id)
+        .thenApply(docs -> new ArrayList<>(docs.values()));
+  }
+
+  CompletableFuture<Void> clearUser(String uid);
+
+  CompletableFuture<Void> deleteDocument(String uid, String collection_id, String doc_id);
+
+  /**
+   * Gets one document from a user's collection.
+   *
+   * @param uid the user
+   * @param collection_id the collection
+   * @param doc_id the document
+   * @return a future of the document's data, or of null if there is no such document
+   */
+  CompletableFuture<Map<String, Object>> getDocument(
+      String uid, String collection_id, String doc_id);
+
+  /**
+   * Atomically updates a document; see StorageInterface.transact.
+   *
+   * @param uid the user
+   * @param collection_id the collection
+   * @param doc_id the document
+   * @param update computes the new data from the current data, which is null if the document does
+   *     not exist; it may be run more than once, and returning null leaves the document as it is
+   * @return a future of the data written, or of null if nothing was
+   */
+  CompletableFuture<Map<String, Object>> transact(
+      String uid, String collection_id, String doc_id, UnaryOperator<Map<String, Object>> update);
+
+  /**
+   * Commits a batch of writes atomically; see StorageInterface.commit.
+   *
+   * @param batch the writes
+   * @return a future that completes once every write has landed
+   */
+  CompletableFuture<Void> commit(StorageBatch batch);
+
+  /**
+   * Waits for a future, rethrowing whatever it failed with rather than wrapping it, so that callers
+   * report the real failure.
+   *
+   * @param future the future to wait on
+   * @return the future's value
+   * @throws Exception whatever the future failed with
+   */
+  static <T> T await(CompletableFuture<T> future) throws Exception {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof Exception cause) {
+        throw cause;
+      }
+      throw e;
+    }
+  }
+}
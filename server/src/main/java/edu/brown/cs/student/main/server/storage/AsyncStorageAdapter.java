@@ -0,0 +1,111 @@
+package edu.brown.cs.student.main.server.storage;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.UnaryOperator;
+
+/**
+ * Adapts a blocking StorageInterface to AsyncStorage by running each call on a shared pool. Used
+ * for the in-memory and embedded backends, whose calls are short and never wait on the network.
+ */
+public class AsyncStorageAdapter implements AsyncStorage {
+
+  // Shared by every adapter, so the number of blocked storage threads stays bounded.
+  private static final ExecutorService POOL =
+      Executors.newFixedThreadPool(
+          16,
+          r -> {
+            Thread t = new Thread(r, "storage-async");
+            t.setDaemon(true);
+            return t;
+          });
+
+  private final StorageInterface storage;
+
+  /** A blocking storage call. */
+  @FunctionalInterface
+  private interface Call<T> {
+    T run() throws Exception;
+  }
+
+  /**
+   * Constructor for the AsyncStorageAdapter.
+   *
+   * @param storage the blocking storage to adapt
+   */
+  public AsyncStorageAdapter(StorageInterface storage) {
+    this.storage = storage;
+  }
+
+  @Override
+  public CompletableFuture<Void> addDocument(
+      String uid, String collection_id, String doc_id, Map<String, Object> data) {
+    return run(
+        () -> {
+          this.storage.addDocument(uid, collection_id, doc_id, data);
+          return null;
+        });
+  }
+
+  @Override
+  public CompletableFuture<Map<String, Map<String, Object>>> getCollectionDocuments(
+      String uid, String collection_id) {
+    return run(() -> this.storage.getCollectionDocuments(uid, collection_id));
+  }
+
+  @Override
+  public CompletableFuture<Void> clearUser(String uid) {
+    return run(
+        () -> {
+          this.storage.clearUser(uid);
+          return null;
+        });
+  }
+
+  @Override
+  public CompletableFuture<Void> deleteDocument(String uid, String collection_id, String doc_id) {
+    return run(
+        () -> {
+          this.storage.deleteDocument(uid, collection_id, doc_id);
+          return null;
+        });
+  }
+
+  @Override
+  public CompletableFuture<Map<String, Object>> getDocument(
+      String uid, String collection_id, String doc_id) {
+    return run(() -> this.storage.getDocument(uid, collection_id, doc_id));
+  }
+
+  @Override
+  public CompletableFuture<Map<String, Object>> transact(
+      String uid, String collection_id, String doc_id, UnaryOperator<Map<String, Object>> update) {
+    return run(() -> this.storage.transact(uid, collection_id, doc_id, update));
+  }
+
+  @Override
+  public CompletableFuture<Void> commit(StorageBatch batch) {
+    return run(
+        () -> {
+          this.storage.commit(batch);
+          return null;
+        });
+  }
+
+  private static <T> CompletableFuture<T> run(Call<T> call) {
+    return CompletableFuture.supplyAsync(
+        () -> {
+          try {
+            return call.run();
+          } catch (RuntimeException e) {
+            throw e;
+          } catch (Exception e) {
+            throw new CompletionException(e);
+          }
+        },
+        POOL);
+  }
+}
@@ -0,0 +1,465 @@
+package edu.brown.cs.student.main.server.storage;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.function.UnaryOperator;
+
+/**
+ * A StorageInterface decorator that keeps users' collections in memory, so that repeat reads of a
+ * closet don't go back to the underlying store.
+ *
+ * <p>Whole collections are cached the first time they are read. Writes go to the underlying store
+ * first and are then applied to any cached copy (write-through), and clearing a user drops
+ * everything cached for them. The cache is bounded both by the number of users and by an estimate
+ * of the bytes held; when either bound is exceeded, the least recently used users are evicted.
+ *
+ * <p>Writes made elsewhere, such as by another server sharing the same Firestore project, reach the
+ * cache through the underlying store's change feed: each cached collection is loaded by subscribing
+ * to it (with Firestore, the snapshot listener's first snapshot is the load, so nothing is read
+ * twice), changes are applied to it as they arrive, and the subscription is closed when the user is
+ * evicted. If the feed breaks, the collection is dropped and reloaded on the next read. A load that
+ * overlaps a change to the same user isn't cached, as it may be stale; other users' changes don't
+ * affect it. Over a store with no change feed, the cache only sees this server's own writes.
+ *
+ * <p>Documents are copied going in and coming out, so callers can't corrupt the cache by mutating
+ * what they are given.
+ */
+public class CachingStorage implements StorageInterface {
+
+  // Rough per-entry overhead of a HashMap node, its key and the boxed value, in bytes.
+  private static final long ENTRY_OVERHEAD = 64;
+
+  private final StorageInterface delegate;
+  private final int maxUsers;
+  private final long maxBytes;
+
+  // Access-ordered, so iteration starts at the least recently used user. Guarded by this.
+  private final LinkedHashMap<String, UserCache> users = new LinkedHashMap<>(16, 0.75f, true);
+  private long bytes;
+
+  private long hits;
+  private long misses;
+  private long evictions;
+  private long missNanos;
+
+  /** Everything cached for one user: collection id -> document id -> data. */
+  private static final class UserCache {
+    private final Map<String, Map<String, Map<String, Object>>> collections = new HashMap<>();
+    // The change subscriptions keeping this user's collections current, by collection id.
+    private final Map<String, ChangeFeed.Subscription> subscriptions = new HashMap<>();
+    private long bytes;
+    // Bumped by every change to the user, so a collection loaded concurrently with one isn't cached
+    // stale.
+    private long generation;
+  }
+
+  // Stands in for a subscription when the underlying store has no change feed.
+  private static final ChangeFeed.Subscription NO_FEED = () -> {};
+
+  /**
+   * A snapshot of the cache's metrics.
+   *
+   * @param hits reads answered from memory
+   * @param misses reads that went to the underlying store
+   * @param hitRate hits as a fraction of all reads
+   * @param savedRoundTrips round trips to the underlying store avoided, one per hit
+   * @param estimatedSavedMillis the time saved, estimating each hit at the mean miss latency
+   * @param evictions users evicted to stay within bounds
+   * @param users users currently cached
+   * @param bytes the estimated size of everything cached
+   */
+  public record Stats(
+      long hits,
+      long misses,
+      double hitRate,
+      long savedRoundTrips,
+      double estimatedSavedMillis,
+      long evictions,
+      int users,
+      long bytes) {}
+
+  /**
+   * Constructor for the CachingStorage.
+   *
+   * @param delegate the underlying store
+   * @param maxUsers the most users to hold in memory at once
+   * @param maxBytes the most (estimated) bytes to hold in memory at once
+   */
+  public CachingStorage(StorageInterface delegate, int maxUsers, long maxBytes) {
+    this.delegate = delegate;
+    this.maxUsers = maxUsers;
+    this.maxBytes = maxBytes;
+  }
+
+  /** Adds a document in the underlying store, then to the cached collection if there is one. */
+  @Override
+  public void addDocument(
+      String uid, String collection_id, String doc_id, Map<String, Object> data) {
+    this.delegate.addDocument(uid, collection_id, doc_id, data);
+    synchronized (this) {
+      this.applyLocked(uid, collection_id, doc_id, data);
+      this.evictIfNeeded();
+    }
+  }
+
+  /** Gets a collection, from memory if it is cached and from the underlying store if not. */
+  @Override
+  public Map<String, Map<String, Object>> getCollectionDocuments(String uid, String collection_id)
+      throws InterruptedException, ExecutionException {
+    long loadedAtGeneration;
+    UserCache loadingFor;
+    // Stands in for the subscription while this read loads the collection; null if another read
+    // already is, in which case this one just reads.
+    ChangeFeed.Subscription claim = null;
+    synchronized (this) {
+      UserCache user = this.users.get(uid);
+      Map<String, Map<String, Object>> collection =
+          user == null ? null : user.collections.get(collection_id);
+      if (collection != null) {
+        this.hits++;
+        return copy(collection);
+      }
+      loadingFor = this.users.computeIfAbsent(uid, k -> new UserCache());
+      loadedAtGeneration = loadingFor.generation;
+      if (!loadingFor.subscriptions.containsKey(collection_id)) {
+        claim = () -> {};
+        loadingFor.subscriptions.put(collection_id, claim);
+      }
+    }
+
+    long start = System.nanoTime();
+    Map<String, Map<String, Object>> loaded;
+    ChangeFeed.Subscription subscription = null;
+    if (claim == null) {
+      loaded = this.delegate.getCollectionDocuments(uid, collection_id);
+    } else {
+      try {
+        ChangeFeed.Snapshot snapshot =
+            this.delegate.subscribeWithSnapshot(
+                uid, collection_id, this.listener(uid, collection_id));
+        loaded = snapshot.documents();
+        subscription = snapshot.subscription();
+      } catch (UnsupportedOperationException e) {
+        loaded = this.delegate.getCollectionDocuments(uid, collection_id);
+        subscription = NO_FEED;
+      } catch (InterruptedException | ExecutionException | RuntimeException e) {
+        synchronized (this) {
+          loadingFor.subscriptions.remove(collection_id, claim);
+        }
+        throw e;
+      }
+    }
+    long elapsed = System.nanoTime() - start;
+
+    synchronized (this) {
+      this.misses++;
+      this.missNanos += elapsed;
+      if (subscription == null) {
+        return loaded;
+      }
+      // Only cache the load if nothing changed meanwhile and the user (with the subscription
+      // keeping the collection current) wasn't evicted. Otherwise the subscription goes too, since
+      // the changes it has already delivered were dropped.
+      if (loadingFor.generation == loadedAtGeneration
+          && this.users.get(uid) == loadingFor
+          && loadingFor.subscriptions.get(collection_id) == claim) {
+        loadingFor.subscriptions.put(collection_id, subscription);
+        Map<String, Map<String, Object>> collection = copy(loaded);
+        loadingFor.collections.put(collection_id, collection);
+        this.resize(loadingFor, estimateCollection(collection));
+        this.evictIfNeeded();
+      } else {
+        loadingFor.subscriptions.remove(collection_id, claim);
+        subscription.close();
+      }
+    }
+    return loaded;
+  }
+
+  /**
+   * Gets a page of a collection, cut from memory if the whole collection is cached. Otherwise the
+   * page is read from the underlying store and not cached, since a page on its own can't answer
+   * later reads.
+   */
+  @Override
+  public CollectionPage getCollectionPage(
+      String uid, String collection_id, String startAfter, int limit)
+      throws InterruptedException, ExecutionException {
+    synchronized (this) {
+      UserCache user = this.users.get(uid);
+      Map<String, Map<String, Object>> collection =
+          user == null ? null : user.collections.get(collection_id);
+      if (collection != null) {
+        this.hits++;
+        CollectionPage page = CollectionPage.slice(collection, startAfter, limit);
+        return new CollectionPage(copy(page.documents()), page.more());
+      }
+    }
+    long start = System.nanoTime();
+    CollectionPage page = this.delegate.getCollectionPage(uid, collection_id, startAfter, limit);
+    synchronized (this) {
+      this.misses++;
+      this.missNanos += System.nanoTime() - start;
+    }
+    return page;
+  }
+
+  /** Lists users from the underlying store, which knows about users this cache has never seen. */
+  @Override
+  public List<String> listUsers() throws InterruptedException, ExecutionException {
+    return this.delegate.listUsers();
+  }
+
+  /** Clears the user in the underlying store and drops everything cached for them. */
+  @Override
+  public void clearUser(String uid) throws InterruptedException, ExecutionException {
+    this.delegate.clearUser(uid);
+    this.invalidate(uid);
+  }
+
+  /** Clears the user in the underlying store with progress, then drops everything cached. */
+  @Override
+  public void clearUser(String uid, DeletionProgress progress)
+      throws InterruptedException, ExecutionException {
+    this.delegate.clearUser(uid, progress);
+    this.invalidate(uid);
+  }
+
+  /**
+   * Deletes a document in the underlying store, then from the cached collection if there is one.
+   */
+  @Override
+  public void deleteDocument(String uid, String collection_id, String doc_id) {
+    this.delegate.deleteDocument(uid, collection_id, doc_id);
+    synchronized (this) {
+      this.applyLocked(uid, collection_id, doc_id, null);
+    }
+  }
+
+  /** Gets a document, answering from memory if its whole collection is cached. */
+  @Override
+  public Map<String, Object> getDocument(String uid, String collection_id, String doc_id)
+      throws InterruptedException, ExecutionException {
+    synchronized (this) {
+      UserCache user = this.users.get(uid);
+      Map<String, Map<String, Object>> collection =
+          user == null ? null : user.collections.get(collection_id);
+      if (collection != null) {
+        this.hits++;
+        Map<String, Object> data = collection.get(doc_id);
+        return data == null ? null : new HashMap<>(data);
+      }
+    }
+    long start = System.nanoTime();
+    Map<String, Object> data = this.delegate.getDocument(uid, collection_id, doc_id);
+    synchronized (this) {
+      this.misses++;
+      this.missNanos += System.nanoTime() - start;
+    }
+    return data;
+  }
+
+  /** Updates a document atomically in the underlying store, then in the cached collection. */
+  @Override
+  public Map<String, Object> transact(
+      String uid, String collection_id, String doc_id, UnaryOperator<Map<String, Object>> update)
+      throws InterruptedException, ExecutionException {
+    Map<String, Object> next = this.delegate.transact(uid, collection_id, doc_id, update);
+    if (next == null) {
+      return null;
+    }
+    synchronized (this) {
+      this.applyLocked(uid, collection_id, doc_id, next);
+      this.evictIfNeeded();
+    }
+    return next;
+  }
+
+  /** Commits a batch in the underlying store, then applies it to the cached collections. */
+  @Override
+  public void commit(StorageBatch batch) throws InterruptedException, ExecutionException {
+    this.delegate.commit(batch);
+    synchronized (this) {
+      for (StorageBatch.Write write : batch.writes()) {
+        this.applyLocked(write.uid(), write.collection_id(), write.doc_id(), write.data());
+      }
+      this.evictIfNeeded();
+    }
+  }
+
+  /** Passes the subscription through to the underlying store's change feed. */
+  @Override
+  public ChangeFeed.Subscription subscribe(
+      String uid, String collection_id, ChangeFeed.Listener listener) {
+    return this.delegate.subscribe(uid, collection_id, listener);
+  }
+
+  /** Passes the subscription through to the underlying store, uncached. */
+  @Override
+  public ChangeFeed.Snapshot subscribeWithSnapshot(
+      String uid, String collection_id, ChangeFeed.Listener listener)
+      throws InterruptedException, ExecutionException {
+    return this.delegate.subscribeWithSnapshot(uid, collection_id, listener);
+  }
+
+  /**
+   * Drops everything cached for a user.
+   *
+   * @param uid the user
+   */
+  public synchronized void invalidate(String uid) {
+    UserCache user = this.users.remove(uid);
+    if (user != null) {
+      this.bytes -= user.bytes;
+      unfollow(user);
+    }
+  }
+
+  /** Returns a snapshot of the cache's metrics. */
+  public synchronized Stats stats() {
+    long reads = this.hits + this.misses;
+    double meanMissMillis = this.misses == 0 ? 0 : this.missNanos / 1e6 / this.misses;
+    return new Stats(
+        this.hits,
+        this.misses,
+        reads == 0 ? 0 : (double) this.hits / reads,
+        this.hits,
+        this.hits * meanMissMillis,
+        this.evictions,
+        this.users.size(),
+        this.bytes);
+  }
+
+  /**
+   * Applies a write to the cached copy of its collection, if there is one, and marks the user
+   * changed. The caller must hold this.
+   */
+  private void applyLocked(
+      String uid, String collection_id, String doc_id, Map<String, Object> data) {
+    UserCache user = this.users.get(uid);
+    if (user == null) {
+      return;
+    }
+    user.generation++;
+    Map<String, Map<String, Object>> collection = user.collections.get(collection_id);
+    if (collection == null) {
+      return;
+    }
+    Map<String, Object> old =
+        data == null ? collection.remove(doc_id) : collection.put(doc_id, new HashMap<>(data));
+    this.resize(user, estimateDocument(doc_id, data) - estimateDocument(doc_id, old));
+  }
+
+  /** Returns a listener keeping a cached collection current. */
+  private ChangeFeed.Listener listener(String uid, String collection_id) {
+    return new ChangeFeed.Listener() {
+      @Override
+      public void onChanges(List<ChangeFeed.Change> changes) {
+        applyChanges(changes);
+      }
+
+      @Override
+      public void onFailure(Throwable error) {
+        System.err.println("Change feed for " + uid + "/" + collection_id + " failed: " + error);
+        unfollow(uid, collection_id);
+      }
+    };
+  }
+
+  /** Applies changes that arrived through the change feed. */
+  private synchronized void applyChanges(List<ChangeFeed.Change> changes) {
+    for (ChangeFeed.Change change : changes) {
+      this.applyLocked(change.uid(), change.collection_id(), change.doc_id(), change.data());
+    }
+    this.evictIfNeeded();
+  }
+
+  /** Drops a cached collection whose change feed broke, so the next read reloads it. */
+  private synchronized void unfollow(String uid, String collection_id) {
+    UserCache user = this.users.get(uid);
+    if (user == null) {
+      return;
+    }
+    user.generation++;
+    ChangeFeed.Subscription subscription = user.subscriptions.remove(collection_id);
+    if (subscription != null) {
+      subscription.close();
+    }
+    Map<String, Map<String, Object>> collection = user.collections.remove(collection_id);
+    if (collection != null) {
+      this.resize(user, -estimateCollection(collection));
+    }
+  }
+
+  private static void unfollow(UserCache user) {
+    for (ChangeFeed.Subscription subscription : user.subscriptions.values()) {
+      subscription.close();
+    }
+    user.subscriptions.clear();
+  }
+
+  private void resize(UserCache user, long delta) {
+    user.bytes += delta;
+    this.bytes += delta;
+  }
+
+  private void evictIfNeeded() {
+    Iterator<UserCache> lru = this.users.values().iterator();
+    while ((this.users.size() > this.maxUsers || this.bytes > this.maxBytes) && lru.hasNext()) {
+      UserCache user = lru.next();
+      lru.remove();
+      this.bytes -= user.bytes;
+      this.evictions++;
+      unfollow(user);
+    }
+  }
+
+  private static Map<String, Map<String, Object>> copy(Map<String, Map<String, Object>> docs) {
+    Map<String, Map<String, Object>> copy = new LinkedHashMap<>();
+    for (Map.Entry<String, Map<String, Object>> doc : docs.entrySet()) {
+      copy.put(doc.getKey(), new HashMap<>(doc.getValue()));
+    }
+    return copy;
+  }
+
+  private static long estimateCollection(Map<String, Map<String, Object>> collection) {
+    long size = 0;
+    for (Map.Entry<String, Map<String, Object>> doc : collection.entrySet()) {
+      size += estimateDocument(doc.getKey(), doc.getValue());
+    }
+    return size;
+  }
+
+  private static long estimateDocument(String docId, Map<String, Object> data) {
+    return data == null ? 0 : ENTRY_OVERHEAD + estimate(docId) + estimate(data);
+  }
+
+  /** A rough estimate of the heap used by a document value. */
+  private static long estimate(Object value) {
+    if (value == null) {
+      return 0;
+    }
+    if (value instanceof String s) {
+      return 40 + 2L * s.length();
+    }
+    if (value instanceof Map<?, ?> map) {
+      long size = ENTRY_OVERHEAD;
+      for (Map.Entry<?, ?> e : map.entrySet()) {
+        size += ENTRY_OVERHEAD + estimate(e.getKey()) + estimate(e.getValue());
+      }
+      return size;
+    }
+    if (value instanceof Iterable<?> list) {
+      long size = ENTRY_OVERHEAD;
+      for (Object item : list) {
+        size += 8 + estimate(item);
+      }
+      return size;
+    }
+    return 16;
+  }
+}
@@ -0,0 +1,167 @@
+package edu.brown.cs.student.main.server.storage;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An in-process feed of the changes made to users' collections, for local backends to offer the
+ * same change subscriptions that Firestore's snapshot listeners do.
+ *
+ * <p>A backend publishes each write as it lands. Listeners subscribe to one user's collection and
+ * hear about its changes in the order they were published, on a single dispatch thread rather than
+ * the writer's: a slow listener holds up other listeners but never a write, and a listener can take
+ * its own locks without risking a deadlock with the backend's.
+ */
+public class ChangeFeed {
+
+  /**
+   * A change to one document.
+   *
+   * @param uid the user
+   * @param collection_id the collection
+   * @param doc_id the document
+   * @param data the document's new data, or null if it was deleted
+   */
+  public record Change(String uid, String collection_id, String doc_id, Map<String, Object> data) {
+
+    /** Returns whether the document was deleted. */
+    public boolean isDelete() {
+      return this.data == null;
+    }
+  }
+
+  /** Hears about the changes to a collection. */
+  public interface Listener {
+
+    /**
+     * Called with changes to the collection, in the order they were made. Changes that landed
+     * together, such as a committed batch, arrive in one call.
+     *
+     * @param changes the changes
+     */
+    void onChanges(List<Change> changes);
+
+    /**
+     * Called if the subscription breaks, after which no more changes arrive and anything built from
+     * earlier changes may be stale.
+     *
+     * @param error why
+     */
+    default void onFailure(Throwable error) {}
+  }
+
+  /** A subscription to a collection's changes, ended by closing it. */
+  public interface Subscription extends AutoCloseable {
+    @Override
+    void close();
+  }
+
+  /**
+   * A collection as it was when it was subscribed to, and the subscription to its later changes.
+   *
+   * @param documents the collection's documents' data by document id
+   * @param subscription the subscription
+   */
+  public record Snapshot(Map<String, Map<String, Object>> documents, Subscription subscription) {}
+
+  // (uid, collection) -> its listeners.
+  private final Map<List<String>, List<Listener>> listeners = new ConcurrentHashMap<>();
+  // One thread at most, so changes are delivered in the order they were published; it exits when
+  // the feed is idle.
+  private final ExecutorService dispatcher =
+      new ThreadPoolExecutor(
+          0,
+          1,
+          30,
+          TimeUnit.SECONDS,
+          new LinkedBlockingQueue<>(),
+          r -> {
+            Thread t = new Thread(r, "change-feed");
+            t.setDaemon(true);
+            return t;
+          });
+
+  /**
+   * Subscribes to the changes to a user's collection.
+   *
+   * @param uid the user
+   * @param collection_id the collection
+   * @param listener what to tell about changes
+   * @return the subscription
+   */
+  public Subscription subscribe(String uid, String collection_id, Listener listener) {
+    List<String> key = List.of(uid, collection_id);
+    this.listeners.compute(
+        key,
+        (k, current) -> {
+          List<Listener> updated = current == null ? new CopyOnWriteArrayList<>() : current;
+          updated.add(listener);
+          return updated;
+        });
+    return () ->
+        this.listeners.computeIfPresent(
+            key,
+            (k, current) -> {
+              current.remove(listener);
+              return current.isEmpty() ? null : current;
+            });
+  }
+
+  /**
+   * Returns whether anyone is subscribed to any of a user's collections, so a backend can skip
+   * working out what changed when nobody is listening.
+   *
+   * @param uid the user
+   * @return whether the user has subscribers
+   */
+  public boolean hasSubscribers(String uid) {
+    for (List<String> key : this.listeners.keySet()) {
+      if (key.get(0).equals(uid)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Publishes changes that have just landed together. Returns at once; listeners hear about them on
+   * the dispatch thread.
+   *
+   * @param changes the changes, in the order they were made
+   */
+  public void publish(List<Change> changes) {
+    if (this.listeners.isEmpty()) {
+      return;
+    }
+    Map<List<String>, List<Change>> byCollection = new LinkedHashMap<>();
+    for (Change change : changes) {
+      List<String> key = List.of(change.uid(), change.collection_id());
+      if (this.listeners.containsKey(key)) {
+        byCollection.computeIfAbsent(key, k -> new ArrayList<>()).add(change);
+      }
+    }
+    if (byCollection.isEmpty()) {
+      return;
+    }
+    this.dispatcher.execute(
+        () -> {
+          for (Map.Entry<List<String>, List<Change>> e : byCollection.entrySet()) {
+            for (Listener listener : this.listeners.getOrDefault(e.getKey(), List.of())) {
+              try {
+                listener.onChanges(e.getValue());
+              } catch (RuntimeException ex) {
+                System.err.println("Error delivering changes to " + e.getKey() + ": " + ex);
+              }
+            }
+          }
+        });
+  }
+}
@@ -0,0 +1,471 @@
+package edu.brown.cs.student.main.server.storage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+
+/**
+ * A StorageInterface decorator that keeps a versioned log of the changes to each user's chosen
+ * collections, so a client that has seen everything up to some version can catch up with just the
+ * changes since.
+ *
+ * <p>The log lives in the user's changelog collection. Its head document holds just counters: the
+ * latest version handed out, and a base version. Every other document is one version's record of
+ * which document changed, keyed by the version. A write first takes the next version in a small
+ * transaction on the head, then commits the document and its record in one batch, so a record
+ * exists exactly when its write has landed. Only the latest retain versions are kept: the base
+ * moves up past older ones, and their records are deleted by later writes.
+ *
+ * <p>Writes can land in a different order from their versions, so records don't say what a document
+ * became, only that it changed. A client catching up gets each changed document as it is now, which
+ * is where replaying every write in order would leave it. A client at version v can catch up if v
+ * is between the base and the latest version; otherwise (too old, from before the log existed, or
+ * from before the user was cleared) it needs a snapshot. Versions are only reported up to the first
+ * one whose record is missing, as its write may still be in flight; one still missing after
+ * GAP_TIMEOUT_MILLIS is taken to belong to a writer that died, and the log is restarted, sending
+ * every client back to a snapshot.
+ */
+public class ChangeLogStorage implements StorageInterface {
+
+  public static final String CHANGELOG = "changelog";
+  public static final String HEAD = "head";
+
+  /** How long a version's record can be missing before its writer is taken to have died. */
+  public static final long GAP_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(2);
+
+  private static final int PAGE_SIZE = 100;
+
+  private static final String VERSION = "version";
+  private static final String BASE = "base";
+  private static final String AT = "at";
+  private static final String COLLECTION = "collection";
+  private static final String ID = "id";
+
+  private final StorageInterface delegate;
+  private final Set<String> collections;
+  private final int retain;
+
+  /**
+   * A changed document.
+   *
+   * @param version the latest version that changed it
+   * @param collection_id the collection
+   * @param doc_id the document
+   * @param data the document's data now, or null if it has been deleted
+   */
+  public record Change(
+      long version, String collection_id, String doc_id, Map<String, Object> data) {
+
+    /** Returns whether the document was deleted. */
+    public boolean isDelete() {
+      return this.data == null;
+    }
+  }
+
+  /**
+   * The changes a client needs to catch up.
+   *
+   * @param version the version the client is at once it applies the changes
+   * @param changes the changed documents, in the order they last changed
+   */
+  public record Changes(long version, List<Change> changes) {}
+
+  /** One version's record: which document it changed. */
+  private record Logged(long version, String collection_id, String doc_id) {}
+
+  /**
+   * Constructor for the ChangeLogStorage.
+   *
+   * @param delegate the underlying store
+   * @param collections the collections whose changes are logged
+   * @param retain how many of a user's most recent versions to keep
+   */
+  public ChangeLogStorage(StorageInterface delegate, Set<String> collections, int retain) {
+    if (retain < 1) {
+      throw new IllegalArgumentException("retain must be positive");
+    }
+    this.delegate = delegate;
+    this.collections = Set.copyOf(collections);
+    this.retain = retain;
+  }
+
+  /**
+   * Returns the changes since a version, if the log still has all of them.
+   *
+   * @param uid the user
+   * @param since the version the client is at
+   * @return the changes since then, or null if the client needs a snapshot instead
+   */
+  public Changes since(String uid, long since) throws InterruptedException, ExecutionException {
+    Map<String, Object> head = this.delegate.getDocument(uid, CHANGELOG, HEAD);
+    if (head == null || since < number(head, BASE) || since > number(head, VERSION)) {
+      return null;
+    }
+    List<Logged> logged = this.logged(uid, head, since);
+    if (logged == null) {
+      return null;
+    }
+
+    // Each changed document once, at the latest version that changed it, as it is now.
+    Map<String, Logged> latest = new LinkedHashMap<>();
+    for (Logged record : logged) {
+      String key = record.collection_id() + "/" + record.doc_id();
+      latest.remove(key);
+      latest.put(key, record);
+    }
+    AsyncStorage async = this.delegate.async();
+    List<CompletableFuture<Map<String, Object>>> reads = new ArrayList<>();
+    for (Logged record : latest.values()) {
+      reads.add(async.getDocument(uid, record.collection_id(), record.doc_id()));
+    }
+    List<Change> changes = new ArrayList<>();
+    int i = 0;
+    for (Logged record : latest.values()) {
+      changes.add(
+          new Change(
+              record.version(), record.collection_id(), record.doc_id(), reads.get(i++).get()));
+    }
+    return new Changes(since + logged.size(), changes);
+  }
+
+  /**
+   * Returns the version a snapshot taken now is at. Read this before taking a snapshot, so the
+   * snapshot is at least as new as the version it is reported at.
+   *
+   * @param uid the user
+   * @return the version, or 0 if nothing has been logged for them
+   */
+  public long version(String uid) throws InterruptedException, ExecutionException {
+    Map<String, Object> head = this.delegate.getDocument(uid, CHANGELOG, HEAD);
+    if (head == null) {
+      return 0;
+    }
+    long base = number(head, BASE);
+    List<Logged> logged = this.logged(uid, head, base);
+    // The log was restarted, which leaves nothing to wait for.
+    return logged == null ? this.version(uid) : base + logged.size();
+  }
+
+  @Override
+  public void addDocument(
+      String uid, String collection_id, String doc_id, Map<String, Object> data) {
+    if (!this.collections.contains(collection_id)) {
+      this.delegate.addDocument(uid, collection_id, doc_id, data);
+      return;
+    }
+    unchecked(() -> this.commit(new StorageBatch().set(uid, collection_id, doc_id, data)));
+  }
+
+  @Override
+  public Map<String, Map<String, Object>> getCollectionDocuments(String uid, String collection_id)
+      throws InterruptedException, ExecutionException {
+    return this.delegate.getCollectionDocuments(uid, collection_id);
+  }
+
+  @Override
+  public CollectionPage getCollectionPage(
+      String uid, String collection_id, String startAfter, int limit)
+      throws InterruptedException, ExecutionException {
+    return this.delegate.getCollectionPage(uid, collection_id, startAfter, limit);
+  }
+
+  @Override
+  public List<String> listUsers() throws InterruptedException, ExecutionException {
+    return this.delegate.listUsers();
+  }
+
+  /** Clears the user, then starts their log again past every version they have had. */
+  @Override
+  public void clearUser(String uid) throws InterruptedException, ExecutionException {
+    long version = this.taken(uid);
+    this.delegate.clearUser(uid);
+    this.restart(uid, version);
+  }
+
+  @Override
+  public void clearUser(String uid, DeletionProgress progress)
+      throws InterruptedException, ExecutionException {
+    long version = this.taken(uid);
+    this.delegate.clearUser(uid, progress);
+    this.restart(uid, version);
+  }
+
+  @Override
+  public void deleteDocument(String uid, String collection_id, String doc_id) {
+    if (!this.collections.contains(collection_id)) {
+      this.delegate.deleteDocument(uid, collection_id, doc_id);
+      return;
+    }
+    unchecked(() -> this.commit(new StorageBatch().delete(uid, collection_id, doc_id)));
+  }
+
+  @Override
+  public Map<String, Object> getDocument(String uid, String collection_id, String doc_id)
+      throws InterruptedException, ExecutionException {
+    return this.delegate.getDocument(uid, collection_id, doc_id);
+  }
+
+  /**
+   * Runs the transaction, then records it if it changed the document. The record can't be committed
+   * with the transaction, so its version is taken and it is written after; if the writer dies once
+   * the version is taken, the missing record eventually restarts the log. A transaction that failed
+   * or left the document as it was takes no version and writes no record.
+   */
+  @Override
+  public Map<String, Object> transact(
+      String uid, String collection_id, String doc_id, UnaryOperator<Map<String, Object>> update)
+      throws InterruptedException, ExecutionException {
+    Map<String, Object> next = this.delegate.transact(uid, collection_id, doc_id, update);
+    if (next != null && this.collections.contains(collection_id)) {
+      long version = this.allocate(uid, 1);
+      StorageBatch records = new StorageBatch();
+      this.record(records, uid, version, collection_id, doc_id);
+      this.commitQuietly(records);
+    }
+    return next;
+  }
+
+  /**
+   * Commits the batch along with the records of its writes to logged collections, giving each
+   * user's writes consecutive versions. A batch too full to take its records is committed first,
+   * and its records after.
+   */
+  @Override
+  public void commit(StorageBatch batch) throws InterruptedException, ExecutionException {
+    Map<String, List<StorageBatch.Write>> byUser = new LinkedHashMap<>();
+    for (StorageBatch.Write write : batch.writes()) {
+      if (this.collections.contains(write.collection_id())) {
+        byUser.computeIfAbsent(write.uid(), k -> new ArrayList<>()).add(write);
+      }
+    }
+    if (byUser.isEmpty()) {
+      this.delegate.commit(batch);
+      return;
+    }
+
+    List<StorageBatch> records = new ArrayList<>();
+    records.add(new StorageBatch());
+    for (Map.Entry<String, List<StorageBatch.Write>> e : byUser.entrySet()) {
+      long version = this.allocate(e.getKey(), e.getValue().size()) - e.getValue().size();
+      for (StorageBatch.Write write : e.getValue()) {
+        if (records.get(records.size() - 1).writes().size() + 2 > StorageBatch.MAX_WRITES) {
+          records.add(new StorageBatch());
+        }
+        this.record(
+            records.get(records.size() - 1),
+            e.getKey(),
+            ++version,
+            write.collection_id(),
+            write.doc_id());
+      }
+    }
+
+    if (records.size() == 1
+        && batch.writes().size() + records.get(0).writes().size() <= StorageBatch.MAX_WRITES) {
+      StorageBatch combined = new StorageBatch();
+      for (StorageBatch.Write write : batch.writes()) {
+        add(combined, write);
+      }
+      for (StorageBatch.Write write : records.get(0).writes()) {
+        add(combined, write);
+      }
+      try {
+        this.delegate.commit(combined);
+        return;
+      } catch (InterruptedException | ExecutionException | RuntimeException e) {
+        // The batch may have landed even so; recording it anyway fills in the versions it took.
+        this.commitQuietly(records.get(0));
+        throw e;
+      }
+    }
+
+    try {
+      this.delegate.commit(batch);
+    } finally {
+      for (StorageBatch chunk : records) {
+        this.commitQuietly(chunk);
+      }
+    }
+  }
+
+  @Override
+  public ChangeFeed.Subscription subscribe(
+      String uid, String collection_id, ChangeFeed.Listener listener) {
+    return this.delegate.subscribe(uid, collection_id, listener);
+  }
+
+  @Override
+  public ChangeFeed.Snapshot subscribeWithSnapshot(
+      String uid, String collection_id, ChangeFeed.Listener listener)
+      throws InterruptedException, ExecutionException {
+    return this.delegate.subscribeWithSnapshot(uid, collection_id, listener);
+  }
+
+  /**
+   * Takes a user's next versions, moving the base up past any beyond the retention limit. A new
+   * log's base is its first version, since whatever the user had before it isn't in the log.
+   *
+   * @return the last of the versions taken
+   */
+  private long allocate(String uid, int count) throws InterruptedException, ExecutionException {
+    Map<String, Object> head =
+        this.delegate.transact(
+            uid,
+            CHANGELOG,
+            HEAD,
+            current -> {
+              long version = current == null ? 0 : number(current, VERSION);
+              long base = current == null ? version + 1 : number(current, BASE);
+              version += count;
+              return head(version, Math.max(base, version - this.retain));
+            });
+    return number(head, VERSION);
+  }
+
+  /** Adds a version's record to a batch, deleting the record that version pushes out. */
+  private void record(
+      StorageBatch batch, String uid, long version, String collection_id, String doc_id) {
+    Map<String, Object> record = new HashMap<>();
+    record.put(COLLECTION, collection_id);
+    record.put(ID, doc_id);
+    record.put(AT, System.currentTimeMillis());
+    batch.set(uid, CHANGELOG, recordId(version), record);
+    if (version > this.retain) {
+      batch.delete(uid, CHANGELOG, recordId(version - this.retain));
+    }
+  }
+
+  /**
+   * Reads the records after a version, up to the first that is missing.
+   *
+   * @return the records, or null if one has been missing so long that the log was restarted
+   */
+  private List<Logged> logged(String uid, Map<String, Object> head, long after)
+      throws InterruptedException, ExecutionException {
+    long version = number(head, VERSION);
+    List<Logged> logged = new ArrayList<>();
+    long next = after + 1;
+    // When the record after the missing one was written, or the last version taken if none was.
+    long missingSince = number(head, AT);
+    String startAfter = recordId(after);
+    reading:
+    while (next <= version) {
+      CollectionPage page = this.delegate.getCollectionPage(uid, CHANGELOG, startAfter, PAGE_SIZE);
+      for (Map.Entry<String, Map<String, Object>> doc : page.documents().entrySet()) {
+        long recorded = parseRecordId(doc.getKey());
+        if (recorded < 0 || recorded > version) {
+          break reading;
+        }
+        if (recorded != next) {
+          missingSince = number(doc.getValue(), AT);
+          break reading;
+        }
+        Map<String, Object> data = doc.getValue();
+        logged.add(new Logged(recorded, data.get(COLLECTION).toString(), data.get(ID).toString()));
+        next++;
+      }
+      if (!page.more()) {
+        break;
+      }
+      startAfter = page.last();
+    }
+    if (next <= version && System.currentTimeMillis() - missingSince > GAP_TIMEOUT_MILLIS) {
+      System.err.println("Restarting the change log for " + uid + ": version " + next + " is lost");
+      this.restart(uid, version);
+      return null;
+    }
+    return logged;
+  }
+
+  /** Returns the last version handed out to a user, whether or not its write has landed. */
+  private long taken(String uid) throws InterruptedException, ExecutionException {
+    Map<String, Object> head = this.delegate.getDocument(uid, CHANGELOG, HEAD);
+    return head == null ? 0 : number(head, VERSION);
+  }
+
+  /** Empties a user's log, moving its version and base past every version it has had. */
+  private void restart(String uid, long atLeast) throws InterruptedException, ExecutionException {
+    this.delegate.transact(
+        uid,
+        CHANGELOG,
+        HEAD,
+        head -> {
+          long version = Math.max(atLeast, head == null ? 0 : number(head, VERSION)) + 1;
+          return head(version, version);
+        });
+  }
+
+  /**
+   * Commits records, logging a failure rather than throwing it: the missing records hold clients
+   * back until they eventually restart the log.
+   */
+  private void commitQuietly(StorageBatch records) {
+    try {
+      this.delegate.commit(records);
+    } catch (Exception e) {
+      System.err.println("Error logging changes: " + e.getMessage());
+    }
+  }
+
+  private static Map<String, Object> head(long version, long base) {
+    Map<String, Object> head = new HashMap<>();
+    head.put(VERSION, version);
+    head.put(BASE, base);
+    head.put(AT, System.currentTimeMillis());
+    return head;
+  }
+
+  /** Record ids are zero padded, so that they sort in version order. */
+  private static String recordId(long version) {
+    return String.format("%019d", version);
+  }
+
+  private static long parseRecordId(String id) {
+    try {
+      return Long.parseLong(id);
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private static void add(StorageBatch batch, StorageBatch.Write write) {
+    if (write.isDelete()) {
+      batch.delete(write.uid(), write.collection_id(), write.doc_id());
+    } else {
+      batch.set(write.uid(), write.collection_id(), write.doc_id(), write.data());
+    }
+  }
+
+  /**
+   * Runs a commit for a write method that declares no exceptions, rethrowing failures unchecked.
+   */
+  private static void unchecked(Commit commit) {
+    try {
+      commit.run();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while writing", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  @FunctionalInterface
+  private interface Commit {
+    void run() throws InterruptedException, ExecutionException;
+  }
+
+  private static long number(Map<String, Object> data, String field) {
+    return data.get(field) instanceof Number n ? n.longValue() : 0;
+  }
+}
@@ -0,0 +1,50 @@
+package edu.brown.cs.student.main.server.storage;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * One page of a collection, in document id order.
+ *
+ * @param documents the page's documents' data by document id, in document id order
+ * @param more whether there are documents after this page
+ */
+public record CollectionPage(Map<String, Map<String, Object>> documents, boolean more) {
+
+  /**
+   * Returns the id of the last document on the page, which is where the next page starts after.
+   *
+   * @return the id, or null if the page is empty
+   */
+  public String last() {
+    String last = null;
+    for (String id : this.documents.keySet()) {
+      last = id;
+    }
+    return last;
+  }
+
+  /**
+   * Cuts a page out of a whole collection that is already in memory.
+   *
+   * @param docs the collection's documents by document id, in any order
+   * @param startAfter the document id to start after, or null to start at the beginning
+   * @param limit the most documents to return
+   * @return the page
+   */
+  public static CollectionPage slice(
+      Map<String, Map<String, Object>> docs, String startAfter, int limit) {
+    TreeMap<String, Map<String, Object>> sorted = new TreeMap<>(docs);
+    Map<String, Map<String, Object>> rest =
+        startAfter == null ? sorted : sorted.tailMap(startAfter, false);
+    Map<String, Map<String, Object>> page = new LinkedHashMap<>();
+    for (Map.Entry<String, Map<String, Object>> doc : rest.entrySet()) {
+      if (page.size() == limit) {
+        return new CollectionPage(page, true);
+      }
+      page.put(doc.getKey(), doc.getValue());
+    }
+    return new CollectionPage(page, false);
+  }
+}
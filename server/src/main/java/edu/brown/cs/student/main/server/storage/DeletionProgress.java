@@ -0,0 +1,61 @@
+package edu.brown.cs.student.main.server.storage;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks a bulk deletion, such as clearing a user, while it runs. The backend counts documents as
+ * they are deleted, and whoever started the deletion marks it finished. Safe to read from any
+ * thread at any time.
+ */
+public class DeletionProgress {
+
+  private final long startedMillis = System.currentTimeMillis();
+  private final AtomicLong deleted = new AtomicLong();
+  private volatile long finishedMillis = -1;
+  private volatile Throwable failure;
+
+  /**
+   * Records that documents have been deleted.
+   *
+   * @param count how many
+   */
+  public void recordDeleted(long count) {
+    this.deleted.addAndGet(count);
+  }
+
+  /**
+   * Marks the deletion finished.
+   *
+   * @param failure why it failed, or null if it succeeded
+   */
+  public void finish(Throwable failure) {
+    this.failure = failure;
+    this.finishedMillis = System.currentTimeMillis();
+  }
+
+  /** Returns how many documents have been deleted so far. */
+  public long deleted() {
+    return this.deleted.get();
+  }
+
+  /** Returns whether the deletion has finished, successfully or not. */
+  public boolean isDone() {
+    return this.finishedMillis >= 0;
+  }
+
+  /** Returns why the deletion failed, or null if it succeeded or is still running. */
+  public Throwable failure() {
+    return this.failure;
+  }
+
+  /** Returns how long the deletion ran, or has been running so far, in milliseconds. */
+  public long elapsedMillis() {
+    long finished = this.finishedMillis;
+    return (finished >= 0 ? finished : System.currentTimeMillis()) - this.startedMillis;
+  }
+
+  /** Returns when the deletion finished, in epoch milliseconds, or -1 if it hasn't. */
+  public long finishedMillis() {
+    return this.finishedMillis;
+  }
+}
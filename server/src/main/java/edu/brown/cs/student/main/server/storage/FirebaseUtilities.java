@@ -1,12 +1,6 @@
 package edu.brown.cs.student.main.server.storage;
 
-import com.google.api.core.ApiFuture;
 import com.google.auth.oauth2.GoogleCredentials;
-import com.google.cloud.firestore.CollectionReference;
-import com.google.cloud.firestore.DocumentReference;
-import com.google.cloud.firestore.Firestore;
-import com.google.cloud.firestore.QueryDocumentSnapshot;
-import com.google.cloud.firestore.QuerySnapshot;
 import com.google.firebase.FirebaseApp;
 import com.google.firebase.FirebaseOptions;
 import com.google.firebase.cloud.FirestoreClient;
@@ -14,14 +8,21 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
+import java.util.function.UnaryOperator;
 
-/** A class that handles the firebase functionality. */
+/**
+ * A class that handles the firebase functionality. The blocking methods wait on the same futures
+ * that async() hands out, so writes have landed in Firestore by the time they return.
+ */
 public class FirebaseUtilities implements StorageInterface {
 
+  private final FirestoreAsyncStorage async;
+
   /**
    * Constructor for the FirebaseUtilities class.
    *
@@ -44,113 +45,117 @@ public class FirebaseUtilities implements StorageInterface {
     } else {
       FirebaseApp.getInstance(); // Get the already initialized instance
     }
+    this.async = new FirestoreAsyncStorage(FirestoreClient.getFirestore());
   }
 
   /** Function that adds a new document to a collection for a specified user. */
   @Override
   public void addDocument(String uid, String collection_id, String doc_id, Map<String, Object> data)
       throws IllegalArgumentException {
-    if (uid == null || collection_id == null || doc_id == null || data == null) {
-      throw new IllegalArgumentException(
-          "addDocument: uid, collection_id, doc_id, or data cannot be null");
-    }
-
-    Firestore db = FirestoreClient.getFirestore();
-    CollectionReference collectionRef =
-        db.collection("users").document(uid).collection(collection_id);
-    collectionRef.document(doc_id).set(data);
+    await(this.async().addDocument(uid, collection_id, doc_id, data));
   }
 
-  /** Gets all the documents in a collection for a specified user. */
+  /** Gets all the documents in a collection for a specified user, keyed by document id. */
   @Override
-  public List<Map<String, Object>> getCollection(String uid, String collection_id)
+  public Map<String, Map<String, Object>> getCollectionDocuments(String uid, String collection_id)
       throws InterruptedException, ExecutionException, IllegalArgumentException {
-    if (uid == null || collection_id == null) {
-      throw new IllegalArgumentException("getCollection: uid and/or collection_id cannot be null");
-    }
-
-    Firestore db = FirestoreClient.getFirestore();
-    CollectionReference dataRef = db.collection("users").document(uid).collection(collection_id);
-    QuerySnapshot dataQuery = dataRef.get().get();
-    List<Map<String, Object>> data = new ArrayList<>();
-    for (QueryDocumentSnapshot doc : dataQuery.getDocuments()) {
-      data.add(doc.getData());
-    }
+    return this.async().getCollectionDocuments(uid, collection_id).get();
+  }
 
-    return data;
+  /** Gets a page of a collection, reading only the page from Firestore. */
+  @Override
+  public CollectionPage getCollectionPage(
+      String uid, String collection_id, String startAfter, int limit)
+      throws InterruptedException, ExecutionException {
+    return this.async.getCollectionPage(uid, collection_id, startAfter, limit).get();
   }
 
-  /** Gets a document reference for a specified user. */
+  /** Lists the users with anything stored in Firestore. */
   @Override
-  public DocumentReference getDocumentReference(
-      String uid, String collection_id, String document_id) {
-    Firestore db = FirestoreClient.getFirestore();
-    CollectionReference collectionRef =
-        db.collection("users").document(uid).collection(collection_id);
-    return collectionRef.document(document_id);
+  public List<String> listUsers() {
+    return this.async.listUsers();
   }
 
   /** Clears the data for a specified user. */
   @Override
-  public void clearUser(String uid) throws IllegalArgumentException {
-    if (uid == null) {
-      throw new IllegalArgumentException("removeUser: uid cannot be null");
-    }
-    try {
-      Firestore db = FirestoreClient.getFirestore();
-      DocumentReference userDoc = db.collection("users").document(uid);
-      deleteDocument(userDoc);
-    } catch (Exception e) {
-      System.err.println("Error removing user : " + uid);
-      System.err.println(e.getMessage());
-    }
+  public void clearUser(String uid) throws InterruptedException, ExecutionException {
+    this.async().clearUser(uid).get();
   }
 
-  /**
-   * Deletes a document within a user's collection.
-   *
-   * @param doc the document to delete,
-   */
+  /** Clears the data for a specified user with a BulkWriter, counting deletes as they land. */
   @Override
-  public void deleteDocument(DocumentReference doc) {
-    Iterable<CollectionReference> collections = doc.listCollections();
-    for (CollectionReference collection : collections) {
-      deleteCollection(collection);
-    }
-    doc.delete();
+  public void clearUser(String uid, DeletionProgress progress)
+      throws InterruptedException, ExecutionException {
+    this.async.clearUser(uid, progress).get();
+  }
+
+  /** Deletes a document within a user's collection. */
+  @Override
+  public void deleteDocument(String uid, String collection_id, String doc_id) {
+    await(this.async().deleteDocument(uid, collection_id, doc_id));
   }
 
   /**
    * Gets the data from a document.
    *
-   * @param doc the document to get data from.
-   * @return the data from the document.
+   * @return the data from the document, or null if it does not exist.
    */
   @Override
-  public Map<String, Object> getDocument(DocumentReference doc)
+  public Map<String, Object> getDocument(String uid, String collection_id, String doc_id)
       throws InterruptedException, ExecutionException {
-    return doc.get().get().getData();
+    return this.async().getDocument(uid, collection_id, doc_id).get();
+  }
+
+  /** Atomically updates a document inside a Firestore transaction. */
+  @Override
+  public Map<String, Object> transact(
+      String uid, String collection_id, String doc_id, UnaryOperator<Map<String, Object>> update)
+      throws InterruptedException, ExecutionException {
+    return this.async().transact(uid, collection_id, doc_id, update).get();
+  }
+
+  /** Commits a batch of writes as one Firestore WriteBatch. */
+  @Override
+  public void commit(StorageBatch batch) throws InterruptedException, ExecutionException {
+    this.async().commit(batch).get();
+  }
+
+  /** Subscribes to a collection's changes with a Firestore snapshot listener. */
+  @Override
+  public ChangeFeed.Subscription subscribe(
+      String uid, String collection_id, ChangeFeed.Listener listener) {
+    return this.async.subscribe(uid, collection_id, listener);
   }
 
   /**
-   * Deletes all the documents in a user's collection.
-   *
-   * @param collection the collection to delete.
+   * Subscribes with a Firestore snapshot listener, taking the collection from its first snapshot
+   * rather than reading it separately.
    */
-  private void deleteCollection(CollectionReference collection) {
-    try {
+  @Override
+  public ChangeFeed.Snapshot subscribeWithSnapshot(
+      String uid, String collection_id, ChangeFeed.Listener listener)
+      throws InterruptedException, ExecutionException {
+    return this.async.subscribeWithSnapshot(uid, collection_id, listener).get();
+  }
 
-      // Get all documents in the collection
-      ApiFuture<QuerySnapshot> future = collection.get();
-      List<QueryDocumentSnapshot> documents = future.get().getDocuments();
+  /** Returns a view of this storage backed by Firestore's own futures. */
+  @Override
+  public AsyncStorage async() {
+    return this.async;
+  }
 
-      // Delete each document
-      for (QueryDocumentSnapshot doc : documents) {
-        doc.getReference().delete();
+  /**
+   * Waits for a write to land, so that a write that returns has really happened. Failures are
+   * rethrown unchecked, since the blocking write methods don't declare any.
+   */
+  private static void await(CompletableFuture<Void> write) {
+    try {
+      write.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
       }
-
-    } catch (Exception e) {
-      System.err.println("Error deleting collection : " + e.getMessage());
+      throw e;
     }
   }
 }
@@ -0,0 +1,333 @@
+package edu.brown.cs.student.main.server.storage;
+
+import com.google.api.core.ApiFuture;
+import com.google.cloud.firestore.BulkWriter;
+import com.google.cloud.firestore.BulkWriterOptions;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentChange;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldPath;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.ListenerRegistration;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.QuerySnapshot;
+import com.google.cloud.firestore.WriteBatch;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.UnaryOperator;
+
+/**
+ * AsyncStorage backed directly by the Firestore client's own futures, so no thread is held while a
+ * request is in flight. User documents live at users/{uid}/{collection}/{doc}.
+ */
+public class FirestoreAsyncStorage implements AsyncStorage {
+
+  // Bounds on how fast clearing a user deletes; the BulkWriter ramps up between them.
+  private static final int CLEAR_INITIAL_OPS_PER_SECOND = 500;
+  private static final int CLEAR_MAX_OPS_PER_SECOND = 5_000;
+
+  private final Firestore db;
+
+  /**
+   * Constructor for the FirestoreAsyncStorage.
+   *
+   * @param db the Firestore client
+   */
+  public FirestoreAsyncStorage(Firestore db) {
+    this.db = db;
+  }
+
+  @Override
+  public CompletableFuture<Void> addDocument(
+      String uid, String collection_id, String doc_id, Map<String, Object> data) {
+    if (uid == null || collection_id == null || doc_id == null || data == null) {
+      return CompletableFuture.failedFuture(
+          new IllegalArgumentException(
+              "addDocument: uid, collection_id, doc_id, or data cannot be null"));
+    }
+    return toCompletable(this.document(uid, collection_id, doc_id).set(data))
+        .thenApply(result -> null);
+  }
+
+  @Override
+  public CompletableFuture<Map<String, Map<String, Object>>> getCollectionDocuments(
+      String uid, String collection_id) {
+    if (uid == null || collection_id == null) {
+      return CompletableFuture.failedFuture(
+          new IllegalArgumentException(
+              "getCollectionDocuments: uid and/or collection_id cannot be null"));
+    }
+    return toCompletable(this.collection(uid, collection_id).get())
+        .thenApply(
+            query -> {
+              Map<String, Map<String, Object>> data = new LinkedHashMap<>();
+              for (QueryDocumentSnapshot doc : query.getDocuments()) {
+                data.put(doc.getId(), doc.getData());
+              }
+              return data;
+            });
+  }
+
+  /**
+   * Gets a page of a collection with a query ordered by document id, so only the page (and one
+   * document past it, to tell whether there are more) is read.
+   *
+   * @param uid the user
+   * @param collection_id the collection
+   * @param startAfter the document id to start after, or null to start at the beginning
+   * @param limit the most documents to return
+   * @return the page
+   */
+  public CompletableFuture<CollectionPage> getCollectionPage(
+      String uid, String collection_id, String startAfter, int limit) {
+    if (uid == null || collection_id == null) {
+      return CompletableFuture.failedFuture(
+          new IllegalArgumentException(
+              "getCollectionPage: uid and/or collection_id cannot be null"));
+    }
+    Query query = this.collection(uid, collection_id).orderBy(FieldPath.documentId());
+    if (startAfter != null) {
+      query = query.startAfter(startAfter);
+    }
+    return toCompletable(query.limit(limit + 1).get())
+        .thenApply(
+            snapshot -> {
+              Map<String, Map<String, Object>> data = new LinkedHashMap<>();
+              for (QueryDocumentSnapshot doc : snapshot.getDocuments()) {
+                if (data.size() == limit) {
+                  return new CollectionPage(data, true);
+                }
+                data.put(doc.getId(), doc.getData());
+              }
+              return new CollectionPage(data, false);
+            });
+  }
+
+  /**
+   * Lists the users with anything stored. User documents are never written themselves, only their
+   * collections, so this lists document references rather than querying for documents. It blocks
+   * while Firestore pages through the references.
+   *
+   * @return the users' ids
+   */
+  public List<String> listUsers() {
+    List<String> users = new ArrayList<>();
+    for (DocumentReference user : this.db.collection("users").listDocuments()) {
+      users.add(user.getId());
+    }
+    return users;
+  }
+
+  /** Deletes every document under the user, then the user document itself. */
+  @Override
+  public CompletableFuture<Void> clearUser(String uid) {
+    return this.clearUser(uid, new DeletionProgress());
+  }
+
+  /**
+   * Deletes every document under the user, then the user document itself, with a BulkWriter.
+   * Firestore's recursive delete pages through each collection fetching only document references,
+   * so memory stays flat however large the closet; the BulkWriter batches the deletes, sends
+   * batches in parallel, retries transient failures, and ramps its rate up from a bounded start so
+   * one big user can't starve everyone else's writes.
+   *
+   * @param uid the user
+   * @param progress counts each document as its delete lands
+   * @return a future that completes once everything is deleted, or fails if any delete failed
+   */
+  public CompletableFuture<Void> clearUser(String uid, DeletionProgress progress) {
+    if (uid == null) {
+      return CompletableFuture.failedFuture(
+          new IllegalArgumentException("removeUser: uid cannot be null"));
+    }
+    BulkWriter writer =
+        this.db.bulkWriter(
+            BulkWriterOptions.builder()
+                .setInitialOpsPerSecond(CLEAR_INITIAL_OPS_PER_SECOND)
+                .setMaxOpsPerSecond(CLEAR_MAX_OPS_PER_SECOND)
+                .build());
+    writer.addWriteResultListener((doc, result) -> progress.recordDeleted(1));
+    DocumentReference userDoc = this.db.collection("users").document(uid);
+    return toCompletable(this.db.recursiveDelete(userDoc, writer))
+        .whenComplete(
+            (result, e) -> {
+              try {
+                // Everything has been flushed by now, so this only releases the writer.
+                writer.close();
+              } catch (InterruptedException | ExecutionException ignored) {
+                // Nothing was left to write.
+              }
+            });
+  }
+
+  @Override
+  public CompletableFuture<Void> deleteDocument(String uid, String collection_id, String doc_id) {
+    // Documents in a user's collections never have collections of their own, so this is a single
+    // delete rather than a recursive one.
+    return toCompletable(this.document(uid, collection_id, doc_id).delete())
+        .thenApply(result -> null);
+  }
+
+  @Override
+  public CompletableFuture<Map<String, Object>> getDocument(
+      String uid, String collection_id, String doc_id) {
+    return toCompletable(this.document(uid, collection_id, doc_id).get())
+        .thenApply(DocumentSnapshot::getData);
+  }
+
+  /** Runs the update in a Firestore transaction, which retries it if the document changes. */
+  @Override
+  public CompletableFuture<Map<String, Object>> transact(
+      String uid, String collection_id, String doc_id, UnaryOperator<Map<String, Object>> update) {
+    DocumentReference doc = this.document(uid, collection_id, doc_id);
+    return toCompletable(
+        this.db.runTransaction(
+            transaction -> {
+              Map<String, Object> next = update.apply(transaction.get(doc).get().getData());
+              if (next != null) {
+                transaction.set(doc, next);
+              }
+              return next;
+            }));
+  }
+
+  /** Commits the batch as one Firestore WriteBatch. */
+  @Override
+  public CompletableFuture<Void> commit(StorageBatch batch) {
+    if (batch.isEmpty()) {
+      return CompletableFuture.completedFuture(null);
+    }
+    WriteBatch writes = this.db.batch();
+    for (StorageBatch.Write write : batch.writes()) {
+      DocumentReference doc = this.document(write.uid(), write.collection_id(), write.doc_id());
+      if (write.isDelete()) {
+        writes.delete(doc);
+      } else {
+        writes.set(doc, write.data());
+      }
+    }
+    return toCompletable(writes.commit()).thenApply(result -> null);
+  }
+
+  /**
+   * Subscribes to a collection's changes with a Firestore snapshot listener. The first snapshot
+   * reports every document already in the collection as added; after that, each snapshot reports
+   * what changed since the last one, whoever made the change.
+   *
+   * @param uid the user
+   * @param collection_id the collection
+   * @param listener what to tell about changes
+   * @return the subscription, which removes the snapshot listener when closed
+   */
+  public ChangeFeed.Subscription subscribe(
+      String uid, String collection_id, ChangeFeed.Listener listener) {
+    ListenerRegistration registration =
+        this.collection(uid, collection_id)
+            .addSnapshotListener(
+                (snapshot, error) -> {
+                  if (error != null) {
+                    listener.onFailure(error);
+                    return;
+                  }
+                  List<ChangeFeed.Change> changes = changes(uid, collection_id, snapshot);
+                  if (!changes.isEmpty()) {
+                    listener.onChanges(changes);
+                  }
+                });
+    return registration::remove;
+  }
+
+  /**
+   * Subscribes to a collection's changes with a Firestore snapshot listener, completing with the
+   * collection as its first snapshot has it. Later snapshots go to the listener as changes. This
+   * takes one read of each document, where subscribing and then reading would take two.
+   *
+   * @param uid the user
+   * @param collection_id the collection
+   * @param listener what to tell about changes after the first snapshot
+   * @return completes with the collection and the subscription
+   */
+  public CompletableFuture<ChangeFeed.Snapshot> subscribeWithSnapshot(
+      String uid, String collection_id, ChangeFeed.Listener listener) {
+    CompletableFuture<Map<String, Map<String, Object>>> first = new CompletableFuture<>();
+    ListenerRegistration registration =
+        this.collection(uid, collection_id)
+            .addSnapshotListener(
+                (snapshot, error) -> {
+                  if (error != null) {
+                    if (!first.completeExceptionally(error)) {
+                      listener.onFailure(error);
+                    }
+                    return;
+                  }
+                  if (!first.isDone()) {
+                    Map<String, Map<String, Object>> docs = new LinkedHashMap<>();
+                    for (QueryDocumentSnapshot doc : snapshot.getDocuments()) {
+                      docs.put(doc.getId(), doc.getData());
+                    }
+                    first.complete(docs);
+                    return;
+                  }
+                  List<ChangeFeed.Change> changes = changes(uid, collection_id, snapshot);
+                  if (!changes.isEmpty()) {
+                    listener.onChanges(changes);
+                  }
+                });
+    return first.handle(
+        (docs, error) -> {
+          if (error != null) {
+            registration.remove();
+            throw new CompletionException(error);
+          }
+          return new ChangeFeed.Snapshot(docs, registration::remove);
+        });
+  }
+
+  /** Converts what changed in a snapshot to change feed changes. */
+  private static List<ChangeFeed.Change> changes(
+      String uid, String collection_id, QuerySnapshot snapshot) {
+    List<ChangeFeed.Change> changes = new ArrayList<>();
+    for (DocumentChange change : snapshot.getDocumentChanges()) {
+      QueryDocumentSnapshot doc = change.getDocument();
+      changes.add(
+          new ChangeFeed.Change(
+              uid,
+              collection_id,
+              doc.getId(),
+              change.getType() == DocumentChange.Type.REMOVED ? null : doc.getData()));
+    }
+    return changes;
+  }
+
+  private CollectionReference collection(String uid, String collection_id) {
+    return this.db.collection("users").document(uid).collection(collection_id);
+  }
+
+  private DocumentReference document(String uid, String collection_id, String doc_id) {
+    return this.collection(uid, collection_id).document(doc_id);
+  }
+
+  /** Bridges a Firestore ApiFuture to a CompletableFuture without blocking a thread. */
+  private static <T> CompletableFuture<T> toCompletable(ApiFuture<T> future) {
+    CompletableFuture<T> result = new CompletableFuture<>();
+    future.addListener(
+        () -> {
+          try {
+            result.complete(future.get());
+          } catch (ExecutionException e) {
+            result.completeExceptionally(e.getCause());
+          } catch (InterruptedException | RuntimeException e) {
+            result.completeExceptionally(e);
+          }
+        },
+        Runnable::run);
+    return result;
+  }
+}
@@ -0,0 +1,95 @@
+package edu.brown.cs.student.main.server.storage;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Hands out per-user IDs (clothing IDs, outfit IDs, ...) without a storage round trip per ID.
+ *
+ * <p>IDs are leased from storage in blocks (the hi/lo scheme): the counter document
+ * userIDs/&lt;counter&gt; holds the next unleased ID, and taking a block advances it by the block
+ * size inside a transaction. IDs are then handed out from the block in memory. Because every lease
+ * is transactional, IDs are unique across threads and across servers sharing the same storage. The
+ * cost is that IDs left in a block when the server stops are never used, so IDs can have gaps.
+ */
+public class IdAllocator {
+
+  private static final String COLLECTION = "userIDs";
+  private static final String FIELD = "nextID";
+
+  private final StorageInterface storage;
+  private final int blockSize;
+  private final Map<String, Block> blocks = new ConcurrentHashMap<>();
+
+  /** The unhanded part of one leased block: [next, end). Guarded by itself. */
+  private static final class Block {
+    private long next;
+    private long end;
+  }
+
+  /**
+   * Constructor for the IdAllocator.
+   *
+   * @param storage where the counters are kept
+   * @param blockSize how many IDs to lease at a time
+   */
+  public IdAllocator(StorageInterface storage, int blockSize) {
+    if (blockSize < 1) {
+      throw new IllegalArgumentException("Block size must be positive");
+    }
+    this.storage = storage;
+    this.blockSize = blockSize;
+  }
+
+  /**
+   * Constructor for the IdAllocator, leasing 16 IDs at a time.
+   *
+   * @param storage where the counters are kept
+   */
+  public IdAllocator(StorageInterface storage) {
+    this(storage, 16);
+  }
+
+  /**
+   * Returns an ID no other call, on this server or any other, has returned for the user and
+   * counter.
+   *
+   * @param uid the user
+   * @param counter the counter's document id, such as "clothingID"
+   * @return the ID
+   */
+  public long next(String uid, String counter) throws InterruptedException, ExecutionException {
+    Block block = this.blocks.computeIfAbsent(uid + "/" + counter, k -> new Block());
+    synchronized (block) {
+      if (block.next == block.end) {
+        Map<String, Object> leased = this.storage.transact(uid, COLLECTION, counter, this::advance);
+        block.end = Long.parseLong(leased.get(FIELD).toString());
+        block.next = block.end - this.blockSize;
+      }
+      return block.next++;
+    }
+  }
+
+  /**
+   * Forgets the user's leased blocks, so that the next IDs come from storage. Call this after the
+   * user's counters are deleted.
+   *
+   * @param uid the user
+   */
+  public void reset(String uid) {
+    this.blocks.keySet().removeIf(key -> key.startsWith(uid + "/"));
+  }
+
+  /** Moves a counter past one block. IDs are stored as strings, as they always have been. */
+  private Map<String, Object> advance(Map<String, Object> current) {
+    long next =
+        current == null || current.get(FIELD) == null
+            ? 0
+            : Long.parseLong(current.get(FIELD).toString());
+    Map<String, Object> updated = current == null ? new HashMap<>() : new HashMap<>(current);
+    updated.put(FIELD, Long.toString(next + this.blockSize));
+    return updated;
+  }
+}
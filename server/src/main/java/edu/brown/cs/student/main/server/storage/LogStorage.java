@@ -0,0 +1,754 @@
+package edu.brown.cs.student.main.server.storage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.UnaryOperator;
+import java.util.zip.CRC32;
+
+/**
+ * An embedded StorageInterface that keeps everything in a single local append-only log, for running
+ * the server without Firebase.
+ *
+ * <p>Every write appends a record to the end of the log; nothing is ever overwritten in place. An
+ * in-memory index maps each document to the offset of its latest record, so a read is one
+ * positional read of the file. The index is rebuilt by replaying the log at startup, and a torn
+ * record at the tail (from a crash mid-append) is detected by its checksum and cut off.
+ *
+ * <p>Writes are durable when they return. Rather than syncing the file once per write, a background
+ * thread syncs whatever has been appended since its last sync and then releases every writer that
+ * was waiting on it, so concurrent writers share one fsync (group commit).
+ *
+ * <p>Overwritten and deleted records are garbage. When garbage makes up more than half of the log,
+ * a background compaction rewrites the live records into a fresh file and atomically swaps it in.
+ *
+ * <p>Each record is: payload length (int), CRC32 of the payload (int), then the payload: an op
+ * byte, the uid, collection and document id, and for puts the document encoded with ValueCodec.
+ *
+ * <p>A committed StorageBatch is written as a batch marker holding the number of writes, followed
+ * by the writes' own records, all in one append. Replay only applies the writes once it has seen
+ * all of them, so a batch torn by a crash is cut off whole.
+ *
+ * <p>Changes are published to a ChangeFeed once they are synced, in the order they land, so a
+ * listener never acts on a write that a failed sync then loses. They are indexed as soon as they
+ * are appended, though, so that the next write to a document, transactions included, builds on
+ * them.
+ */
+public class LogStorage implements StorageInterface, Closeable {
+
+  private static final byte PUT = 1;
+  private static final byte DELETE = 2;
+  private static final byte CLEAR_USER = 3;
+  private static final byte BATCH = 4;
+  private static final String BATCH_WRITES = "writes";
+  private static final int HEADER_BYTES = 8;
+  private static final char SEP = '\u0000';
+
+  private static final double COMPACT_GARBAGE_RATIO = 0.5;
+  private static final long COMPACT_MIN_BYTES = 1 << 20;
+
+  /** Where a document's latest record lives in the log. */
+  private record Location(long offset, int length) {}
+
+  /** An append's changes, waiting for the append to be synced before they are published. */
+  private record Unsynced(long seq, List<ChangeFeed.Change> changes) {}
+
+  /** A decoded record. */
+  private record LogRecord(
+      byte op, String uid, String collection, String doc, Map<String, Object> data) {}
+
+  private final Path file;
+  // Reads, appends and syncs share the read lock; only swapping in a compacted file takes the write
+  // lock, since that replaces the channel out from under everyone.
+  private final ReentrantReadWriteLock channelLock = new ReentrantReadWriteLock();
+  // Serializes appends, so each one knows where the end of the log is.
+  private final ReentrantLock appendLock = new ReentrantLock();
+  private final NavigableMap<String, Location> index = new ConcurrentSkipListMap<>();
+  private final ChangeFeed changes = new ChangeFeed();
+
+  private FileChannel channel;
+  private long end;
+  private long liveBytes;
+
+  // Group commit: appends are numbered, and a writer waits until the synced number passes its own.
+  private final Object syncMonitor = new Object();
+  private long appendedSeq;
+  private long syncedSeq;
+  private IOException syncFailure;
+  private volatile boolean closed;
+  // Changes appended but not yet synced, in log order, each with its append's number.
+  private final ArrayDeque<Unsynced> unpublished = new ArrayDeque<>();
+
+  private final Thread syncer;
+  private final long syncDelayNanos;
+  private final ScheduledExecutorService compactor;
+
+  /**
+   * Constructor for the LogStorage, syncing as soon as there is anything to sync and checking
+   * whether to compact every minute.
+   *
+   * @param file the log file, created if it does not exist
+   * @throws IOException if the log cannot be opened or replayed
+   */
+  public LogStorage(Path file) throws IOException {
+    this(file, Duration.ZERO, Duration.ofMinutes(1));
+  }
+
+  /**
+   * Constructor for the LogStorage.
+   *
+   * @param file the log file, created if it does not exist
+   * @param syncDelay how long the syncer waits to gather more writes before each sync; longer
+   *     delays mean fewer fsyncs but slower writes
+   * @param compactionInterval how often to check whether the log needs compacting
+   * @throws IOException if the log cannot be opened or replayed
+   */
+  public LogStorage(Path file, Duration syncDelay, Duration compactionInterval) throws IOException {
+    this.file = file;
+    if (file.getParent() != null) {
+      Files.createDirectories(file.getParent());
+    }
+    this.channel =
+        FileChannel.open(
+            file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    this.replay();
+    this.syncDelayNanos = syncDelay.toNanos();
+
+    this.syncer = new Thread(this::syncLoop, "log-storage-sync");
+    this.syncer.setDaemon(true);
+    this.syncer.start();
+    this.compactor =
+        Executors.newSingleThreadScheduledExecutor(
+            r -> {
+              Thread t = new Thread(r, "log-storage-compact");
+              t.setDaemon(true);
+              return t;
+            });
+    long intervalMillis = compactionInterval.toMillis();
+    this.compactor.scheduleWithFixedDelay(
+        this::compactIfNeeded, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /** Adds a document to a collection for a specified user, returning once it is durable. */
+  @Override
+  public void addDocument(String uid, String collection_id, String doc_id, Map<String, Object> data)
+      throws IllegalArgumentException {
+    if (uid == null || collection_id == null || doc_id == null || data == null) {
+      throw new IllegalArgumentException(
+          "addDocument: uid, collection_id, doc_id, or data cannot be null");
+    }
+    this.append(new LogRecord(PUT, uid, collection_id, doc_id, data));
+  }
+
+  /** Gets all the documents in a collection for a specified user, keyed by document id. */
+  @Override
+  public Map<String, Map<String, Object>> getCollectionDocuments(String uid, String collection_id)
+      throws IllegalArgumentException {
+    if (uid == null || collection_id == null) {
+      throw new IllegalArgumentException(
+          "getCollectionDocuments: uid and/or collection_id cannot be null");
+    }
+    String prefix = uid + SEP + collection_id + SEP;
+    Map<String, Map<String, Object>> docs = new LinkedHashMap<>();
+    this.channelLock.readLock().lock();
+    try {
+      for (Map.Entry<String, Location> e : prefixRange(this.index, prefix).entrySet()) {
+        docs.put(e.getKey().substring(prefix.length()), this.read(e.getValue()).data());
+      }
+    } finally {
+      this.channelLock.readLock().unlock();
+    }
+    return docs;
+  }
+
+  /** Gets a page of a collection by walking the index from the cursor, reading only the page. */
+  @Override
+  public CollectionPage getCollectionPage(
+      String uid, String collection_id, String startAfter, int limit) {
+    if (uid == null || collection_id == null) {
+      throw new IllegalArgumentException(
+          "getCollectionPage: uid and/or collection_id cannot be null");
+    }
+    String prefix = uid + SEP + collection_id + SEP;
+    NavigableMap<String, Location> range =
+        startAfter == null
+            ? prefixRange(this.index, prefix)
+            : this.index.subMap(prefix + startAfter, false, prefix + Character.MAX_VALUE, false);
+    Map<String, Map<String, Object>> docs = new LinkedHashMap<>();
+    this.channelLock.readLock().lock();
+    try {
+      for (Map.Entry<String, Location> e : range.entrySet()) {
+        if (docs.size() == limit) {
+          return new CollectionPage(docs, true);
+        }
+        docs.put(e.getKey().substring(prefix.length()), this.read(e.getValue()).data());
+      }
+    } finally {
+      this.channelLock.readLock().unlock();
+    }
+    return new CollectionPage(docs, false);
+  }
+
+  /** Lists the users with documents, skipping from one user to the next through the index. */
+  @Override
+  public List<String> listUsers() {
+    List<String> users = new ArrayList<>();
+    String key = this.index.isEmpty() ? null : this.index.firstKey();
+    while (key != null) {
+      String uid = key.substring(0, key.indexOf(SEP));
+      users.add(uid);
+      key = this.index.higherKey(uid + SEP + Character.MAX_VALUE);
+    }
+    return users;
+  }
+
+  /** Clears all the data for a specified user. */
+  @Override
+  public void clearUser(String uid) throws IllegalArgumentException {
+    if (uid == null) {
+      throw new IllegalArgumentException("removeUser: uid cannot be null");
+    }
+    this.append(new LogRecord(CLEAR_USER, uid, "", "", null));
+  }
+
+  /**
+   * Clears a user, counting their documents as deleted. The whole user goes in one record, so the
+   * count lands all at once.
+   */
+  @Override
+  public void clearUser(String uid, DeletionProgress progress) {
+    if (uid == null) {
+      throw new IllegalArgumentException("removeUser: uid cannot be null");
+    }
+    long seq;
+    long count;
+    this.channelLock.readLock().lock();
+    this.appendLock.lock();
+    try {
+      count = prefixRange(this.index, uid + SEP).size();
+      seq = this.appendLocked(List.of(new LogRecord(CLEAR_USER, uid, "", "", null)));
+    } finally {
+      this.appendLock.unlock();
+      this.channelLock.readLock().unlock();
+    }
+    this.awaitSync(seq);
+    progress.recordDeleted(count);
+  }
+
+  /** Deletes a document within a user's collection, returning once the delete is durable. */
+  @Override
+  public void deleteDocument(String uid, String collection_id, String doc_id) {
+    this.append(new LogRecord(DELETE, uid, collection_id, doc_id, null));
+  }
+
+  /** Gets the data from a document, or null if it does not exist. */
+  @Override
+  public Map<String, Object> getDocument(String uid, String collection_id, String doc_id) {
+    this.channelLock.readLock().lock();
+    try {
+      Location location = this.index.get(key(uid, collection_id, doc_id));
+      return location == null ? null : this.read(location).data();
+    } finally {
+      this.channelLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Atomically updates a document. Appends are held off while the current value is read and the new
+   * one written, so nothing can slip in between.
+   */
+  @Override
+  public Map<String, Object> transact(
+      String uid, String collection_id, String doc_id, UnaryOperator<Map<String, Object>> update) {
+    Map<String, Object> next;
+    long seq;
+    this.channelLock.readLock().lock();
+    this.appendLock.lock();
+    try {
+      Location location = this.index.get(key(uid, collection_id, doc_id));
+      next = update.apply(location == null ? null : this.read(location).data());
+      if (next == null) {
+        return null;
+      }
+      seq = this.appendLocked(List.of(new LogRecord(PUT, uid, collection_id, doc_id, next)));
+    } finally {
+      this.appendLock.unlock();
+      this.channelLock.readLock().unlock();
+    }
+    this.awaitSync(seq);
+    return next;
+  }
+
+  /** Commits a batch as one append, returning once the whole batch is durable. */
+  @Override
+  public void commit(StorageBatch batch) {
+    List<LogRecord> records = new ArrayList<>();
+    if (batch.writes().size() > 1) {
+      records.add(
+          new LogRecord(BATCH, "", "", "", Map.of(BATCH_WRITES, (long) batch.writes().size())));
+    }
+    for (StorageBatch.Write write : batch.writes()) {
+      records.add(
+          new LogRecord(
+              write.isDelete() ? DELETE : PUT,
+              write.uid(),
+              write.collection_id(),
+              write.doc_id(),
+              write.data()));
+    }
+    if (!records.isEmpty()) {
+      this.append(records);
+    }
+  }
+
+  /** Subscribes to a collection's changes through this log's in-process change feed. */
+  @Override
+  public ChangeFeed.Subscription subscribe(
+      String uid, String collection_id, ChangeFeed.Listener listener) {
+    return this.changes.subscribe(uid, collection_id, listener);
+  }
+
+  /**
+   * Rewrites the log with only its live records, dropping overwritten and deleted ones. Reads and
+   * writes wait while the new file is swapped in.
+   *
+   * @throws IOException if the compacted log cannot be written
+   */
+  public void compact() throws IOException {
+    Path tmp = this.file.resolveSibling(this.file.getFileName() + ".compact");
+    this.channelLock.writeLock().lock();
+    try {
+      Map<String, Location> moved = new LinkedHashMap<>();
+      long offset = 0;
+      try (FileChannel out =
+          FileChannel.open(
+              tmp,
+              StandardOpenOption.CREATE,
+              StandardOpenOption.TRUNCATE_EXISTING,
+              StandardOpenOption.WRITE)) {
+        for (Map.Entry<String, Location> e : this.index.entrySet()) {
+          Location location = e.getValue();
+          ByteBuffer record = this.readRaw(location);
+          while (record.hasRemaining()) {
+            out.write(record, offset + record.position());
+          }
+          moved.put(e.getKey(), new Location(offset, location.length()));
+          offset += location.length();
+        }
+        out.force(true);
+      }
+      Files.move(
+          tmp, this.file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      this.channel.close();
+      this.channel = FileChannel.open(this.file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      this.index.putAll(moved);
+      this.end = offset;
+      this.liveBytes = offset;
+      // Everything appended so far is in the compacted file, which has just been synced.
+      synchronized (this.syncMonitor) {
+        this.markSynced(this.appendedSeq);
+      }
+    } finally {
+      this.channelLock.writeLock().unlock();
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  /** Returns the size of the log in bytes. */
+  public long sizeBytes() {
+    this.appendLock.lock();
+    try {
+      return this.end;
+    } finally {
+      this.appendLock.unlock();
+    }
+  }
+
+  /** Returns the bytes of the log taken up by live records. */
+  public long liveBytes() {
+    this.appendLock.lock();
+    try {
+      return this.liveBytes;
+    } finally {
+      this.appendLock.unlock();
+    }
+  }
+
+  /** Stops the background threads, syncs and closes the log. */
+  @Override
+  public void close() throws IOException {
+    this.closed = true;
+    this.compactor.shutdownNow();
+    synchronized (this.syncMonitor) {
+      this.syncMonitor.notifyAll();
+    }
+    try {
+      this.syncer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    this.channelLock.writeLock().lock();
+    try {
+      this.channel.force(true);
+      this.channel.close();
+    } finally {
+      this.channelLock.writeLock().unlock();
+    }
+  }
+
+  private void append(LogRecord record) {
+    this.append(List.of(record));
+  }
+
+  private void append(List<LogRecord> records) {
+    long seq;
+    this.channelLock.readLock().lock();
+    this.appendLock.lock();
+    try {
+      seq = this.appendLocked(records);
+    } finally {
+      this.appendLock.unlock();
+      this.channelLock.readLock().unlock();
+    }
+    this.awaitSync(seq);
+  }
+
+  /**
+   * Appends records back to back, then indexes them and queues their changes to be published once
+   * they are synced. The caller must hold the channel read lock and the append lock, and should
+   * then wait for the returned sequence number to be synced. Queueing under the append lock keeps
+   * the feed in log order.
+   *
+   * <p>Nothing is indexed until every record is written, so a write that fails partway through a
+   * batch leaves none of it visible; the torn records are cut off the log, as recovery would.
+   */
+  private long appendLocked(List<LogRecord> records) {
+    if (this.closed) {
+      throw new IllegalStateException("Storage is closed");
+    }
+    long start = this.end;
+    List<Location> locations = new ArrayList<>();
+    try {
+      for (LogRecord record : records) {
+        ByteBuffer bytes = encode(record);
+        long offset = this.end;
+        int length = bytes.remaining();
+        while (bytes.hasRemaining()) {
+          this.channel.write(bytes, offset + bytes.position());
+        }
+        this.end += length;
+        locations.add(new Location(offset, length));
+      }
+    } catch (IOException e) {
+      this.end = start;
+      try {
+        this.channel.truncate(start);
+      } catch (IOException suppressed) {
+        e.addSuppressed(suppressed);
+      }
+      throw new UncheckedIOException(e);
+    }
+
+    List<ChangeFeed.Change> published = new ArrayList<>();
+    for (int i = 0; i < records.size(); i++) {
+      LogRecord record = records.get(i);
+      if (record.op() == CLEAR_USER && this.changes.hasSubscribers(record.uid())) {
+        // Clearing a user deletes each of their documents.
+        for (String key : prefixRange(this.index, record.uid() + SEP).keySet()) {
+          String[] parts = key.split(String.valueOf(SEP), 3);
+          published.add(new ChangeFeed.Change(parts[0], parts[1], parts[2], null));
+        }
+      } else if (record.op() == PUT || record.op() == DELETE) {
+        published.add(
+            new ChangeFeed.Change(record.uid(), record.collection(), record.doc(), record.data()));
+      }
+      if (record.op() != BATCH) {
+        this.apply(record, locations.get(i));
+      }
+    }
+    synchronized (this.syncMonitor) {
+      long seq = ++this.appendedSeq;
+      if (!published.isEmpty()) {
+        this.unpublished.add(new Unsynced(seq, published));
+      }
+      this.syncMonitor.notifyAll();
+      return seq;
+    }
+  }
+
+  /**
+   * Records that appends up to a sequence number are synced, publishes their changes, then releases
+   * their writers, so a writer returns only once its change is on its way to listeners. The caller
+   * must hold the sync monitor.
+   */
+  private void markSynced(long seq) {
+    this.syncedSeq = Math.max(this.syncedSeq, seq);
+    while (!this.unpublished.isEmpty() && this.unpublished.peek().seq() <= this.syncedSeq) {
+      this.changes.publish(this.unpublished.poll().changes());
+    }
+    this.syncMonitor.notifyAll();
+  }
+
+  /** Updates the index for a record just appended (or replayed) at the given location. */
+  private void apply(LogRecord record, Location location) {
+    switch (record.op()) {
+      case PUT:
+        {
+          Location old =
+              this.index.put(key(record.uid(), record.collection(), record.doc()), location);
+          this.liveBytes += location.length() - (old == null ? 0 : old.length());
+          break;
+        }
+      case DELETE:
+        {
+          Location old = this.index.remove(key(record.uid(), record.collection(), record.doc()));
+          this.liveBytes -= old == null ? 0 : old.length();
+          break;
+        }
+      default:
+        {
+          NavigableMap<String, Location> user = prefixRange(this.index, record.uid() + SEP);
+          for (Location old : user.values()) {
+            this.liveBytes -= old.length();
+          }
+          user.clear();
+        }
+    }
+  }
+
+  private void awaitSync(long seq) {
+    synchronized (this.syncMonitor) {
+      while (this.syncedSeq < seq) {
+        if (this.syncFailure != null) {
+          throw new UncheckedIOException(this.syncFailure);
+        }
+        if (this.closed) {
+          throw new IllegalStateException("Storage closed before the write was synced");
+        }
+        try {
+          this.syncMonitor.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IllegalStateException("Interrupted while waiting for the write to sync", e);
+        }
+      }
+    }
+  }
+
+  private void syncLoop() {
+    while (true) {
+      synchronized (this.syncMonitor) {
+        while (this.syncedSeq == this.appendedSeq && !this.closed) {
+          try {
+            this.syncMonitor.wait();
+          } catch (InterruptedException e) {
+            return;
+          }
+        }
+        if (this.syncedSeq == this.appendedSeq) {
+          return;
+        }
+      }
+      if (this.syncDelayNanos > 0) {
+        // Give other writers a moment to join this sync.
+        try {
+          TimeUnit.NANOSECONDS.sleep(this.syncDelayNanos);
+        } catch (InterruptedException e) {
+          return;
+        }
+      }
+      long target;
+      synchronized (this.syncMonitor) {
+        // Appends bump the sequence only once their bytes are written, so the sync covers them all.
+        target = this.appendedSeq;
+      }
+      this.channelLock.readLock().lock();
+      try {
+        this.channel.force(false);
+        synchronized (this.syncMonitor) {
+          this.markSynced(target);
+        }
+      } catch (IOException e) {
+        synchronized (this.syncMonitor) {
+          this.syncFailure = e;
+          // Those writes fail, so their changes are never published.
+          this.unpublished.clear();
+          this.syncMonitor.notifyAll();
+        }
+        return;
+      } finally {
+        this.channelLock.readLock().unlock();
+      }
+    }
+  }
+
+  private void compactIfNeeded() {
+    long size = this.sizeBytes();
+    if (size < COMPACT_MIN_BYTES || this.liveBytes() > size * (1 - COMPACT_GARBAGE_RATIO)) {
+      return;
+    }
+    try {
+      this.compact();
+    } catch (IOException e) {
+      System.err.println("Error compacting " + this.file + ": " + e.getMessage());
+    }
+  }
+
+  /** Rebuilds the index from the log, cutting off a torn or corrupt tail. */
+  private void replay() throws IOException {
+    long size = this.channel.size();
+    long offset = 0;
+    // The batch being read, if any: where it starts, and its writes read so far.
+    long batchStart = -1;
+    int batchRemaining = 0;
+    List<LogRecord> batchRecords = new ArrayList<>();
+    List<Location> batchLocations = new ArrayList<>();
+    ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+    while (offset + HEADER_BYTES <= size) {
+      header.clear();
+      this.readFully(header, offset);
+      header.flip();
+      int payloadLength = header.getInt();
+      int crc = header.getInt();
+      if (payloadLength <= 0 || offset + HEADER_BYTES + payloadLength > size) {
+        break;
+      }
+      ByteBuffer payload = ByteBuffer.allocate(payloadLength);
+      this.readFully(payload, offset + HEADER_BYTES);
+      payload.flip();
+      if (crc32(payload) != crc) {
+        break;
+      }
+      LogRecord record;
+      try {
+        record = decode(payload);
+      } catch (RuntimeException e) {
+        break;
+      }
+      Location location = new Location(offset, HEADER_BYTES + payloadLength);
+      offset += HEADER_BYTES + payloadLength;
+      if (record.op() == BATCH) {
+        batchStart = location.offset();
+        batchRemaining = ((Number) record.data().get(BATCH_WRITES)).intValue();
+      } else if (batchRemaining > 0) {
+        batchRecords.add(record);
+        batchLocations.add(location);
+        if (--batchRemaining == 0) {
+          for (int i = 0; i < batchRecords.size(); i++) {
+            this.apply(batchRecords.get(i), batchLocations.get(i));
+          }
+          batchRecords.clear();
+          batchLocations.clear();
+        }
+      } else {
+        this.apply(record, location);
+      }
+    }
+    if (batchRemaining > 0) {
+      // The log ends partway through a batch, so none of it was committed.
+      offset = batchStart;
+    }
+    if (offset < size) {
+      System.err.println(
+          "Truncating " + (size - offset) + " unreadable bytes from the end of " + this.file);
+      this.channel.truncate(offset);
+      this.channel.force(true);
+    }
+    this.end = offset;
+  }
+
+  private LogRecord read(Location location) {
+    ByteBuffer record = this.readRaw(location);
+    record.position(HEADER_BYTES);
+    return decode(record);
+  }
+
+  private ByteBuffer readRaw(Location location) {
+    ByteBuffer record = ByteBuffer.allocate(location.length());
+    try {
+      this.readFully(record, location.offset());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    record.flip();
+    return record;
+  }
+
+  private void readFully(ByteBuffer buf, long offset) throws IOException {
+    while (buf.hasRemaining()) {
+      if (this.channel.read(buf, offset + buf.position()) < 0) {
+        throw new IOException("Unexpected end of " + this.file);
+      }
+    }
+  }
+
+  private static ByteBuffer encode(LogRecord record) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeInt(0); // length, filled in below
+      out.writeInt(0); // checksum, filled in below
+      out.writeByte(record.op());
+      ValueCodec.writeString(out, record.uid());
+      ValueCodec.writeString(out, record.collection());
+      ValueCodec.writeString(out, record.doc());
+      if (record.op() == PUT || record.op() == BATCH) {
+        ValueCodec.write(out, record.data());
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    ByteBuffer buf = ByteBuffer.wrap(bytes.toByteArray());
+    int payloadLength = buf.capacity() - HEADER_BYTES;
+    buf.position(HEADER_BYTES);
+    int crc = crc32(buf.slice());
+    buf.putInt(0, payloadLength);
+    buf.putInt(4, crc);
+    buf.position(0);
+    return buf;
+  }
+
+  private static LogRecord decode(ByteBuffer payload) {
+    byte op = payload.get();
+    String uid = ValueCodec.readString(payload);
+    String collection = ValueCodec.readString(payload);
+    String doc = ValueCodec.readString(payload);
+    Map<String, Object> data = op == PUT || op == BATCH ? ValueCodec.readMap(payload) : null;
+    return new LogRecord(op, uid, collection, doc, data);
+  }
+
+  private static int crc32(ByteBuffer buf) {
+    CRC32 crc = new CRC32();
+    crc.update(buf.duplicate());
+    return (int) crc.getValue();
+  }
+
+  private static String key(String uid, String collection, String doc) {
+    return uid + SEP + collection + SEP + doc;
+  }
+
+  private static NavigableMap<String, Location> prefixRange(
+      NavigableMap<String, Location> map, String prefix) {
+    return map.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+  }
+}
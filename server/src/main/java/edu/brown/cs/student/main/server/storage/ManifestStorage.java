@@ -0,0 +1,403 @@
+package edu.brown.cs.student.main.server.storage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.function.UnaryOperator;
+
+/**
+ * A StorageInterface decorator that keeps a manifest of each of a user's chosen collections, so
+ * that reading a whole collection is a single document read however many documents it has.
+ *
+ * <p>The manifest for collection C lives at manifests/C under the user. It holds a base snapshot of
+ * the collection, a list of deltas (puts and deletes) written since the snapshot, a version counter
+ * bumped by every change, and whether it is complete. Every write still goes to the underlying
+ * documents first, and is then appended to the manifest as a delta in a transaction; once enough
+ * deltas pile up, the same transaction folds them into the base.
+ *
+ * <p>Two writers of one document can append their deltas in the opposite order to their writes, so
+ * a delta doesn't carry the data its writer wrote: the append transaction re-reads the document and
+ * records what is there now. Whichever append lands last then carries the latest state. A batch of
+ * more than MAX_REREAD writes isn't re-read; it marks the manifest incomplete instead, and a
+ * rebuild that read the documents before that happened leaves it incomplete.
+ *
+ * <p>The manifest is derived data: the documents stay the source of truth. A collection with no
+ * complete manifest is read document by document and the manifest is rebuilt from what was read,
+ * keeping any deltas that writers appended meanwhile. If the rebuild fails, the documents read are
+ * returned all the same. If appending a delta fails, the manifest is deleted so that the next read
+ * rebuilds it. Turning manifests off again needs no migration.
+ *
+ * <p>A manifest has to fit in one document. Once a collection's would be bigger than
+ * MAX_MANIFEST_BYTES (half of Firestore's 1 MiB limit, leaving room for deltas), the manifest is
+ * replaced by a marker saying the collection is unmanifested, and the collection is read document
+ * by document from then on, with no more attempts to rebuild it.
+ */
+public class ManifestStorage implements StorageInterface {
+
+  public static final String MANIFESTS = "manifests";
+
+  private static final String VERSION = "version";
+  private static final String COMPLETE = "complete";
+  private static final String BASE = "base";
+  private static final String DELTAS = "deltas";
+  private static final String ID = "id";
+  private static final String DATA = "data";
+  private static final String UNMANIFESTED = "unmanifested";
+  private static final String INVALIDATED = "invalidated";
+
+  /** The most documents of one batch that are re-read into a manifest's deltas. */
+  public static final int MAX_REREAD = 20;
+
+  /** The most a manifest may hold, roughly as Firestore counts document size. */
+  public static final int MAX_MANIFEST_BYTES = 512 * 1024;
+
+  private final StorageInterface delegate;
+  private final Set<String> collections;
+  private final int compactEvery;
+
+  /**
+   * Constructor for the ManifestStorage.
+   *
+   * @param delegate the underlying store
+   * @param collections the collections to keep manifests of
+   * @param compactEvery how many deltas a manifest collects before they are folded into its base
+   */
+  public ManifestStorage(StorageInterface delegate, Set<String> collections, int compactEvery) {
+    if (compactEvery < 1) {
+      throw new IllegalArgumentException("compactEvery must be positive");
+    }
+    this.delegate = delegate;
+    this.collections = Set.copyOf(collections);
+    this.compactEvery = compactEvery;
+  }
+
+  @Override
+  public void addDocument(
+      String uid, String collection_id, String doc_id, Map<String, Object> data) {
+    this.delegate.addDocument(uid, collection_id, doc_id, data);
+    if (this.collections.contains(collection_id)) {
+      this.appendDeltas(uid, collection_id, Set.of(doc_id));
+    }
+  }
+
+  /** Reads a manifested collection from its manifest, rebuilding the manifest if it isn't there. */
+  @Override
+  public Map<String, Map<String, Object>> getCollectionDocuments(String uid, String collection_id)
+      throws InterruptedException, ExecutionException {
+    if (!this.collections.contains(collection_id)) {
+      return this.delegate.getCollectionDocuments(uid, collection_id);
+    }
+    Map<String, Object> manifest = this.delegate.getDocument(uid, MANIFESTS, collection_id);
+    if (unmanifested(manifest)) {
+      return this.delegate.getCollectionDocuments(uid, collection_id);
+    }
+    if (manifest != null && Boolean.TRUE.equals(manifest.get(COMPLETE))) {
+      return materialize(manifest);
+    }
+
+    long seen = version(manifest);
+    Map<String, Map<String, Object>> docs =
+        this.delegate.getCollectionDocuments(uid, collection_id);
+    try {
+      Map<String, Object> rebuilt =
+          this.delegate.transact(
+              uid,
+              MANIFESTS,
+              collection_id,
+              current -> {
+                if (unmanifested(current)
+                    || (current != null && Boolean.TRUE.equals(current.get(COMPLETE)))
+                    || invalidated(current) > seen) {
+                  // A batch too big to re-read landed after the documents were read.
+                  return current;
+                }
+                // Replay whatever was appended since the documents were read on top of them.
+                Map<String, Map<String, Object>> base = new LinkedHashMap<>(docs);
+                if (current != null) {
+                  applyDeltas(base, deltas(current));
+                }
+                if (estimateBytes(base) > MAX_MANIFEST_BYTES) {
+                  return unmanifested(version(current) + 1);
+                }
+                return manifest(version(current) + 1, true, base, List.of(), 0);
+              });
+      if (rebuilt != null && Boolean.TRUE.equals(rebuilt.get(COMPLETE))) {
+        return materialize(rebuilt);
+      }
+    } catch (ExecutionException | RuntimeException e) {
+      // The documents are the source of truth and were read; the next read tries again.
+      System.err.println(
+          "Error rebuilding the " + collection_id + " manifest for " + uid + ": " + e.getMessage());
+    }
+    return docs;
+  }
+
+  /** Cuts a page of a manifested collection out of its manifest, so it is still one read. */
+  @Override
+  public CollectionPage getCollectionPage(
+      String uid, String collection_id, String startAfter, int limit)
+      throws InterruptedException, ExecutionException {
+    if (!this.collections.contains(collection_id)) {
+      return this.delegate.getCollectionPage(uid, collection_id, startAfter, limit);
+    }
+    return CollectionPage.slice(this.getCollectionDocuments(uid, collection_id), startAfter, limit);
+  }
+
+  @Override
+  public List<String> listUsers() throws InterruptedException, ExecutionException {
+    return this.delegate.listUsers();
+  }
+
+  @Override
+  public void clearUser(String uid) throws InterruptedException, ExecutionException {
+    // Manifests live under the user, so they go with everything else.
+    this.delegate.clearUser(uid);
+  }
+
+  @Override
+  public void clearUser(String uid, DeletionProgress progress)
+      throws InterruptedException, ExecutionException {
+    this.delegate.clearUser(uid, progress);
+  }
+
+  @Override
+  public void deleteDocument(String uid, String collection_id, String doc_id) {
+    this.delegate.deleteDocument(uid, collection_id, doc_id);
+    if (this.collections.contains(collection_id)) {
+      this.appendDeltas(uid, collection_id, Set.of(doc_id));
+    }
+  }
+
+  @Override
+  public Map<String, Object> getDocument(String uid, String collection_id, String doc_id)
+      throws InterruptedException, ExecutionException {
+    return this.delegate.getDocument(uid, collection_id, doc_id);
+  }
+
+  @Override
+  public Map<String, Object> transact(
+      String uid, String collection_id, String doc_id, UnaryOperator<Map<String, Object>> update)
+      throws InterruptedException, ExecutionException {
+    Map<String, Object> next = this.delegate.transact(uid, collection_id, doc_id, update);
+    if (next != null && this.collections.contains(collection_id)) {
+      this.appendDeltas(uid, collection_id, Set.of(doc_id));
+    }
+    return next;
+  }
+
+  /** Subscribes to the underlying documents' changes, which manifests are derived from. */
+  @Override
+  public ChangeFeed.Subscription subscribe(
+      String uid, String collection_id, ChangeFeed.Listener listener) {
+    return this.delegate.subscribe(uid, collection_id, listener);
+  }
+
+  @Override
+  public ChangeFeed.Snapshot subscribeWithSnapshot(
+      String uid, String collection_id, ChangeFeed.Listener listener)
+      throws InterruptedException, ExecutionException {
+    return this.delegate.subscribeWithSnapshot(uid, collection_id, listener);
+  }
+
+  /** Commits the batch, then appends its writes to each affected manifest. */
+  @Override
+  public void commit(StorageBatch batch) throws InterruptedException, ExecutionException {
+    this.delegate.commit(batch);
+    Map<List<String>, Set<String>> byManifest = new LinkedHashMap<>();
+    for (StorageBatch.Write write : batch.writes()) {
+      if (this.collections.contains(write.collection_id())) {
+        byManifest
+            .computeIfAbsent(
+                List.of(write.uid(), write.collection_id()), k -> new LinkedHashSet<>())
+            .add(write.doc_id());
+      }
+    }
+    for (Map.Entry<List<String>, Set<String>> e : byManifest.entrySet()) {
+      this.appendDeltas(e.getKey().get(0), e.getKey().get(1), e.getValue());
+    }
+  }
+
+  /**
+   * Returns a manifest's version, which goes up with every change to its collection.
+   *
+   * @param uid the user
+   * @param collection_id the collection
+   * @return the version, or 0 if the collection has no manifest
+   */
+  public long version(String uid, String collection_id)
+      throws InterruptedException, ExecutionException {
+    return version(this.delegate.getDocument(uid, MANIFESTS, collection_id));
+  }
+
+  /**
+   * Appends the current state of written documents to a manifest as deltas, folding them into its
+   * base once there are enough. A collection with no manifest yet gets an incomplete one holding
+   * just the deltas, which the next read completes. If there are too many documents to re-read, the
+   * manifest is marked incomplete instead. If the append fails, the manifest is dropped so that it
+   * can't be read stale.
+   */
+  private void appendDeltas(String uid, String collection_id, Set<String> docIds) {
+    try {
+      this.delegate.transact(
+          uid,
+          MANIFESTS,
+          collection_id,
+          current -> {
+            if (unmanifested(current)) {
+              return current;
+            }
+            long version = version(current) + 1;
+            if (docIds.size() > MAX_REREAD) {
+              return manifest(version, false, Map.of(), List.of(), version);
+            }
+            boolean complete = current != null && Boolean.TRUE.equals(current.get(COMPLETE));
+            Map<String, Map<String, Object>> base = current == null ? Map.of() : base(current);
+            List<Map<String, Object>> deltas = new ArrayList<>(deltas(current));
+            for (String docId : docIds) {
+              // Read inside the transaction, so that a later append can't carry older data.
+              deltas.add(delta(docId, this.reread(uid, collection_id, docId)));
+            }
+            if (complete && deltas.size() >= this.compactEvery) {
+              Map<String, Map<String, Object>> compacted = new LinkedHashMap<>(base);
+              applyDeltas(compacted, deltas);
+              if (estimateBytes(compacted) > MAX_MANIFEST_BYTES) {
+                return unmanifested(version);
+              }
+              return manifest(version, true, compacted, List.of(), 0);
+            }
+            // An incomplete manifest only collects deltas until a read completes it; if none does
+            // for long enough, stop collecting rather than outgrow the document.
+            if (!complete && estimateBytes(deltas) > MAX_MANIFEST_BYTES) {
+              return unmanifested(version);
+            }
+            return manifest(version, complete, base, deltas, invalidated(current));
+          });
+    } catch (Exception e) {
+      System.err.println(
+          "Error updating the " + collection_id + " manifest for " + uid + ": " + e.getMessage());
+      try {
+        this.delegate.deleteDocument(uid, MANIFESTS, collection_id);
+      } catch (RuntimeException ignored) {
+        // Nothing more can be done here; clearing the user resets the manifest.
+      }
+    }
+  }
+
+  /** Reads a document for a delta from inside a manifest transaction. */
+  private Map<String, Object> reread(String uid, String collection_id, String doc_id) {
+    try {
+      return this.delegate.getDocument(uid, collection_id, doc_id);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while reading " + doc_id, e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Error reading " + doc_id, e.getCause());
+    }
+  }
+
+  private static Map<String, Object> manifest(
+      long version,
+      boolean complete,
+      Map<String, Map<String, Object>> base,
+      List<Map<String, Object>> deltas,
+      long invalidated) {
+    Map<String, Object> manifest = new HashMap<>();
+    manifest.put(VERSION, version);
+    manifest.put(COMPLETE, complete);
+    manifest.put(BASE, base);
+    manifest.put(DELTAS, deltas);
+    if (invalidated > 0) {
+      manifest.put(INVALIDATED, invalidated);
+    }
+    return manifest;
+  }
+
+  /** Returns the version at which a batch last marked the manifest incomplete, or 0. */
+  private static long invalidated(Map<String, Object> manifest) {
+    return manifest != null && manifest.get(INVALIDATED) instanceof Number n ? n.longValue() : 0;
+  }
+
+  private static Map<String, Object> unmanifested(long version) {
+    Map<String, Object> marker = new HashMap<>();
+    marker.put(VERSION, version);
+    marker.put(UNMANIFESTED, true);
+    return marker;
+  }
+
+  private static boolean unmanifested(Map<String, Object> manifest) {
+    return manifest != null && Boolean.TRUE.equals(manifest.get(UNMANIFESTED));
+  }
+
+  /**
+   * Roughly how many bytes a value takes in a Firestore document: string lengths plus a few bytes
+   * per field and element.
+   */
+  private static long estimateBytes(Object value) {
+    if (value instanceof Map<?, ?> map) {
+      long bytes = 32;
+      for (Map.Entry<?, ?> entry : map.entrySet()) {
+        bytes += entry.getKey().toString().length() + 1 + estimateBytes(entry.getValue());
+      }
+      return bytes;
+    } else if (value instanceof List<?> list) {
+      long bytes = 0;
+      for (Object item : list) {
+        bytes += estimateBytes(item);
+      }
+      return bytes;
+    } else if (value instanceof String s) {
+      return s.length() + 1;
+    }
+    return 8;
+  }
+
+  private static Map<String, Object> delta(String docId, Map<String, Object> data) {
+    Map<String, Object> delta = new HashMap<>();
+    delta.put(ID, docId);
+    if (data != null) {
+      delta.put(DATA, data);
+    }
+    return delta;
+  }
+
+  private static Map<String, Map<String, Object>> materialize(Map<String, Object> manifest) {
+    Map<String, Map<String, Object>> docs = new LinkedHashMap<>(base(manifest));
+    applyDeltas(docs, deltas(manifest));
+    return docs;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static void applyDeltas(
+      Map<String, Map<String, Object>> docs, List<Map<String, Object>> deltas) {
+    for (Map<String, Object> delta : deltas) {
+      String id = delta.get(ID).toString();
+      Object data = delta.get(DATA);
+      if (data == null) {
+        docs.remove(id);
+      } else {
+        docs.put(id, new HashMap<>((Map<String, Object>) data));
+      }
+    }
+  }
+
+  private static long version(Map<String, Object> manifest) {
+    return manifest != null && manifest.get(VERSION) instanceof Number n ? n.longValue() : 0;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, Map<String, Object>> base(Map<String, Object> manifest) {
+    Object base = manifest.get(BASE);
+    return base == null ? Map.of() : (Map<String, Map<String, Object>>) base;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static List<Map<String, Object>> deltas(Map<String, Object> manifest) {
+    Object deltas = manifest == null ? null : manifest.get(DELTAS);
+    return deltas == null ? List.of() : (List<Map<String, Object>>) deltas;
+  }
+}
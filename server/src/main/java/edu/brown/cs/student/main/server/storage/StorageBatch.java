@@ -0,0 +1,87 @@
+package edu.brown.cs.student.main.server.storage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A group of writes to commit together with StorageInterface.commit. Either every write in the
+ * batch lands or none of them do, and the whole batch costs one round trip to the backing store.
+ *
+ * <p>Writes are applied in the order they were added, so a later write to the same document wins.
+ */
+public final class StorageBatch {
+
+  /** Firestore's limit on the writes in one batch, which every backend enforces alike. */
+  public static final int MAX_WRITES = 500;
+
+  /**
+   * One write in a batch.
+   *
+   * @param uid the user
+   * @param collection_id the collection
+   * @param doc_id the document
+   * @param data the document's new data, or null to delete the document
+   */
+  public record Write(String uid, String collection_id, String doc_id, Map<String, Object> data) {
+
+    /** Returns whether this write deletes its document. */
+    public boolean isDelete() {
+      return this.data == null;
+    }
+  }
+
+  private final List<Write> writes = new ArrayList<>();
+
+  /**
+   * Adds a write that sets a document, replacing any data it had.
+   *
+   * @param uid the user
+   * @param collection_id the collection
+   * @param doc_id the document
+   * @param data the document's data, which is copied
+   * @return this batch
+   */
+  public StorageBatch set(
+      String uid, String collection_id, String doc_id, Map<String, Object> data) {
+    if (data == null) {
+      throw new IllegalArgumentException("set: data cannot be null");
+    }
+    return this.add(new Write(uid, collection_id, doc_id, new HashMap<>(data)));
+  }
+
+  /**
+   * Adds a write that deletes a document.
+   *
+   * @param uid the user
+   * @param collection_id the collection
+   * @param doc_id the document
+   * @return this batch
+   */
+  public StorageBatch delete(String uid, String collection_id, String doc_id) {
+    return this.add(new Write(uid, collection_id, doc_id, null));
+  }
+
+  /** Returns the batch's writes, in order. */
+  public List<Write> writes() {
+    return Collections.unmodifiableList(this.writes);
+  }
+
+  /** Returns whether the batch has no writes. */
+  public boolean isEmpty() {
+    return this.writes.isEmpty();
+  }
+
+  private StorageBatch add(Write write) {
+    if (write.uid() == null || write.collection_id() == null || write.doc_id() == null) {
+      throw new IllegalArgumentException("uid, collection_id and doc_id cannot be null");
+    }
+    if (this.writes.size() == MAX_WRITES) {
+      throw new IllegalStateException("A batch can hold at most " + MAX_WRITES + " writes");
+    }
+    this.writes.add(write);
+    return this;
+  }
+}
@@ -1,24 +1,156 @@
 package edu.brown.cs.student.main.server.storage;
 
-import com.google.cloud.firestore.DocumentReference;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
+import java.util.function.UnaryOperator;
 
 /** An interface that declares document utility for a user. */
 public interface StorageInterface {
 
   void addDocument(String uid, String collection_id, String doc_id, Map<String, Object> data);
 
-  List<Map<String, Object>> getCollection(String uid, String collection_id)
+  /**
+   * Gets every document in a user's collection, keyed by document id.
+   *
+   * @param uid the user
+   * @param collection_id the collection
+   * @return the documents' data by document id
+   */
+  Map<String, Map<String, Object>> getCollectionDocuments(String uid, String collection_id)
       throws InterruptedException, ExecutionException;
 
+  default List<Map<String, Object>> getCollection(String uid, String collection_id)
+      throws InterruptedException, ExecutionException {
+    return new ArrayList<>(this.getCollectionDocuments(uid, collection_id).values());
+  }
+
+  /**
+   * Gets one page of a user's collection, in document id order. By default this reads the whole
+   * collection and cuts the page out of it; backends that can read just the page should override
+   * it.
+   *
+   * @param uid the user
+   * @param collection_id the collection
+   * @param startAfter the document id to start after, or null to start at the beginning
+   * @param limit the most documents to return
+   * @return the page
+   */
+  default CollectionPage getCollectionPage(
+      String uid, String collection_id, String startAfter, int limit)
+      throws InterruptedException, ExecutionException {
+    return CollectionPage.slice(this.getCollectionDocuments(uid, collection_id), startAfter, limit);
+  }
+
+  /**
+   * Lists every user with anything stored, for jobs that sweep over all users. Backends that can't
+   * enumerate users throw UnsupportedOperationException.
+   *
+   * @return the users' ids
+   */
+  default List<String> listUsers() throws InterruptedException, ExecutionException {
+    throw new UnsupportedOperationException(this.getClass().getSimpleName() + " can't list users");
+  }
+
   void clearUser(String uid) throws InterruptedException, ExecutionException;
 
-  void deleteDocument(DocumentReference doc);
+  /**
+   * Clears a user, counting deleted documents into a progress tracker as it goes. Backends that
+   * can't count deletions just clear the user.
+   *
+   * @param uid the user
+   * @param progress where to count deleted documents; the caller marks it finished
+   */
+  default void clearUser(String uid, DeletionProgress progress)
+      throws InterruptedException, ExecutionException {
+    this.clearUser(uid);
+  }
 
-  Map<String, Object> getDocument(DocumentReference doc)
+  void deleteDocument(String uid, String collection_id, String doc_id);
+
+  /**
+   * Gets one document from a user's collection.
+   *
+   * @param uid the user
+   * @param collection_id the collection
+   * @param doc_id the document
+   * @return the document's data, or null if there is no such document
+   */
+  Map<String, Object> getDocument(String uid, String collection_id, String doc_id)
       throws InterruptedException, ExecutionException;
 
-  DocumentReference getDocumentReference(String uid, String collection_id, String doc_id);
+  /**
+   * Atomically reads a document, computes its new data and writes it back, so that concurrent
+   * updates to the same document (from this server or any other) can't overwrite each other. The
+   * update may be run more than once if the backend retries on contention, so it must not have side
+   * effects.
+   *
+   * @param uid the user
+   * @param collection_id the collection
+   * @param doc_id the document
+   * @param update computes the new data from the current data, which is null if the document does
+   *     not exist; returning null leaves the document as it is
+   * @return the data written, or null if nothing was
+   */
+  Map<String, Object> transact(
+      String uid, String collection_id, String doc_id, UnaryOperator<Map<String, Object>> update)
+      throws InterruptedException, ExecutionException;
+
+  /**
+   * Commits a batch of writes atomically: afterwards either all of them have landed or none have.
+   *
+   * @param batch the writes
+   */
+  void commit(StorageBatch batch) throws InterruptedException, ExecutionException;
+
+  /**
+   * Subscribes to the changes made to a user's collection by anyone, this server or another, so
+   * that what is held in memory can be kept current without polling. Backends without a change feed
+   * throw UnsupportedOperationException.
+   *
+   * @param uid the user
+   * @param collection_id the collection
+   * @param listener what to tell about changes
+   * @return the subscription, which must be closed when it is no longer needed
+   */
+  default ChangeFeed.Subscription subscribe(
+      String uid, String collection_id, ChangeFeed.Listener listener) {
+    throw new UnsupportedOperationException(
+        this.getClass().getSimpleName() + " has no change feed");
+  }
+
+  /**
+   * Reads a user's collection and subscribes to its later changes, so that a copy held in memory
+   * misses nothing. By default this subscribes and then reads, so a change landing in between may
+   * be both read and heard about; backends whose subscriptions start with the whole collection, as
+   * Firestore's snapshot listeners do, should override this to take the read from that instead of
+   * paying for both. Backends without a change feed throw UnsupportedOperationException.
+   *
+   * @param uid the user
+   * @param collection_id the collection
+   * @param listener what to tell about changes after the read
+   * @return the collection and the subscription, which must be closed when no longer needed
+   */
+  default ChangeFeed.Snapshot subscribeWithSnapshot(
+      String uid, String collection_id, ChangeFeed.Listener listener)
+      throws InterruptedException, ExecutionException {
+    ChangeFeed.Subscription subscription = this.subscribe(uid, collection_id, listener);
+    try {
+      return new ChangeFeed.Snapshot(this.getCollectionDocuments(uid, collection_id), subscription);
+    } catch (InterruptedException | ExecutionException | RuntimeException e) {
+      subscription.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Returns a non-blocking view of this storage. By default each call runs on a shared pool;
+   * backends with their own asynchronous client should override this.
+   *
+   * @return the asynchronous view
+   */
+  default AsyncStorage async() {
+    return new AsyncStorageAdapter(this);
+  }
 }
@@ -0,0 +1,162 @@
+package edu.brown.cs.student.main.server.storage;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact, typed binary encoding for document values, used by the storage backends that keep
+ * their own files. Each value is a one byte tag followed by its payload. The supported types match
+ * what Firestore hands back: strings, 64-bit integers, doubles, booleans, null, lists and maps with
+ * string keys. Like Firestore, smaller integer types come back as Long.
+ */
+public final class ValueCodec {
+
+  private static final byte NULL = 0;
+  private static final byte STRING = 1;
+  private static final byte LONG = 2;
+  private static final byte DOUBLE = 3;
+  private static final byte BOOLEAN = 4;
+  private static final byte LIST = 5;
+  private static final byte MAP = 6;
+
+  private ValueCodec() {}
+
+  /**
+   * Writes a value.
+   *
+   * @param out the stream to write to
+   * @param value the value
+   * @throws IOException if the stream can't be written
+   * @throws IllegalArgumentException if the value, or anything inside it, has an unsupported type
+   */
+  public static void write(DataOutputStream out, Object value) throws IOException {
+    if (value == null) {
+      out.writeByte(NULL);
+    } else if (value instanceof String s) {
+      out.writeByte(STRING);
+      writeString(out, s);
+    } else if (value instanceof Long || value instanceof Integer || value instanceof Short) {
+      out.writeByte(LONG);
+      out.writeLong(((Number) value).longValue());
+    } else if (value instanceof Double || value instanceof Float) {
+      out.writeByte(DOUBLE);
+      out.writeDouble(((Number) value).doubleValue());
+    } else if (value instanceof Boolean b) {
+      out.writeByte(BOOLEAN);
+      out.writeBoolean(b);
+    } else if (value instanceof List<?> list) {
+      out.writeByte(LIST);
+      out.writeInt(list.size());
+      for (Object item : list) {
+        write(out, item);
+      }
+    } else if (value instanceof Map<?, ?> map) {
+      out.writeByte(MAP);
+      out.writeInt(map.size());
+      for (Map.Entry<?, ?> e : map.entrySet()) {
+        writeString(out, e.getKey().toString());
+        write(out, e.getValue());
+      }
+    } else {
+      throw new IllegalArgumentException(
+          "Unsupported document value type: " + value.getClass().getSimpleName());
+    }
+  }
+
+  /**
+   * Reads a value written by write.
+   *
+   * @param buf the buffer to read from, positioned at the value
+   * @return the value
+   * @throws IllegalArgumentException if the bytes are not a valid value
+   */
+  public static Object read(ByteBuffer buf) {
+    byte tag = buf.get();
+    switch (tag) {
+      case NULL:
+        return null;
+      case STRING:
+        return readString(buf);
+      case LONG:
+        return buf.getLong();
+      case DOUBLE:
+        return buf.getDouble();
+      case BOOLEAN:
+        return buf.get() != 0;
+      case LIST:
+        {
+          int n = buf.getInt();
+          List<Object> list = new ArrayList<>(n);
+          for (int i = 0; i < n; i++) {
+            list.add(read(buf));
+          }
+          return list;
+        }
+      case MAP:
+        return readMapBody(buf);
+      default:
+        throw new IllegalArgumentException("Unknown value tag " + tag);
+    }
+  }
+
+  /**
+   * Reads a value that must be a map, such as a whole document.
+   *
+   * @param buf the buffer to read from, positioned at the value
+   * @return the map
+   * @throws IllegalArgumentException if the value is not a map
+   */
+  @SuppressWarnings("unchecked")
+  public static Map<String, Object> readMap(ByteBuffer buf) {
+    Object value = read(buf);
+    if (!(value instanceof Map)) {
+      throw new IllegalArgumentException("Expected a map");
+    }
+    return (Map<String, Object>) value;
+  }
+
+  /**
+   * Writes a length-prefixed UTF-8 string.
+   *
+   * @param out the stream to write to
+   * @param s the string
+   * @throws IOException if the stream can't be written
+   */
+  public static void writeString(DataOutputStream out, String s) throws IOException {
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * Reads a string written by writeString.
+   *
+   * @param buf the buffer to read from
+   * @return the string
+   */
+  public static String readString(ByteBuffer buf) {
+    int length = buf.getInt();
+    if (length < 0 || length > buf.remaining()) {
+      throw new IllegalArgumentException("Bad string length " + length);
+    }
+    byte[] bytes = new byte[length];
+    buf.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static Map<String, Object> readMapBody(ByteBuffer buf) {
+    int n = buf.getInt();
+    Map<String, Object> map = new LinkedHashMap<>();
+    for (int i = 0; i < n; i++) {
+      String key = readString(buf);
+      map.put(key, read(buf));
+    }
+    return map;
+  }
+}
@@ -0,0 +1,683 @@
+package edu.brown.cs.student.main.server.storage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+import java.util.zip.CRC32;
+
+/**
+ * A StorageInterface decorator that writes some collections behind: a write to them returns once it
+ * is synced to a local journal, and reaches the underlying store later, in batches.
+ *
+ * <p>Pending writes are kept in memory per user, and a later write to a document replaces an
+ * earlier one that hasn't been flushed yet, so a burst of writes to a user's documents costs one
+ * batch commit of their latest data. A background thread flushes shortly after writes arrive. Reads
+ * on this server see pending writes on top of the underlying store; other servers see them once
+ * they are flushed. Transactions and batches touching these collections flush first, so they never
+ * act on data that a pending write is about to overwrite.
+ *
+ * <p>The journal is an append-only file of records, each: payload length (int), CRC32 of the
+ * payload (int), then the payload: an op byte, a sequence number, the uid, collection and document
+ * id, and for puts the document encoded with ValueCodec. After a flush, a checkpoint record marks
+ * every write up to then as flushed, or the journal is emptied if nothing is pending. Under steady
+ * traffic something is always pending, so once the journal has doubled since it was last emptied or
+ * compacted, it is compacted instead: rewritten with just the pending writes, and swapped in
+ * atomically. At startup, the writes after the last checkpoint are replayed into the queue, and a
+ * torn record at the tail is cut off, as in LogStorage.
+ *
+ * <p>The queue is bounded: once maxPending writes are waiting, writers wait for a flush to make
+ * room, and fail if none does in time, rather than growing the queue without limit while the store
+ * is unavailable.
+ */
+public class WriteBehindStorage implements StorageInterface, Closeable {
+
+  private static final byte PUT = 1;
+  private static final byte DELETE = 2;
+  private static final byte CLEAR_USER = 3;
+  private static final byte FLUSHED = 4;
+  private static final int HEADER_BYTES = 8;
+  private static final char SEP = '\u0000';
+
+  // The journal is compacted once it is at least this big and twice its size after the last one.
+  private static final long MIN_COMPACT_BYTES = 1 << 20;
+
+  private static final Duration FULL_TIMEOUT = Duration.ofSeconds(5);
+  private static final Duration MAX_RETRY_DELAY = Duration.ofSeconds(30);
+
+  /** A pending write: its sequence number and the document's data, or null to delete it. */
+  private record Pending(long seq, Map<String, Object> data) {}
+
+  private final StorageInterface delegate;
+  private final Set<String> collections;
+  private final Path file;
+  // Replaced when compacted. Guarded by journalLock once constructed.
+  private FileChannel journal;
+  private long compactedBytes;
+  private final int maxPending;
+  private final long flushDelayNanos;
+
+  // Guarded by this: each user's pending writes, by collection and document id.
+  private final Map<String, Map<String, Pending>> pending = new LinkedHashMap<>();
+  private int pendingCount;
+  private long seq;
+
+  // Serializes journal appends, so writes are journaled in sequence order. Taken before this.
+  private final Object journalLock = new Object();
+  // Serializes flushes, so an older snapshot of a document never lands after a newer one.
+  private final Object flushLock = new Object();
+
+  private final Thread flusher;
+  private volatile boolean closed;
+
+  /**
+   * Constructor for the WriteBehindStorage, replaying any writes left in the journal.
+   *
+   * @param delegate the underlying store
+   * @param collections the collections to write behind
+   * @param file the journal, created if it does not exist
+   * @param maxPending the most writes to hold before making writers wait
+   * @param flushDelay how long to gather writes before flushing them
+   * @throws IOException if the journal can't be opened or replayed
+   */
+  public WriteBehindStorage(
+      StorageInterface delegate,
+      Set<String> collections,
+      Path file,
+      int maxPending,
+      Duration flushDelay)
+      throws IOException {
+    if (maxPending < 1) {
+      throw new IllegalArgumentException("maxPending must be positive");
+    }
+    this.delegate = delegate;
+    this.collections = Set.copyOf(collections);
+    this.file = file;
+    this.maxPending = maxPending;
+    this.flushDelayNanos = flushDelay.toNanos();
+    if (file.getParent() != null) {
+      Files.createDirectories(file.getParent());
+    }
+    this.journal =
+        FileChannel.open(
+            file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    this.replay();
+    this.compactedBytes = this.journal.size();
+
+    this.flusher = new Thread(this::flushLoop, "write-behind-flush");
+    this.flusher.setDaemon(true);
+    this.flusher.start();
+  }
+
+  /** Returns how many writes are waiting to be flushed. */
+  public synchronized int pending() {
+    return this.pendingCount;
+  }
+
+  /**
+   * Flushes every pending write now, and waits for it to land.
+   *
+   * @return whether every write landed; any that didn't stay pending
+   */
+  public boolean flush() {
+    synchronized (this.flushLock) {
+      Map<String, Map<String, Pending>> snapshot = new LinkedHashMap<>();
+      long through;
+      synchronized (this) {
+        for (Map.Entry<String, Map<String, Pending>> user : this.pending.entrySet()) {
+          snapshot.put(user.getKey(), new LinkedHashMap<>(user.getValue()));
+        }
+        through = this.seq;
+      }
+      if (snapshot.isEmpty()) {
+        return true;
+      }
+
+      boolean flushed = true;
+      for (Map.Entry<String, Map<String, Pending>> user : snapshot.entrySet()) {
+        List<Map.Entry<String, Pending>> writes = new ArrayList<>(user.getValue().entrySet());
+        for (int i = 0; i < writes.size(); i += StorageBatch.MAX_WRITES) {
+          List<Map.Entry<String, Pending>> chunk =
+              writes.subList(i, Math.min(i + StorageBatch.MAX_WRITES, writes.size()));
+          try {
+            this.delegate.commit(batch(user.getKey(), chunk));
+          } catch (Exception e) {
+            System.err.println(
+                "Error flushing writes for " + user.getKey() + ": " + e.getMessage());
+            flushed = false;
+            break;
+          }
+          this.landed(user.getKey(), chunk);
+        }
+      }
+      if (flushed) {
+        this.checkpoint(through);
+      }
+      return flushed;
+    }
+  }
+
+  @Override
+  public void addDocument(
+      String uid, String collection_id, String doc_id, Map<String, Object> data) {
+    if (!this.collections.contains(collection_id)) {
+      this.delegate.addDocument(uid, collection_id, doc_id, data);
+      return;
+    }
+    if (data == null) {
+      throw new IllegalArgumentException("addDocument: data cannot be null");
+    }
+    this.enqueue(PUT, uid, collection_id, doc_id, new HashMap<>(data));
+  }
+
+  @Override
+  public Map<String, Map<String, Object>> getCollectionDocuments(String uid, String collection_id)
+      throws InterruptedException, ExecutionException {
+    // Take the pending writes first: any that land meanwhile are then in the store's answer too.
+    Map<String, Pending> overlay = this.overlay(uid, collection_id);
+    return merge(this.delegate.getCollectionDocuments(uid, collection_id), overlay);
+  }
+
+  /** Layers pending writes over documents read from the store. */
+  private static Map<String, Map<String, Object>> merge(
+      Map<String, Map<String, Object>> docs, Map<String, Pending> overlay) {
+    if (overlay.isEmpty()) {
+      return docs;
+    }
+    Map<String, Map<String, Object>> merged = new LinkedHashMap<>(docs);
+    for (Map.Entry<String, Pending> write : overlay.entrySet()) {
+      if (write.getValue().data() == null) {
+        merged.remove(write.getKey());
+      } else {
+        merged.put(write.getKey(), write.getValue().data());
+      }
+    }
+    return merged;
+  }
+
+  @Override
+  public CollectionPage getCollectionPage(
+      String uid, String collection_id, String startAfter, int limit)
+      throws InterruptedException, ExecutionException {
+    if (this.overlay(uid, collection_id).isEmpty()) {
+      return this.delegate.getCollectionPage(uid, collection_id, startAfter, limit);
+    }
+    return CollectionPage.slice(this.getCollectionDocuments(uid, collection_id), startAfter, limit);
+  }
+
+  @Override
+  public List<String> listUsers() throws InterruptedException, ExecutionException {
+    Set<String> users = new LinkedHashSet<>(this.delegate.listUsers());
+    synchronized (this) {
+      users.addAll(this.pending.keySet());
+    }
+    return new ArrayList<>(users);
+  }
+
+  @Override
+  public void clearUser(String uid) throws InterruptedException, ExecutionException {
+    this.dropUser(uid);
+    this.delegate.clearUser(uid);
+  }
+
+  @Override
+  public void clearUser(String uid, DeletionProgress progress)
+      throws InterruptedException, ExecutionException {
+    this.dropUser(uid);
+    this.delegate.clearUser(uid, progress);
+  }
+
+  @Override
+  public void deleteDocument(String uid, String collection_id, String doc_id) {
+    if (!this.collections.contains(collection_id)) {
+      this.delegate.deleteDocument(uid, collection_id, doc_id);
+      return;
+    }
+    this.enqueue(DELETE, uid, collection_id, doc_id, null);
+  }
+
+  @Override
+  public Map<String, Object> getDocument(String uid, String collection_id, String doc_id)
+      throws InterruptedException, ExecutionException {
+    synchronized (this) {
+      Map<String, Pending> user = this.pending.get(uid);
+      Pending write = user == null ? null : user.get(key(collection_id, doc_id));
+      if (write != null) {
+        return write.data() == null ? null : new HashMap<>(write.data());
+      }
+    }
+    return this.delegate.getDocument(uid, collection_id, doc_id);
+  }
+
+  @Override
+  public Map<String, Object> transact(
+      String uid, String collection_id, String doc_id, UnaryOperator<Map<String, Object>> update)
+      throws InterruptedException, ExecutionException {
+    if (this.collections.contains(collection_id)) {
+      this.flushOrFail();
+    }
+    return this.delegate.transact(uid, collection_id, doc_id, update);
+  }
+
+  @Override
+  public void commit(StorageBatch batch) throws InterruptedException, ExecutionException {
+    for (StorageBatch.Write write : batch.writes()) {
+      if (this.collections.contains(write.collection_id())) {
+        this.flushOrFail();
+        break;
+      }
+    }
+    this.delegate.commit(batch);
+  }
+
+  @Override
+  public ChangeFeed.Subscription subscribe(
+      String uid, String collection_id, ChangeFeed.Listener listener) {
+    return this.delegate.subscribe(uid, collection_id, listener);
+  }
+
+  /** Subscribes through to the store, with pending writes layered over the snapshot. */
+  @Override
+  public ChangeFeed.Snapshot subscribeWithSnapshot(
+      String uid, String collection_id, ChangeFeed.Listener listener)
+      throws InterruptedException, ExecutionException {
+    Map<String, Pending> overlay = this.overlay(uid, collection_id);
+    ChangeFeed.Snapshot snapshot =
+        this.delegate.subscribeWithSnapshot(uid, collection_id, listener);
+    return new ChangeFeed.Snapshot(merge(snapshot.documents(), overlay), snapshot.subscription());
+  }
+
+  /** Stops the flusher, flushes what it can, and closes the journal. */
+  @Override
+  public void close() throws IOException {
+    this.closed = true;
+    this.flusher.interrupt();
+    try {
+      this.flusher.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    this.flush();
+    synchronized (this.journalLock) {
+      this.journal.force(true);
+      this.journal.close();
+    }
+  }
+
+  /**
+   * Journals a write and queues it, replacing any pending write to the same document. Waits for
+   * room in the queue first.
+   */
+  private void enqueue(
+      byte op, String uid, String collection_id, String doc_id, Map<String, Object> data) {
+    this.awaitRoom();
+    synchronized (this.journalLock) {
+      long next;
+      synchronized (this) {
+        next = this.seq + 1;
+      }
+      this.append(op, next, uid, collection_id, doc_id, data);
+      synchronized (this) {
+        this.seq = next;
+        this.put(uid, key(collection_id, doc_id), new Pending(next, data));
+        this.notifyAll();
+      }
+    }
+  }
+
+  private synchronized void awaitRoom() {
+    long deadline = System.nanoTime() + FULL_TIMEOUT.toNanos();
+    while (this.pendingCount >= this.maxPending) {
+      long wait = deadline - System.nanoTime();
+      if (wait <= 0) {
+        throw new IllegalStateException(
+            "Write-behind queue is full with " + this.pendingCount + " writes waiting to flush");
+      }
+      try {
+        TimeUnit.NANOSECONDS.timedWait(this, wait);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while waiting for the write-behind queue", e);
+      }
+    }
+  }
+
+  /**
+   * Drops a user's pending writes, journaling that so a replay doesn't bring them back. This waits
+   * out any flush under way, so none of the dropped writes can land after the user is cleared, but
+   * the clearing itself, which can take a while, is left to the caller, so other users' writes keep
+   * flushing meanwhile.
+   */
+  private void dropUser(String uid) {
+    synchronized (this.flushLock) {
+      synchronized (this.journalLock) {
+        this.append(CLEAR_USER, 0, uid, "", "", null);
+        synchronized (this) {
+          Map<String, Pending> dropped = this.pending.remove(uid);
+          if (dropped != null) {
+            this.pendingCount -= dropped.size();
+            this.notifyAll();
+          }
+        }
+      }
+    }
+  }
+
+  private void flushOrFail() throws ExecutionException {
+    if (!this.flush()) {
+      throw new ExecutionException(
+          new IllegalStateException("Pending writes could not be flushed"));
+    }
+  }
+
+  private void flushLoop() {
+    int failures = 0;
+    while (!this.closed) {
+      try {
+        synchronized (this) {
+          while (this.pending.isEmpty() && !this.closed) {
+            this.wait();
+          }
+        }
+        // Give the burst a moment to finish, so it goes in as few batches as possible.
+        long delay = this.flushDelayNanos << Math.min(failures, 16);
+        TimeUnit.NANOSECONDS.sleep(Math.min(delay, MAX_RETRY_DELAY.toNanos()));
+      } catch (InterruptedException e) {
+        // Interrupted by close, which flushes whatever is left.
+        return;
+      }
+      failures = this.flush() ? 0 : failures + 1;
+    }
+  }
+
+  /** Removes flushed writes from the queue, unless they have been replaced meanwhile. */
+  private synchronized void landed(String uid, List<Map.Entry<String, Pending>> writes) {
+    Map<String, Pending> user = this.pending.get(uid);
+    if (user == null) {
+      return;
+    }
+    for (Map.Entry<String, Pending> write : writes) {
+      if (user.remove(write.getKey(), write.getValue())) {
+        this.pendingCount--;
+      }
+    }
+    if (user.isEmpty()) {
+      this.pending.remove(uid);
+    }
+    this.notifyAll();
+  }
+
+  /**
+   * Records that every write up to a sequence number has landed: by emptying the journal if nothing
+   * is pending, by compacting it if it has grown enough, or else by appending a checkpoint.
+   */
+  private void checkpoint(long through) {
+    synchronized (this.journalLock) {
+      try {
+        Map<String, Map<String, Pending>> live = new LinkedHashMap<>();
+        synchronized (this) {
+          if (this.pending.isEmpty()) {
+            this.journal.truncate(0);
+            this.journal.force(true);
+            this.compactedBytes = 0;
+            return;
+          }
+          if (this.journal.size() >= Math.max(MIN_COMPACT_BYTES, 2 * this.compactedBytes)) {
+            for (Map.Entry<String, Map<String, Pending>> user : this.pending.entrySet()) {
+              live.put(user.getKey(), new LinkedHashMap<>(user.getValue()));
+            }
+          }
+        }
+        if (live.isEmpty()) {
+          this.append(FLUSHED, through, "", "", "", null);
+        } else {
+          this.compact(live);
+        }
+      } catch (IOException | UncheckedIOException e) {
+        // The writes have landed; replaying them again after a crash would only repeat them.
+        System.err.println("Error checkpointing " + this.file + ": " + e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Rewrites the journal with just the pending writes, in a new file that replaces it atomically,
+   * so a crash midway leaves the old journal. Callers hold the journal lock, so nothing is
+   * journaled meanwhile.
+   */
+  private void compact(Map<String, Map<String, Pending>> live) throws IOException {
+    Path compacted = this.file.resolveSibling(this.file.getFileName() + ".compact");
+    try (FileChannel out =
+        FileChannel.open(
+            compacted,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.WRITE)) {
+      long end = 0;
+      for (Map.Entry<String, Map<String, Pending>> user : live.entrySet()) {
+        for (Map.Entry<String, Pending> write : user.getValue().entrySet()) {
+          int sep = write.getKey().indexOf(SEP);
+          Pending pending = write.getValue();
+          ByteBuffer buf =
+              encode(
+                  pending.data() == null ? DELETE : PUT,
+                  pending.seq(),
+                  user.getKey(),
+                  write.getKey().substring(0, sep),
+                  write.getKey().substring(sep + 1),
+                  pending.data());
+          while (buf.hasRemaining()) {
+            end += out.write(buf, end);
+          }
+        }
+      }
+      out.force(true);
+    } catch (IOException e) {
+      Files.deleteIfExists(compacted);
+      throw e;
+    }
+    Files.move(
+        compacted, this.file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    FileChannel old = this.journal;
+    this.journal = FileChannel.open(this.file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    old.close();
+    this.compactedBytes = this.journal.size();
+  }
+
+  private Map<String, Pending> overlay(String uid, String collection_id) {
+    String prefix = collection_id + SEP;
+    Map<String, Pending> overlay = new LinkedHashMap<>();
+    synchronized (this) {
+      Map<String, Pending> user = this.pending.get(uid);
+      if (user != null) {
+        for (Map.Entry<String, Pending> write : user.entrySet()) {
+          if (write.getKey().startsWith(prefix)) {
+            overlay.put(write.getKey().substring(prefix.length()), write.getValue());
+          }
+        }
+      }
+    }
+    return overlay;
+  }
+
+  // Guarded by this.
+  private void put(String uid, String key, Pending write) {
+    Map<String, Pending> user = this.pending.computeIfAbsent(uid, k -> new LinkedHashMap<>());
+    // Re-inserting moves the document to the back, so it flushes in the order it was last written.
+    if (user.remove(key) == null) {
+      this.pendingCount++;
+    }
+    user.put(key, write);
+  }
+
+  private StorageBatch batch(String uid, List<Map.Entry<String, Pending>> writes) {
+    StorageBatch batch = new StorageBatch();
+    for (Map.Entry<String, Pending> write : writes) {
+      int sep = write.getKey().indexOf(SEP);
+      String collection_id = write.getKey().substring(0, sep);
+      String doc_id = write.getKey().substring(sep + 1);
+      if (write.getValue().data() == null) {
+        batch.delete(uid, collection_id, doc_id);
+      } else {
+        batch.set(uid, collection_id, doc_id, write.getValue().data());
+      }
+    }
+    return batch;
+  }
+
+  /** Appends a record to the journal and syncs it. Callers hold the journal lock. */
+  private void append(
+      byte op,
+      long seq,
+      String uid,
+      String collection_id,
+      String doc_id,
+      Map<String, Object> data) {
+    ByteBuffer buf = encode(op, seq, uid, collection_id, doc_id, data);
+    try {
+      long end = this.journal.size();
+      while (buf.hasRemaining()) {
+        end += this.journal.write(buf, end);
+      }
+      this.journal.force(false);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** Encodes a journal record, header and all. */
+  private static ByteBuffer encode(
+      byte op,
+      long seq,
+      String uid,
+      String collection_id,
+      String doc_id,
+      Map<String, Object> data) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeInt(0); // length, filled in below
+      out.writeInt(0); // checksum, filled in below
+      out.writeByte(op);
+      out.writeLong(seq);
+      ValueCodec.writeString(out, uid);
+      ValueCodec.writeString(out, collection_id);
+      ValueCodec.writeString(out, doc_id);
+      if (op == PUT) {
+        ValueCodec.write(out, data);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    ByteBuffer buf = ByteBuffer.wrap(bytes.toByteArray());
+    buf.position(HEADER_BYTES);
+    int crc = crc32(buf.slice());
+    buf.putInt(0, buf.capacity() - HEADER_BYTES);
+    buf.putInt(4, crc);
+    buf.position(0);
+    return buf;
+  }
+
+  /** Queues the writes left in the journal after its last checkpoint, cutting off a torn tail. */
+  private void replay() throws IOException {
+    long size = this.journal.size();
+    long offset = 0;
+    ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+    while (offset + HEADER_BYTES <= size) {
+      header.clear();
+      this.readFully(header, offset);
+      header.flip();
+      int payloadLength = header.getInt();
+      int crc = header.getInt();
+      if (payloadLength <= 0 || offset + HEADER_BYTES + payloadLength > size) {
+        break;
+      }
+      ByteBuffer payload = ByteBuffer.allocate(payloadLength);
+      this.readFully(payload, offset + HEADER_BYTES);
+      payload.flip();
+      if (crc32(payload) != crc) {
+        break;
+      }
+      try {
+        this.replay(payload);
+      } catch (RuntimeException e) {
+        break;
+      }
+      offset += HEADER_BYTES + payloadLength;
+    }
+    if (offset < size) {
+      System.err.println(
+          "Truncating " + (size - offset) + " unreadable bytes from the end of " + this.file);
+      this.journal.truncate(offset);
+      this.journal.force(true);
+    }
+    if (this.pendingCount > 0) {
+      System.err.println("Replaying " + this.pendingCount + " unflushed writes from " + this.file);
+    }
+  }
+
+  private synchronized void replay(ByteBuffer payload) {
+    byte op = payload.get();
+    long recordSeq = payload.getLong();
+    String uid = ValueCodec.readString(payload);
+    String collection_id = ValueCodec.readString(payload);
+    String doc_id = ValueCodec.readString(payload);
+    switch (op) {
+      case PUT, DELETE -> {
+        Map<String, Object> data = op == PUT ? ValueCodec.readMap(payload) : null;
+        this.put(uid, key(collection_id, doc_id), new Pending(recordSeq, data));
+        this.seq = Math.max(this.seq, recordSeq);
+      }
+      case CLEAR_USER -> {
+        Map<String, Pending> dropped = this.pending.remove(uid);
+        if (dropped != null) {
+          this.pendingCount -= dropped.size();
+        }
+      }
+      case FLUSHED -> {
+        for (Map<String, Pending> user : this.pending.values()) {
+          int before = user.size();
+          user.values().removeIf(write -> write.seq() <= recordSeq);
+          this.pendingCount -= before - user.size();
+        }
+        this.pending.values().removeIf(Map::isEmpty);
+      }
+      default -> throw new IllegalArgumentException("Unknown journal op " + op);
+    }
+  }
+
+  private void readFully(ByteBuffer buf, long offset) throws IOException {
+    while (buf.hasRemaining()) {
+      if (this.journal.read(buf, offset + buf.position()) < 0) {
+        throw new IOException("Unexpected end of " + this.file);
+      }
+    }
+  }
+
+  private static int crc32(ByteBuffer buf) {
+    CRC32 crc = new CRC32();
+    crc.update(buf.duplicate());
+    return (int) crc.getValue();
+  }
+
+  private static String key(String collection_id, String doc_id) {
+    return collection_id + SEP + doc_id;
+  }
+}
@@ -0,0 +1,193 @@
+package edu.brown.cs.student.main.server.storage.codec;
+
+import edu.brown.cs.student.main.server.clothing.enums.Category;
+import edu.brown.cs.student.main.server.clothing.enums.Formality;
+import edu.brown.cs.student.main.server.clothing.enums.Material;
+import edu.brown.cs.student.main.server.clothing.enums.Subcategory;
+import edu.brown.cs.student.main.server.clothing.records.Clothing;
+import edu.brown.cs.student.main.server.clothing.records.Color;
+import edu.brown.cs.student.main.server.clothing.records.Palette;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts clothing items to and from their stored documents.
+ *
+ * <p>Version 2 documents pack an item into two longs under "clothing":
+ *
+ * <ul>
+ *   <li>the first holds the id in its high 32 bits, then one byte each for the category,
+ *       subcategory, formality and material ordinals;
+ *   <li>the second holds the version in its top byte, a flag for whether there is an accent color
+ *       in bit 48, then the primary and accent colors as 24-bit RGB.
+ * </ul>
+ *
+ * Keeping the version inside the packed longs rather than in a field of its own keeps the document
+ * smaller than the CSV it replaces.
+ *
+ * <p>Version 3 documents are packed the same way and also hold the item's description under
+ * "description", so a closet and its descriptions come back in one read.
+ *
+ * <p>Version 1 documents, written before this codec, hold the item as a CSV string under
+ * "clothing". Version 1 and 2 documents keep the description in the clothing-description
+ * collection, as "description,clothing-id", until DescriptionMigrator moves it into the record. All
+ * three are read transparently; new items are written as version 3.
+ */
+public final class ClothingCodec {
+
+  public static final String FIELD = "clothing";
+  public static final String DESCRIPTION = "description";
+  public static final long VERSION = 3;
+
+  // Packed documents without a description.
+  private static final long PACKED_VERSION = 2;
+
+  private static final int VERSION_SHIFT = 56;
+
+  private static final long HAS_ACCENT = 1L << 48;
+
+  private ClothingCodec() {}
+
+  /**
+   * Encodes an item whose description is kept in the clothing-description collection, as a version
+   * 2 document.
+   *
+   * @param clothing the item
+   * @return the document's data
+   */
+  public static Map<String, Object> encode(Clothing clothing) {
+    return encode(clothing, null);
+  }
+
+  /**
+   * Encodes an item with its description as a version 3 document.
+   *
+   * @param clothing the item
+   * @param description the description, or null if it is still kept in the clothing-description
+   *     collection, which makes this a version 2 document
+   * @return the document's data
+   */
+  public static Map<String, Object> encode(Clothing clothing, String description) {
+    long ids =
+        ((long) clothing.id() << 32)
+            | (long) clothing.category().ordinal() << 24
+            | (long) clothing.subcategory().ordinal() << 16
+            | (long) clothing.formality().ordinal() << 8
+            | clothing.material().ordinal();
+    Color accent = clothing.colors().accent();
+    long version = description == null ? PACKED_VERSION : VERSION;
+    long colors = version << VERSION_SHIFT | (long) rgb(clothing.colors().primary()) << 24;
+    if (accent != null) {
+      colors |= HAS_ACCENT | rgb(accent);
+    }
+    Map<String, Object> data = new HashMap<>();
+    data.put(FIELD, List.of(ids, colors));
+    if (description != null) {
+      data.put(DESCRIPTION, description);
+    }
+    return data;
+  }
+
+  /**
+   * Decodes an item from a document of either version.
+   *
+   * @param data the document's data
+   * @return the item
+   * @throws IllegalArgumentException if the document is not a clothing item
+   */
+  public static Clothing decode(Map<String, Object> data) {
+    Object value = data.get(FIELD);
+    if (value instanceof String csv) {
+      return fromCsv(csv);
+    }
+    if (!(value instanceof List<?> packed) || packed.size() != 2) {
+      throw new IllegalArgumentException("Not a clothing document: " + data);
+    }
+    long ids = ((Number) packed.get(0)).longValue();
+    long colors = ((Number) packed.get(1)).longValue();
+    if (colors >>> VERSION_SHIFT != PACKED_VERSION && colors >>> VERSION_SHIFT != VERSION) {
+      throw new IllegalArgumentException("Unknown clothing version " + (colors >>> VERSION_SHIFT));
+    }
+    Color accent = (colors & HAS_ACCENT) != 0 ? color((int) colors) : null;
+    return new Clothing(
+        (int) (ids >>> 32),
+        Category.values()[(int) (ids >>> 24) & 0xff],
+        Subcategory.values()[(int) (ids >>> 16) & 0xff],
+        Formality.values()[(int) (ids >>> 8) & 0xff],
+        new Palette(color((int) (colors >>> 24)), accent),
+        Material.values()[(int) ids & 0xff]);
+  }
+
+  /**
+   * Parses an item from its CSV form: id, category, subcategory and formality ordinals, primary and
+   * accent colors as hex ("null" for no accent), and material ordinal.
+   *
+   * @param csv the CSV string
+   * @return the item
+   */
+  public static Clothing fromCsv(String csv) {
+    String[] parts = csv.split(",");
+    int id = Integer.parseInt(parts[0]);
+    Category cat = Category.values()[Integer.parseInt(parts[1])];
+    Subcategory subcat = Subcategory.values()[Integer.parseInt(parts[2])];
+    Formality formality = Formality.values()[Integer.parseInt(parts[3])];
+    Palette palette =
+        new Palette(hexToColor(parts[4]), (!parts[5].equals("null")) ? hexToColor(parts[5]) : null);
+    Material material = Material.values()[Integer.parseInt(parts[6])];
+    return new Clothing(id, cat, subcat, formality, palette, material);
+  }
+
+  /**
+   * Returns whether a document was written in the old CSV format, and so should be rewritten.
+   *
+   * @param data the document's data
+   * @return whether it is a version 1 document
+   */
+  public static boolean isLegacy(Map<String, Object> data) {
+    return data.get(FIELD) instanceof String;
+  }
+
+  /**
+   * Returns the description stored in a clothing document.
+   *
+   * @param data the document's data
+   * @return the description, or null if the document predates version 3 and its description is
+   *     still in the clothing-description collection
+   */
+  public static String description(Map<String, Object> data) {
+    Object description = data.get(DESCRIPTION);
+    return description == null ? null : description.toString();
+  }
+
+  /**
+   * Returns the description held in a clothing-description document, whose value is the
+   * description, a comma, and the clothing document's id.
+   *
+   * @param data the clothing-description document's data
+   * @return the description
+   */
+  public static String legacyDescription(Map<String, Object> data) {
+    String value = data.get(DESCRIPTION).toString();
+    int comma = value.lastIndexOf(',');
+    return comma < 0 ? value : value.substring(0, comma);
+  }
+
+  /** Quantizes a color to 24-bit RGB the same way its hex string always has. */
+  private static int rgb(Color color) {
+    return channel(color.r()) << 16 | channel(color.g()) << 8 | channel(color.b());
+  }
+
+  private static int channel(double value) {
+    return Math.min((int) (value * 255), 255);
+  }
+
+  private static Color hexToColor(String hex) {
+    return color(Integer.parseInt(hex.substring(1, 7), 16));
+  }
+
+  private static Color color(int rgb) {
+    return new Color(
+        ((rgb >>> 16) & 0xff) / 255.0, ((rgb >>> 8) & 0xff) / 255.0, (rgb & 0xff) / 255.0);
+  }
+}
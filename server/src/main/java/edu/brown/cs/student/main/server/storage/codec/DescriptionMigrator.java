@@ -0,0 +1,185 @@
+package edu.brown.cs.student.main.server.storage.codec;
+
+import edu.brown.cs.student.main.server.storage.StorageBatch;
+import edu.brown.cs.student.main.server.storage.StorageInterface;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves clothing descriptions from the clothing-description collection into the clothing records
+ * themselves (ClothingCodec version 3), so that listing a closet takes one read instead of two.
+ *
+ * <p>Users are migrated online, while the server keeps serving them: lazily, in the background, the
+ * first time their closet is listed after the upgrade, and optionally by a sweep over every user.
+ * Each item is rewritten in its own transaction, which leaves alone an item that has been removed
+ * or already migrated meanwhile, so the migration can't resurrect a deleted item or clobber a newer
+ * one; the old description documents are deleted afterwards. Until a user is migrated, readers fall
+ * back to the old collection. All migration writes share one rate limit, so a sweep over a large
+ * user base doesn't crowd out the requests being served.
+ */
+public class DescriptionMigrator {
+
+  private static final String CLOTHING = "clothing";
+  private static final String DESCRIPTIONS = "clothing-description";
+
+  private final StorageInterface storage;
+  private final long nanosPerWrite;
+  // Guarded by this.
+  private long nextWriteNanos;
+
+  private final Set<String> pending = ConcurrentHashMap.newKeySet();
+  private final ExecutorService lazy =
+      Executors.newSingleThreadExecutor(
+          r -> {
+            Thread t = new Thread(r, "description-migration");
+            t.setDaemon(true);
+            return t;
+          });
+
+  /**
+   * Constructor for the DescriptionMigrator.
+   *
+   * @param storage the storage holding users' closets
+   * @param writesPerSecond the most migration writes to make per second, across all users
+   */
+  public DescriptionMigrator(StorageInterface storage, int writesPerSecond) {
+    if (writesPerSecond < 1) {
+      throw new IllegalArgumentException("writesPerSecond must be positive");
+    }
+    this.storage = storage;
+    this.nanosPerWrite = TimeUnit.SECONDS.toNanos(1) / writesPerSecond;
+    this.nextWriteNanos = System.nanoTime();
+  }
+
+  /**
+   * Returns whether any of a user's clothing documents still keeps its description elsewhere.
+   *
+   * @param clothing the clothing documents
+   * @return whether the user needs migrating
+   */
+  public static boolean needsMigration(Map<String, Map<String, Object>> clothing) {
+    for (Map<String, Object> doc : clothing.values()) {
+      if (ClothingCodec.description(doc) == null) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Migrates a user in the background, unless they are already queued.
+   *
+   * @param uid the user
+   */
+  public void migrateLater(String uid) {
+    if (!this.pending.add(uid)) {
+      return;
+    }
+    this.lazy.execute(
+        () -> {
+          try {
+            this.migrate(uid);
+          } catch (Exception e) {
+            System.err.println("Error migrating descriptions for " + uid + ": " + e.getMessage());
+          } finally {
+            this.pending.remove(uid);
+          }
+        });
+  }
+
+  /**
+   * Starts migrating every user, one at a time, on a background thread.
+   *
+   * @return the thread
+   */
+  public Thread startSweep() {
+    Thread sweep =
+        new Thread(
+            () -> {
+              long migrated = 0;
+              try {
+                for (String uid : this.storage.listUsers()) {
+                  migrated += this.migrate(uid);
+                }
+                System.err.println("Description migration done: " + migrated + " items migrated");
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              } catch (Exception e) {
+                System.err.println("Description migration stopped: " + e.getMessage());
+              }
+            },
+            "description-sweep");
+    sweep.setDaemon(true);
+    sweep.start();
+    return sweep;
+  }
+
+  /**
+   * Migrates one user now, moving each description into its clothing record and then deleting the
+   * old description documents.
+   *
+   * @param uid the user
+   * @return how many items were migrated
+   */
+  public int migrate(String uid) throws InterruptedException, ExecutionException {
+    Map<String, Map<String, Object>> clothing = this.storage.getCollectionDocuments(uid, CLOTHING);
+    if (!needsMigration(clothing)) {
+      return 0;
+    }
+    Map<String, Map<String, Object>> descriptions =
+        this.storage.getCollectionDocuments(uid, DESCRIPTIONS);
+
+    int migrated = 0;
+    StorageBatch deletes = new StorageBatch();
+    for (Map.Entry<String, Map<String, Object>> doc : clothing.entrySet()) {
+      if (ClothingCodec.description(doc.getValue()) != null) {
+        continue;
+      }
+      Map<String, Object> old = descriptions.get(doc.getKey());
+      String description = old == null ? "" : ClothingCodec.legacyDescription(old);
+      this.pace();
+      Map<String, Object> written =
+          this.storage.transact(
+              uid,
+              CLOTHING,
+              doc.getKey(),
+              current ->
+                  current == null || ClothingCodec.description(current) != null
+                      ? null
+                      : ClothingCodec.encode(ClothingCodec.decode(current), description));
+      if (written != null) {
+        migrated++;
+      }
+      if (old != null) {
+        deletes.delete(uid, DESCRIPTIONS, doc.getKey());
+        if (deletes.writes().size() == StorageBatch.MAX_WRITES) {
+          this.storage.commit(deletes);
+          deletes = new StorageBatch();
+        }
+      }
+    }
+    if (!deletes.isEmpty()) {
+      this.storage.commit(deletes);
+    }
+    return migrated;
+  }
+
+  /** Waits for this migrator's next write slot. */
+  private void pace() throws InterruptedException {
+    long wait;
+    synchronized (this) {
+      long now = System.nanoTime();
+      long slot = this.nextWriteNanos - now > 0 ? this.nextWriteNanos : now;
+      this.nextWriteNanos = slot + this.nanosPerWrite;
+      wait = slot - now;
+    }
+    if (wait > 0) {
+      TimeUnit.NANOSECONDS.sleep(wait);
+    }
+  }
+}
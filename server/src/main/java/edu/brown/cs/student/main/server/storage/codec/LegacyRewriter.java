@@ -0,0 +1,80 @@
+package edu.brown.cs.student.main.server.storage.codec;
+
+import edu.brown.cs.student.main.server.storage.AsyncStorage;
+import edu.brown.cs.student.main.server.storage.StorageBatch;
+import edu.brown.cs.student.main.server.storage.StorageInterface;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * Migrates documents from an old encoding to the current one as they are read. Readers decode
+ * either encoding, so nothing has to wait for this: whenever a collection read turns up old
+ * documents, they are re-encoded and written back in the background. Each is rewritten in its own
+ * transaction, which leaves alone a document that has been removed or rewritten since it was read,
+ * so a rewrite can't bring back a deleted document or clobber a newer one. While a collection's
+ * rewrites are running, further reads of it don't start more.
+ */
+public final class LegacyRewriter {
+
+  // The users' collections being rewritten, as "uid/collection".
+  private static final Set<String> IN_FLIGHT = ConcurrentHashMap.newKeySet();
+
+  private LegacyRewriter() {}
+
+  /**
+   * Rewrites any documents in a collection that are still in an old encoding.
+   *
+   * @param storage where the documents are stored
+   * @param uid the user
+   * @param collection_id the collection
+   * @param docs the collection's documents, as just read, by document id
+   * @param isLegacy tells whether a document is in an old encoding
+   * @param reencode converts a document to the current encoding
+   * @return completes once every rewrite is done, or at once if the collection's rewrites are
+   *     already running; failures are logged, not passed on
+   */
+  public static CompletableFuture<Void> rewrite(
+      StorageInterface storage,
+      String uid,
+      String collection_id,
+      Map<String, Map<String, Object>> docs,
+      Predicate<Map<String, Object>> isLegacy,
+      UnaryOperator<Map<String, Object>> reencode) {
+    String key = uid + "/" + collection_id;
+    if (docs.values().stream().noneMatch(isLegacy) || !IN_FLIGHT.add(key)) {
+      return CompletableFuture.completedFuture(null);
+    }
+    AsyncStorage async = storage.async();
+    List<CompletableFuture<?>> rewrites = new ArrayList<>();
+    int count = 0;
+    for (Map.Entry<String, Map<String, Object>> doc : docs.entrySet()) {
+      // Anything past one batch's worth is picked up by a later read.
+      if (!isLegacy.test(doc.getValue()) || count == StorageBatch.MAX_WRITES) {
+        continue;
+      }
+      count++;
+      rewrites.add(
+          async
+              .transact(
+                  uid,
+                  collection_id,
+                  doc.getKey(),
+                  current ->
+                      current == null || !isLegacy.test(current) ? null : reencode.apply(current))
+              .exceptionally(
+                  e -> {
+                    System.err.println(
+                        "Error migrating " + collection_id + " for " + uid + ": " + e.getMessage());
+                    return null;
+                  }));
+    }
+    return CompletableFuture.allOf(rewrites.toArray(new CompletableFuture<?>[0]))
+        .whenComplete((done, e) -> IN_FLIGHT.remove(key));
+  }
+}
@@ -0,0 +1,133 @@
+package edu.brown.cs.student.main.server.storage.codec;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts outfits to and from their stored documents.
+ *
+ * <p>An outfit is a fixed tuple of seven ints: its own id, then the ids of its top, bottom, shoe,
+ * outerwear, fullbody and accessory items. Version 2 documents store the tuple as a list of
+ * integers under "outfit", with "v" set to 2; a slot that was never filled in holds EMPTY. Version
+ * 1 documents, written before this codec, hold it as a CSV string under "outfit". Both are read
+ * transparently; only version 2 is written.
+ */
+public final class OutfitCodec {
+
+  public static final String FIELD = "outfit";
+  public static final String VERSION_FIELD = "v";
+  public static final long VERSION = 2;
+
+  /** The tuple's length. */
+  public static final int SIZE = 7;
+
+  /**
+   * A slot that was never filled in, written "null" in the CSV format. Clients send -1 for an empty
+   * slot, which fromCsv also reads as EMPTY.
+   */
+  public static final int EMPTY = Integer.MIN_VALUE;
+
+  private static final String[] SLOTS = {
+    "id", "top", "bottom", "shoe", "outerwear", "fullbody", "accessory"
+  };
+
+  private OutfitCodec() {}
+
+  /**
+   * Parses an outfit from its CSV form, as built from request parameters.
+   *
+   * @param csv the outfit's id, then its items' ids, separated by commas; "null" or a negative id
+   *     for empty slots
+   * @return the tuple
+   * @throws IllegalArgumentException if there aren't seven slots or one isn't an integer
+   */
+  public static int[] fromCsv(String csv) {
+    String[] parts = csv.split(",", -1);
+    if (parts.length != SIZE) {
+      throw new IllegalArgumentException("An outfit has " + SIZE + " slots: " + csv);
+    }
+    int[] outfit = new int[SIZE];
+    for (int i = 0; i < SIZE; i++) {
+      try {
+        outfit[i] = parts[i].equals("null") ? EMPTY : Integer.parseInt(parts[i]);
+        if (i > 0 && outfit[i] < 0) {
+          outfit[i] = EMPTY;
+        }
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Outfit slot " + SLOTS[i] + " is not an id: " + csv);
+      }
+    }
+    return outfit;
+  }
+
+  /**
+   * Formats an outfit in its CSV form.
+   *
+   * @param outfit the tuple
+   * @return the CSV string
+   */
+  public static String toCsv(int[] outfit) {
+    StringBuilder csv = new StringBuilder();
+    for (int i = 0; i < SIZE; i++) {
+      if (i > 0) {
+        csv.append(',');
+      }
+      csv.append(outfit[i] == EMPTY ? "null" : Integer.toString(outfit[i]));
+    }
+    return csv.toString();
+  }
+
+  /**
+   * Encodes an outfit as a version 2 document.
+   *
+   * @param outfit the tuple
+   * @return the document's data
+   */
+  public static Map<String, Object> encode(int[] outfit) {
+    List<Long> slots = new ArrayList<>(SIZE);
+    for (int slot : outfit) {
+      slots.add((long) slot);
+    }
+    Map<String, Object> data = new HashMap<>();
+    data.put(VERSION_FIELD, VERSION);
+    data.put(FIELD, slots);
+    return data;
+  }
+
+  /**
+   * Decodes an outfit from a document of either version.
+   *
+   * @param data the document's data
+   * @return the tuple
+   * @throws IllegalArgumentException if the document is not an outfit
+   */
+  public static int[] decode(Map<String, Object> data) {
+    Object value = data.get(FIELD);
+    if (value instanceof String csv) {
+      return fromCsv(csv);
+    }
+    if (!(value instanceof List<?> slots)
+        || slots.size() != SIZE
+        || !(data.get(VERSION_FIELD) instanceof Number version)
+        || version.longValue() != VERSION) {
+      throw new IllegalArgumentException("Not an outfit document: " + data);
+    }
+    int[] outfit = new int[SIZE];
+    for (int i = 0; i < SIZE; i++) {
+      outfit[i] = ((Number) slots.get(i)).intValue();
+    }
+    return outfit;
+  }
+
+  /**
+   * Returns whether a document was written in the old CSV format, and so should be rewritten.
+   *
+   * @param data the document's data
+   * @return whether it is a version 1 document
+   */
+  public static boolean isLegacy(Map<String, Object> data) {
+    return data.get(FIELD) instanceof String;
+  }
+}
@@ -0,0 +1,65 @@
+package edu.brown.cs.student.handlers;
+
+import edu.brown.cs.student.main.server.handlers.ClearUserJobs;
+import edu.brown.cs.student.main.server.serializers.DeletionStatus;
+import edu.brown.cs.student.main.server.storage.DeletionProgress;
+import edu.brown.cs.student.main.server.storage.IdAllocator;
+import edu.brown.cs.student.main.server.storage.LogStorage;
+import edu.brown.cs.student.main.server.storage.StorageBatch;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.testng.Assert;
+
+public class TestClearUserJobs {
+
+  private static LogStorage closet(int items) throws Exception {
+    Path file = Files.createTempDirectory("clear").resolve("fitmeup.log");
+    LogStorage log = new LogStorage(file, Duration.ZERO, Duration.ofHours(1));
+    for (int i = 0; i < items; i += 250) {
+      StorageBatch batch = new StorageBatch();
+      for (int j = i; j < Math.min(i + 250, items); j++) {
+        batch.set("a", "clothing", "clothing-" + j, Map.of("clothing", j + ",top"));
+        batch.set("a", "clothing-description", "clothing-" + j, Map.of("description", "x"));
+      }
+      log.commit(batch);
+    }
+    log.addDocument("b", "clothing", "clothing-0", Map.of("clothing", "0,top"));
+    return log;
+  }
+
+  // A background deletion reports its progress, then every document it deleted
+  @Test
+  public void TestBackgroundClear() throws Exception {
+    try (LogStorage log = closet(5_000)) {
+      ClearUserJobs jobs = new ClearUserJobs(log, new IdAllocator(log), null);
+      DeletionProgress progress = jobs.start("a");
+      Assert.assertSame(jobs.status("a"), progress);
+      while (!progress.isDone()) {
+        Thread.sleep(5);
+      }
+
+      DeletionStatus status = DeletionStatus.of(progress);
+      Assert.assertEquals(status.status(), "done");
+      Assert.assertEquals(status.deleted(), 10_000L);
+      Assert.assertTrue(log.getCollection("a", "clothing").isEmpty());
+      Assert.assertEquals(log.getCollection("b", "clothing").size(), 1);
+    }
+  }
+
+  // Clearing on the request thread finishes before returning, and unknown users have no status
+  @Test
+  public void TestForegroundClear() throws Exception {
+    try (LogStorage log = closet(10)) {
+      ClearUserJobs jobs = new ClearUserJobs(log, null, null);
+      Assert.assertNull(jobs.status("a"));
+      DeletionProgress progress = jobs.run("a");
+      Assert.assertTrue(progress.isDone());
+      Assert.assertNull(progress.failure());
+      Assert.assertEquals(progress.deleted(), 20L);
+      Assert.assertSame(jobs.status("a"), progress);
+    }
+  }
+}
@@ -0,0 +1,178 @@
+package edu.brown.cs.student.handlers;
+
+import edu.brown.cs.student.handlers.mocking.MockedRequest;
+import edu.brown.cs.student.handlers.mocking.MockedResponse;
+import edu.brown.cs.student.main.server.handlers.clothing.AddClothingHandler;
+import edu.brown.cs.student.main.server.handlers.clothing.ListClothingHandler;
+import edu.brown.cs.student.main.server.handlers.outfits.AddOutfitHandler;
+import edu.brown.cs.student.main.server.handlers.outfits.OutfitIndex;
+import edu.brown.cs.student.main.server.storage.CachingStorage;
+import edu.brown.cs.student.main.server.storage.IdAllocator;
+import edu.brown.cs.student.main.server.storage.StorageInterface;
+import edu.brown.cs.student.main.server.storage.WriteBehindStorage;
+import edu.brown.cs.student.storage.mocking.MockedStorage;
+import edu.brown.cs.student.storage.mocking.MockedStorage.Latency;
+import edu.brown.cs.student.storage.mocking.MockedStorage.Op;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.testng.Assert;
+import spark.Route;
+
+/**
+ * Runs handlers end to end against a MockedStorage with Firestore-like latency, comparing storage
+ * stacks by the calls and documents that reach the store. Those counts are the same on every run
+ * and are what the tests assert. Run with -Dbenchmark.report=true to also print them, along with
+ * wall times for a rough comparison.
+ */
+public class TestHandlerBenchmark {
+
+  private static final long SEED = 48;
+  private static final int ITEMS = 40;
+
+  // Listing a closet through the cache reads it from the store once
+  @Test
+  public void TestListClothing() throws Exception {
+    MockedStorage raw = closet();
+    Result uncached = time(new ListClothingHandler(raw), Map.of("uid", "a"), 20);
+    report("list-clothing, uncached", raw, uncached);
+
+    MockedStorage behindCache = closet();
+    Result cached =
+        time(
+            new ListClothingHandler(new CachingStorage(behindCache, 100, 1 << 20)),
+            Map.of("uid", "a"),
+            20);
+    report("list-clothing, cached", behindCache, cached);
+
+    Assert.assertEquals(uncached.errors(), 0);
+    Assert.assertEquals(cached.errors(), 0);
+    Assert.assertEquals(raw.calls(Op.GET_COLLECTION), 20);
+    Assert.assertEquals(raw.documentsRead(), 20 * ITEMS);
+    Assert.assertEquals(behindCache.calls(Op.GET_COLLECTION), 1);
+    Assert.assertEquals(behindCache.documentsRead(), ITEMS);
+  }
+
+  // A burst of outfit saves written behind reaches the store as one batch
+  @Test
+  public void TestOutfitSaves() throws Exception {
+    MockedStorage direct = store();
+    Result synchronous = time(addOutfit(direct), outfit(), 30);
+    report("add-outfit, direct", direct, synchronous);
+
+    MockedStorage behind = store();
+    try (WriteBehindStorage writeBehind =
+        new WriteBehindStorage(
+            behind,
+            Set.of("outfits"),
+            Files.createTempDirectory("benchmark").resolve("journal"),
+            1_000,
+            Duration.ofHours(1))) {
+      Result queued = time(addOutfit(writeBehind), outfit(), 30);
+      Assert.assertTrue(writeBehind.flush());
+      report("add-outfit, write-behind", behind, queued);
+      Assert.assertEquals(queued.errors(), 0);
+    }
+
+    Assert.assertEquals(synchronous.errors(), 0);
+    Assert.assertEquals(direct.calls(Op.ADD_DOCUMENT), 30);
+    Assert.assertEquals(behind.calls(Op.ADD_DOCUMENT), 0);
+    Assert.assertEquals(behind.calls(Op.COMMIT), 1);
+    Assert.assertEquals(behind.documentsWritten(), direct.documentsWritten());
+  }
+
+  // Injected failures come back as error responses, one for each
+  @Test
+  public void TestFailures() throws Exception {
+    MockedStorage raw = closet();
+    raw.setErrorRate(0.25);
+    Result result = time(new ListClothingHandler(raw), Map.of("uid", "a"), 40);
+    report("list-clothing, 25% failures", raw, result);
+    Assert.assertTrue(raw.failures() > 0);
+    Assert.assertEquals(result.errors(), raw.failures());
+  }
+
+  /** How a run of requests went. */
+  private record Result(long wallMillis, long errors) {}
+
+  private static Result time(Route handler, Map<String, String> params, int requests)
+      throws Exception {
+    long errors = 0;
+    long start = System.nanoTime();
+    for (int i = 0; i < requests; i++) {
+      Object body = handler.handle(new MockedRequest(params), new MockedResponse());
+      if (!body.toString().contains("\"response_type\":\"success\"")) {
+        errors++;
+      }
+    }
+    return new Result((System.nanoTime() - start) / 1_000_000, errors);
+  }
+
+  private static void report(String name, MockedStorage storage, Result result) {
+    if (!Boolean.getBoolean("benchmark.report")) {
+      return;
+    }
+    System.out.printf(
+        "%-28s %4d calls %5d docs read %4d docs written %5d ms latency %5d ms wall%n",
+        name,
+        totalCalls(storage),
+        storage.documentsRead(),
+        storage.documentsWritten(),
+        storage.latencyMillis(),
+        result.wallMillis());
+  }
+
+  private static long totalCalls(MockedStorage storage) {
+    long calls = 0;
+    for (Op op : Op.values()) {
+      calls += storage.calls(op);
+    }
+    return calls;
+  }
+
+  /** A store whose calls take a couple of milliseconds, with a long tail. */
+  private static MockedStorage store() {
+    MockedStorage storage = new MockedStorage(SEED);
+    storage.setLatency(Latency.lognormal(2, 0.5));
+    return storage;
+  }
+
+  /** A store holding one user's closet, with its counters starting from zero. */
+  private static MockedStorage closet() throws Exception {
+    MockedStorage storage = store();
+    AddClothingHandler add = new AddClothingHandler(storage);
+    for (int i = 0; i < ITEMS; i++) {
+      add.handle(
+          new MockedRequest(
+              Map.of(
+                  "uid", "a",
+                  "category", Integer.toString(i % 4),
+                  "subcategory", "0",
+                  "formality", "1",
+                  "primary", "#336699",
+                  "secondary", "null",
+                  "material", "0",
+                  "description", "item " + i)),
+          new MockedResponse());
+    }
+    storage.resetCounters();
+    return storage;
+  }
+
+  private static AddOutfitHandler addOutfit(StorageInterface storage) {
+    return new AddOutfitHandler(storage, new IdAllocator(storage), new OutfitIndex(storage));
+  }
+
+  private static Map<String, String> outfit() {
+    return Map.of(
+        "uid", "a",
+        "top", "1",
+        "bottom", "2",
+        "shoe", "3",
+        "outerwear", "null",
+        "fullbody", "null",
+        "accessory", "null");
+  }
+}
@@ -16,8 +16,8 @@ import edu.brown.cs.student.main.server.handlers.outfits.AddOutfitHandler;
 import edu.brown.cs.student.main.server.handlers.outfits.GenerateOutfitHandler;
 import edu.brown.cs.student.main.server.handlers.outfits.ListOutfitsHandler;
 import edu.brown.cs.student.main.server.handlers.outfits.RemoveOutfitHandler;
-import edu.brown.cs.student.main.server.storage.FirebaseUtilities;
 import edu.brown.cs.student.main.server.storage.StorageInterface;
+import edu.brown.cs.student.storage.mocking.MockedStorage;
 import java.io.IOException;
 import java.lang.reflect.Type;
 import java.net.HttpURLConnection;
@@ -47,7 +47,7 @@ public class TestHandlers {
   private final Type mapStringObject =
       Types.newParameterizedType(Map.class, String.class, Object.class);
   private JsonAdapter<Map<String, Object>> adapter;
-  private final StorageInterface firebaseUtils = new FirebaseUtilities();
+  private final StorageInterface storage = new MockedStorage();
 
   /**
    * Helper to start a connection to a specific API endpoint/params
@@ -82,7 +82,7 @@ public class TestHandlers {
   public void TestClearAddListRemoveClothingHandler() throws IOException {
     /////////////////// CLEAR CLOTHING ///////////////////
 
-    Spark.get("clear-user", new ClearUserHandler(this.firebaseUtils));
+    Spark.get("clear-user", new ClearUserHandler(this.storage));
     Spark.awaitInitialization(); // don't continue until the server is listening
 
     // New Moshi adapter for responses and requests
@@ -106,7 +106,7 @@ public class TestHandlers {
 
     /////////////////// ADD CLOTHING ///////////////////
 
-    Spark.get("add-clothing", new AddClothingHandler(this.firebaseUtils));
+    Spark.get("add-clothing", new AddClothingHandler(this.storage));
     Spark.awaitInitialization(); // don't continue until the server is listening
 
     // Set up the request, make the request
@@ -127,7 +127,7 @@ public class TestHandlers {
 
     /////////////////// LIST CLOTHING ///////////////////
 
-    Spark.get("list-clothing", new ListClothingHandler(this.firebaseUtils));
+    Spark.get("list-clothing", new ListClothingHandler(this.storage));
     Spark.awaitInitialization(); // don't continue until the server is listening
 
     // Set up the request, make the request
@@ -146,7 +146,7 @@ public class TestHandlers {
 
     /////////////////// REMOVE CLOTHING ///////////////////
 
-    Spark.get("remove-clothing", new RemoveClothingHandler(this.firebaseUtils));
+    Spark.get("remove-clothing", new RemoveClothingHandler(this.storage));
     Spark.awaitInitialization(); // don't continue until the server is listening
 
     // Set up the request, make the request
@@ -204,10 +204,10 @@ public class TestHandlers {
   public void TestGenerateAddListRemoveOutfitHandler() throws IOException {
     WeatherDatasource weatherSource = new MockedWeather();
 
-    Spark.get("add-outfit", new AddOutfitHandler(this.firebaseUtils));
-    Spark.get("list-outfits", new ListOutfitsHandler(this.firebaseUtils));
-    Spark.get("remove-outfit", new RemoveOutfitHandler(this.firebaseUtils));
-    Spark.get("generate-outfit", new GenerateOutfitHandler(this.firebaseUtils, weatherSource));
+    Spark.get("add-outfit", new AddOutfitHandler(this.storage));
+    Spark.get("list-outfits", new ListOutfitsHandler(this.storage));
+    Spark.get("remove-outfit", new RemoveOutfitHandler(this.storage));
+    Spark.get("generate-outfit", new GenerateOutfitHandler(this.storage, weatherSource));
 
     Spark.awaitInitialization();
 
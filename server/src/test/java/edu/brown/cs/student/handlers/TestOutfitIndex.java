@@ -0,0 +1,135 @@
+package edu.brown.cs.student.handlers;
+
+import edu.brown.cs.student.handlers.mocking.MockedRequest;
+import edu.brown.cs.student.handlers.mocking.MockedResponse;
+import edu.brown.cs.student.main.server.handlers.clothing.RemoveClothingHandler;
+import edu.brown.cs.student.main.server.handlers.outfits.OutfitIndex;
+import edu.brown.cs.student.main.server.storage.codec.OutfitCodec;
+import edu.brown.cs.student.storage.mocking.MockedStorage;
+import edu.brown.cs.student.storage.mocking.MockedStorage.Op;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.testng.Assert;
+
+public class TestOutfitIndex {
+
+  private static BitSet bits(int... ids) {
+    BitSet bits = new BitSet();
+    for (int id : ids) {
+      bits.set(id);
+    }
+    return bits;
+  }
+
+  // The index is built from storage once, then answers item queries from memory
+  @Test
+  public void TestContainingAll() throws Exception {
+    MockedStorage storage = new MockedStorage();
+    storage.addDocument("a", "outfits", "outfit-0", Map.of("outfit", "0,1,2,3,null,null,null"));
+    storage.addDocument("a", "outfits", "outfit-1", Map.of("outfit", "1,1,4,3,null,null,null"));
+    storage.addDocument("a", "outfits", "outfit-2", Map.of("outfit", "2,5,2,6,null,null,7"));
+    OutfitIndex index = new OutfitIndex(storage);
+
+    Assert.assertEquals(index.containingAll("a", List.of("1")), bits(0, 1));
+    Assert.assertEquals(index.containingAll("a", List.of("2", "3")), bits(0));
+    Assert.assertEquals(index.containingAll("a", List.of("1", "7")), bits());
+    Assert.assertEquals(index.containingAll("a", List.of("9")), bits());
+    Assert.assertEquals(index.containingAll("a", List.of("null")), bits());
+    Assert.assertEquals(index.containingAll("a", List.of()), bits(0, 1, 2));
+    Assert.assertEquals(storage.reads(), 1);
+  }
+
+  // The client's -1 for an empty slot is not an item, whether stored before or after fromCsv
+  // mapped it to EMPTY
+  @Test
+  public void TestEmptySlots() throws Exception {
+    MockedStorage storage = new MockedStorage();
+    storage.addDocument(
+        "a", "outfits", "outfit-0", OutfitCodec.encode(new int[] {0, 1, -1, 3, -1, -1, -1}));
+    storage.addDocument("a", "outfits", "outfit-1", Map.of("outfit", "1,-1,2,3,-1,-1,-1"));
+    OutfitIndex index = new OutfitIndex(storage);
+    Assert.assertEquals(index.containingAll("a", List.of("-1")), bits());
+
+    int[] added = OutfitCodec.fromCsv("2,1,-1,-1,-1,-1,-1");
+    storage.addDocument("a", "outfits", "outfit-2", OutfitCodec.encode(added));
+    index.add("a", added);
+    Assert.assertEquals(index.containingAll("a", List.of("-1")), bits());
+    Assert.assertEquals(index.containingAll("a", List.of("1")), bits(0, 2));
+    Assert.assertEquals(index.containingAll("a", List.of("3")), bits(0, 1));
+  }
+
+  // Adds and removes keep a built index current, and reset rebuilds it from storage
+  @Test
+  public void TestMaintained() throws Exception {
+    MockedStorage storage = new MockedStorage();
+    storage.addDocument("a", "outfits", "outfit-0", Map.of("outfit", "0,1,2,3,null,null,null"));
+    OutfitIndex index = new OutfitIndex(storage);
+
+    // Before the index is built, updates are left for the build to pick up.
+    storage.addDocument("a", "outfits", "outfit-1", Map.of("outfit", "1,1,4,3,null,null,null"));
+    index.add("a", OutfitCodec.fromCsv("1,1,4,3,null,null,null"));
+    Assert.assertEquals(index.containingAll("a", List.of("3")), bits(0, 1));
+
+    index.add("a", OutfitCodec.fromCsv("2,1,5,6,null,null,null"));
+    index.remove("a", 0);
+    Assert.assertEquals(index.containingAll("a", List.of("1")), bits(1, 2));
+    Assert.assertEquals(index.containingAll("a", List.of("2")), bits());
+    Assert.assertEquals(storage.reads(), 1);
+
+    // Re-adding an outfit replaces its items.
+    index.add("a", OutfitCodec.fromCsv("2,4,5,6,null,null,null"));
+    Assert.assertEquals(index.containingAll("a", List.of("1")), bits(1));
+
+    storage.clearUser("a");
+    index.reset("a");
+    Assert.assertEquals(index.containingAll("a", List.of("1")), bits());
+    Assert.assertEquals(storage.reads(), 2);
+  }
+
+  // Outfits written by another server reach a built index through the change feed
+  @Test
+  public void TestFollowsChanges() throws Exception {
+    MockedStorage storage = new MockedStorage();
+    storage.addDocument("a", "outfits", "outfit-0", Map.of("outfit", "0,1,2,3,null,null,null"));
+    OutfitIndex index = new OutfitIndex(storage);
+    Assert.assertEquals(index.containingAll("a", List.of("1")), bits(0));
+
+    storage.addDocument(
+        "a",
+        "outfits",
+        "outfit-1",
+        OutfitCodec.encode(OutfitCodec.fromCsv("1,1,4,3,null,null,null")));
+    storage.deleteDocument("a", "outfits", "outfit-0");
+    long deadline = System.currentTimeMillis() + 5_000;
+    while (!index.containingAll("a", List.of("1")).equals(bits(1))
+        && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+    Assert.assertEquals(index.containingAll("a", List.of("1")), bits(1));
+    Assert.assertEquals(storage.reads(), 1);
+  }
+
+  // Removing an item used by more outfits than fit in one batch removes them all
+  @Test
+  public void TestRemoveCascade() throws Exception {
+    MockedStorage storage = new MockedStorage();
+    storage.addDocument(
+        "a", "clothing", "clothing-1", Map.of("clothing", "1,0,0,1,#ff0000,null,0"));
+    for (int i = 0; i < 600; i++) {
+      storage.addDocument(
+          "a", "outfits", "outfit-" + i, Map.of("outfit", i + ",1,2,3,null,null,null"));
+    }
+    OutfitIndex index = new OutfitIndex(storage);
+    Object body =
+        new RemoveClothingHandler(storage, index)
+            .handle(new MockedRequest(Map.of("uid", "a", "id", "1")), new MockedResponse());
+
+    Assert.assertTrue(body.toString().contains("\"response_type\":\"success\""));
+    Assert.assertEquals(storage.calls(Op.COMMIT), 2);
+    Assert.assertTrue(storage.getCollectionDocuments("a", "outfits").isEmpty());
+    Assert.assertNull(storage.getDocument("a", "clothing", "clothing-1"));
+    Assert.assertEquals(index.containingAll("a", List.of("1")), bits());
+  }
+}
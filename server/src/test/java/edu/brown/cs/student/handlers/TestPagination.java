@@ -0,0 +1,84 @@
+package edu.brown.cs.student.handlers;
+
+import edu.brown.cs.student.main.server.handlers.Pagination;
+import edu.brown.cs.student.main.server.storage.LogStorage;
+import edu.brown.cs.student.storage.mocking.MockedStorage;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.testng.Assert;
+
+public class TestPagination {
+
+  // Walking the cursors visits every matching document once, in document id order
+  @Test
+  public void TestWalk() throws Exception {
+    try (LogStorage log =
+        new LogStorage(Files.createTempDirectory("pages").resolve("fitmeup.log"))) {
+      List<String> expected = new ArrayList<>();
+      for (int i = 0; i < 45; i++) {
+        String id = String.format("clothing-%02d", i);
+        log.addDocument("a", "clothing", id, Map.of("n", (long) i));
+        if (i % 3 == 0) {
+          expected.add(id);
+        }
+      }
+
+      List<String> seen = new ArrayList<>();
+      String cursor = null;
+      int requests = 0;
+      do {
+        Pagination.Result page =
+            Pagination.list(
+                log,
+                "a",
+                "clothing",
+                "4",
+                cursor,
+                doc -> ((Number) doc.get("n")).longValue() % 3 == 0);
+        Assert.assertTrue(page.documents().size() <= 4);
+        seen.addAll(page.documents().keySet());
+        cursor = page.nextCursor();
+        requests++;
+      } while (cursor != null);
+      Assert.assertEquals(seen, expected);
+      Assert.assertEquals(requests, 4);
+
+      // Without limit or cursor, everything matching comes back at once.
+      Assert.assertEquals(
+          Pagination.list(log, "a", "clothing", null, null, doc -> true).documents().size(), 45);
+    }
+  }
+
+  // A sparse filter stops after a bounded read, and bad parameters are rejected
+  @Test
+  public void TestBoundsAndErrors() throws Exception {
+    MockedStorage storage = new MockedStorage();
+    for (int i = 0; i < 100; i++) {
+      storage.addDocument("a", "outfits", String.format("outfit-%03d", i), Map.of("n", (long) i));
+    }
+    Pagination.Result page =
+        Pagination.list(
+            storage, "a", "outfits", "1", null, doc -> ((Number) doc.get("n")).longValue() == 99);
+    Assert.assertTrue(page.documents().isEmpty());
+    Assert.assertNotNull(page.nextCursor());
+    Assert.assertEquals(storage.reads(), 10);
+
+    Assert.assertThrows(
+        IllegalArgumentException.class,
+        () -> Pagination.list(storage, "a", "outfits", "0", null, doc -> true));
+    Assert.assertThrows(
+        IllegalArgumentException.class,
+        () -> Pagination.list(storage, "a", "outfits", "5", "!!", doc -> true));
+
+    List<Map<String, String>> items = List.of(Map.of("id", "1", "top", "2", "bottom", "3"));
+    Set<String> known = Set.of("id", "top", "bottom");
+    Assert.assertEquals(
+        Pagination.project(items, "id,top", known), List.of(Map.of("id", "1", "top", "2")));
+    Assert.assertThrows(
+        IllegalArgumentException.class, () -> Pagination.project(items, "id,shoe", known));
+  }
+}
@@ -0,0 +1,39 @@
+package edu.brown.cs.student.handlers.mocking;
+
+import java.util.Map;
+import java.util.Set;
+import spark.Request;
+
+/**
+ * A Request carrying just query parameters and headers, for calling handlers without a running
+ * server.
+ */
+public class MockedRequest extends Request {
+
+  private final Map<String, String> params;
+  private final Map<String, String> headers;
+
+  public MockedRequest(Map<String, String> params) {
+    this(params, Map.of());
+  }
+
+  public MockedRequest(Map<String, String> params, Map<String, String> headers) {
+    this.params = params;
+    this.headers = headers;
+  }
+
+  @Override
+  public String headers(String header) {
+    return this.headers.get(header);
+  }
+
+  @Override
+  public String queryParams(String queryParam) {
+    return this.params.get(queryParam);
+  }
+
+  @Override
+  public Set<String> queryParams() {
+    return this.params.keySet();
+  }
+}
@@ -0,0 +1,113 @@
+package edu.brown.cs.student.handlers.mocking;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import spark.Response;
+
+/**
+ * A Response recording what a handler sets on it, for calling handlers without a running server. By
+ * default there is no servlet response behind it, so handlers return their bodies; one made by
+ * streaming() has one, recording what is streamed to it instead.
+ */
+public class MockedResponse extends Response {
+
+  private final Map<String, String> headers = new HashMap<>();
+  private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+  private int status = 200;
+  private String type;
+  private HttpServletResponse raw;
+  private boolean committed;
+
+  /** Creates a response that handlers can stream to, buffered until it is flushed. */
+  public static MockedResponse streaming() {
+    MockedResponse response = new MockedResponse();
+    ServletOutputStream out =
+        new ServletOutputStream() {
+          @Override
+          public void write(int b) {
+            response.body.write(b);
+          }
+
+          @Override
+          public void flush() {
+            response.committed = true;
+          }
+
+          @Override
+          public boolean isReady() {
+            return true;
+          }
+
+          @Override
+          public void setWriteListener(WriteListener writeListener) {}
+        };
+    response.raw =
+        (HttpServletResponse)
+            Proxy.newProxyInstance(
+                HttpServletResponse.class.getClassLoader(),
+                new Class<?>[] {HttpServletResponse.class},
+                (proxy, method, args) ->
+                    switch (method.getName()) {
+                      case "getOutputStream" -> out;
+                      case "isCommitted" -> response.committed;
+                      case "resetBuffer" -> {
+                        response.body.reset();
+                        yield null;
+                      }
+                      case "setHeader" -> {
+                        if (args[1] == null) {
+                          response.headers.remove((String) args[0]);
+                        } else {
+                          response.headers.put((String) args[0], (String) args[1]);
+                        }
+                        yield null;
+                      }
+                      default -> throw new UnsupportedOperationException(method.getName());
+                    });
+    return response;
+  }
+
+  @Override
+  public HttpServletResponse raw() {
+    return this.raw;
+  }
+
+  /** Returns what was streamed to this response. */
+  public byte[] streamed() {
+    return this.body.toByteArray();
+  }
+
+  @Override
+  public void status(int statusCode) {
+    this.status = statusCode;
+  }
+
+  @Override
+  public int status() {
+    return this.status;
+  }
+
+  @Override
+  public void type(String contentType) {
+    this.type = contentType;
+  }
+
+  @Override
+  public String type() {
+    return this.type;
+  }
+
+  @Override
+  public void header(String header, String value) {
+    this.headers.put(header, value);
+  }
+
+  public Map<String, String> headers() {
+    return this.headers;
+  }
+}
@@ -0,0 +1,106 @@
+package edu.brown.cs.student.serializers;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.Moshi;
+import com.squareup.moshi.Types;
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather.WeatherData;
+import edu.brown.cs.student.main.server.serializers.ClosetResponse;
+import edu.brown.cs.student.main.server.serializers.ClothingItem;
+import edu.brown.cs.student.main.server.serializers.ErrorResponse;
+import edu.brown.cs.student.main.server.serializers.Json;
+import edu.brown.cs.student.main.server.serializers.OutfitItem;
+import edu.brown.cs.student.main.server.serializers.OutfitResponse;
+import edu.brown.cs.student.main.server.serializers.WeatherResponse;
+import edu.brown.cs.student.main.server.storage.codec.ClothingCodec;
+import edu.brown.cs.student.main.server.storage.codec.OutfitCodec;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.testng.Assert;
+
+public class TestJson {
+
+  // How responses were serialized before: a fresh Moshi reflecting over a map.
+  private static final JsonAdapter<Map<String, Object>> REFLECTIVE =
+      new Moshi.Builder()
+          .build()
+          .adapter(Types.newParameterizedType(Map.class, String.class, Object.class));
+
+  // Typed responses serialize to the same JSON as the maps they replace
+  @Test
+  public void TestSameAsMaps() throws Exception {
+    ClothingItem clothing = ClothingItem.of(ClothingCodec.fromCsv("3,1,4,2,#336699,null,0"));
+    OutfitItem outfit = OutfitItem.of(OutfitCodec.fromCsv("7,3,4,null,null,null,9"));
+
+    Map<String, Object> typed = new HashMap<>();
+    typed.put("response_type", "success");
+    typed.put("clothing", List.of(clothing));
+    typed.put("outfit", outfit);
+    typed.put("count", 2);
+    typed.put("ratio", 0.5);
+    typed.put("missing", null);
+    Map<String, Object> maps = new HashMap<>(typed);
+    maps.put("clothing", List.of(clothing.toMap()));
+    maps.put("outfit", outfit.toMap());
+    assertSameJson(Json.toJson(typed), REFLECTIVE.toJson(maps));
+
+    WeatherData weather = new WeatherData(70, 50, 60, 10, 20, 0, 41.8, -71.4, "today", true);
+    // The response says whether the report is stale once, beside it rather than in it.
+    Map<String, Object> report = REFLECTIVE.fromJson(REFLECTIVE.toJson(Map.of("w", weather)));
+    Map<String, Object> weatherMap = new HashMap<>();
+    weatherMap.put("response_type", "success");
+    weatherMap.put("temperature", report.get("w"));
+    ((Map<?, ?>) report.get("w")).remove("stale");
+    weatherMap.put("stale", true);
+    assertSameJson(Json.toJson(new WeatherResponse(weather)), REFLECTIVE.toJson(weatherMap));
+    weatherMap.put("query_lat", "41.8");
+    weatherMap.put("query_lon", "-71.4");
+    assertSameJson(
+        Json.toJson(new WeatherResponse(weather).withQuery("41.8", "-71.4")),
+        REFLECTIVE.toJson(weatherMap));
+    assertSameJson(Json.toJson(Map.of("w", weather)), REFLECTIVE.toJson(Map.of("w", weather)));
+
+    Map<String, Object> closetMap = new HashMap<>();
+    closetMap.put("response_type", "success");
+    closetMap.put("clothing", List.of(clothing.toMap()));
+    assertSameJson(
+        Json.toJson(new ClosetResponse(List.of(clothing))), REFLECTIVE.toJson(closetMap));
+
+    Map<String, Object> outfitMap = new HashMap<>();
+    outfitMap.put("response_type", "success");
+    outfitMap.put("outfit", outfit.toMap());
+    assertSameJson(Json.toJson(new OutfitResponse(outfit, null)), REFLECTIVE.toJson(outfitMap));
+    outfitMap.put("stale_weather", false);
+    assertSameJson(Json.toJson(new OutfitResponse(outfit, false)), REFLECTIVE.toJson(outfitMap));
+
+    Map<String, Object> errorMap = new HashMap<>();
+    errorMap.put("response_type", "error");
+    errorMap.put("exception", "IllegalStateException");
+    assertSameJson(
+        Json.toJson(ErrorResponse.of(new IllegalStateException())), REFLECTIVE.toJson(errorMap));
+
+    errorMap.put("error_message", "bad");
+    errorMap.put("query_lat", "41.8");
+    errorMap.put("query_lon", "x");
+    assertSameJson(
+        Json.toJson(ErrorResponse.of(new IllegalStateException("bad")).withQuery("41.8", "x")),
+        REFLECTIVE.toJson(errorMap));
+  }
+
+  // Weather reports read back as they were written, with the shared Moshi
+  @Test
+  public void TestWeatherRoundTrip() throws Exception {
+    WeatherData weather = new WeatherData(70, 50, 60, 10, 20, 0, 41.8, -71.4, "today", true);
+    Assert.assertEquals(Json.fromJson(Json.toJson(weather), WeatherData.class), weather);
+    WeatherData undated = new WeatherData(0, 0, 0, 0, 0, 0, 0, 0, null);
+    Assert.assertEquals(Json.fromJson(Json.toJson(undated), WeatherData.class), undated);
+    Assert.assertEquals(
+        Json.fromJson("{\"high\": 70, \"extra\": [1]}", WeatherData.class),
+        new WeatherData(70, 0, 0, 0, 0, 0, 0, 0, null));
+  }
+
+  private static void assertSameJson(String actual, String expected) throws Exception {
+    Assert.assertEquals(REFLECTIVE.fromJson(actual), REFLECTIVE.fromJson(expected));
+  }
+}
@@ -0,0 +1,117 @@
+package edu.brown.cs.student.serializers;
+
+import edu.brown.cs.student.handlers.mocking.MockedRequest;
+import edu.brown.cs.student.handlers.mocking.MockedResponse;
+import edu.brown.cs.student.main.server.handlers.clothing.AddClothingHandler;
+import edu.brown.cs.student.main.server.handlers.clothing.ListClothingHandler;
+import edu.brown.cs.student.main.server.serializers.JsonStream;
+import edu.brown.cs.student.storage.mocking.MockedStorage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import org.junit.jupiter.api.Test;
+import org.testng.Assert;
+
+public class TestJsonStream {
+
+  // A streamed listing is the same JSON a returned one is, gzipped when the client accepts it
+  @Test
+  public void TestStreamed() throws Exception {
+    ListClothingHandler handler = new ListClothingHandler(closet(30));
+    Map<String, String> params = Map.of("uid", "a", "fields", "id,primary,description");
+    String expected = (String) handler.handle(new MockedRequest(params), new MockedResponse());
+    Assert.assertTrue(expected.contains("\"response_type\":\"success\""));
+
+    MockedResponse plain = MockedResponse.streaming();
+    Assert.assertEquals(handler.handle(new MockedRequest(params), plain), "");
+    Assert.assertEquals(plain.type(), "application/json");
+    Assert.assertNull(plain.headers().get("Content-Encoding"));
+    Assert.assertEquals(plain.headers().get("Vary"), "Accept-Encoding");
+    Assert.assertEquals(new String(plain.streamed(), StandardCharsets.UTF_8), expected);
+
+    MockedResponse gzipped = MockedResponse.streaming();
+    Assert.assertEquals(
+        handler.handle(
+            new MockedRequest(params, Map.of("Accept-Encoding", "gzip, deflate")), gzipped),
+        "");
+    Assert.assertEquals(gzipped.headers().get("Content-Encoding"), "gzip");
+    Assert.assertTrue(gzipped.streamed().length < plain.streamed().length);
+    try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped.streamed()))) {
+      Assert.assertEquals(new String(in.readAllBytes(), StandardCharsets.UTF_8), expected);
+    }
+  }
+
+  // Gzip is only used when the client's q-values allow it and the body is big enough
+  @Test
+  public void TestNegotiation() throws Exception {
+    ListClothingHandler big = new ListClothingHandler(closet(30));
+    ListClothingHandler small = new ListClothingHandler(closet(1));
+    Map<String, String> params = Map.of("uid", "a", "fields", "id,primary,description");
+    String expected = (String) small.handle(new MockedRequest(params), new MockedResponse());
+
+    Assert.assertNull(encoding(big, params, "gzip;q=0, deflate"));
+    Assert.assertNull(encoding(big, params, "identity, GZIP; Q=0.0"));
+    Assert.assertNull(encoding(big, params, "*;q=0"));
+    Assert.assertNull(encoding(big, params, "br"));
+    Assert.assertEquals(encoding(big, params, "gzip;q=0.5"), "gzip");
+    Assert.assertEquals(encoding(big, params, "deflate, *;q=0.1"), "gzip");
+    Assert.assertNull(encoding(big, params, "gzip;q=0, *"));
+
+    // A small body goes out as it is, even to a client that accepts gzip
+    MockedResponse response = MockedResponse.streaming();
+    small.handle(new MockedRequest(params, Map.of("Accept-Encoding", "gzip")), response);
+    Assert.assertNull(response.headers().get("Content-Encoding"));
+    Assert.assertEquals(response.headers().get("Vary"), "Accept-Encoding");
+    Assert.assertEquals(new String(response.streamed(), StandardCharsets.UTF_8), expected);
+  }
+
+  /** Streams a listing with the given Accept-Encoding, returning its Content-Encoding. */
+  private static String encoding(
+      ListClothingHandler handler, Map<String, String> params, String acceptEncoding)
+      throws Exception {
+    MockedResponse response = MockedResponse.streaming();
+    handler.handle(new MockedRequest(params, Map.of("Accept-Encoding", acceptEncoding)), response);
+    return response.headers().get("Content-Encoding");
+  }
+
+  // A failure before anything is sent leaves the response for the handler's error
+  @Test
+  public void TestFailure() {
+    MockedResponse response = MockedResponse.streaming();
+    Assert.assertThrows(
+        IOException.class,
+        () ->
+            JsonStream.write(
+                new MockedRequest(Map.of(), Map.of("Accept-Encoding", "gzip")),
+                response,
+                writer -> {
+                  writer.beginObject();
+                  throw new IOException("storage went away");
+                }));
+    Assert.assertEquals(response.streamed().length, 0);
+    Assert.assertNull(response.headers().get("Content-Encoding"));
+  }
+
+  /** A store holding one user's closet. */
+  private static MockedStorage closet(int items) throws Exception {
+    MockedStorage storage = new MockedStorage();
+    AddClothingHandler add = new AddClothingHandler(storage);
+    for (int i = 0; i < items; i++) {
+      add.handle(
+          new MockedRequest(
+              Map.of(
+                  "uid", "a",
+                  "category", Integer.toString(i % 4),
+                  "subcategory", "0",
+                  "formality", "1",
+                  "primary", "#336699",
+                  "secondary", "null",
+                  "material", "0",
+                  "description", "item " + i)),
+          new MockedResponse());
+    }
+    return storage;
+  }
+}
@@ -0,0 +1,52 @@
+package edu.brown.cs.student.storage;
+
+import edu.brown.cs.student.main.server.storage.AsyncStorage;
+import edu.brown.cs.student.main.server.storage.LogStorage;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.Test;
+import org.testng.Assert;
+
+public class TestAsyncStorage {
+
+  // Independent writes can be issued together, and have all landed once their futures complete
+  @Test
+  public void TestConcurrentWrites() throws Exception {
+    try (LogStorage log = new LogStorage(Files.createTempDirectory("async").resolve("f.log"))) {
+      AsyncStorage storage = log.async();
+      List<CompletableFuture<Void>> writes = new ArrayList<>();
+      for (int i = 0; i < 20; i++) {
+        writes.add(storage.addDocument("u", "outfits", "outfit-" + i, Map.of("outfit", "" + i)));
+      }
+      AsyncStorage.await(CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0])));
+      Assert.assertEquals(log.getCollection("u", "outfits").size(), 20);
+
+      // Reads of different collections proceed side by side
+      CompletableFuture<List<Map<String, Object>>> outfits = storage.getCollection("u", "outfits");
+      CompletableFuture<Map<String, Object>> missing =
+          storage.getDocument("u", "userIDs", "outfitID");
+      Assert.assertEquals(AsyncStorage.await(outfits).size(), 20);
+      Assert.assertNull(AsyncStorage.await(missing));
+
+      // A delete followed by a dependent read sees the delete
+      List<Map<String, Object>> after =
+          AsyncStorage.await(
+              storage
+                  .deleteDocument("u", "outfits", "outfit-0")
+                  .thenCompose(deleted -> storage.getCollection("u", "outfits")));
+      Assert.assertEquals(after.size(), 19);
+    }
+  }
+
+  // Awaiting a failed future rethrows the original exception, not a wrapper
+  @Test
+  public void TestAwaitUnwraps() throws Exception {
+    try (LogStorage log = new LogStorage(Files.createTempDirectory("async").resolve("f.log"))) {
+      CompletableFuture<Void> bad = log.async().addDocument(null, "outfits", "outfit-0", Map.of());
+      Assert.assertThrows(IllegalArgumentException.class, () -> AsyncStorage.await(bad));
+    }
+  }
+}
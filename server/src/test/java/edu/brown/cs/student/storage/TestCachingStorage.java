@@ -0,0 +1,137 @@
+package edu.brown.cs.student.storage;
+
+import edu.brown.cs.student.main.server.storage.CachingStorage;
+import edu.brown.cs.student.storage.mocking.MockedStorage;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.Test;
+import org.testng.Assert;
+
+public class TestCachingStorage {
+
+  private static void await(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5_000;
+    while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+  }
+
+  // Repeat reads are served from memory, and writes are visible through the cache
+  @Test
+  public void TestWriteThrough() throws Exception {
+    MockedStorage backing = new MockedStorage();
+    CachingStorage cache = new CachingStorage(backing, 10, 1 << 20);
+    cache.addDocument(
+        "u", "clothing", "clothing-0", Map.of("clothing", "0,top,shirt,1,#fff,null,cotton"));
+
+    Assert.assertEquals(cache.getCollection("u", "clothing").size(), 1);
+    Assert.assertEquals(cache.getCollection("u", "clothing").size(), 1);
+    Assert.assertEquals(backing.reads(), 1);
+
+    cache.addDocument(
+        "u", "clothing", "clothing-1", Map.of("clothing", "1,bottom,jeans,1,#000,null,denim"));
+    Assert.assertEquals(cache.getCollection("u", "clothing").size(), 2);
+    Assert.assertEquals(
+        cache.getDocument("u", "clothing", "clothing-1").get("clothing"),
+        "1,bottom,jeans,1,#000,null,denim");
+
+    cache.deleteDocument("u", "clothing", "clothing-0");
+    Assert.assertEquals(
+        cache.getCollectionDocuments("u", "clothing").keySet(), Set.of("clothing-1"));
+    Assert.assertNull(cache.getDocument("u", "clothing", "clothing-0"));
+    Assert.assertEquals(backing.reads(), 1);
+
+    // Mutating what we're handed doesn't touch the cache
+    cache.getCollection("u", "clothing").get(0).put("clothing", "garbage");
+    Assert.assertEquals(
+        cache.getCollection("u", "clothing").get(0).get("clothing"),
+        "1,bottom,jeans,1,#000,null,denim");
+
+    CachingStorage.Stats stats = cache.stats();
+    Assert.assertEquals(stats.misses(), 1);
+    Assert.assertEquals(stats.savedRoundTrips(), stats.hits());
+    Assert.assertTrue(stats.hitRate() > 0.8);
+  }
+
+  // Clearing a user drops their cache, and the bounds evict least recently used users
+  @Test
+  public void TestInvalidationAndBounds() throws Exception {
+    MockedStorage backing = new MockedStorage();
+    CachingStorage cache = new CachingStorage(backing, 2, 1 << 20);
+    for (String uid : List.of("a", "b", "c")) {
+      cache.addDocument(uid, "outfits", "outfit-0", Map.of("outfit", "0,1,2,3,-1,-1,-1"));
+      cache.getCollection(uid, "outfits");
+    }
+    Assert.assertEquals(cache.stats().users(), 2);
+    Assert.assertEquals(cache.stats().evictions(), 1);
+
+    cache.clearUser("c");
+    Assert.assertTrue(cache.getCollection("c", "outfits").isEmpty());
+    Assert.assertEquals(backing.reads(), 4);
+
+    // A byte bound too small for any closet caches nothing
+    CachingStorage tiny = new CachingStorage(backing, 10, 16);
+    tiny.getCollection("a", "outfits");
+    tiny.getCollection("a", "outfits");
+    Assert.assertEquals(tiny.stats().hits(), 0);
+    Assert.assertEquals(tiny.stats().bytes(), 0);
+  }
+
+  // A cache follows writes made through another cache over the same store, without re-reading
+  @Test
+  public void TestChangeFeed() throws Exception {
+    MockedStorage backing = new MockedStorage();
+    CachingStorage node1 = new CachingStorage(backing, 10, 1 << 20);
+    CachingStorage node2 = new CachingStorage(backing, 10, 1 << 20);
+    node1.addDocument("u", "outfits", "outfit-0", Map.of("outfit", "0,1,2,3,-1,-1,-1"));
+    Assert.assertEquals(node2.getCollection("u", "outfits").size(), 1);
+
+    node1.addDocument("u", "outfits", "outfit-1", Map.of("outfit", "1,1,2,4,-1,-1,-1"));
+    node1.deleteDocument("u", "outfits", "outfit-0");
+    await(() -> keys(node2).equals(Set.of("outfit-1")));
+    Assert.assertEquals(keys(node2), Set.of("outfit-1"));
+
+    backing.clearUser("u");
+    await(() -> keys(node2).isEmpty());
+    Assert.assertTrue(keys(node2).isEmpty());
+    Assert.assertEquals(backing.reads(), 1);
+  }
+
+  // A load overlapping a change to its user isn't cached, but one overlapping another user's is
+  @Test
+  public void TestLoadGenerations() throws Exception {
+    CachingStorage[] cache = new CachingStorage[1];
+    MockedStorage backing =
+        new MockedStorage() {
+          @Override
+          public Map<String, Map<String, Object>> getCollectionDocuments(
+              String uid, String collection_id) {
+            Map<String, Map<String, Object>> docs =
+                super.getCollectionDocuments(uid, collection_id);
+            // Another request writes while this one loads.
+            String writer = uid.equals("a") ? "b" : uid;
+            cache[0].addDocument(writer, "notes", "note-" + reads(), Map.of("n", 1L));
+            return docs;
+          }
+        };
+    cache[0] = new CachingStorage(backing, 10, 1 << 20);
+
+    cache[0].getCollection("a", "outfits");
+    cache[0].getCollection("a", "outfits");
+    Assert.assertEquals(backing.reads(), 1);
+
+    cache[0].getCollection("c", "outfits");
+    cache[0].getCollection("c", "outfits");
+    Assert.assertEquals(backing.reads(), 3);
+  }
+
+  private static Set<String> keys(CachingStorage cache) {
+    try {
+      return cache.getCollectionDocuments("u", "outfits").keySet();
+    } catch (Exception e) {
+      throw new AssertionError(e);
+    }
+  }
+}
@@ -0,0 +1,161 @@
+package edu.brown.cs.student.storage;
+
+import edu.brown.cs.student.main.server.storage.ChangeLogStorage;
+import edu.brown.cs.student.main.server.storage.StorageBatch;
+import edu.brown.cs.student.storage.mocking.MockedStorage;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import org.junit.jupiter.api.Test;
+import org.testng.Assert;
+
+public class TestChangeLogStorage {
+
+  // A client catches up with just the changes since its version, until they are truncated
+  @Test
+  public void TestCatchUp() throws Exception {
+    MockedStorage storage = new MockedStorage();
+    ChangeLogStorage log = new ChangeLogStorage(storage, Set.of("clothing"), 5);
+    // Nothing logged yet, so nobody can catch up without a snapshot.
+    Assert.assertNull(log.since("a", 0));
+
+    log.addDocument("a", "clothing", "clothing-1", Map.of("n", 1L));
+    log.addDocument("a", "clothing-description", "clothing-1", Map.of("d", "x"));
+    log.commit(
+        new StorageBatch()
+            .set("a", "clothing", "clothing-2", Map.of("n", 2L))
+            .delete("a", "clothing", "clothing-1"));
+    Assert.assertEquals(log.version("a"), 3);
+
+    // The log started with the first change, so only a client that has seen it can catch up.
+    Assert.assertNull(log.since("a", 0));
+    ChangeLogStorage.Changes changes = log.since("a", 1);
+    Assert.assertEquals(changes.version(), 3);
+    Assert.assertEquals(
+        changes.changes(),
+        List.of(
+            new ChangeLogStorage.Change(2, "clothing", "clothing-2", Map.of("n", 2L)),
+            new ChangeLogStorage.Change(3, "clothing", "clothing-1", null)));
+    Assert.assertTrue(log.since("a", 3).changes().isEmpty());
+    Assert.assertNull(log.since("a", 4));
+
+    // Past the retention limit, the oldest changes are dropped and those clients need snapshots.
+    for (int i = 3; i < 8; i++) {
+      log.addDocument("a", "clothing", "clothing-" + i, Map.of("n", (long) i));
+    }
+    Assert.assertEquals(log.version("a"), 8);
+    Assert.assertNull(log.since("a", 1));
+    Assert.assertNull(log.since("a", 2));
+    Assert.assertEquals(log.since("a", 3).changes().size(), 5);
+    // The head holds only counters, and the dropped versions' records are gone.
+    Assert.assertEquals(
+        storage.getDocument("a", ChangeLogStorage.CHANGELOG, ChangeLogStorage.HEAD).keySet(),
+        Set.of("version", "base", "at"));
+    Assert.assertEquals(storage.getCollectionDocuments("a", ChangeLogStorage.CHANGELOG).size(), 6);
+  }
+
+  // Writes landing out of version order still leave a caught-up client with what is stored
+  @Test
+  public void TestOutOfOrder() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    MockedStorage storage =
+        new MockedStorage() {
+          @Override
+          public void commit(StorageBatch batch) {
+            if (batch.writes().stream().anyMatch(w -> Map.of("n", "a").equals(w.data()))) {
+              try {
+                release.await();
+              } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+              }
+            }
+            super.commit(batch);
+          }
+        };
+    ChangeLogStorage log = new ChangeLogStorage(storage, Set.of("clothing"), 10);
+    log.addDocument("a", "clothing", "clothing-0", Map.of("n", "0"));
+
+    // The first write takes version 2 but lands after the second, which takes version 3.
+    Thread first =
+        new Thread(() -> log.addDocument("a", "clothing", "clothing-1", Map.of("n", "a")));
+    first.start();
+    while (!Long.valueOf(2)
+        .equals(
+            storage
+                .getDocument("a", ChangeLogStorage.CHANGELOG, ChangeLogStorage.HEAD)
+                .get("version"))) {
+      Thread.sleep(5);
+    }
+    log.addDocument("a", "clothing", "clothing-1", Map.of("n", "b"));
+    // Version 2 isn't recorded yet, so clients are held at 1.
+    Assert.assertEquals(log.version("a"), 1);
+    Assert.assertTrue(log.since("a", 1).changes().isEmpty());
+
+    release.countDown();
+    first.join();
+    Assert.assertEquals(log.version("a"), 3);
+    Assert.assertEquals(storage.getDocument("a", "clothing", "clothing-1"), Map.of("n", "a"));
+    Assert.assertEquals(
+        log.since("a", 1).changes(),
+        List.of(new ChangeLogStorage.Change(3, "clothing", "clothing-1", Map.of("n", "a"))));
+  }
+
+  // A version whose record never turns up restarts the log
+  @Test
+  public void TestLostVersion() throws Exception {
+    MockedStorage storage = new MockedStorage();
+    ChangeLogStorage log = new ChangeLogStorage(storage, Set.of("outfits"), 10);
+    log.addDocument("a", "outfits", "outfit-1", Map.of("n", 1L));
+    log.addDocument("a", "outfits", "outfit-2", Map.of("n", 2L));
+    // As if a writer took version 3 long ago and died before committing.
+    storage.addDocument(
+        "a",
+        ChangeLogStorage.CHANGELOG,
+        ChangeLogStorage.HEAD,
+        Map.of("version", 3L, "base", 1L, "at", 0L));
+
+    Assert.assertNull(log.since("a", 1));
+    long version = log.version("a");
+    Assert.assertTrue(version > 3);
+    Assert.assertTrue(log.since("a", version).changes().isEmpty());
+  }
+
+  // Clearing a user sends every client back to a snapshot
+  @Test
+  public void TestClearRestarts() throws Exception {
+    ChangeLogStorage log = new ChangeLogStorage(new MockedStorage(), Set.of("outfits"), 10);
+    log.addDocument("a", "outfits", "outfit-1", Map.of("n", 1L));
+    log.addDocument("a", "outfits", "outfit-2", Map.of("n", 2L));
+    Assert.assertEquals(log.since("a", 1).changes().size(), 1);
+
+    log.clearUser("a");
+    Assert.assertTrue(log.getCollectionDocuments("a", "outfits").isEmpty());
+    Assert.assertNull(log.since("a", 1));
+    Assert.assertNull(log.since("a", 2));
+    long version = log.version("a");
+    Assert.assertTrue(version > 2);
+    Assert.assertTrue(log.since("a", version).changes().isEmpty());
+
+    log.addDocument("a", "outfits", "outfit-3", Map.of("n", 3L));
+    Assert.assertEquals(log.since("a", version).changes().size(), 1);
+  }
+
+  // A transaction that leaves its document alone takes no version and writes no record
+  @Test
+  public void TestNoOpTransaction() throws Exception {
+    MockedStorage storage = new MockedStorage();
+    ChangeLogStorage log = new ChangeLogStorage(storage, Set.of("outfits"), 10);
+    log.addDocument("a", "outfits", "outfit-1", Map.of("n", 1L));
+    long writes = storage.documentsWritten();
+
+    Assert.assertNull(log.transact("a", "outfits", "outfit-1", current -> null));
+    Assert.assertEquals(log.version("a"), 1);
+    Assert.assertEquals(storage.documentsWritten(), writes);
+
+    log.transact("a", "outfits", "outfit-1", current -> Map.of("n", 2L));
+    Assert.assertEquals(
+        log.since("a", 1).changes(),
+        List.of(new ChangeLogStorage.Change(2, "outfits", "outfit-1", Map.of("n", 2L))));
+  }
+}
@@ -0,0 +1,156 @@
+package edu.brown.cs.student.storage;
+
+import edu.brown.cs.student.main.server.clothing.records.Clothing;
+import edu.brown.cs.student.main.server.handlers.Utils;
+import edu.brown.cs.student.main.server.serializers.ClothingItem;
+import edu.brown.cs.student.main.server.serializers.OutfitItem;
+import edu.brown.cs.student.main.server.storage.LogStorage;
+import edu.brown.cs.student.main.server.storage.ValueCodec;
+import edu.brown.cs.student.main.server.storage.codec.ClothingCodec;
+import edu.brown.cs.student.main.server.storage.codec.DescriptionMigrator;
+import edu.brown.cs.student.main.server.storage.codec.LegacyRewriter;
+import edu.brown.cs.student.main.server.storage.codec.OutfitCodec;
+import edu.brown.cs.student.storage.mocking.MockedStorage;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.testng.Assert;
+
+public class TestCodecs {
+
+  private static int encodedSize(Map<String, Object> data) throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ValueCodec.write(new DataOutputStream(bytes), data);
+    return bytes.size();
+  }
+
+  // Packed clothing decodes to exactly what the CSV form did, and is smaller
+  @Test
+  public void TestClothingRoundTrip() throws Exception {
+    for (String csv :
+        new String[] {
+          "0,0,0,0,#000000,null,0", "12345,5,17,2,#ff8000,#0a0b0c,6", "7,1,3,1,#ffffff,null,2"
+        }) {
+      Clothing legacy = ClothingCodec.decode(Map.of("clothing", csv));
+      Assert.assertEquals(legacy, Utils.fromStringClothing(csv));
+      Map<String, Object> packed = ClothingCodec.encode(legacy);
+      Assert.assertFalse(ClothingCodec.isLegacy(packed));
+      Assert.assertEquals(ClothingCodec.decode(packed), legacy);
+      Assert.assertEquals(
+          ClothingItem.of(ClothingCodec.decode(packed)).toMap(), ClothingItem.of(legacy).toMap());
+      Assert.assertTrue(encodedSize(packed) < encodedSize(Map.of("clothing", csv)));
+    }
+  }
+
+  // Outfits keep their ids and empty slots through both encodings, the client's -1 included
+  @Test
+  public void TestOutfitRoundTrip() {
+    String csv = "4,1,2,-1,null,null,9";
+    int[] legacy = OutfitCodec.decode(Map.of("outfit", csv));
+    Assert.assertEquals(legacy[3], OutfitCodec.EMPTY);
+    Assert.assertEquals(legacy[4], OutfitCodec.EMPTY);
+    Assert.assertEquals(OutfitCodec.decode(OutfitCodec.encode(legacy)), legacy);
+    Assert.assertEquals(OutfitCodec.toCsv(legacy), "4,1,2,null,null,null,9");
+    Assert.assertEquals(
+        OutfitItem.of(legacy).toMap(), Utils.outfitStringToHashMap("4,1,2,null,null,null,9"));
+    Assert.assertThrows(IllegalArgumentException.class, () -> OutfitCodec.fromCsv("1,2,x,4,5,6,7"));
+  }
+
+  // Reading old documents rewrites them in the new encoding, without resurrecting removed ones
+  @Test
+  public void TestLegacyRewrite() throws Exception {
+    MockedStorage storage = new MockedStorage();
+    storage.addDocument("a", "outfits", "outfit-0", Map.of("outfit", "0,1,2,3,null,null,null"));
+    storage.addDocument(
+        "a", "outfits", "outfit-1", OutfitCodec.encode(OutfitCodec.fromCsv("1,1,null,3,4,5,6")));
+    storage.addDocument("a", "outfits", "outfit-2", Map.of("outfit", "2,1,2,3,null,null,null"));
+    Map<String, Map<String, Object>> read = storage.getCollectionDocuments("a", "outfits");
+    // Removed after it was read, before the rewrite.
+    storage.deleteDocument("a", "outfits", "outfit-2");
+    LegacyRewriter.rewrite(
+            storage,
+            "a",
+            "outfits",
+            read,
+            OutfitCodec::isLegacy,
+            doc -> OutfitCodec.encode(OutfitCodec.decode(doc)))
+        .get(5, TimeUnit.SECONDS);
+
+    Map<String, Object> rewritten = storage.getDocument("a", "outfits", "outfit-0");
+    Assert.assertFalse(OutfitCodec.isLegacy(rewritten));
+    Assert.assertEquals(OutfitCodec.toCsv(OutfitCodec.decode(rewritten)), "0,1,2,3,null,null,null");
+    Assert.assertNull(storage.getDocument("a", "outfits", "outfit-2"));
+  }
+
+  // Reads while a collection is being rewritten don't rewrite it again
+  @Test
+  public void TestRewriteInFlight() throws Exception {
+    MockedStorage storage = new MockedStorage();
+    storage.setLatency(MockedStorage.Op.TRANSACT, MockedStorage.Latency.fixed(100));
+    for (int i = 0; i < 3; i++) {
+      storage.addDocument("b", "outfits", "outfit-" + i, Map.of("outfit", i + ",1,2,3,4,5,6"));
+    }
+    Map<String, Map<String, Object>> read = storage.getCollectionDocuments("b", "outfits");
+    List<CompletableFuture<Void>> rewrites = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      rewrites.add(
+          LegacyRewriter.rewrite(
+              storage,
+              "b",
+              "outfits",
+              read,
+              OutfitCodec::isLegacy,
+              doc -> OutfitCodec.encode(OutfitCodec.decode(doc))));
+    }
+    for (CompletableFuture<Void> rewrite : rewrites) {
+      rewrite.get(5, TimeUnit.SECONDS);
+    }
+    Assert.assertEquals(storage.calls(MockedStorage.Op.TRANSACT), 3);
+  }
+
+  // Descriptions move into the clothing records, for every user, without resurrecting anything
+  @Test
+  public void TestDescriptionMigration() throws Exception {
+    try (LogStorage log =
+        new LogStorage(Files.createTempDirectory("migrate").resolve("fitmeup.log"))) {
+      Clothing shirt = ClothingCodec.fromCsv("0,0,0,1,#ff0000,null,0");
+      Clothing jeans = ClothingCodec.fromCsv("1,1,3,1,#0000ff,null,2");
+      log.addDocument("a", "clothing", "clothing-0", Map.of("clothing", "0,0,0,1,#ff0000,null,0"));
+      log.addDocument(
+          "a", "clothing-description", "clothing-0", Map.of("description", "red, soft,clothing-0"));
+      log.addDocument("a", "clothing", "clothing-1", ClothingCodec.encode(jeans));
+      log.addDocument(
+          "a", "clothing-description", "clothing-2", Map.of("description", "gone,clothing-2"));
+      log.addDocument("a", "clothing", "clothing-3", ClothingCodec.encode(shirt, "new"));
+      log.addDocument("b", "clothing", "clothing-0", ClothingCodec.encode(shirt));
+      log.addDocument(
+          "b", "clothing-description", "clothing-0", Map.of("description", "mine,clothing-0"));
+
+      DescriptionMigrator migrator = new DescriptionMigrator(log, 1_000);
+      migrator.startSweep().join();
+
+      Map<String, Map<String, Object>> closet = log.getCollectionDocuments("a", "clothing");
+      Assert.assertEquals(closet.size(), 3);
+      Assert.assertFalse(DescriptionMigrator.needsMigration(closet));
+      Assert.assertEquals(ClothingCodec.description(closet.get("clothing-0")), "red, soft");
+      Assert.assertEquals(ClothingCodec.decode(closet.get("clothing-0")), shirt);
+      Assert.assertEquals(ClothingCodec.description(closet.get("clothing-1")), "");
+      Assert.assertEquals(ClothingCodec.decode(closet.get("clothing-1")), jeans);
+      Assert.assertEquals(ClothingCodec.description(closet.get("clothing-3")), "new");
+      Assert.assertEquals(
+          log.getCollectionDocuments("a", "clothing-description").keySet(), Set.of("clothing-2"));
+      Assert.assertEquals(
+          ClothingCodec.description(log.getDocument("b", "clothing", "clothing-0")), "mine");
+      Assert.assertTrue(log.getCollection("b", "clothing-description").isEmpty());
+      Assert.assertEquals(log.listUsers(), List.of("a", "b"));
+      Assert.assertEquals(migrator.migrate("a"), 0);
+    }
+  }
+}
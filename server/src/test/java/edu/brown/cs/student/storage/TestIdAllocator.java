@@ -0,0 +1,71 @@
+package edu.brown.cs.student.storage;
+
+import edu.brown.cs.student.main.server.storage.IdAllocator;
+import edu.brown.cs.student.main.server.storage.LogStorage;
+import edu.brown.cs.student.storage.mocking.MockedStorage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+import org.testng.Assert;
+
+public class TestIdAllocator {
+
+  // Two servers' allocators hammering one store never hand out the same ID twice
+  @Test
+  public void TestConcurrentUnique() throws Exception {
+    Path file = Files.createTempDirectory("ids").resolve("fitmeup.log");
+    try (LogStorage log = new LogStorage(file, Duration.ZERO, Duration.ofHours(1))) {
+      IdAllocator[] servers = {new IdAllocator(log, 4), new IdAllocator(log, 7)};
+      ExecutorService pool = Executors.newFixedThreadPool(8);
+      List<Future<List<Long>>> results = new ArrayList<>();
+      for (int t = 0; t < 8; t++) {
+        IdAllocator ids = servers[t % 2];
+        results.add(
+            pool.submit(
+                () -> {
+                  List<Long> taken = new ArrayList<>();
+                  for (int i = 0; i < 250; i++) {
+                    taken.add(ids.next("a", "clothingID"));
+                  }
+                  return taken;
+                }));
+      }
+      Set<Long> seen = new HashSet<>();
+      for (Future<List<Long>> result : results) {
+        for (long id : result.get()) {
+          Assert.assertTrue(seen.add(id), "duplicate id " + id);
+        }
+      }
+      pool.shutdown();
+      Assert.assertEquals(seen.size(), 2000);
+    }
+  }
+
+  // IDs come from memory within a block, counters are per user, and reset starts over
+  @Test
+  public void TestBlocks() throws Exception {
+    MockedStorage storage = new MockedStorage();
+    IdAllocator ids = new IdAllocator(storage, 3);
+    Assert.assertEquals(ids.next("a", "clothingID"), 0L);
+    Assert.assertEquals(ids.next("a", "clothingID"), 1L);
+    Assert.assertEquals(ids.next("a", "outfitID"), 0L);
+    Assert.assertEquals(ids.next("b", "clothingID"), 0L);
+    Assert.assertEquals(storage.getDocument("a", "userIDs", "clothingID").get("nextID"), "3");
+    Assert.assertEquals(ids.next("a", "clothingID"), 2L);
+    Assert.assertEquals(ids.next("a", "clothingID"), 3L);
+    Assert.assertEquals(storage.getDocument("a", "userIDs", "clothingID").get("nextID"), "6");
+
+    storage.clearUser("a");
+    ids.reset("a");
+    Assert.assertEquals(ids.next("a", "clothingID"), 0L);
+    Assert.assertEquals(ids.next("b", "clothingID"), 1L);
+  }
+}
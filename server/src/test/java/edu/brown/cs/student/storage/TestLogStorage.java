@@ -0,0 +1,224 @@
+package edu.brown.cs.student.storage;
+
+import edu.brown.cs.student.main.server.storage.ChangeFeed;
+import edu.brown.cs.student.main.server.storage.LogStorage;
+import edu.brown.cs.student.main.server.storage.StorageBatch;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.testng.Assert;
+
+public class TestLogStorage {
+
+  private static LogStorage open(Path file) throws IOException {
+    return new LogStorage(file, Duration.ZERO, Duration.ofHours(1));
+  }
+
+  // Documents, deletes and cleared users all survive a restart
+  @Test
+  public void TestReopen() throws Exception {
+    Path file = Files.createTempDirectory("log").resolve("fitmeup.log");
+    try (LogStorage log = open(file)) {
+      log.addDocument(
+          "a", "clothing", "clothing-0", Map.of("clothing", "0,top,shirt,1,#fff,null,cotton"));
+      log.addDocument(
+          "a", "clothing", "clothing-1", Map.of("clothing", "1,bottom,jeans,1,#000,null,denim"));
+      log.addDocument("a", "userIDs", "clothingID", Map.of("nextID", "2", "count", 2L, "ok", true));
+      log.deleteDocument("a", "clothing", "clothing-0");
+      log.addDocument("b", "outfits", "outfit-0", Map.of("outfit", List.of(1L, 2L, 3L)));
+      log.clearUser("b");
+    }
+
+    try (LogStorage log = open(file)) {
+      Assert.assertEquals(
+          log.getCollectionDocuments("a", "clothing").keySet(), Set.of("clothing-1"));
+      Map<String, Object> ids = log.getDocument("a", "userIDs", "clothingID");
+      Assert.assertEquals(ids.get("nextID"), "2");
+      Assert.assertEquals(ids.get("count"), 2L);
+      Assert.assertEquals(ids.get("ok"), true);
+      Assert.assertNull(log.getDocument("a", "clothing", "clothing-0"));
+      Assert.assertTrue(log.getCollection("b", "outfits").isEmpty());
+    }
+  }
+
+  // A torn record at the end of the log is cut off, and the log stays writable
+  @Test
+  public void TestTornTail() throws Exception {
+    Path file = Files.createTempDirectory("log").resolve("fitmeup.log");
+    try (LogStorage log = open(file)) {
+      log.addDocument("a", "clothing", "clothing-0", Map.of("clothing", "0"));
+    }
+    long good = Files.size(file);
+    Files.write(file, new byte[] {0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+
+    try (LogStorage log = open(file)) {
+      Assert.assertEquals(Files.size(file), good);
+      log.addDocument("a", "clothing", "clothing-1", Map.of("clothing", "1"));
+    }
+    try (LogStorage log = open(file)) {
+      Assert.assertEquals(log.getCollection("a", "clothing").size(), 2);
+    }
+  }
+
+  // A batch survives a restart whole, and a batch torn partway through is dropped whole
+  @Test
+  public void TestBatch() throws Exception {
+    Path file = Files.createTempDirectory("log").resolve("fitmeup.log");
+    try (LogStorage log = open(file)) {
+      log.addDocument("a", "outfits", "outfit-0", Map.of("outfit", "0,1"));
+      log.commit(
+          new StorageBatch()
+              .set("a", "clothing", "clothing-1", Map.of("clothing", "1"))
+              .set("a", "clothing-description", "clothing-1", Map.of("description", "red"))
+              .delete("a", "outfits", "outfit-0"));
+    }
+    long committed = Files.size(file);
+    try (LogStorage log = open(file)) {
+      Assert.assertEquals(log.getCollection("a", "clothing").size(), 1);
+      Assert.assertEquals(log.getCollection("a", "clothing-description").size(), 1);
+      Assert.assertTrue(log.getCollection("a", "outfits").isEmpty());
+
+      log.commit(
+          new StorageBatch()
+              .set("a", "clothing", "clothing-2", Map.of("clothing", "2"))
+              .set("a", "clothing-description", "clothing-2", Map.of("description", "blue")));
+    }
+
+    // Cut the second batch off partway through its last write.
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      channel.truncate(Files.size(file) - 3);
+    }
+    try (LogStorage log = open(file)) {
+      Assert.assertEquals(Files.size(file), committed);
+      Assert.assertNull(log.getDocument("a", "clothing", "clothing-2"));
+      Assert.assertEquals(log.getCollection("a", "clothing").size(), 1);
+    }
+  }
+
+  // Compaction drops overwritten records but keeps every live document
+  @Test
+  public void TestCompaction() throws Exception {
+    Path file = Files.createTempDirectory("log").resolve("fitmeup.log");
+    try (LogStorage log = open(file)) {
+      for (int i = 0; i < 200; i++) {
+        log.addDocument("a", "userIDs", "clothingID", Map.of("nextID", Integer.toString(i)));
+        log.addDocument("a", "clothing", "clothing-" + (i % 10), Map.of("clothing", "v" + i));
+      }
+      long before = log.sizeBytes();
+      log.compact();
+      Assert.assertTrue(log.sizeBytes() < before / 10);
+      Assert.assertEquals(log.sizeBytes(), log.liveBytes());
+      Assert.assertEquals(log.getDocument("a", "userIDs", "clothingID").get("nextID"), "199");
+
+      // Writes after compaction land in the new file
+      log.addDocument("a", "clothing", "clothing-99", Map.of("clothing", "after"));
+    }
+    try (LogStorage log = open(file)) {
+      Assert.assertEquals(log.getCollection("a", "clothing").size(), 11);
+      Assert.assertEquals(log.getDocument("a", "clothing", "clothing-9").get("clothing"), "v199");
+    }
+  }
+
+  // Concurrent writers share syncs and every write is durable once it returns
+  @Test
+  public void TestGroupCommit() throws Exception {
+    Path file = Files.createTempDirectory("log").resolve("fitmeup.log");
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+    try (LogStorage log = new LogStorage(file, Duration.ofMillis(1), Duration.ofHours(1))) {
+      List<Future<?>> writes = new ArrayList<>();
+      for (int t = 0; t < 8; t++) {
+        String uid = "user-" + t;
+        writes.add(
+            pool.submit(
+                () -> {
+                  for (int i = 0; i < 50; i++) {
+                    log.addDocument(uid, "outfits", "outfit-" + i, Map.of("outfit", "" + i));
+                  }
+                }));
+      }
+      for (Future<?> write : writes) {
+        write.get();
+      }
+    } finally {
+      pool.shutdown();
+    }
+    try (LogStorage log = open(file)) {
+      for (int t = 0; t < 8; t++) {
+        Assert.assertEquals(log.getCollection("user-" + t, "outfits").size(), 50);
+      }
+    }
+  }
+
+  // Subscribers hear about a collection's writes in order, batches at once, and clears as deletes
+  @Test
+  public void TestChangeFeed() throws Exception {
+    Path file = Files.createTempDirectory("log").resolve("fitmeup.log");
+    try (LogStorage log = open(file)) {
+      BlockingQueue<List<ChangeFeed.Change>> heard = new LinkedBlockingQueue<>();
+      ChangeFeed.Subscription subscription = log.subscribe("a", "outfits", heard::add);
+      log.addDocument("a", "clothing", "clothing-0", Map.of("clothing", "0"));
+      log.addDocument("a", "outfits", "outfit-0", Map.of("outfit", "0"));
+      log.commit(
+          new StorageBatch()
+              .set("a", "outfits", "outfit-1", Map.of("outfit", "1"))
+              .delete("a", "outfits", "outfit-0")
+              .set("b", "outfits", "outfit-0", Map.of("outfit", "0")));
+      log.clearUser("a");
+
+      Assert.assertEquals(
+          heard.poll(5, TimeUnit.SECONDS),
+          List.of(new ChangeFeed.Change("a", "outfits", "outfit-0", Map.of("outfit", "0"))));
+      List<ChangeFeed.Change> batch = heard.poll(5, TimeUnit.SECONDS);
+      Assert.assertEquals(batch.size(), 2);
+      Assert.assertTrue(batch.get(1).isDelete());
+      Assert.assertEquals(
+          heard.poll(5, TimeUnit.SECONDS),
+          List.of(new ChangeFeed.Change("a", "outfits", "outfit-1", null)));
+
+      subscription.close();
+      log.addDocument("a", "outfits", "outfit-2", Map.of("outfit", "2"));
+      Assert.assertNull(heard.poll(100, TimeUnit.MILLISECONDS));
+    }
+  }
+
+  // A change is only published once it is synced, but before its writer returns
+  @Test
+  public void TestPublishAfterSync() throws Exception {
+    Path file = Files.createTempDirectory("log").resolve("fitmeup.log");
+    ExecutorService pool = Executors.newSingleThreadExecutor();
+    try (LogStorage log = new LogStorage(file, Duration.ofMillis(500), Duration.ofHours(1))) {
+      BlockingQueue<List<ChangeFeed.Change>> heard = new LinkedBlockingQueue<>();
+      log.subscribe("a", "outfits", heard::add);
+      Future<?> write =
+          pool.submit(() -> log.addDocument("a", "outfits", "outfit-0", Map.of("outfit", "0")));
+
+      // Appended and readable, but the syncer is still waiting for more writes.
+      while (log.getDocument("a", "outfits", "outfit-0") == null) {
+        Thread.onSpinWait();
+      }
+      Assert.assertNull(heard.poll(200, TimeUnit.MILLISECONDS));
+      Assert.assertFalse(write.isDone());
+
+      write.get(5, TimeUnit.SECONDS);
+      Assert.assertEquals(
+          heard.poll(5, TimeUnit.SECONDS),
+          List.of(new ChangeFeed.Change("a", "outfits", "outfit-0", Map.of("outfit", "0"))));
+    } finally {
+      pool.shutdown();
+    }
+  }
+}
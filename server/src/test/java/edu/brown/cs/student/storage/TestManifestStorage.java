@@ -0,0 +1,222 @@
+package edu.brown.cs.student.storage;
+
+import edu.brown.cs.student.main.server.storage.LogStorage;
+import edu.brown.cs.student.main.server.storage.ManifestStorage;
+import edu.brown.cs.student.main.server.storage.StorageBatch;
+import edu.brown.cs.student.storage.mocking.MockedStorage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.UnaryOperator;
+import org.junit.jupiter.api.Test;
+import org.testng.Assert;
+
+public class TestManifestStorage {
+
+  // A closet written before manifests existed is read once, then served from one document
+  @Test
+  public void TestSingleRead() throws Exception {
+    MockedStorage docs = new MockedStorage();
+    for (int i = 0; i < 20; i++) {
+      docs.addDocument("a", "clothing", "clothing-" + i, Map.of("clothing", i + ",top"));
+    }
+    ManifestStorage manifests = new ManifestStorage(docs, Set.of("clothing"), 5);
+    Assert.assertEquals(manifests.getCollectionDocuments("a", "clothing").size(), 20);
+
+    for (int i = 20; i < 27; i++) {
+      manifests.addDocument("a", "clothing", "clothing-" + i, Map.of("clothing", i + ",top"));
+    }
+    manifests.commit(
+        new StorageBatch()
+            .delete("a", "clothing", "clothing-0")
+            .set("a", "clothing", "clothing-1", Map.of("clothing", "1,bottom")));
+
+    int before = docs.reads();
+    Map<String, Map<String, Object>> closet = manifests.getCollectionDocuments("a", "clothing");
+    Assert.assertEquals(docs.reads() - before, 1);
+    Assert.assertEquals(closet, docs.getCollectionDocuments("a", "clothing"));
+    Assert.assertEquals(closet.get("clothing-1").get("clothing"), "1,bottom");
+
+    // Nine deltas with compaction every five leave four outstanding; the batch bumps the version
+    // once.
+    Map<String, Object> manifest = docs.getDocument("a", ManifestStorage.MANIFESTS, "clothing");
+    Assert.assertEquals(((List<?>) manifest.get("deltas")).size(), 4);
+    Assert.assertEquals(manifests.version("a", "clothing"), 9L);
+
+    // Other collections are read as usual.
+    manifests.addDocument("a", "userIDs", "clothingID", Map.of("nextID", "27"));
+    Assert.assertNull(docs.getDocument("a", ManifestStorage.MANIFESTS, "userIDs"));
+  }
+
+  // Writers racing a reader that builds the manifest don't lose documents
+  @Test
+  public void TestConcurrentRebuild() throws Exception {
+    Path file = Files.createTempDirectory("manifest").resolve("fitmeup.log");
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+    try (LogStorage log = new LogStorage(file, Duration.ZERO, Duration.ofHours(1))) {
+      ManifestStorage manifests = new ManifestStorage(log, Set.of("outfits"), 8);
+      List<Future<?>> tasks = new ArrayList<>();
+      for (int t = 0; t < 6; t++) {
+        int writer = t;
+        tasks.add(
+            pool.submit(
+                () -> {
+                  for (int i = 0; i < 40; i++) {
+                    String id = "outfit-" + writer + "-" + i;
+                    manifests.addDocument("a", "outfits", id, Map.of("outfit", id));
+                    if (i % 3 == 0) {
+                      manifests.deleteDocument("a", "outfits", id);
+                    }
+                  }
+                  return null;
+                }));
+      }
+      for (int t = 0; t < 2; t++) {
+        tasks.add(
+            pool.submit(
+                () -> {
+                  for (int i = 0; i < 20; i++) {
+                    manifests.getCollectionDocuments("a", "outfits");
+                  }
+                  return null;
+                }));
+      }
+      for (Future<?> task : tasks) {
+        task.get();
+      }
+      Assert.assertEquals(
+          manifests.getCollectionDocuments("a", "outfits"),
+          log.getCollectionDocuments("a", "outfits"));
+      Assert.assertEquals(log.getCollection("a", "outfits").size(), 6 * 26);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  // A manifest that can't be rebuilt doesn't fail the read
+  @Test
+  public void TestRebuildFailure() throws Exception {
+    AtomicBoolean failing = new AtomicBoolean(true);
+    MockedStorage docs =
+        new MockedStorage() {
+          @Override
+          public Map<String, Object> transact(
+              String uid,
+              String collection_id,
+              String doc_id,
+              UnaryOperator<Map<String, Object>> update) {
+            if (failing.get()) {
+              throw new MockedStorage.InjectedFailure(MockedStorage.Op.TRANSACT);
+            }
+            return super.transact(uid, collection_id, doc_id, update);
+          }
+        };
+    docs.addDocument("a", "clothing", "clothing-0", Map.of("clothing", "0,top"));
+    ManifestStorage manifests = new ManifestStorage(docs, Set.of("clothing"), 5);
+
+    Assert.assertEquals(
+        manifests.getCollectionDocuments("a", "clothing"),
+        docs.getCollectionDocuments("a", "clothing"));
+    failing.set(false);
+    manifests.getCollectionDocuments("a", "clothing");
+    int before = docs.reads();
+    Assert.assertEquals(manifests.getCollectionDocuments("a", "clothing").size(), 1);
+    Assert.assertEquals(docs.reads() - before, 1);
+  }
+
+  // A collection too big for one document is read directly instead of rebuilt on every read
+  @Test
+  public void TestUnmanifested() throws Exception {
+    MockedStorage docs = new MockedStorage();
+    String description = "x".repeat(1024);
+    for (int i = 0; i < 600; i++) {
+      docs.addDocument("a", "clothing", "clothing-" + i, Map.of("description", description));
+    }
+    ManifestStorage manifests = new ManifestStorage(docs, Set.of("clothing"), 5);
+    Assert.assertEquals(manifests.getCollectionDocuments("a", "clothing").size(), 600);
+    long transacts = docs.calls(MockedStorage.Op.TRANSACT);
+
+    manifests.addDocument("a", "clothing", "clothing-600", Map.of("description", description));
+    Assert.assertEquals(manifests.getCollectionDocuments("a", "clothing").size(), 601);
+    // Only the write ran a transaction, and it left the marker alone; the read rebuilt nothing.
+    Assert.assertEquals(docs.calls(MockedStorage.Op.TRANSACT) - transacts, 1);
+    Assert.assertEquals(
+        docs.getDocument("a", ManifestStorage.MANIFESTS, "clothing").get("unmanifested"), true);
+  }
+
+  // A delete whose delta lands before an earlier write's doesn't resurrect the document
+  @Test
+  public void TestOutOfOrderDeltas() throws Exception {
+    CountDownLatch deleted = new CountDownLatch(1);
+    MockedStorage docs =
+        new MockedStorage() {
+          @Override
+          public Map<String, Object> transact(
+              String uid,
+              String collection_id,
+              String doc_id,
+              UnaryOperator<Map<String, Object>> update) {
+            if (collection_id.equals(ManifestStorage.MANIFESTS)
+                && Thread.currentThread().getName().equals("slow-writer")) {
+              try {
+                deleted.await();
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+            }
+            return super.transact(uid, collection_id, doc_id, update);
+          }
+        };
+    ManifestStorage manifests = new ManifestStorage(docs, Set.of("clothing"), 50);
+    manifests.addDocument("a", "clothing", "clothing-1", Map.of("clothing", "1,top"));
+    manifests.getCollectionDocuments("a", "clothing");
+
+    // The slow writer's put reaches the document first but its delta last.
+    Thread writer =
+        new Thread(
+            () ->
+                manifests.addDocument(
+                    "a", "clothing", "clothing-1", Map.of("clothing", "1,bottom")),
+            "slow-writer");
+    writer.start();
+    while (!"1,bottom".equals(docs.getDocument("a", "clothing", "clothing-1").get("clothing"))) {
+      Thread.onSpinWait();
+    }
+    manifests.deleteDocument("a", "clothing", "clothing-1");
+    deleted.countDown();
+    writer.join();
+
+    Assert.assertEquals(manifests.getCollectionDocuments("a", "clothing"), Map.of());
+  }
+
+  // A batch too big to re-read marks the manifest incomplete, and the next read rebuilds it
+  @Test
+  public void TestLargeBatch() throws Exception {
+    MockedStorage docs = new MockedStorage();
+    ManifestStorage manifests = new ManifestStorage(docs, Set.of("clothing"), 5);
+    manifests.addDocument("a", "clothing", "clothing-0", Map.of("clothing", "0,top"));
+    manifests.getCollectionDocuments("a", "clothing");
+
+    StorageBatch batch = new StorageBatch();
+    for (int i = 1; i <= ManifestStorage.MAX_REREAD + 5; i++) {
+      batch.set("a", "clothing", "clothing-" + i, Map.of("clothing", i + ",top"));
+    }
+    manifests.commit(batch);
+    Assert.assertEquals(
+        docs.getDocument("a", ManifestStorage.MANIFESTS, "clothing").get("complete"), false);
+    Assert.assertEquals(
+        manifests.getCollectionDocuments("a", "clothing"),
+        docs.getCollectionDocuments("a", "clothing"));
+    Assert.assertEquals(
+        docs.getDocument("a", ManifestStorage.MANIFESTS, "clothing").get("complete"), true);
+  }
+}
@@ -0,0 +1,165 @@
+package edu.brown.cs.student.storage;
+
+import edu.brown.cs.student.main.server.storage.StorageBatch;
+import edu.brown.cs.student.main.server.storage.WriteBehindStorage;
+import edu.brown.cs.student.storage.mocking.MockedStorage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+import org.testng.Assert;
+
+public class TestWriteBehindStorage {
+
+  // Writes are read back at once, coalesced per document, and land together when flushed
+  @Test
+  public void TestCoalesce() throws Exception {
+    MockedStorage docs = new MockedStorage();
+    Path journal = Files.createTempDirectory("write-behind").resolve("journal");
+    try (WriteBehindStorage storage =
+        new WriteBehindStorage(docs, Set.of("outfits"), journal, 100, Duration.ofHours(1))) {
+      for (long i = 0; i < 3; i++) {
+        storage.addDocument("a", "outfits", "outfit-1", Map.of("n", i));
+      }
+      storage.addDocument("a", "outfits", "outfit-2", Map.of("n", 2L));
+      storage.deleteDocument("a", "outfits", "outfit-2");
+      storage.addDocument("a", "ids", "outfitID", Map.of("next", 3L));
+      Assert.assertEquals(storage.pending(), 2);
+
+      // Nothing in the store yet but the collection that isn't written behind.
+      Assert.assertTrue(docs.getCollectionDocuments("a", "outfits").isEmpty());
+      Assert.assertEquals(docs.getDocument("a", "ids", "outfitID"), Map.of("next", 3L));
+      Assert.assertEquals(storage.getDocument("a", "outfits", "outfit-1"), Map.of("n", 2L));
+      Assert.assertNull(storage.getDocument("a", "outfits", "outfit-2"));
+      Assert.assertEquals(
+          storage.getCollectionDocuments("a", "outfits"), Map.of("outfit-1", Map.of("n", 2L)));
+      Assert.assertEquals(storage.getCollectionPage("a", "outfits", null, 5).documents().size(), 1);
+
+      Assert.assertTrue(storage.flush());
+      Assert.assertEquals(storage.pending(), 0);
+      Assert.assertEquals(
+          docs.getCollectionDocuments("a", "outfits"), Map.of("outfit-1", Map.of("n", 2L)));
+      Assert.assertEquals(Files.size(journal), 0);
+    }
+  }
+
+  // Unflushed writes survive a crash; flushed and cleared ones are not replayed
+  @Test
+  public void TestReplay() throws Exception {
+    MockedStorage docs = new MockedStorage();
+    Path journal = Files.createTempDirectory("write-behind").resolve("journal");
+    // Never closed, as if the server died.
+    WriteBehindStorage crashed =
+        new WriteBehindStorage(docs, Set.of("outfits"), journal, 100, Duration.ofHours(1));
+    crashed.addDocument("a", "outfits", "outfit-1", Map.of("n", 1L));
+    crashed.addDocument("b", "outfits", "outfit-1", Map.of("n", 1L));
+    crashed.flush();
+    // Removed since it was flushed; a replay must not bring it back.
+    docs.deleteDocument("a", "outfits", "outfit-1");
+    crashed.addDocument("a", "outfits", "outfit-2", Map.of("n", 2L));
+    crashed.addDocument("b", "outfits", "outfit-2", Map.of("n", 2L));
+    crashed.clearUser("b");
+    Files.write(journal, new byte[] {0, 0, 0, 40, 1, 2}, StandardOpenOption.APPEND);
+
+    try (WriteBehindStorage storage =
+        new WriteBehindStorage(docs, Set.of("outfits"), journal, 100, Duration.ofHours(1))) {
+      Assert.assertEquals(storage.pending(), 1);
+      Assert.assertTrue(storage.flush());
+      Assert.assertEquals(
+          docs.getCollectionDocuments("a", "outfits"), Map.of("outfit-2", Map.of("n", 2L)));
+      Assert.assertTrue(docs.getCollectionDocuments("b", "outfits").isEmpty());
+    }
+  }
+
+  // Under steady traffic something is always pending, yet the journal stays bounded and replays
+  @Test
+  public void TestCompaction() throws Exception {
+    AtomicReference<WriteBehindStorage> storage = new AtomicReference<>();
+    String padding = "x".repeat(8192);
+    // Each flush lands while the next write arrives, so the journal is never empty.
+    MockedStorage docs =
+        new MockedStorage() {
+          private long n = 0;
+
+          @Override
+          public void commit(StorageBatch batch) {
+            super.commit(batch);
+            this.n++;
+            storage.get().addDocument("a", "outfits", "outfit-" + this.n, Map.of("pad", padding));
+          }
+        };
+    Path journal = Files.createTempDirectory("write-behind").resolve("journal");
+    // Never closed, as if the server died.
+    WriteBehindStorage crashed =
+        new WriteBehindStorage(docs, Set.of("outfits"), journal, 100, Duration.ofHours(1));
+    storage.set(crashed);
+    crashed.addDocument("a", "outfits", "outfit-0", Map.of("pad", padding));
+    long largest = 0;
+    for (int i = 0; i < 1000; i++) {
+      Assert.assertTrue(crashed.flush());
+      Assert.assertEquals(crashed.pending(), 1);
+      largest = Math.max(largest, Files.size(journal));
+    }
+    Assert.assertTrue(largest < 2 << 20, "journal grew to " + largest);
+
+    MockedStorage replayed = new MockedStorage();
+    try (WriteBehindStorage restarted =
+        new WriteBehindStorage(replayed, Set.of("outfits"), journal, 100, Duration.ofHours(1))) {
+      Assert.assertEquals(restarted.pending(), 1);
+      Assert.assertTrue(restarted.flush());
+      Assert.assertEquals(
+          replayed.getCollectionDocuments("a", "outfits"),
+          Map.of("outfit-1000", Map.of("pad", padding)));
+    }
+  }
+
+  // Clearing a user drops their pending writes but doesn't hold up other users' flushes
+  @Test
+  public void TestClearOutsideFlush() throws Exception {
+    CountDownLatch clearing = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    MockedStorage docs =
+        new MockedStorage() {
+          @Override
+          public void clearUser(String uid) {
+            clearing.countDown();
+            try {
+              release.await();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+            super.clearUser(uid);
+          }
+        };
+    Path journal = Files.createTempDirectory("write-behind").resolve("journal");
+    try (WriteBehindStorage storage =
+        new WriteBehindStorage(docs, Set.of("outfits"), journal, 100, Duration.ofHours(1))) {
+      storage.addDocument("b", "outfits", "outfit-1", Map.of("n", 1L));
+      CompletableFuture<Void> cleared =
+          CompletableFuture.runAsync(
+              () -> {
+                try {
+                  storage.clearUser("b");
+                } catch (Exception e) {
+                  throw new IllegalStateException(e);
+                }
+              });
+      Assert.assertTrue(clearing.await(5, TimeUnit.SECONDS));
+      Assert.assertEquals(storage.pending(), 0);
+
+      storage.addDocument("a", "outfits", "outfit-1", Map.of("n", 1L));
+      Assert.assertTrue(storage.flush());
+      Assert.assertEquals(docs.getDocument("a", "outfits", "outfit-1"), Map.of("n", 1L));
+      release.countDown();
+      cleared.get(5, TimeUnit.SECONDS);
+      Assert.assertNull(docs.getDocument("b", "outfits", "outfit-1"));
+    }
+  }
+}
@@ -0,0 +1,309 @@
+package edu.brown.cs.student.storage.mocking;
+
+import edu.brown.cs.student.main.server.storage.ChangeFeed;
+import edu.brown.cs.student.main.server.storage.StorageBatch;
+import edu.brown.cs.student.main.server.storage.StorageInterface;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+
+/**
+ * An in-memory StorageInterface for tests, counting the reads that reach it. Writes are published
+ * to a change feed, so several caches over one MockedStorage behave like several servers sharing
+ * one database.
+ *
+ * <p>It can also stand in for Firestore in offline benchmarks: each call can be delayed by a
+ * latency distribution, per kind of call, and fail at a given rate, and every call and document
+ * read or written is counted. Latency is slept outside the store's lock, so concurrent calls
+ * overlap as they would against a remote database. All randomness comes from a seeded generator,
+ * and the sampled delays are totalled, so single-threaded runs give the same numbers every time.
+ */
+public class MockedStorage implements StorageInterface {
+
+  /** The kinds of call, each with its own latency and count. */
+  public enum Op {
+    GET_DOCUMENT,
+    GET_COLLECTION,
+    ADD_DOCUMENT,
+    DELETE_DOCUMENT,
+    TRANSACT,
+    COMMIT,
+    CLEAR_USER,
+    LIST_USERS
+  }
+
+  /** A distribution of call delays, in milliseconds. */
+  @FunctionalInterface
+  public interface Latency {
+    long nextMillis(Random random);
+
+    /** Every call takes the same time. */
+    static Latency fixed(long millis) {
+      return random -> millis;
+    }
+
+    /** A long-tailed distribution with the given median; sigma around 1 gives a heavy tail. */
+    static Latency lognormal(long medianMillis, double sigma) {
+      return random -> Math.round(medianMillis * Math.exp(sigma * random.nextGaussian()));
+    }
+  }
+
+  /** Thrown by a call that was made to fail. */
+  public static class InjectedFailure extends IllegalStateException {
+    public InjectedFailure(Op op) {
+      super("Injected failure in " + op);
+    }
+  }
+
+  // uid -> collection -> doc -> data
+  private final Map<String, Map<String, Map<String, Map<String, Object>>>> users = new HashMap<>();
+  private final AtomicInteger reads = new AtomicInteger();
+  private final ChangeFeed changes = new ChangeFeed();
+
+  private final Random random;
+  private final Map<Op, Latency> latencies = new EnumMap<>(Op.class);
+  private volatile Latency latency = Latency.fixed(0);
+  private volatile double errorRate = 0;
+
+  private final Map<Op, AtomicLong> calls = new EnumMap<>(Op.class);
+  private final AtomicLong documentsRead = new AtomicLong();
+  private final AtomicLong documentsWritten = new AtomicLong();
+  private final AtomicLong failures = new AtomicLong();
+  private final AtomicLong latencyMillis = new AtomicLong();
+
+  /** Creates a store with no latency or failures. */
+  public MockedStorage() {
+    this(0);
+  }
+
+  /**
+   * Creates a store with no latency or failures until they are set.
+   *
+   * @param seed the seed for latency and failure injection
+   */
+  public MockedStorage(long seed) {
+    this.random = new Random(seed);
+    for (Op op : Op.values()) {
+      this.calls.put(op, new AtomicLong());
+    }
+  }
+
+  /** Sets the distribution of delays for every kind of call without one of its own. */
+  public void setLatency(Latency latency) {
+    this.latency = latency;
+  }
+
+  /** Sets the distribution of delays for one kind of call. */
+  public void setLatency(Op op, Latency latency) {
+    synchronized (this.latencies) {
+      this.latencies.put(op, latency);
+    }
+  }
+
+  /** Sets the fraction of calls, between 0 and 1, that fail with an InjectedFailure. */
+  public void setErrorRate(double errorRate) {
+    this.errorRate = errorRate;
+  }
+
+  @Override
+  public void addDocument(
+      String uid, String collection_id, String doc_id, Map<String, Object> data) {
+    this.call(Op.ADD_DOCUMENT);
+    synchronized (this) {
+      this.put(uid, collection_id, doc_id, data);
+    }
+  }
+
+  @Override
+  public Map<String, Map<String, Object>> getCollectionDocuments(String uid, String collection_id) {
+    this.call(Op.GET_COLLECTION);
+    synchronized (this) {
+      this.reads.incrementAndGet();
+      Map<String, Map<String, Object>> copy = new LinkedHashMap<>();
+      this.users
+          .getOrDefault(uid, Map.of())
+          .getOrDefault(collection_id, Map.of())
+          .forEach((id, data) -> copy.put(id, new HashMap<>(data)));
+      this.documentsRead.addAndGet(copy.size());
+      return copy;
+    }
+  }
+
+  @Override
+  public List<String> listUsers() {
+    this.call(Op.LIST_USERS);
+    synchronized (this) {
+      return List.copyOf(this.users.keySet());
+    }
+  }
+
+  @Override
+  public void clearUser(String uid) {
+    this.call(Op.CLEAR_USER);
+    synchronized (this) {
+      Map<String, Map<String, Map<String, Object>>> removed = this.users.remove(uid);
+      if (removed != null) {
+        removed.forEach(
+            (collection, docs) ->
+                docs.keySet()
+                    .forEach(
+                        doc -> {
+                          this.documentsWritten.incrementAndGet();
+                          this.changes.publish(
+                              List.of(new ChangeFeed.Change(uid, collection, doc, null)));
+                        }));
+      }
+    }
+  }
+
+  @Override
+  public void deleteDocument(String uid, String collection_id, String doc_id) {
+    this.call(Op.DELETE_DOCUMENT);
+    synchronized (this) {
+      this.remove(uid, collection_id, doc_id);
+    }
+  }
+
+  @Override
+  public Map<String, Object> getDocument(String uid, String collection_id, String doc_id) {
+    this.call(Op.GET_DOCUMENT);
+    synchronized (this) {
+      return this.read(uid, collection_id, doc_id);
+    }
+  }
+
+  @Override
+  public Map<String, Object> transact(
+      String uid, String collection_id, String doc_id, UnaryOperator<Map<String, Object>> update) {
+    this.call(Op.TRANSACT);
+    synchronized (this) {
+      Map<String, Object> next = update.apply(this.read(uid, collection_id, doc_id));
+      if (next != null) {
+        this.put(uid, collection_id, doc_id, next);
+      }
+      return next;
+    }
+  }
+
+  @Override
+  public void commit(StorageBatch batch) {
+    this.call(Op.COMMIT);
+    synchronized (this) {
+      for (StorageBatch.Write write : batch.writes()) {
+        if (write.isDelete()) {
+          this.remove(write.uid(), write.collection_id(), write.doc_id());
+        } else {
+          this.put(write.uid(), write.collection_id(), write.doc_id(), write.data());
+        }
+      }
+    }
+  }
+
+  @Override
+  public ChangeFeed.Subscription subscribe(
+      String uid, String collection_id, ChangeFeed.Listener listener) {
+    return this.changes.subscribe(uid, collection_id, listener);
+  }
+
+  /** Returns the number of reads that reached this store. */
+  public int reads() {
+    return this.reads.get();
+  }
+
+  /** Returns the number of calls of one kind that reached this store, including failed ones. */
+  public long calls(Op op) {
+    return this.calls.get(op).get();
+  }
+
+  /** Returns the number of documents read, as Firestore would bill them. */
+  public long documentsRead() {
+    return this.documentsRead.get();
+  }
+
+  /** Returns the number of documents written or deleted, as Firestore would bill them. */
+  public long documentsWritten() {
+    return this.documentsWritten.get();
+  }
+
+  /** Returns the number of calls that were made to fail. */
+  public long failures() {
+    return this.failures.get();
+  }
+
+  /** Returns the total of every delay sampled, whether or not calls overlapped. */
+  public long latencyMillis() {
+    return this.latencyMillis.get();
+  }
+
+  /** Zeroes every counter, so a benchmark can leave out its setup. */
+  public void resetCounters() {
+    this.reads.set(0);
+    this.calls.values().forEach(calls -> calls.set(0));
+    this.documentsRead.set(0);
+    this.documentsWritten.set(0);
+    this.failures.set(0);
+    this.latencyMillis.set(0);
+  }
+
+  /** Counts a call, then delays it and perhaps fails it, outside the store's lock. */
+  private void call(Op op) {
+    this.calls.get(op).incrementAndGet();
+    Latency latency;
+    synchronized (this.latencies) {
+      latency = this.latencies.getOrDefault(op, this.latency);
+    }
+    long delay;
+    boolean fail;
+    synchronized (this.random) {
+      delay = Math.max(0, latency.nextMillis(this.random));
+      fail = this.errorRate > 0 && this.random.nextDouble() < this.errorRate;
+    }
+    this.latencyMillis.addAndGet(delay);
+    if (delay > 0) {
+      try {
+        Thread.sleep(delay);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    if (fail) {
+      this.failures.incrementAndGet();
+      throw new InjectedFailure(op);
+    }
+  }
+
+  // Guarded by this.
+  private Map<String, Object> read(String uid, String collection_id, String doc_id) {
+    this.reads.incrementAndGet();
+    this.documentsRead.incrementAndGet();
+    Map<String, Object> data =
+        this.users.getOrDefault(uid, Map.of()).getOrDefault(collection_id, Map.of()).get(doc_id);
+    return data == null ? null : new HashMap<>(data);
+  }
+
+  // Guarded by this.
+  private void put(String uid, String collection_id, String doc_id, Map<String, Object> data) {
+    this.users
+        .computeIfAbsent(uid, k -> new HashMap<>())
+        .computeIfAbsent(collection_id, k -> new LinkedHashMap<>())
+        .put(doc_id, new HashMap<>(data));
+    this.documentsWritten.incrementAndGet();
+    this.changes.publish(List.of(new ChangeFeed.Change(uid, collection_id, doc_id, data)));
+  }
+
+  // Guarded by this.
+  private void remove(String uid, String collection_id, String doc_id) {
+    this.users
+        .getOrDefault(uid, Map.of())
+        .getOrDefault(collection_id, new HashMap<>())
+        .remove(doc_id);
+    this.documentsWritten.incrementAndGet();
+    this.changes.publish(List.of(new ChangeFeed.Change(uid, collection_id, doc_id, null)));
+  }
+}
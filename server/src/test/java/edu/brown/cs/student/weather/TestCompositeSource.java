@@ -0,0 +1,151 @@
+package edu.brown.cs.student.weather;
+
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.DatasourceException;
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather.CompositeWeatherSource;
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather.CompositeWeatherSource.Provider;
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather.CompositeWeatherSource.Region;
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather.Geolocation;
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather.WeatherData;
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather.WeatherDatasource;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+import org.testng.Assert;
+
+public class TestCompositeSource {
+
+  private static final Region US = Region.box(24, 50, -125, -66);
+
+  /** A stand-in provider that answers with a fixed current temperature after a delay. */
+  private static WeatherDatasource answering(int current, long delayMillis) {
+    return loc -> {
+      try {
+        Thread.sleep(delayMillis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return new WeatherData(0, 0, current, 0, 0, 0, loc.lat(), loc.lon(), "2024-01-01");
+    };
+  }
+
+  /** A stand-in provider that always fails. */
+  private static WeatherDatasource failing() {
+    return loc -> {
+      throw new DatasourceException("provider down", true);
+    };
+  }
+
+  // Locations only go to providers whose region covers them
+  @Test
+  public void TestRegionRouting() throws DatasourceException {
+    CompositeWeatherSource composite =
+        new CompositeWeatherSource(
+            List.of(
+                new Provider("us", answering(1, 0), US),
+                new Provider("global", answering(2, 0), Region.anywhere())),
+            Duration.ofSeconds(1));
+    Assert.assertEquals(composite.getCurrentWeather(new Geolocation(41.8, -71.4)).current(), 1);
+    Assert.assertEquals(composite.getCurrentWeather(new Geolocation(51.5, -0.1)).current(), 2);
+    Assert.assertEquals(composite.stats().get("us").calls(), 1);
+    Assert.assertEquals(composite.stats().get("global").calls(), 1);
+
+    CompositeWeatherSource usOnly =
+        new CompositeWeatherSource(
+            List.of(new Provider("us", answering(1, 0), US)), Duration.ofSeconds(1));
+    Assert.assertThrows(
+        DatasourceException.class, () -> usOnly.getCurrentWeather(new Geolocation(51.5, -0.1)));
+  }
+
+  // A slow first provider is raced against the second after the hedging delay
+  @Test
+  public void TestHedgedRace() throws DatasourceException {
+    CompositeWeatherSource composite =
+        new CompositeWeatherSource(
+            List.of(
+                new Provider("slow", answering(1, 1_000), US),
+                new Provider("fast", answering(2, 0), US)),
+            Duration.ofMillis(50));
+    long start = System.nanoTime();
+    Assert.assertEquals(composite.getCurrentWeather(new Geolocation(41.8, -71.4)).current(), 2);
+    Assert.assertTrue(System.nanoTime() - start < 500_000_000);
+
+    // A fast first provider never triggers the hedge
+    CompositeWeatherSource quick =
+        new CompositeWeatherSource(
+            List.of(
+                new Provider("fast", answering(1, 0), US),
+                new Provider("backup", answering(2, 0), US)),
+            Duration.ofMillis(200));
+    Assert.assertEquals(quick.getCurrentWeather(new Geolocation(41.8, -71.4)).current(), 1);
+    Assert.assertEquals(quick.stats().get("backup").calls(), 0);
+  }
+
+  // Once a race is won, the slower call is cancelled, and isn't counted against its provider
+  @Test
+  public void TestLoserCancelled() throws Exception {
+    CountDownLatch cancelled = new CountDownLatch(1);
+    WeatherDatasource stuck =
+        loc -> {
+          try {
+            Thread.sleep(10_000);
+          } catch (InterruptedException e) {
+            cancelled.countDown();
+            Thread.currentThread().interrupt();
+            throw new DatasourceException("interrupted", false);
+          }
+          return new WeatherData(0, 0, 1, 0, 0, 0, loc.lat(), loc.lon(), "2024-01-01");
+        };
+    CompositeWeatherSource composite =
+        new CompositeWeatherSource(
+            List.of(new Provider("stuck", stuck, US), new Provider("fast", answering(2, 0), US)),
+            Duration.ofMillis(50));
+    Assert.assertEquals(composite.getCurrentWeather(new Geolocation(41.8, -71.4)).current(), 2);
+    Assert.assertTrue(cancelled.await(1, TimeUnit.SECONDS));
+    Assert.assertEquals(composite.stats().get("stuck").calls(), 0);
+  }
+
+  // A location only one provider covers is fetched on the caller's thread
+  @Test
+  public void TestSingleProviderInline() throws DatasourceException {
+    AtomicReference<Thread> caller = new AtomicReference<>();
+    WeatherDatasource recording =
+        loc -> {
+          caller.set(Thread.currentThread());
+          return new WeatherData(0, 0, 1, 0, 0, 0, loc.lat(), loc.lon(), "2024-01-01");
+        };
+    CompositeWeatherSource composite =
+        new CompositeWeatherSource(
+            List.of(new Provider("us", recording, US)), Duration.ofMillis(50));
+    Assert.assertEquals(composite.getCurrentWeather(new Geolocation(41.8, -71.4)).current(), 1);
+    Assert.assertEquals(caller.get(), Thread.currentThread());
+    Assert.assertEquals(composite.stats().get("us").calls(), 1);
+  }
+
+  // Failing providers fall through, in order, to the next one
+  @Test
+  public void TestOrderedFallback() throws DatasourceException {
+    CompositeWeatherSource composite =
+        new CompositeWeatherSource(
+            List.of(
+                new Provider("first", failing(), US),
+                new Provider("second", failing(), US),
+                new Provider("third", answering(3, 0), US),
+                new Provider("fourth", answering(4, 0), US)),
+            Duration.ofSeconds(1));
+    Assert.assertEquals(composite.getCurrentWeather(new Geolocation(41.8, -71.4)).current(), 3);
+    Assert.assertEquals(composite.stats().get("first").failures(), 1);
+    Assert.assertEquals(composite.stats().get("second").failures(), 1);
+    Assert.assertEquals(composite.stats().get("fourth").calls(), 0);
+
+    // Batches fall back per location too
+    List<CompletableFuture<WeatherData>> batch =
+        composite.getCurrentWeather(
+            List.of(new Geolocation(41.8, -71.4), new Geolocation(51.5, -0.1)));
+    Assert.assertEquals(batch.get(0).join().current(), 3);
+    Assert.assertTrue(batch.get(1).isCompletedExceptionally());
+  }
+}
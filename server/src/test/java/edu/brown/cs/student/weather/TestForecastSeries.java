@@ -0,0 +1,49 @@
+package edu.brown.cs.student.weather;
+
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather.ForecastSeries;
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather.NWSAPIWeatherSource.ForecastResponseTempValue;
+import java.time.Instant;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.testng.Assert;
+
+public class TestForecastSeries {
+
+  private final ForecastSeries series =
+      ForecastSeries.fromValues(
+          List.of(
+              new ForecastResponseTempValue("2024-05-01T00:00:00+00:00/PT2H", 10),
+              new ForecastResponseTempValue("2024-05-01T02:00:00+00:00/PT1H", 20),
+              new ForecastResponseTempValue("2024-05-01T03:00:00+00:00/P1DT1H", 30)));
+
+  // Intervals are expanded into one entry per hour
+  @Test
+  public void TestExpansion() {
+    Assert.assertEquals(series.size(), 2 + 1 + 25);
+    Assert.assertEquals(series.firstStart(), Instant.parse("2024-05-01T00:00:00Z"));
+    Assert.assertEquals(series.first(), 10.0);
+  }
+
+  // Windows exclude hours starting exactly on either bound
+  @Test
+  public void TestWindowBounds() {
+    Instant midnight = Instant.parse("2024-05-01T00:00:00Z");
+    // Only the 01:00 hour is strictly inside (00:00, 02:00)
+    Assert.assertEquals(series.averageNextHours(midnight, 2), 10.0);
+    // 01:00 (10), 02:00 (20), 03:00 (30) are strictly inside (00:00, 04:00)
+    Assert.assertEquals(series.averageNextHours(midnight, 4), 20.0);
+
+    // A few minutes past the hour pulls the hour at the end of the window in
+    Instant past = Instant.parse("2024-05-01T00:30:00Z");
+    Assert.assertEquals(series.averageNextHours(past, 2), 15.0);
+  }
+
+  // Arbitrary windows outside the series average to zero
+  @Test
+  public void TestEmptyWindow() {
+    Instant before = Instant.parse("2024-04-01T00:00:00Z");
+    Assert.assertEquals(series.averageNextHours(before, 8), 0.0);
+    Assert.assertTrue(Double.isNaN(series.valueAt(before)));
+    Assert.assertEquals(series.valueAt(Instant.parse("2024-05-01T02:30:00Z")), 20.0);
+  }
+}
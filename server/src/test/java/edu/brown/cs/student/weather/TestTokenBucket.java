@@ -0,0 +1,57 @@
+package edu.brown.cs.student.weather;
+
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.TokenBucket;
+import org.junit.jupiter.api.Test;
+import org.testng.Assert;
+
+public class TestTokenBucket {
+
+  // A bucket starts full, and drains one token per acquire until it is empty
+  @Test
+  public void TestDrain() {
+    TokenBucket bucket = new TokenBucket(3, 0);
+    Assert.assertEquals(bucket.available(), 3);
+    for (int i = 0; i < 3; i++) {
+      Assert.assertTrue(bucket.tryAcquire());
+    }
+    Assert.assertFalse(bucket.tryAcquire());
+    Assert.assertEquals(bucket.available(), 0);
+  }
+
+  // Deposits add tokens, fractions included, but never past the capacity
+  @Test
+  public void TestDeposit() {
+    TokenBucket bucket = new TokenBucket(2, 0);
+    bucket.tryAcquire();
+    bucket.tryAcquire();
+    bucket.deposit(0.5);
+    Assert.assertFalse(bucket.tryAcquire());
+    bucket.deposit(0.5);
+    Assert.assertTrue(bucket.tryAcquire());
+    bucket.deposit(10);
+    Assert.assertEquals(bucket.available(), 2);
+  }
+
+  // Tokens come back with time at the refill rate, up to the capacity, and not at all without one
+  @Test
+  public void TestRefill() throws InterruptedException {
+    TokenBucket refilling = new TokenBucket(5, 100);
+    TokenBucket fixed = new TokenBucket(5, 0);
+    for (int i = 0; i < 5; i++) {
+      refilling.tryAcquire();
+      fixed.tryAcquire();
+    }
+    Thread.sleep(25);
+    Assert.assertTrue(refilling.available() >= 2, "refilled " + refilling.available());
+    Assert.assertEquals(fixed.available(), 0);
+    Thread.sleep(100);
+    Assert.assertEquals(refilling.available(), 5);
+  }
+
+  // Nonsensical budgets are rejected
+  @Test
+  public void TestArguments() {
+    Assert.assertThrows(IllegalArgumentException.class, () -> new TokenBucket(0, 1));
+    Assert.assertThrows(IllegalArgumentException.class, () -> new TokenBucket(1, -1));
+  }
+}
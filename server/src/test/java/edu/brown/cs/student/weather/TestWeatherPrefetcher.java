@@ -0,0 +1,106 @@
+package edu.brown.cs.student.weather;
+
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.TokenBucket;
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather.CachedWeatherSource;
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather.Geolocation;
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather.GridCell;
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather.NWSAPIWeatherSource;
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather.WeatherPrefetcher;
+import edu.brown.cs.student.weather.mocking.MockedNWSServer;
+import java.time.Duration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.testng.Assert;
+
+public class TestWeatherPrefetcher {
+
+  private MockedNWSServer nws;
+  private CachedWeatherSource cache;
+  private GridCell hot;
+  private GridCell warm;
+
+  @BeforeEach
+  public void setup() throws Exception {
+    this.nws = new MockedNWSServer(27);
+    this.cache =
+        new CachedWeatherSource(
+            new NWSAPIWeatherSource(this.nws.baseUrl()), Duration.ofMinutes(30), 100);
+    this.hot = this.cache.resolveGridCell(41.8268, -71.4025);
+    this.warm = this.cache.resolveGridCell(40.7128, -74.006);
+  }
+
+  @AfterEach
+  public void teardown() {
+    this.nws.stop();
+  }
+
+  /** A prefetcher that only moves when ticked, refreshing at once. */
+  private WeatherPrefetcher prefetcher(Duration refreshAhead, TokenBucket budget) {
+    return new WeatherPrefetcher(
+        this.cache,
+        Duration.ofHours(1),
+        refreshAhead,
+        Duration.ofHours(1),
+        Duration.ZERO,
+        1,
+        32,
+        budget);
+  }
+
+  /** Looks the hot cell up three times and the warm one once. */
+  private void browse() throws Exception {
+    for (int i = 0; i < 3; i++) {
+      this.cache.getCurrentWeather(new Geolocation(41.8268, -71.4025));
+    }
+    this.cache.getCurrentWeather(new Geolocation(40.7128, -74.006));
+  }
+
+  // Every lookup heats its cell, and cells never looked up have no score
+  @Test
+  public void TestScores() throws Exception {
+    WeatherPrefetcher prefetcher = this.prefetcher(Duration.ofMinutes(5), new TokenBucket(1, 0));
+    this.browse();
+    Assert.assertEquals(prefetcher.score(this.hot), 3, 0.01);
+    Assert.assertEquals(prefetcher.score(this.warm), 1, 0.01);
+    Assert.assertEquals(prefetcher.score(this.cache.resolveGridCell(30.2672, -97.7431)), 0.0);
+    prefetcher.stop();
+  }
+
+  // With budget for one refresh, the hottest cell near expiry is the one refreshed
+  @Test
+  public void TestHottestFirst() throws Exception {
+    TokenBucket budget = new TokenBucket(1, 0);
+    // Everything cached expires within the hour, so every cell is near expiry.
+    WeatherPrefetcher prefetcher = this.prefetcher(Duration.ofHours(1), budget);
+    this.browse();
+    long hotExpiry = this.cache.expiresAtMillis(this.hot);
+    long warmExpiry = this.cache.expiresAtMillis(this.warm);
+    Assert.assertEquals(this.nws.gridpointsRequests(), 2);
+
+    Thread.sleep(5);
+    prefetcher.tick();
+    Assert.assertEquals(budget.available(), 0);
+    long deadline = System.currentTimeMillis() + 5_000;
+    while (this.cache.expiresAtMillis(this.hot) == hotExpiry
+        && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    Assert.assertTrue(this.cache.expiresAtMillis(this.hot) > hotExpiry);
+    Assert.assertEquals(this.cache.expiresAtMillis(this.warm), warmExpiry);
+    Assert.assertEquals(this.nws.gridpointsRequests(), 3);
+    prefetcher.stop();
+  }
+
+  // Cells that aren't close to expiring are left alone, and cost no budget
+  @Test
+  public void TestNotNearExpiry() throws Exception {
+    TokenBucket budget = new TokenBucket(1, 0);
+    WeatherPrefetcher prefetcher = this.prefetcher(Duration.ofMinutes(5), budget);
+    this.browse();
+    prefetcher.tick();
+    Assert.assertEquals(budget.available(), 1);
+    Assert.assertEquals(this.nws.gridpointsRequests(), 2);
+    prefetcher.stop();
+  }
+}
@@ -0,0 +1,383 @@
+package edu.brown.cs.student.weather;
+
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.CircuitBreaker;
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.DatasourceException;
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather.CachedWeatherSource;
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather.CompositeWeatherSource;
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather.CompositeWeatherSource.Provider;
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather.CompositeWeatherSource.Region;
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather.Forecast;
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather.ForecastSeries;
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather.ForecastSnapshotStore;
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather.Geolocation;
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather.GridCell;
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather.GridCellIndex;
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather.GridFootprint;
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather.NWSAPIWeatherSource;
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather.ResilientForecastSource;
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather.WeatherData;
+import edu.brown.cs.student.main.server.handlers.nwsapi.datasource.weather.WeatherDatasource;
+import edu.brown.cs.student.weather.mocking.MockedNWSServer;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.testng.Assert;
+
+public class TestWeatherSources {
+
+  private MockedNWSServer nws;
+
+  @BeforeEach
+  public void setup() throws IOException {
+    this.nws = new MockedNWSServer(32);
+  }
+
+  @AfterEach
+  public void teardown() {
+    this.nws.stop();
+  }
+
+  // The real source can be pointed at the stand-in and parses its fixtures
+  @Test
+  public void TestBaseUrl() throws DatasourceException {
+    NWSAPIWeatherSource source = new NWSAPIWeatherSource(this.nws.baseUrl());
+    WeatherData data = source.getCurrentWeather(new Geolocation(41.8268, -71.4025));
+    Assert.assertEquals(data.lat(), 41.8268);
+    Assert.assertNotNull(data.date());
+    Assert.assertFalse(data.stale());
+    Assert.assertEquals(this.nws.pointsRequests(), 1);
+    Assert.assertEquals(this.nws.gridpointsRequests(), 1);
+
+    // The parsed forecast answers arbitrary windows
+    Forecast forecast = source.getForecast(new Geolocation(41.8268, -71.4025));
+    Instant now = Instant.now();
+    Assert.assertTrue(forecast.temperature().average(now, now.plusSeconds(3 * 3600)) != 0);
+  }
+
+  // Concurrent misses for the same grid cell share one upstream fetch
+  @Test
+  public void TestCacheCoalescing() throws Exception {
+    this.nws.setLatency(MockedNWSServer.Latency.fixed(200));
+    CachedWeatherSource cache =
+        new CachedWeatherSource(new NWSAPIWeatherSource(this.nws.baseUrl()));
+    Geolocation loc = new Geolocation(41.8268, -71.4025);
+    // Resolve the point first so only the forecast fetch races.
+    cache.resolveGridCell(41.8268, -71.4025);
+
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+    List<Future<WeatherData>> results = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      results.add(pool.submit(() -> cache.getCurrentWeather(loc)));
+    }
+    for (Future<WeatherData> result : results) {
+      Assert.assertNotNull(result.get());
+    }
+    pool.shutdown();
+    Assert.assertEquals(this.nws.gridpointsRequests(), 1);
+
+    // And later lookups are served from memory
+    cache.getCurrentWeather(loc);
+    Assert.assertEquals(this.nws.gridpointsRequests(), 1);
+    Assert.assertEquals(this.nws.pointsRequests(), 1);
+  }
+
+  // When the upstream fails, the last good forecast is served stale and the breaker opens
+  @Test
+  public void TestStaleFallback() throws DatasourceException {
+    ResilientForecastSource resilient =
+        new ResilientForecastSource(
+            new NWSAPIWeatherSource(this.nws.baseUrl()),
+            new CircuitBreaker(2, Duration.ofMinutes(1)),
+            Duration.ofMillis(500),
+            Duration.ofSeconds(2),
+            0.1);
+    GridCell cell = resilient.resolveGridCell(41.8268, -71.4025);
+    Assert.assertFalse(resilient.getForecast(cell).stale());
+
+    this.nws.setErrorRate(1);
+    Assert.assertTrue(resilient.getForecast(cell).stale());
+    Assert.assertTrue(resilient.getForecast(cell).stale());
+    Assert.assertEquals(resilient.breakerState(), CircuitBreaker.State.OPEN);
+
+    // With the breaker open, fallbacks are immediate and the upstream is left alone
+    int served = this.nws.gridpointsRequests();
+    long start = System.nanoTime();
+    Assert.assertTrue(resilient.getForecast(cell).stale());
+    Assert.assertTrue(System.nanoTime() - start < 50_000_000);
+    Assert.assertEquals(this.nws.gridpointsRequests(), served);
+  }
+
+  // A failed attempt is retried at once, and the retry's answer is returned
+  @Test
+  public void TestRetry() throws DatasourceException {
+    ResilientForecastSource resilient =
+        new ResilientForecastSource(
+            new NWSAPIWeatherSource(this.nws.baseUrl()),
+            new CircuitBreaker(5, Duration.ofMinutes(1)),
+            Duration.ofSeconds(1),
+            Duration.ofSeconds(3),
+            0.1);
+    this.nws.failNext(1);
+    Assert.assertNotNull(resilient.resolveGridCell(41.8268, -71.4025));
+    Assert.assertEquals(this.nws.pointsRequests(), 2);
+    Assert.assertEquals(resilient.breakerState(), CircuitBreaker.State.CLOSED);
+  }
+
+  // An attempt that hasn't answered by the hedging delay is raced by a second, which wins
+  @Test
+  public void TestHedging() throws DatasourceException {
+    AtomicInteger requests = new AtomicInteger();
+    this.nws.setLatency(random -> requests.getAndIncrement() == 0 ? 2_000 : 0);
+    ResilientForecastSource resilient =
+        new ResilientForecastSource(
+            new NWSAPIWeatherSource(this.nws.baseUrl()),
+            new CircuitBreaker(5, Duration.ofMinutes(1)),
+            Duration.ofMillis(100),
+            Duration.ofSeconds(3),
+            0.1);
+    long start = System.nanoTime();
+    Assert.assertNotNull(resilient.resolveGridCell(41.8268, -71.4025));
+    Assert.assertTrue(System.nanoTime() - start < 1_000_000_000);
+    Assert.assertEquals(this.nws.pointsRequests(), 2);
+  }
+
+  // Retries are paid for by requests: the initial slack, plus a tenth of a retry per request
+  @Test
+  public void TestRetryBudget() {
+    this.nws.setErrorRate(1);
+    ResilientForecastSource resilient =
+        new ResilientForecastSource(
+            new NWSAPIWeatherSource(this.nws.baseUrl()),
+            new CircuitBreaker(100, Duration.ofMinutes(1)),
+            Duration.ofSeconds(1),
+            Duration.ofSeconds(3),
+            0.1);
+    for (int i = 0; i < 15; i++) {
+      Assert.assertThrows(
+          DatasourceException.class, () -> resilient.resolveGridCell(41.8268, -71.4025));
+    }
+    // 10 tokens to start with, and one more earned by the 11th request.
+    Assert.assertEquals(this.nws.pointsRequests(), 15 + 11);
+  }
+
+  // Losing a race and being cancelled is not a failure: the breaker stays closed, and the cell's
+  // next lookup fetches afresh rather than inheriting the cancellation
+  @Test
+  public void TestCancelledLoser() throws Exception {
+    ResilientForecastSource resilient =
+        new ResilientForecastSource(
+            new NWSAPIWeatherSource(this.nws.baseUrl()),
+            new CircuitBreaker(1, Duration.ofMinutes(1)),
+            Duration.ofSeconds(5),
+            Duration.ofSeconds(3),
+            0.1);
+    CachedWeatherSource cache = new CachedWeatherSource(resilient);
+    cache.resolveGridCell(41.8268, -71.4025);
+    CountDownLatch finished = new CountDownLatch(1);
+    WeatherDatasource slow =
+        loc -> {
+          try {
+            return cache.getCurrentWeather(loc);
+          } finally {
+            finished.countDown();
+          }
+        };
+    CompositeWeatherSource composite =
+        new CompositeWeatherSource(
+            List.of(
+                new Provider("nws", slow, Region.anywhere()),
+                new Provider(
+                    "backup",
+                    loc -> new WeatherData(0, 0, 0, 0, 0, 0, loc.lat(), loc.lon(), "today"),
+                    Region.anywhere())),
+            Duration.ofMillis(50));
+
+    this.nws.setLatency(MockedNWSServer.Latency.fixed(1_000));
+    Assert.assertEquals(
+        composite.getCurrentWeather(new Geolocation(41.8268, -71.4025)).date(), "today");
+    Assert.assertTrue(finished.await(1, TimeUnit.SECONDS));
+    Assert.assertEquals(resilient.breakerState(), CircuitBreaker.State.CLOSED);
+
+    this.nws.setLatency(MockedNWSServer.Latency.fixed(0));
+    Assert.assertFalse(cache.getCurrentWeather(new Geolocation(41.8268, -71.4025)).stale());
+  }
+
+  // A slow upstream is cut off at the deadline rather than blocking the caller
+  @Test
+  public void TestDeadline() {
+    this.nws.setLatency(MockedNWSServer.Latency.fixed(2_000));
+    ResilientForecastSource resilient =
+        new ResilientForecastSource(
+            new NWSAPIWeatherSource(this.nws.baseUrl()),
+            new CircuitBreaker(5, Duration.ofMinutes(1)),
+            Duration.ofMillis(100),
+            Duration.ofMillis(400),
+            0.1);
+    long start = System.nanoTime();
+    Assert.assertThrows(
+        DatasourceException.class, () -> resilient.resolveGridCell(41.8268, -71.4025));
+    Assert.assertTrue(System.nanoTime() - start < 1_000_000_000);
+  }
+
+  // A batch looks each distinct grid cell up once and answers in input order
+  @Test
+  public void TestBatchByCell() {
+    CachedWeatherSource cache =
+        new CachedWeatherSource(new NWSAPIWeatherSource(this.nws.baseUrl()));
+    List<CompletableFuture<WeatherData>> results =
+        cache.getCurrentWeather(
+            List.of(
+                new Geolocation(41.8268, -71.4025),
+                new Geolocation(41.8269, -71.4026),
+                new Geolocation(40.7128, -74.0060),
+                new Geolocation(41.8268, -71.4025)));
+    Assert.assertEquals(results.size(), 4);
+    Assert.assertEquals(results.get(1).join().lat(), 41.8269);
+    Assert.assertEquals(results.get(2).join().lat(), 40.7128);
+    Assert.assertEquals(results.get(3).join().lat(), 41.8268);
+    // Three distinct points, but only two distinct grid cells. Every point is resolved before any
+    // forecast teaches the index, so the second point always goes upstream too.
+    Assert.assertEquals(this.nws.pointsRequests(), 3);
+    Assert.assertEquals(this.nws.gridpointsRequests(), 2);
+  }
+
+  // Once a cell's forecast is cached, other coordinates inside it resolve with no /points call
+  @Test
+  public void TestNearbyFromIndex() throws DatasourceException {
+    CachedWeatherSource cache =
+        new CachedWeatherSource(new NWSAPIWeatherSource(this.nws.baseUrl()));
+    cache.getCurrentWeather(new Geolocation(41.8268, -71.4025));
+    GridCell cell = cache.resolveGridCell(41.8268, -71.4025);
+    Assert.assertEquals(cache.index().size(), 1);
+
+    // Same stand-in cell (0.025 degrees square), different coordinate
+    Assert.assertEquals(cache.resolveGridCell(41.8401, -71.4101), cell);
+    WeatherData nearby = cache.getCurrentWeather(new Geolocation(41.8301, -71.4201));
+    Assert.assertEquals(nearby.lat(), 41.8301);
+    Assert.assertEquals(this.nws.pointsRequests(), 1);
+    Assert.assertEquals(this.nws.gridpointsRequests(), 1);
+
+    // Coordinates in a neighbouring cell still go upstream
+    Assert.assertNotEquals(cache.resolveGridCell(41.8601, -71.4101), cell);
+    Assert.assertEquals(this.nws.pointsRequests(), 2);
+  }
+
+  // A full index forgets the cell least recently added or located
+  @Test
+  public void TestIndexBound() {
+    GridCellIndex index = new GridCellIndex(2);
+    GridCell[] cells = new GridCell[3];
+    for (int i = 0; i < cells.length; i++) {
+      cells[i] = new GridCell("BOX", Integer.toString(i), "0");
+      double west = i * 0.1;
+      index.add(
+          cells[i],
+          new GridFootprint(
+              new double[] {0, 0, 0.1, 0.1}, new double[] {west, west + 0.1, west + 0.1, west}));
+      if (i == 1) {
+        // Using the first cell makes the second the least recently used.
+        Assert.assertEquals(index.locate(0.05, 0.05), cells[0]);
+      }
+    }
+    Assert.assertEquals(index.size(), 2);
+    Assert.assertEquals(index.locate(0.05, 0.05), cells[0]);
+    Assert.assertNull(index.locate(0.05, 0.15));
+    Assert.assertNull(index.footprint(cells[1]));
+    Assert.assertEquals(index.locate(0.05, 0.25), cells[2]);
+  }
+
+  // A restarted cache answers from disk snapshots, without NWS, until a fresh fetch succeeds
+  @Test
+  public void TestSnapshotRestart() throws Exception {
+    Path dir = Files.createTempDirectory("forecasts");
+    ForecastSnapshotStore store = new ForecastSnapshotStore(dir);
+    NWSAPIWeatherSource source = new NWSAPIWeatherSource(this.nws.baseUrl());
+    GridCell cell = source.resolveGridCell(41.8268, -71.4025);
+    Forecast fresh = source.getForecast(cell);
+    store.save(cell, fresh);
+
+    // The snapshot round-trips every series exactly
+    Forecast restored = store.load(cell);
+    Assert.assertTrue(restored.stale());
+    Assert.assertEquals(restored.updateTime(), fresh.updateTime());
+    Assert.assertEquals(restored.temperature().values(), fresh.temperature().values());
+    Assert.assertEquals(restored.skyCover().starts(), fresh.skyCover().starts());
+    Assert.assertTrue(restored.footprint().contains(41.8268, -71.4025));
+
+    // "Restart" against an upstream that is down
+    this.nws.setErrorRate(1);
+    int points = this.nws.pointsRequests();
+    CachedWeatherSource restarted =
+        new CachedWeatherSource(
+            new NWSAPIWeatherSource(this.nws.baseUrl()),
+            Duration.ofMinutes(30),
+            100,
+            new ForecastSnapshotStore(dir));
+    WeatherData data = restarted.getCurrentWeather(new Geolocation(41.8301, -71.4201));
+    Assert.assertTrue(data.stale());
+    Assert.assertEquals(this.nws.pointsRequests(), points);
+
+    // Once NWS is back, the background refresh replaces the snapshot with a fresh forecast
+    this.nws.setErrorRate(0);
+    Assert.assertFalse(restarted.refresh(cell).stale());
+    Assert.assertFalse(restarted.getCurrentWeather(new Geolocation(41.8301, -71.4201)).stale());
+  }
+
+  // A snapshot whose forecast has run out is not served; the lookup fails instead
+  @Test
+  public void TestExpiredSnapshot() throws Exception {
+    Path dir = Files.createTempDirectory("forecasts");
+    ForecastSnapshotStore store = new ForecastSnapshotStore(dir);
+    NWSAPIWeatherSource source = new NWSAPIWeatherSource(this.nws.baseUrl());
+    GridCell cell = source.resolveGridCell(41.8268, -71.4025);
+    Forecast fresh = source.getForecast(cell);
+    Assert.assertTrue(fresh.coversNext(Instant.now()));
+
+    // The same forecast, fetched a month ago
+    long[] starts = fresh.temperature().starts();
+    for (int i = 0; i < starts.length; i++) {
+      starts[i] -= 30 * 24 * 3600;
+    }
+    Forecast old =
+        new Forecast(
+            fresh.updateTime(),
+            fresh.date(),
+            fresh.maxTemperature(),
+            fresh.minTemperature(),
+            new ForecastSeries(starts, fresh.temperature().values()),
+            fresh.skyCover(),
+            fresh.probabilityOfPrecipitation(),
+            fresh.snowfallAmount(),
+            fresh.footprint(),
+            false);
+    store.save(cell, old);
+    Assert.assertFalse(store.load(cell).coversNext(Instant.now()));
+
+    this.nws.setErrorRate(1);
+    CachedWeatherSource restarted =
+        new CachedWeatherSource(
+            new NWSAPIWeatherSource(this.nws.baseUrl()),
+            Duration.ofMinutes(30),
+            100,
+            new ForecastSnapshotStore(dir));
+    DatasourceException e =
+        Assert.expectThrows(
+            DatasourceException.class,
+            () -> restarted.getCurrentWeather(new Geolocation(41.8301, -71.4201)));
+    Assert.assertTrue(e.getMessage().contains("has run out"), e.getMessage());
+  }
+}
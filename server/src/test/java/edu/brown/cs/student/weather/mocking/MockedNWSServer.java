@@ -0,0 +1,252 @@
+package edu.brown.cs.student.weather.mocking;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A local stand-in for api.weather.gov, serving recorded /points and /gridpoints fixtures. Point
+ * this at an NWSAPIWeatherSource via its base URL to exercise the weather layer offline.
+ *
+ * <p>Coordinates map onto a synthetic grid of 0.025 degree cells, so nearby points share a cell and
+ * distant ones don't. Forecast timestamps are shifted so the recorded forecast always starts at the
+ * current hour. Latency, error rate and slow bodies are configurable, and all randomness comes from
+ * a seeded generator so runs are reproducible.
+ */
+public class MockedNWSServer {
+
+  public static final double CELL_DEGREES = 0.025;
+
+  private static final Pattern POINTS = Pattern.compile("/points/(-?[\\d.]+),(-?[\\d.]+)");
+  private static final Pattern GRIDPOINTS = Pattern.compile("/gridpoints/(\\w+)/(\\d+),(\\d+)");
+  private static final Pattern TIMESTAMP =
+      Pattern.compile("(\\d{4}-\\d\\d-\\d\\dT\\d\\d:\\d\\d:\\d\\d\\+00:00)");
+  // The instant the recorded gridpoints fixture starts at.
+  private static final DateTimeFormatter NWS_TIME =
+      DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssxxx");
+  private static final OffsetDateTime FIXTURE_START =
+      OffsetDateTime.of(2024, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+
+  /** A distribution of response delays, in milliseconds. */
+  @FunctionalInterface
+  public interface Latency {
+    long nextMillis(Random random);
+
+    /** Every response takes the same time. */
+    static Latency fixed(long millis) {
+      return random -> millis;
+    }
+
+    /** A long-tailed distribution with the given median; sigma around 1 gives a heavy tail. */
+    static Latency lognormal(long medianMillis, double sigma) {
+      return random -> Math.round(medianMillis * Math.exp(sigma * random.nextGaussian()));
+    }
+  }
+
+  private final HttpServer server;
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+  private final String pointsFixture;
+  private final String gridpointsFixture;
+  private final Random random;
+
+  private volatile Latency latency = Latency.fixed(0);
+  private volatile double errorRate = 0;
+  private final AtomicInteger failNext = new AtomicInteger();
+  private volatile int slowBodyChunkBytes = 0;
+  private volatile long slowBodyPauseMillis = 0;
+
+  private final AtomicInteger pointsRequests = new AtomicInteger();
+  private final AtomicInteger gridpointsRequests = new AtomicInteger();
+  private final AtomicInteger errorsServed = new AtomicInteger();
+
+  /**
+   * Creates and starts a stand-in server on a free local port.
+   *
+   * @param seed the seed for latency and error injection
+   * @throws IOException if the server can't bind or the fixtures can't be read
+   */
+  public MockedNWSServer(long seed) throws IOException {
+    this.random = new Random(seed);
+    this.pointsFixture = readFixture("/nws/points.json");
+    this.gridpointsFixture = readFixture("/nws/gridpoints.json");
+    this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    this.server.createContext("/", this::handle);
+    this.server.setExecutor(this.executor);
+    this.server.start();
+  }
+
+  /** Returns the base URL to hand to NWSAPIWeatherSource. */
+  public String baseUrl() {
+    return "http://localhost:" + this.server.getAddress().getPort();
+  }
+
+  /** Sets the distribution of delays before each response starts. */
+  public void setLatency(Latency latency) {
+    this.latency = latency;
+  }
+
+  /** Sets the fraction of requests, between 0 and 1, answered with a 503. */
+  public void setErrorRate(double errorRate) {
+    this.errorRate = errorRate;
+  }
+
+  /** Answers the next given number of requests with a 503, whatever the error rate. */
+  public void failNext(int count) {
+    this.failNext.set(count);
+  }
+
+  /** Makes response bodies trickle out in chunks of the given size, pausing between chunks. */
+  public void setSlowBody(int chunkBytes, long pauseMillis) {
+    this.slowBodyChunkBytes = chunkBytes;
+    this.slowBodyPauseMillis = pauseMillis;
+  }
+
+  public int pointsRequests() {
+    return this.pointsRequests.get();
+  }
+
+  public int gridpointsRequests() {
+    return this.gridpointsRequests.get();
+  }
+
+  public int errorsServed() {
+    return this.errorsServed.get();
+  }
+
+  /** Stops the server immediately. */
+  public void stop() {
+    this.server.stop(0);
+    this.executor.shutdownNow();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try (exchange) {
+      String path = exchange.getRequestURI().getPath();
+      Matcher points = POINTS.matcher(path);
+      Matcher gridpoints = GRIDPOINTS.matcher(path);
+      String body;
+      if (points.matches()) {
+        this.pointsRequests.incrementAndGet();
+        body =
+            this.points(Double.parseDouble(points.group(1)), Double.parseDouble(points.group(2)));
+      } else if (gridpoints.matches()) {
+        this.gridpointsRequests.incrementAndGet();
+        body =
+            this.gridpoints(
+                gridpoints.group(1),
+                Integer.parseInt(gridpoints.group(2)),
+                Integer.parseInt(gridpoints.group(3)));
+      } else {
+        this.send(exchange, 404, "{\"status\":404,\"title\":\"Not Found\"}");
+        return;
+      }
+
+      long delay;
+      boolean fail;
+      synchronized (this.random) {
+        delay = this.latency.nextMillis(this.random);
+        fail = this.random.nextDouble() < this.errorRate;
+      }
+      fail |= this.failNext.getAndUpdate(n -> Math.max(0, n - 1)) > 0;
+      if (delay > 0) {
+        Thread.sleep(delay);
+      }
+      if (fail) {
+        this.errorsServed.incrementAndGet();
+        this.send(exchange, 503, "{\"status\":503,\"title\":\"Service Unavailable\"}");
+        return;
+      }
+      this.send(exchange, 200, body);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private String points(double lat, double lon) {
+    int x = (int) Math.floor((lon + 180) / CELL_DEGREES);
+    int y = (int) Math.floor((lat + 90) / CELL_DEGREES);
+    return this.pointsFixture
+        .replace("\"gridX\": 64", "\"gridX\": " + x)
+        .replace("\"gridY\": 64", "\"gridY\": " + y)
+        .replace("BOX/64,64", "BOX/" + x + "," + y);
+  }
+
+  private String gridpoints(String office, int x, int y) {
+    // Shift every recorded timestamp so the forecast starts at the current hour.
+    long shiftHours =
+        ChronoUnit.HOURS.between(
+            FIXTURE_START, OffsetDateTime.now(ZoneOffset.UTC).truncatedTo(ChronoUnit.HOURS));
+    Matcher m = TIMESTAMP.matcher(this.gridpointsFixture);
+    StringBuilder shifted = new StringBuilder();
+    while (m.find()) {
+      OffsetDateTime t = OffsetDateTime.parse(m.group(1)).plusHours(shiftHours);
+      m.appendReplacement(shifted, t.format(NWS_TIME));
+    }
+    m.appendTail(shifted);
+
+    // The cell's footprint, as NWS reports it in the feature geometry.
+    double west = x * CELL_DEGREES - 180;
+    double south = y * CELL_DEGREES - 90;
+    double east = west + CELL_DEGREES;
+    double north = south + CELL_DEGREES;
+    String geometry =
+        String.format(
+            Locale.ROOT,
+            "{\"type\": \"Polygon\", \"coordinates\": [[[%f, %f], [%f, %f], [%f, %f], [%f, %f],"
+                + " [%f, %f]]]}",
+            west,
+            south,
+            east,
+            south,
+            east,
+            north,
+            west,
+            north,
+            west,
+            south);
+    return shifted
+        .toString()
+        .replace("\"geometry\": null", "\"geometry\": " + geometry)
+        .replace("BOX/64,64", office + "/" + x + "," + y);
+  }
+
+  private void send(HttpExchange exchange, int status, String body)
+      throws IOException, InterruptedException {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/geo+json");
+    exchange.sendResponseHeaders(status, bytes.length);
+    OutputStream out = exchange.getResponseBody();
+    int chunk = this.slowBodyChunkBytes > 0 ? this.slowBodyChunkBytes : bytes.length;
+    for (int offset = 0; offset < bytes.length; offset += chunk) {
+      out.write(bytes, offset, Math.min(chunk, bytes.length - offset));
+      out.flush();
+      if (this.slowBodyPauseMillis > 0 && offset + chunk < bytes.length) {
+        Thread.sleep(this.slowBodyPauseMillis);
+      }
+    }
+  }
+
+  private static String readFixture(String resource) throws IOException {
+    try (InputStream in = MockedNWSServer.class.getResourceAsStream(resource)) {
+      if (in == null) {
+        throw new IOException("Missing fixture " + resource);
+      }
+      return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+  }
+}